@@ -0,0 +1,87 @@
+package com.api.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.api.cache.RedisScripts;
+import com.api.limiter.LeasedRateLimiter;
+import com.api.limiter.LimitResult;
+import com.api.limiter.LimitRule;
+import com.api.limiter.RateLimiter;
+import com.api.utils.AccquireUtils;
+
+/**
+ * lua限流脚本：原有的limit.lua和各限流算法
+ *
+ * @author zhaoxingwu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LimiterBenchmark {
+
+	private static final LimitRule WINDOW_LOG = LimitRule.slidingWindowLog(1000000, 1, TimeUnit.SECONDS);
+
+	private static final LimitRule WINDOW_COUNTER = LimitRule.slidingWindowCounter(1000000, 1, TimeUnit.SECONDS);
+
+	private static final LimitRule TOKEN_BUCKET = LimitRule.tokenBucket(1000000, 1000000, 1, TimeUnit.SECONDS);
+
+	private RedisScripts redisScripts;
+
+	private RateLimiter rateLimiter;
+
+	private LeasedRateLimiter leased;
+
+	@Setup
+	public void setup(RedisContext context) {
+		redisScripts = context.getBean(RedisScripts.class);
+		rateLimiter = context.getBean(RateLimiter.class);
+		leased = rateLimiter.leased("bench", 1000000, 1, TimeUnit.SECONDS, 100, 1);
+	}
+
+	private String key() {
+		return "bench:" + ThreadLocalRandom.current().nextInt(100);
+	}
+
+	@Benchmark
+	public boolean limitLua() {
+		return AccquireUtils.accquire(redisScripts);
+	}
+
+	@Benchmark
+	public LimitResult slidingWindowLog() {
+		return rateLimiter.acquire(key(), WINDOW_LOG);
+	}
+
+	@Benchmark
+	public LimitResult slidingWindowCounter() {
+		return rateLimiter.acquire(key(), WINDOW_COUNTER);
+	}
+
+	@Benchmark
+	public LimitResult tokenBucket() {
+		return rateLimiter.acquire(key(), TOKEN_BUCKET);
+	}
+
+	@Benchmark
+	public LimitResult leased() {
+		return leased.acquire(key());
+	}
+}
@@ -0,0 +1,54 @@
+package com.api.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.api.cache.RedisLock;
+
+/**
+ * 分布式锁：所有线程争抢同一把锁时的交接速度，以及无竞争时的加解锁开销
+ *
+ * @author zhaoxingwu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class LockBenchmark {
+
+	private RedisLock redisLock;
+
+	@Setup
+	public void setup(RedisContext context) {
+		redisLock = context.getBean(RedisLock.class);
+	}
+
+	@Benchmark
+	public boolean contended() {
+		String token = redisLock.tryLock("bench:contended", 5000, 5000);
+		return token != null && redisLock.unlock("bench:contended", token);
+	}
+
+	@Benchmark
+	public boolean uncontended() {
+		String key = "bench:" + Thread.currentThread().getId() + ":" + ThreadLocalRandom.current().nextInt(100);
+		String token = redisLock.tryLock(key, 5000, 0);
+		return token != null && redisLock.unlock(key, token);
+	}
+}
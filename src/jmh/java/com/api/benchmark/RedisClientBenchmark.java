@@ -0,0 +1,86 @@
+package com.api.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.api.cache.RedisClient;
+
+/**
+ * RedisClient常用命令：字符串、哈希、有序集合
+ *
+ * @author zhaoxingwu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class RedisClientBenchmark {
+
+	private static final int KEYS = 1000;
+
+	private RedisClient redisClient;
+
+	private String[] keys;
+
+	@Setup
+	public void setup(RedisContext context) {
+		redisClient = context.getBean(RedisClient.class);
+		keys = new String[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			keys[i] = "bench:string:" + i;
+			redisClient.set(keys[i], "value-" + i);
+			redisClient.hset("bench:hash", "field" + i, "value-" + i);
+			redisClient.zincrby("bench:zset", i, "member" + i);
+		}
+	}
+
+	private String key() {
+		return keys[ThreadLocalRandom.current().nextInt(KEYS)];
+	}
+
+	@Benchmark
+	public String get() {
+		return redisClient.get(key());
+	}
+
+	@Benchmark
+	public String set() {
+		return redisClient.set(key(), "value");
+	}
+
+	@Benchmark
+	public String hget() {
+		return redisClient.hget("bench:hash", "field" + ThreadLocalRandom.current().nextInt(KEYS));
+	}
+
+	@Benchmark
+	public Long hset() {
+		return redisClient.hset("bench:hash", "field" + ThreadLocalRandom.current().nextInt(KEYS), "value");
+	}
+
+	@Benchmark
+	public Double zincrby() {
+		return redisClient.zincrby("bench:zset", 1, "member" + ThreadLocalRandom.current().nextInt(KEYS));
+	}
+
+	@Benchmark
+	public Object zrevrangeTop10() {
+		return redisClient.zrevrange("bench:zset", 0, 9);
+	}
+}
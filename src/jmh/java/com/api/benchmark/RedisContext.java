@@ -0,0 +1,38 @@
+package com.api.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.api.RedisApiApplication;
+
+/**
+ * 基准共用的spring上下文，不启动web容器，连接application-local.yml中配置的redis
+ *
+ * @author zhaoxingwu
+ *
+ */
+@State(Scope.Benchmark)
+public class RedisContext {
+
+	private ConfigurableApplicationContext context;
+
+	@Setup(Level.Trial)
+	public void start() {
+		context = new SpringApplicationBuilder(RedisApiApplication.class).web(false)
+				.properties("log.level=WARN").run();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	public <T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+}
@@ -0,0 +1,124 @@
+package com.api.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alibaba.fastjson.JSON;
+import com.api.cache.RedisClient;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 对象序列化：只编解码，以及编码后写入/读出redis的完整路径
+ *
+ * @author zhaoxingwu
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class SerializationBenchmark {
+
+	private RedisClient redisClient;
+
+	private Profile profile;
+
+	private String json;
+
+	@Setup
+	public void setup(RedisContext context) {
+		redisClient = context.getBean(RedisClient.class);
+		profile = new Profile();
+		profile.setId(10001);
+		profile.setName("jack");
+		profile.setScore(98.5);
+		List<String> tags = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			tags.add("tag" + i);
+		}
+		profile.setTags(tags);
+		json = JSON.toJSONString(profile);
+		redisClient.set("bench:profile", json);
+	}
+
+	@Benchmark
+	public String encode() {
+		return JSON.toJSONString(profile);
+	}
+
+	@Benchmark
+	public Profile decode() {
+		return JSON.parseObject(json, Profile.class);
+	}
+
+	@Benchmark
+	public String encodeAndSet() {
+		return redisClient.setex("bench:profile:bytes", 60,
+				SafeEncoder.encode(JSON.toJSONString(profile)));
+	}
+
+	@Benchmark
+	public Profile getAndDecode() {
+		return JSON.parseObject(redisClient.get("bench:profile"), Profile.class);
+	}
+
+	public static class Profile {
+
+		private long id;
+
+		private String name;
+
+		private double score;
+
+		private List<String> tags;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public double getScore() {
+			return score;
+		}
+
+		public void setScore(double score) {
+			this.score = score;
+		}
+
+		public List<String> getTags() {
+			return tags;
+		}
+
+		public void setTags(List<String> tags) {
+			this.tags = tags;
+		}
+	}
+}
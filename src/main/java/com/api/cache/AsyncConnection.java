@@ -0,0 +1,294 @@
+package com.api.cache;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.RedisInputStream;
+import redis.clients.util.RedisOutputStream;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 多路复用的流水线连接，供AsyncRedisClient使用
+ * 调用方把命令放进发送队列后立即返回；写线程每次取出队列中的全部命令一起写出并只flush一次，
+ * 读线程按发送顺序读取应答并完成对应的future。redis按顺序应答，所以用一个FIFO队列即可对应。
+ * 连接断开时所有未应答的命令以JedisConnectionException失败，下一条命令到来时重新连接；
+ * 排队和未应答的命令超过 {@link AsyncRedisClient#MAX_PENDING} 时新命令立即失败
+ *
+ * @author zhaoxingwu
+ *
+ */
+final class AsyncConnection {
+
+	/**
+	 * 一次写出的最大命令数
+	 */
+	private static final int MAX_BATCH = 1024;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final String name;
+
+	private final String host;
+
+	private final int port;
+
+	private final int timeout;
+
+	private final String password;
+
+	private final BlockingQueue<Command<?>> queued = new LinkedBlockingQueue<Command<?>>(AsyncRedisClient.MAX_PENDING);
+
+	private final Thread writer;
+
+	private volatile boolean running = true;
+
+	/**
+	 * 当前的socket会话，只由写线程创建和替换
+	 */
+	private volatile Session session;
+
+	AsyncConnection(String name, String host, int port, int timeout, String password) {
+		this.name = name;
+		this.host = host;
+		this.port = port;
+		this.timeout = timeout;
+		this.password = password;
+		this.writer = new Thread(this::write, name + "-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * 发送命令
+	 *
+	 * @param command 命令
+	 * @param builder 应答转换
+	 * @param args    参数
+	 * @return 应答
+	 */
+	<T> CompletableFuture<T> send(Protocol.Command command, Builder<T> builder, byte[]... args) {
+		Command<T> pending = new Command<T>(command, builder, args);
+		if (!running) {
+			pending.fail(new JedisConnectionException("connection closed"));
+		} else if (pending() >= AsyncRedisClient.MAX_PENDING || !queued.offer(pending)) {
+			pending.fail(new JedisException(name + " has too many pending commands, redis is down or too slow"));
+		}
+		return pending.future;
+	}
+
+	/**
+	 * 已发送未应答加上排队中的命令数
+	 *
+	 * @return 命令数
+	 */
+	int pending() {
+		Session current = session;
+		return queued.size() + (current == null ? 0 : current.inFlight.size());
+	}
+
+	void close() {
+		running = false;
+		writer.interrupt();
+		Session current = session;
+		if (current != null) {
+			current.close(new JedisConnectionException("connection closed"));
+		}
+		failAll(queued, new JedisConnectionException("connection closed"));
+	}
+
+	private void write() {
+		List<Command<?>> batch = new ArrayList<Command<?>>();
+		while (running) {
+			try {
+				batch.add(queued.take());
+			} catch (InterruptedException e) {
+				break;
+			}
+			queued.drainTo(batch, MAX_BATCH - 1);
+			Session current = session;
+			if (current == null || current.broken) {
+				try {
+					current = new Session();
+					session = current;
+				} catch (Exception e) {
+					logger.error("async connect {}:{} failed! reids cache exception: ", host, port, e);
+					JedisConnectionException failure = e instanceof JedisConnectionException
+							? (JedisConnectionException) e : new JedisConnectionException(e);
+					for (Command<?> command : batch) {
+						command.fail(failure);
+					}
+					batch.clear();
+					continue;
+				}
+			}
+			current.send(batch);
+			batch.clear();
+		}
+		failAll(queued, new JedisConnectionException("connection closed"));
+	}
+
+	private static void failAll(BlockingQueue<Command<?>> commands, Exception e) {
+		Command<?> command;
+		while ((command = commands.poll()) != null) {
+			command.fail(e);
+		}
+	}
+
+	/**
+	 * 一个socket及其读线程，断开后整体丢弃
+	 */
+	private final class Session {
+
+		private final Socket socket;
+
+		private final RedisOutputStream outputStream;
+
+		private final RedisInputStream inputStream;
+
+		/**
+		 * 已写出等待应答的命令，顺序与redis的应答顺序一致
+		 */
+		private final BlockingQueue<Command<?>> inFlight = new LinkedBlockingQueue<Command<?>>();
+
+		private final Thread reader;
+
+		private volatile boolean broken;
+
+		private Session() throws IOException {
+			socket = new Socket();
+			// 创建后就占用文件描述符，连接或认证失败都要关闭，否则redis不可用期间每次重连泄漏一个
+			try {
+				socket.setReuseAddress(true);
+				socket.setKeepAlive(true);
+				socket.setTcpNoDelay(true);
+				socket.setSoLinger(true, 0);
+				socket.connect(new InetSocketAddress(host, port), timeout);
+				socket.setSoTimeout(timeout);
+				outputStream = new RedisOutputStream(socket.getOutputStream());
+				inputStream = new RedisInputStream(socket.getInputStream());
+				if (StringUtils.isNotEmpty(password)) {
+					Protocol.sendCommand(outputStream, Protocol.Command.AUTH, SafeEncoder.encode(password));
+					outputStream.flush();
+					Protocol.read(inputStream);
+				}
+			} catch (IOException | RuntimeException e) {
+				try {
+					socket.close();
+				} catch (IOException ignored) {
+					// 保留原来的异常
+				}
+				throw e;
+			}
+			reader = new Thread(this::read, name + "-reader");
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private void send(List<Command<?>> batch) {
+			// 先入队再写出，保证读线程读到应答时能找到对应的命令
+			inFlight.addAll(batch);
+			try {
+				for (Command<?> command : batch) {
+					Protocol.sendCommand(outputStream, command.command, command.args);
+				}
+				outputStream.flush();
+			} catch (Exception e) {
+				close(e instanceof JedisConnectionException ? (JedisConnectionException) e
+						: new JedisConnectionException(e));
+			}
+			if (broken) {
+				// 读线程可能已经清理过队列，补一次
+				failAll(inFlight, new JedisConnectionException("connection broken"));
+			}
+		}
+
+		private void read() {
+			while (!broken) {
+				Command<?> command;
+				try {
+					command = inFlight.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				Object reply;
+				try {
+					reply = Protocol.read(inputStream);
+				} catch (JedisDataException e) {
+					// 错误应答只影响这一条命令
+					command.fail(e);
+					continue;
+				} catch (Exception e) {
+					if (!broken) {
+						logger.error("async read {}:{} failed! reids cache exception: ", host, port, e);
+					}
+					command.fail(e);
+					close(e instanceof JedisConnectionException ? (JedisConnectionException) e
+							: new JedisConnectionException(e));
+					break;
+				}
+				command.complete(reply);
+			}
+		}
+
+		private void close(JedisConnectionException e) {
+			broken = true;
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+				// 已经断开
+			}
+			reader.interrupt();
+			failAll(inFlight, e);
+		}
+	}
+
+	/**
+	 * 排队中的一条命令
+	 */
+	private static final class Command<T> {
+
+		private final Protocol.Command command;
+
+		private final Builder<T> builder;
+
+		private final byte[][] args;
+
+		private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		private Command(Protocol.Command command, Builder<T> builder, byte[][] args) {
+			this.command = command;
+			this.builder = builder;
+			this.args = args;
+		}
+
+		private void complete(Object reply) {
+			T value;
+			try {
+				value = builder.build(reply);
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+				return;
+			}
+			future.complete(value);
+		}
+
+		private void fail(Exception e) {
+			future.completeExceptionally(e);
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package com.api.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.api.compress.Compression;
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.Tuple;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 异步redis客户端，命令与RedisClient对应，返回CompletableFuture
+ * 所有调用共享少量长连接，命令在连接上流水线发送，调用线程不占用连接也不等待应答，
+ * 几个连接即可支撑成千上万的并发调用，不再受连接池大小限制。
+ * 命令按键分配连接，同一个键上的命令按调用顺序执行。
+ *
+ * future在连接的读线程中完成，thenApply等回调也在读线程中执行，回调里不能阻塞，
+ * 耗时处理请使用 thenApplyAsync 等带Async的方法。
+ * 读操作不经过本地一级缓存；写操作完成后通知本地缓存失效。
+ * 启用压缩时byte[]值与RedisClient一样压缩写入、读取时解压
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class AsyncRedisClient {
+
+	/**
+	 * 每个连接上排队和已发送未应答的命令上限，redis不可用或变慢时超过上限的命令立即失败，不再无限堆积
+	 */
+	public static final int MAX_PENDING = 65536;
+
+	private final AsyncConnection[] connections;
+
+	@Autowired(required = false)
+	private NearCache nearCache;
+
+	@Autowired(required = false)
+	private Compression compression;
+
+	/**
+	 * @param host        redis地址
+	 * @param port        redis端口
+	 * @param timeout     连接和等待应答的超时(毫秒)
+	 * @param password    redis密码
+	 * @param connections 连接数
+	 */
+	public AsyncRedisClient(String host, int port, int timeout, String password, int connections) {
+		if (connections <= 0) {
+			throw new IllegalArgumentException("connections must be positive: " + connections);
+		}
+		this.connections = new AsyncConnection[connections];
+		for (int i = 0; i < connections; i++) {
+			this.connections[i] = new AsyncConnection("redis-async-" + i, host, port, timeout, password);
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		for (AsyncConnection connection : connections) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * 所有连接上已发送未应答加上排队中的命令数
+	 *
+	 * @return 命令数
+	 */
+	public int pending() {
+		int pending = 0;
+		for (AsyncConnection connection : connections) {
+			pending += connection.pending();
+		}
+		return pending;
+	}
+
+	public CompletableFuture<Long> incr(String key) {
+		return write(key, send(Command.INCR, BuilderFactory.LONG, key));
+	}
+
+	public CompletableFuture<Long> incrBy(String key, long count) {
+		return write(key, send(Command.INCRBY, BuilderFactory.LONG, key, Long.toString(count)));
+	}
+
+	public CompletableFuture<Boolean> exist(String key) {
+		return send(Command.EXISTS, BuilderFactory.BOOLEAN, key);
+	}
+
+	public CompletableFuture<Boolean> expire(String key, int seconds) {
+		return write(key, send(Command.EXPIRE, BuilderFactory.BOOLEAN, key, Integer.toString(seconds)));
+	}
+
+	public CompletableFuture<Long> del(String key) {
+		return write(key, send(Command.DEL, BuilderFactory.LONG, key));
+	}
+
+	public CompletableFuture<String> get(String key) {
+		return send(Command.GET, BuilderFactory.STRING, key);
+	}
+
+	/**
+	 * 读取二进制值，启用压缩时在读线程中解压
+	 */
+	public CompletableFuture<byte[]> get(byte[] key) {
+		CompletableFuture<byte[]> future = send(SafeEncoder.encode(key), Command.GET, BuilderFactory.BYTE_ARRAY, key);
+		return compression == null ? future : future.thenApply(compression::decompress);
+	}
+
+	/**
+	 * 设置二进制值，启用压缩时超过阈值的值在调用线程中压缩后写入
+	 */
+	public CompletableFuture<String> set(String key, byte[] value) {
+		byte[] stored = compress(value);
+		return write(key, send(key, Command.SET, BuilderFactory.STRING, SafeEncoder.encode(key), stored));
+	}
+
+	public CompletableFuture<String> setex(String key, int seconds, byte[] value) {
+		byte[] stored = compress(value);
+		return write(key, send(key, Command.SETEX, BuilderFactory.STRING, SafeEncoder.encode(key),
+				Protocol.toByteArray(seconds), stored));
+	}
+
+	public CompletableFuture<String> set(String key, String value) {
+		return write(key, send(Command.SET, BuilderFactory.STRING, key, value));
+	}
+
+	public CompletableFuture<String> setex(String key, int seconds, String value) {
+		return write(key, send(Command.SETEX, BuilderFactory.STRING, key, Integer.toString(seconds), value));
+	}
+
+	public CompletableFuture<String> getSet(String key, String value) {
+		return write(key, send(Command.GETSET, BuilderFactory.STRING, key, value));
+	}
+
+	public CompletableFuture<Long> setnx(String key, String value) {
+		return write(key, send(Command.SETNX, BuilderFactory.LONG, key, value));
+	}
+
+	/**
+	 * 不存在时设置并指定过期时间
+	 *
+	 * @return 是否设置成功
+	 */
+	public CompletableFuture<Boolean> setNxExp(String key, String value, int expireSeconds) {
+		return write(key, send(Command.SET, BuilderFactory.STRING, key, value, "NX", "EX",
+				Integer.toString(expireSeconds)).thenApply("OK"::equals));
+	}
+
+	public CompletableFuture<Long> strlen(String key) {
+		return send(Command.STRLEN, BuilderFactory.LONG, key);
+	}
+
+	public CompletableFuture<List<String>> mget(String... keys) {
+		return send(Command.MGET, BuilderFactory.STRING_LIST, keys);
+	}
+
+	public CompletableFuture<Long> hset(String key, String field, String value) {
+		return write(key, send(Command.HSET, BuilderFactory.LONG, key, field, value));
+	}
+
+	public CompletableFuture<String> hget(String key, String field) {
+		return send(Command.HGET, BuilderFactory.STRING, key, field);
+	}
+
+	public CompletableFuture<String> hmset(String key, Map<String, String> tuple) {
+		List<String> args = new ArrayList<String>(tuple.size() * 2 + 1);
+		args.add(key);
+		for (Map.Entry<String, String> entry : tuple.entrySet()) {
+			args.add(entry.getKey());
+			args.add(entry.getValue());
+		}
+		return write(key, send(Command.HMSET, BuilderFactory.STRING, args.toArray(new String[0])));
+	}
+
+	public CompletableFuture<List<String>> hmget(String key, String... fields) {
+		return send(Command.HMGET, BuilderFactory.STRING_LIST, prepend(key, fields));
+	}
+
+	public CompletableFuture<Map<String, String>> hgetAll(String key) {
+		return send(Command.HGETALL, BuilderFactory.STRING_MAP, key);
+	}
+
+	public CompletableFuture<Long> hdel(String key, String... fields) {
+		return write(key, send(Command.HDEL, BuilderFactory.LONG, prepend(key, fields)));
+	}
+
+	public CompletableFuture<Long> hlen(String key) {
+		return send(Command.HLEN, BuilderFactory.LONG, key);
+	}
+
+	public CompletableFuture<Boolean> hexists(String key, String field) {
+		return send(Command.HEXISTS, BuilderFactory.BOOLEAN, key, field);
+	}
+
+	public CompletableFuture<Long> hincrBy(String key, String field, long value) {
+		return write(key, send(Command.HINCRBY, BuilderFactory.LONG, key, field, Long.toString(value)));
+	}
+
+	public CompletableFuture<Long> rpush(String key, String... items) {
+		return send(Command.RPUSH, BuilderFactory.LONG, prepend(key, items));
+	}
+
+	public CompletableFuture<Long> lpush(String key, String... items) {
+		return send(Command.LPUSH, BuilderFactory.LONG, prepend(key, items));
+	}
+
+	public CompletableFuture<Long> llen(String key) {
+		return send(Command.LLEN, BuilderFactory.LONG, key);
+	}
+
+	public CompletableFuture<List<String>> lrange(String key, long start, long end) {
+		return send(Command.LRANGE, BuilderFactory.STRING_LIST, key, Long.toString(start), Long.toString(end));
+	}
+
+	public CompletableFuture<String> lpop(String key) {
+		return send(Command.LPOP, BuilderFactory.STRING, key);
+	}
+
+	public CompletableFuture<String> rpop(String key) {
+		return send(Command.RPOP, BuilderFactory.STRING, key);
+	}
+
+	public CompletableFuture<Long> sadd(String key, String... members) {
+		return send(Command.SADD, BuilderFactory.LONG, prepend(key, members));
+	}
+
+	public CompletableFuture<Set<String>> smembers(String key) {
+		return send(Command.SMEMBERS, BuilderFactory.STRING_SET, key);
+	}
+
+	public CompletableFuture<Long> srem(String key, String... members) {
+		return send(Command.SREM, BuilderFactory.LONG, prepend(key, members));
+	}
+
+	public CompletableFuture<Long> scard(String key) {
+		return send(Command.SCARD, BuilderFactory.LONG, key);
+	}
+
+	public CompletableFuture<Boolean> sismember(String key, String member) {
+		return send(Command.SISMEMBER, BuilderFactory.BOOLEAN, key, member);
+	}
+
+	public CompletableFuture<Long> zadd(String key, double score, String member) {
+		return send(Command.ZADD, BuilderFactory.LONG, key, Double.toString(score), member);
+	}
+
+	public CompletableFuture<Double> zincrby(String key, double score, String member) {
+		return send(Command.ZINCRBY, BuilderFactory.DOUBLE, key, Double.toString(score), member);
+	}
+
+	public CompletableFuture<Long> zrem(String key, String... members) {
+		return send(Command.ZREM, BuilderFactory.LONG, prepend(key, members));
+	}
+
+	public CompletableFuture<Double> zscore(String key, String member) {
+		return send(Command.ZSCORE, BuilderFactory.DOUBLE, key, member);
+	}
+
+	public CompletableFuture<Long> zrank(String key, String member) {
+		return send(Command.ZRANK, BuilderFactory.LONG, key, member);
+	}
+
+	public CompletableFuture<Long> zrevrank(String key, String member) {
+		return send(Command.ZREVRANK, BuilderFactory.LONG, key, member);
+	}
+
+	public CompletableFuture<Long> zcard(String key) {
+		return send(Command.ZCARD, BuilderFactory.LONG, key);
+	}
+
+	public CompletableFuture<Set<String>> zrange(String key, long start, long end) {
+		return send(Command.ZRANGE, BuilderFactory.STRING_ZSET, key, Long.toString(start), Long.toString(end));
+	}
+
+	public CompletableFuture<Set<String>> zrevrange(String key, long start, long end) {
+		return send(Command.ZREVRANGE, BuilderFactory.STRING_ZSET, key, Long.toString(start), Long.toString(end));
+	}
+
+	public CompletableFuture<Set<Tuple>> zrevrangeWithScores(String key, long start, long end) {
+		return send(Command.ZREVRANGE, BuilderFactory.TUPLE_ZSET, key, Long.toString(start), Long.toString(end),
+				"WITHSCORES");
+	}
+
+	public CompletableFuture<Long> publish(String channel, String message) {
+		return send(Command.PUBLISH, BuilderFactory.LONG, channel, message);
+	}
+
+	/**
+	 * 执行已加载的lua脚本，NOSCRIPT时future以JedisNoScriptException失败
+	 *
+	 * @param sha1 脚本sha1
+	 * @param keys 键
+	 * @param args 参数
+	 * @return 脚本返回值，字符串已解码
+	 */
+	public CompletableFuture<Object> evalsha(String sha1, List<String> keys, List<String> args) {
+		List<String> params = new ArrayList<String>(keys.size() + args.size() + 2);
+		params.add(sha1);
+		params.add(Integer.toString(keys.size()));
+		params.addAll(keys);
+		params.addAll(args);
+		return send(keys.isEmpty() ? sha1 : keys.get(0), Command.EVALSHA, BuilderFactory.EVAL_RESULT,
+				params.toArray(new String[0]));
+	}
+
+	private <T> CompletableFuture<T> send(Protocol.Command command, Builder<T> builder, String... args) {
+		return send(args[0], command, builder, args);
+	}
+
+	/**
+	 * 按键选择连接，同一个键的命令总在同一连接上按调用顺序执行
+	 */
+	private <T> CompletableFuture<T> send(String route, Protocol.Command command, Builder<T> builder,
+			String... args) {
+		byte[][] encoded = new byte[args.length][];
+		for (int i = 0; i < args.length; i++) {
+			encoded[i] = SafeEncoder.encode(args[i]);
+		}
+		return send(route, command, builder, encoded);
+	}
+
+	private <T> CompletableFuture<T> send(String route, Protocol.Command command, Builder<T> builder,
+			byte[]... args) {
+		AsyncConnection connection = connections[(route.hashCode() & Integer.MAX_VALUE) % connections.length];
+		return connection.send(command, builder, args);
+	}
+
+	private byte[] compress(byte[] value) {
+		return compression == null ? value : compression.compress(value);
+	}
+
+	/**
+	 * 写命令完成后通知本地缓存失效，失效完成后返回的future才完成
+	 */
+	private <T> CompletableFuture<T> write(String key, CompletableFuture<T> future) {
+		if (nearCache == null || !nearCache.isCacheable(key)) {
+			return future;
+		}
+		// 失效会发布消息，不能在读线程里阻塞
+		return future.whenCompleteAsync((value, e) -> nearCache.invalidate(key));
+	}
+
+	private static String[] prepend(String key, String[] values) {
+		String[] args = new String[values.length + 1];
+		args[0] = key;
+		System.arraycopy(values, 0, args, 1, values.length);
+		return args;
+	}
+}
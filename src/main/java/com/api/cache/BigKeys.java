@@ -0,0 +1,464 @@
+package com.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 大key的分块读写：一条命令处理几万个元素时redis单线程被阻塞几百毫秒，应答也一次性占满堆
+ * 写入按元素数和字符数分成小命令，多条命令通过pipeline发送，每 {@link #PIPELINE_COMMANDS} 条一次往返，
+ * redis在命令之间可以处理其他客户端的请求；读取按页SCAN或LRANGE/ZRANGE，每页单独借还连接；
+ * 删除优先UNLINK由redis在后台释放内存，不支持时分块HDEL/SREM/ZREMRANGEBYRANK/LTRIM后再DEL。
+ * 分块写入不是原子的，写入过程中其他客户端可能读到一部分；分页读取遵循SCAN的语义，读取期间被修改的元素可能遗漏或重复。
+ * RedisClient中一条命令的元素数或字节数超过告警阈值时打warn日志，同一命令和key每分钟最多一次
+ *
+ * <pre>
+ * bigKeys.hmset("user:tags:" + id, tags);
+ * Map&lt;String, String&gt; all = bigKeys.hgetAll("user:tags:" + id);
+ * bigKeys.delete("user:tags:" + id);
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class BigKeys {
+
+	/**
+	 * 一次往返最多发送几条分块命令
+	 */
+	private static final int PIPELINE_COMMANDS = 16;
+
+	private static final long WARN_INTERVAL_SECONDS = 60;
+
+	private static final String UNLINK = "return redis.call('UNLINK', KEYS[1])";
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final int chunkElements;
+
+	private final int chunkBytes;
+
+	private final int warnElements;
+
+	private final long warnBytes;
+
+	/**
+	 * 最近告警过的 命令 key，避免同一个大key刷屏
+	 */
+	private final Cache<String, Boolean> warned = CacheBuilder.newBuilder().maximumSize(1000)
+			.expireAfterWrite(WARN_INTERVAL_SECONDS, TimeUnit.SECONDS).build();
+
+	private volatile boolean unlinkSupported = true;
+
+	@Autowired
+	private RedisRouter redisRouter;
+
+	@Autowired(required = false)
+	private NearCache nearCache;
+
+	/**
+	 * @param chunkElements 一条命令最多几个元素
+	 * @param chunkBytes    一条命令最多多少字符，按字符数估算
+	 * @param warnElements  RedisClient一条命令超过这个元素数时告警，0不告警
+	 * @param warnBytes     RedisClient一个值超过这个字节数时告警，0不告警
+	 */
+	public BigKeys(int chunkElements, int chunkBytes, int warnElements, long warnBytes) {
+		if (chunkElements <= 0 || chunkBytes <= 0) {
+			throw new IllegalArgumentException("chunk elements and chunk bytes must be positive");
+		}
+		this.chunkElements = chunkElements;
+		this.chunkBytes = chunkBytes;
+		this.warnElements = warnElements;
+		this.warnBytes = warnBytes;
+	}
+
+	public int getChunkElements() {
+		return chunkElements;
+	}
+
+	/**
+	 * 分块写入哈希字段
+	 *
+	 * @param key  键
+	 * @param hash 字段和值
+	 */
+	public void hmset(String key, Map<String, String> hash) {
+		writeChunked(key, hash.entrySet(), entry -> entry.getKey().length() + entry.getValue().length(), chunk -> {
+			Map<String, String> fields = new LinkedHashMap<String, String>();
+			for (Map.Entry<String, String> entry : chunk) {
+				fields.put(entry.getKey(), entry.getValue());
+			}
+			return p -> p.hmset(key, fields);
+		});
+	}
+
+	/**
+	 * 分块插入列表头部，结果与一次LPUSH所有元素相同
+	 *
+	 * @param key   键
+	 * @param items 元素
+	 * @return 插入后列表的长度
+	 */
+	public Long lpush(String key, List<String> items) {
+		return last(writeChunked(key, items, String::length, chunk -> {
+			String[] values = chunk.toArray(new String[chunk.size()]);
+			return p -> p.lpush(key, values);
+		}));
+	}
+
+	/**
+	 * 分块插入列表尾部
+	 *
+	 * @param key   键
+	 * @param items 元素
+	 * @return 插入后列表的长度
+	 */
+	public Long rpush(String key, List<String> items) {
+		return last(writeChunked(key, items, String::length, chunk -> {
+			String[] values = chunk.toArray(new String[chunk.size()]);
+			return p -> p.rpush(key, values);
+		}));
+	}
+
+	/**
+	 * 分块加入集合
+	 *
+	 * @param key     键
+	 * @param members 成员
+	 * @return 新加入的成员数
+	 */
+	public long sadd(String key, Collection<String> members) {
+		return sum(writeChunked(key, members, String::length, chunk -> {
+			String[] values = chunk.toArray(new String[chunk.size()]);
+			return p -> p.sadd(key, values);
+		}));
+	}
+
+	/**
+	 * 分块加入有序集合
+	 *
+	 * @param key          键
+	 * @param scoreMembers 成员和分数
+	 * @return 新加入的成员数
+	 */
+	public long zadd(String key, Map<String, Double> scoreMembers) {
+		return sum(writeChunked(key, scoreMembers.entrySet(), entry -> entry.getKey().length() + 8, chunk -> {
+			Map<String, Double> members = new LinkedHashMap<String, Double>();
+			for (Map.Entry<String, Double> entry : chunk) {
+				members.put(entry.getKey(), entry.getValue());
+			}
+			return p -> p.zadd(key, members);
+		}));
+	}
+
+	/**
+	 * 按页HSCAN读取整个哈希
+	 *
+	 * @param key 键
+	 * @return 字段和值
+	 */
+	public Map<String, String> hgetAll(String key) {
+		Map<String, String> hash = new LinkedHashMap<String, String>();
+		scan(key, (jedis, cursor, params) -> jedis.hscan(key, cursor, params), entry -> {
+			hash.put(entry.getKey(), entry.getValue());
+		});
+		return hash;
+	}
+
+	/**
+	 * 按页SSCAN读取整个集合
+	 *
+	 * @param key 键
+	 * @return 成员
+	 */
+	public Set<String> smembers(String key) {
+		Set<String> members = new HashSet<String>();
+		scan(key, (jedis, cursor, params) -> jedis.sscan(key, cursor, params), members::add);
+		return members;
+	}
+
+	/**
+	 * 按页LRANGE读取整个列表
+	 *
+	 * @param key 键
+	 * @return 元素
+	 */
+	public List<String> lrange(String key) {
+		List<String> items = new ArrayList<String>();
+		lrange(key, items::addAll);
+		return items;
+	}
+
+	/**
+	 * 按页LRANGE读取列表，每页交给consumer处理，内存中只有一页
+	 *
+	 * @param key      键
+	 * @param consumer 处理一页
+	 */
+	public void lrange(String key, Consumer<List<String>> consumer) {
+		for (long start = 0;; start += chunkElements) {
+			long from = start;
+			List<String> page = redisRouter.read(key, jedis -> jedis.lrange(key, from, from + chunkElements - 1));
+			if (!page.isEmpty()) {
+				consumer.accept(page);
+			}
+			if (page.size() < chunkElements) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 按页ZRANGE读取整个有序集合，分数从低到高
+	 *
+	 * @param key 键
+	 * @return 成员和分数
+	 */
+	public Set<Tuple> zrangeWithScores(String key) {
+		Set<Tuple> tuples = new LinkedHashSet<Tuple>();
+		for (long start = 0;; start += chunkElements) {
+			long from = start;
+			Set<Tuple> page = redisRouter.read(key,
+					jedis -> jedis.zrangeWithScores(key, from, from + chunkElements - 1));
+			tuples.addAll(page);
+			if (page.size() < chunkElements) {
+				return tuples;
+			}
+		}
+	}
+
+	/**
+	 * 删除大key：redis支持时UNLINK，在后台释放内存；否则分块删除
+	 *
+	 * @param key 键
+	 * @return key是否存在
+	 */
+	public boolean delete(String key) {
+		if (unlinkSupported) {
+			try {
+				return (Long) redisRouter.execute(key, jedis -> jedis.eval(UNLINK, 1, key)) > 0;
+			} catch (JedisDataException e) {
+				// redis 4.0之前没有UNLINK，其他错误(如集群重定向、脚本被禁用)照常抛出，不能永久关掉UNLINK
+				if (!isUnknownCommand(e)) {
+					throw e;
+				}
+				unlinkSupported = false;
+				logger.warn("UNLINK is not supported, big keys will be deleted in chunks: {}", e.getMessage());
+			} finally {
+				changed(key);
+			}
+		}
+		return deleteIncrementally(key);
+	}
+
+	/**
+	 * 分块删除大key的元素，每块一次往返，最后DEL
+	 *
+	 * @param key 键
+	 * @return key是否存在
+	 */
+	public boolean deleteIncrementally(String key) {
+		try {
+			String type = redisRouter.execute(key, jedis -> jedis.type(key));
+			switch (type) {
+			case "none":
+				return false;
+			case "hash":
+				scanAndRemove(key, (jedis, cursor, params) -> jedis.hscan(key, cursor, params), Map.Entry::getKey,
+						(jedis, fields) -> jedis.hdel(key, fields));
+				break;
+			case "set":
+				scanAndRemove(key, (jedis, cursor, params) -> jedis.sscan(key, cursor, params), member -> member,
+						(jedis, members) -> jedis.srem(key, members));
+				break;
+			case "zset":
+				while (redisRouter.execute(key, jedis -> jedis.zremrangeByRank(key, 0, chunkElements - 1)) > 0) {
+					// 每次删除最前面的一块
+				}
+				break;
+			case "list":
+				while (redisRouter.execute(key, jedis -> {
+					jedis.ltrim(key, chunkElements, -1);
+					return jedis.llen(key);
+				}) > 0) {
+					// 每次删除最前面的一块
+				}
+				break;
+			default:
+			}
+			redisRouter.execute(key, jedis -> jedis.del(key));
+			return true;
+		} finally {
+			changed(key);
+		}
+	}
+
+	/**
+	 * RedisClient一条命令的元素数超过阈值时告警
+	 */
+	void checkElements(String command, String key, int elements) {
+		if (warnElements > 0 && elements > warnElements) {
+			warn(command, key, elements + " elements");
+		}
+	}
+
+	/**
+	 * RedisClient一个值的字节数超过阈值时告警
+	 */
+	void checkBytes(String command, String key, long bytes) {
+		if (warnBytes > 0 && bytes > warnBytes) {
+			warn(command, key, bytes + " bytes");
+		}
+	}
+
+	/**
+	 * RedisClient一个字符串值按UTF-8编码后的字节数超过阈值时告警
+	 */
+	void checkBytes(String command, String key, String value) {
+		// 一个字符编码后是1到3个字节，字符数已经超过或3倍也不到阈值时不用编码
+		if (warnBytes > 0 && value.length() * 3L > warnBytes) {
+			checkBytes(command, key, value.length() > warnBytes ? value.length() : SafeEncoder.encode(value).length);
+		}
+	}
+
+	private static boolean isUnknownCommand(JedisDataException e) {
+		// 脚本里调用不存在的命令报 "Unknown Redis command called from Lua script"，直接调用报 "ERR unknown command"
+		String message = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
+		return message.contains("unknown redis command") || message.contains("unknown command");
+	}
+
+	private void warn(String command, String key, String size) {
+		if (warned.asMap().putIfAbsent(command + " " + key, Boolean.TRUE) == null) {
+			logger.warn("big key {} {} with {} blocks redis, use BigKeys for chunked access", command, key, size);
+		}
+	}
+
+	/**
+	 * 分块排队写命令，每 {@link #PIPELINE_COMMANDS} 条执行一次
+	 *
+	 * @return 每条命令的应答
+	 */
+	private <T, R> List<R> writeChunked(String key, Collection<T> items, ToIntFunction<T> chars,
+			Function<List<T>, Function<Pipeline, Response<R>>> command) {
+		RedisBatch batch = new RedisBatch(redisRouter, nearCache, null);
+		List<RedisBatch.Result<R>> results = new ArrayList<RedisBatch.Result<R>>();
+		List<T> chunk = new ArrayList<T>();
+		long bytes = 0;
+		for (T item : items) {
+			chunk.add(item);
+			bytes += chars.applyAsInt(item);
+			if (chunk.size() >= chunkElements || bytes >= chunkBytes) {
+				results.add(batch.write(key, command.apply(chunk)));
+				chunk = new ArrayList<T>();
+				bytes = 0;
+				if (batch.size() >= PIPELINE_COMMANDS) {
+					batch.execute();
+				}
+			}
+		}
+		if (!chunk.isEmpty()) {
+			results.add(batch.write(key, command.apply(chunk)));
+		}
+		batch.execute();
+		List<R> replies = new ArrayList<R>(results.size());
+		for (RedisBatch.Result<R> result : results) {
+			replies.add(result.get());
+		}
+		return replies;
+	}
+
+	private <T> void scan(String key, ScanCommand<T> command, Consumer<T> consumer) {
+		ScanParams params = new ScanParams().count(chunkElements);
+		// 游标只在同一节点上有效，每一页都读同一个节点
+		JedisPool pool = redisRouter.readPool(key);
+		String cursor = ScanParams.SCAN_POINTER_START;
+		do {
+			ScanResult<T> page;
+			try (Jedis jedis = pool.getResource()) {
+				page = command.scan(jedis, cursor, params);
+			}
+			page.getResult().forEach(consumer);
+			cursor = page.getStringCursor();
+		} while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+	}
+
+	/**
+	 * 按页扫描并删除扫描到的元素，每页一次往返
+	 */
+	private <T> void scanAndRemove(String key, ScanCommand<T> command, Function<T, String> member,
+			RemoveCommand remove) {
+		ScanParams params = new ScanParams().count(chunkElements);
+		String cursor = ScanParams.SCAN_POINTER_START;
+		do {
+			String current = cursor;
+			cursor = redisRouter.execute(key, jedis -> {
+				ScanResult<T> page = command.scan(jedis, current, params);
+				List<T> result = page.getResult();
+				if (!result.isEmpty()) {
+					String[] members = new String[result.size()];
+					for (int i = 0; i < members.length; i++) {
+						members[i] = member.apply(result.get(i));
+					}
+					remove.remove(jedis, members);
+				}
+				return page.getStringCursor();
+			});
+		} while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+	}
+
+	private void changed(String key) {
+		if (nearCache != null) {
+			nearCache.invalidate(key);
+		}
+	}
+
+	private static Long last(List<Long> replies) {
+		return replies.isEmpty() ? null : replies.get(replies.size() - 1);
+	}
+
+	private static long sum(List<Long> replies) {
+		long sum = 0;
+		for (Long reply : replies) {
+			sum += reply;
+		}
+		return sum;
+	}
+
+	@FunctionalInterface
+	private interface ScanCommand<T> {
+
+		ScanResult<T> scan(Jedis jedis, String cursor, ScanParams params);
+	}
+
+	@FunctionalInterface
+	private interface RemoveCommand {
+
+		Long remove(Jedis jedis, String[] members);
+	}
+}
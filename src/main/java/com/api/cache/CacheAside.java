@@ -0,0 +1,252 @@
+package com.api.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import redis.clients.jedis.Pipeline;
+
+/**
+ * 旁路缓存加载，供 {@link RedisClient#getOrLoad} 使用
+ * 一次往返读出值和剩余过期时间；未命中时本进程内同一个key只有一个线程加载，其他线程等它的结果(single-flight)，
+ * 需要跨节点合并时先拿一把短租约的redis锁，拿到后再读一次，别的节点已经写入就不用加载。
+ * 写入的过期时间加上最多10%的随机量，同一批写入的key不会同时过期。
+ * 命中时按XFetch提前刷新：剩余时间越短、上次加载越慢，越可能由本次读取触发后台刷新，热点key在过期前就已更新
+ *
+ * @author zhaoxingwu
+ *
+ */
+final class CacheAside {
+
+	/**
+	 * 过期时间的随机增量上限
+	 */
+	private static final double TTL_JITTER = 0.1;
+
+	/**
+	 * XFetch的系数，越大越早刷新
+	 */
+	private static final double BETA = 1.0;
+
+	/**
+	 * 不知道加载耗时(其他节点加载的)时按这个估计(毫秒)
+	 */
+	private static final long DEFAULT_LOAD_MILLIS = 100;
+
+	private static final String LOAD_LOCK_PREFIX = "load:";
+
+	/**
+	 * 跨节点加载锁的租约和最长等待(毫秒)，等不到时自己加载
+	 */
+	private static final long LOCK_LEASE_MILLIS = 5000;
+
+	private static final long LOCK_WAIT_MILLIS = 3000;
+
+	private static final int REFRESH_THREADS = 4;
+
+	/**
+	 * 等待刷新的最大个数，超过时放弃这次提前刷新
+	 */
+	private static final int MAX_PENDING_REFRESHES = 1000;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final RedisRouter redisRouter;
+
+	private final RedisLock redisLock;
+
+	private final Consumer<String> changed;
+
+	/**
+	 * 正在加载的key，同一个key的其他未命中等待这个结果
+	 */
+	private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<String, CompletableFuture<String>>();
+
+	/**
+	 * 正在后台刷新的key
+	 */
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * 每个key最近一次加载的耗时(毫秒)
+	 */
+	private final Cache<String, Long> loadMillis = CacheBuilder.newBuilder().maximumSize(10000).build();
+
+	private final ThreadPoolExecutor refresher;
+
+	/**
+	 * @param redisRouter 命令路由
+	 * @param redisLock   跨节点加载锁
+	 * @param changed     写入后通知本地缓存失效
+	 */
+	CacheAside(RedisRouter redisRouter, RedisLock redisLock, Consumer<String> changed) {
+		this.redisRouter = redisRouter;
+		this.redisLock = redisLock;
+		this.changed = changed;
+		this.refresher = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING_REFRESHES), r -> {
+					Thread thread = new Thread(r, "redis-cache-refresh");
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.refresher.allowCoreThreadTimeOut(true);
+	}
+
+	void close() {
+		refresher.shutdownNow();
+	}
+
+	String getOrLoad(String key, int ttlSeconds, Supplier<String> loader, boolean lock) {
+		if (ttlSeconds <= 0) {
+			throw new IllegalArgumentException("ttl must be positive: " + ttlSeconds);
+		}
+		List<Object> reply = redisRouter.read(key, jedis -> {
+			Pipeline pipeline = jedis.pipelined();
+			pipeline.get(key);
+			pipeline.pttl(key);
+			return pipeline.syncAndReturnAll();
+		});
+		String value = (String) reply.get(0);
+		if (value != null) {
+			if (refreshEarly(key, (Long) reply.get(1))) {
+				refresh(key, ttlSeconds, loader, lock);
+			}
+			return value;
+		}
+		CompletableFuture<String> mine = new CompletableFuture<String>();
+		CompletableFuture<String> running = loading.putIfAbsent(key, mine);
+		if (running != null) {
+			return join(running);
+		}
+		try {
+			value = lock ? loadLocked(key, ttlSeconds, loader) : load(key, ttlSeconds, loader);
+			mine.complete(value);
+			return value;
+		} catch (RuntimeException e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(key, mine);
+		}
+	}
+
+	/**
+	 * XFetch：-加载耗时 * BETA * ln(随机数) 超过剩余时间时提前刷新
+	 */
+	private boolean refreshEarly(String key, long pttl) {
+		if (pttl <= 0) {
+			// 没有过期时间
+			return false;
+		}
+		Long millis = loadMillis.getIfPresent(key);
+		double delta = millis == null ? DEFAULT_LOAD_MILLIS : Math.max(1, millis);
+		return -delta * BETA * Math.log(ThreadLocalRandom.current().nextDouble()) >= pttl;
+	}
+
+	private void refresh(String key, int ttlSeconds, Supplier<String> loader, boolean lock) {
+		if (!refreshing.add(key)) {
+			return;
+		}
+		try {
+			refresher.execute(() -> {
+				try {
+					if (lock) {
+						refreshLocked(key, ttlSeconds, loader);
+					} else {
+						load(key, ttlSeconds, loader);
+					}
+				} catch (RuntimeException e) {
+					// 旧值还在，下次读取再试
+					logger.error("refresh key:" + key + " failed! reids cache exception: ", e);
+				} finally {
+					refreshing.remove(key);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+		}
+	}
+
+	/**
+	 * 别的节点正在刷新时不等待，旧值还能用
+	 */
+	private void refreshLocked(String key, int ttlSeconds, Supplier<String> loader) {
+		String lockKey = LOAD_LOCK_PREFIX + key;
+		String token = redisLock.tryLock(lockKey, LOCK_LEASE_MILLIS, 0);
+		if (token == null) {
+			return;
+		}
+		try {
+			load(key, ttlSeconds, loader);
+		} finally {
+			redisLock.unlock(lockKey, token);
+		}
+	}
+
+	private String loadLocked(String key, int ttlSeconds, Supplier<String> loader) {
+		String lockKey = LOAD_LOCK_PREFIX + key;
+		String token = redisLock.tryLock(lockKey, LOCK_LEASE_MILLIS, LOCK_WAIT_MILLIS);
+		try {
+			if (token != null) {
+				// 等锁期间别的节点可能已经写入，读主节点
+				String value = redisRouter.execute(key, jedis -> jedis.get(key));
+				if (value != null) {
+					return value;
+				}
+			}
+			// 没拿到锁说明持有者太慢或redis异常，宁可多加载一次也不让调用失败
+			return load(key, ttlSeconds, loader);
+		} finally {
+			if (token != null) {
+				redisLock.unlock(lockKey, token);
+			}
+		}
+	}
+
+	/**
+	 * 加载并写入，加载结果为null时不写入
+	 */
+	private String load(String key, int ttlSeconds, Supplier<String> loader) {
+		long start = System.currentTimeMillis();
+		String value = loader.get();
+		loadMillis.put(key, System.currentTimeMillis() - start);
+		if (value == null) {
+			return null;
+		}
+		long ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+		long jitter = ThreadLocalRandom.current().nextLong((long) (ttlMillis * TTL_JITTER) + 1);
+		try {
+			redisRouter.execute(key, jedis -> jedis.psetex(key, ttlMillis + jitter, value));
+		} finally {
+			changed.accept(key);
+		}
+		return value;
+	}
+
+	private static String join(CompletableFuture<String> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
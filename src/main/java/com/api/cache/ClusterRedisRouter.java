@@ -0,0 +1,233 @@
+package com.api.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClusterCommand;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.JedisClusterCRC16;
+
+/**
+ * 集群模式：启动时从种子节点读取槽位分布并缓存，每个节点一个连接池
+ * 单key命令按槽位直接发往所在节点，收到MOVED时刷新槽位缓存后重试，收到ASK时带ASKING发往目标节点；
+ * 连接失败时换节点重试，最多maxAttempts次。
+ * 多个节点上的批量命令由调用线程和一个固定大小的线程池并行执行
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class ClusterRedisRouter implements RedisRouter {
+
+	private static final int SLOTS = 16384;
+
+	private final SlotConnectionHandler handler;
+
+	private final int maxAttempts;
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param nodes       种子节点，能连上其中一个即可
+	 * @param config      每个节点的连接池配置
+	 * @param timeout     连接和读超时(毫秒)
+	 * @param password    密码，没有时传null
+	 * @param maxAttempts 重定向和连接失败的最大尝试次数
+	 * @param threads     并行执行多节点批量命令的线程数
+	 */
+	public ClusterRedisRouter(Set<HostAndPort> nodes, GenericObjectPoolConfig config, int timeout, String password,
+			int maxAttempts, int threads) {
+		this.handler = new SlotConnectionHandler(nodes, config, timeout, password);
+		this.maxAttempts = maxAttempts;
+		AtomicInteger counter = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "redis-cluster-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void close() {
+		executor.shutdownNow();
+		handler.close();
+	}
+
+	@Override
+	public <T> T execute(String key, Function<Jedis, T> command) {
+		if (key == null) {
+			return command(command).runWithAnyNode();
+		}
+		return command(command).run(key);
+	}
+
+	@Override
+	public <T> T execute(byte[] key, Function<Jedis, T> command) {
+		return command(command).runBinary(key);
+	}
+
+	@Override
+	public <T> T execute(String[] keys, Function<Jedis, T> command) {
+		if (keys.length == 0) {
+			return command(command).runWithAnyNode();
+		}
+		return command(command).run(keys.length, keys);
+	}
+
+	/**
+	 * 集群模式不使用从节点，只读命令也发往主节点
+	 */
+	@Override
+	public <T> T read(String key, Function<Jedis, T> command) {
+		return execute(key, command);
+	}
+
+	@Override
+	public <T> T read(byte[] key, Function<Jedis, T> command) {
+		return execute(key, command);
+	}
+
+	@Override
+	public <T> T read(String[] keys, Function<Jedis, T> command) {
+		return execute(keys, command);
+	}
+
+	@Override
+	public JedisPool readPool(String key) {
+		return poolOf(key);
+	}
+
+	@Override
+	public <T> List<T> executeOnMasters(Function<Jedis, T> command) {
+		List<T> results = new ArrayList<T>();
+		for (JedisPool pool : masters()) {
+			try (Jedis jedis = pool.getResource()) {
+				results.add(command.apply(jedis));
+			}
+		}
+		return results;
+	}
+
+	@Override
+	public void executeOnPools(Map<JedisPool, Consumer<Jedis>> commands) {
+		Iterator<Map.Entry<JedisPool, Consumer<Jedis>>> iterator = commands.entrySet().iterator();
+		if (!iterator.hasNext()) {
+			return;
+		}
+		Map.Entry<JedisPool, Consumer<Jedis>> first = iterator.next();
+		List<Future<?>> futures = new ArrayList<Future<?>>(commands.size() - 1);
+		while (iterator.hasNext()) {
+			Map.Entry<JedisPool, Consumer<Jedis>> entry = iterator.next();
+			futures.add(executor.submit(() -> run(entry.getKey(), entry.getValue())));
+		}
+		RuntimeException failure = null;
+		try {
+			run(first.getKey(), first.getValue());
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+							: new JedisException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JedisException(e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	@Override
+	public JedisPool poolOf(String key) {
+		if (key == null) {
+			return masters().get(0);
+		}
+		int slot = JedisClusterCRC16.getSlot(key);
+		JedisPool pool = handler.getSlotPool(slot);
+		if (pool == null) {
+			handler.renewSlotCache();
+			pool = handler.getSlotPool(slot);
+		}
+		if (pool == null) {
+			throw new JedisClusterException("No node serves slot " + slot + " for key " + key);
+		}
+		return pool;
+	}
+
+	@Override
+	public List<JedisPool> masters() {
+		Set<JedisPool> masters = new LinkedHashSet<JedisPool>();
+		for (int slot = 0; slot < SLOTS; slot++) {
+			JedisPool pool = handler.getSlotPool(slot);
+			if (pool != null) {
+				masters.add(pool);
+			}
+		}
+		if (masters.isEmpty()) {
+			throw new JedisClusterException("No reachable node in cluster");
+		}
+		return new ArrayList<JedisPool>(masters);
+	}
+
+	@Override
+	public boolean isCluster() {
+		return true;
+	}
+
+	private static void run(JedisPool pool, Consumer<Jedis> command) {
+		try (Jedis jedis = pool.getResource()) {
+			command.accept(jedis);
+		}
+	}
+
+	private <T> JedisClusterCommand<T> command(Function<Jedis, T> command) {
+		return new JedisClusterCommand<T>(handler, maxAttempts) {
+
+			@Override
+			public T execute(Jedis connection) {
+				return command.apply(connection);
+			}
+		};
+	}
+
+	/**
+	 * 暴露jedis缓存的槽位 -> 节点连接池映射
+	 */
+	private static final class SlotConnectionHandler extends JedisSlotBasedConnectionHandler {
+
+		private SlotConnectionHandler(Set<HostAndPort> nodes, GenericObjectPoolConfig config, int timeout,
+				String password) {
+			super(nodes, config, timeout, timeout, password);
+		}
+
+		private JedisPool getSlotPool(int slot) {
+			return cache.getSlotPool(slot);
+		}
+	}
+}
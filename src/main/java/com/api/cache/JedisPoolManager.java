@@ -0,0 +1,232 @@
+package com.api.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.api.metrics.RedisMetrics;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 连接池管理：启动时并行建好minIdle个连接，运行中按借连接的等待和使用率调整最大连接数
+ * 借连接最多等待延迟预算的一半，另一半留给命令本身，池满时快速失败而不是排队到超时。
+ * 每 {@link #SAMPLE_MILLIS} 毫秒采样一次活跃连接数和等待线程数，每个调整周期：
+ * 有线程等待、使用率超过 {@link #HIGH_UTILIZATION} 或平均等待超过最长等待的1/4时扩大一半，不超过maxTotalLimit；
+ * 峰值不到一半时缩小1/4，不低于配置的maxTotal。最大空闲连接数跟随峰值，避免负载高时反复建连接。
+ * 每次调整记入RedisMetrics并打日志
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class JedisPoolManager {
+
+	private static final long SAMPLE_MILLIS = 100;
+
+	private static final double HIGH_UTILIZATION = 0.9;
+
+	private static final int PREWARM_THREADS = 8;
+
+	private static final long PREWARM_TIMEOUT_SECONDS = 10;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final int minIdle;
+
+	private final int maxIdle;
+
+	private final int maxTotal;
+
+	private final int maxTotalLimit;
+
+	private final long maxWaitMillis;
+
+	private final RedisMetrics metrics;
+
+	private final List<ManagedPool> pools = new CopyOnWriteArrayList<ManagedPool>();
+
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * @param minIdle             启动时建好并保持的空闲连接数
+	 * @param maxIdle             最大空闲连接数的下限
+	 * @param maxTotal            初始最大连接数，也是缩小的下限
+	 * @param maxTotalLimit       扩大的上限，不大于maxTotal时不扩大
+	 * @param maxWaitMillis       借连接最多等待(毫秒)
+	 * @param latencyBudgetMillis 一次调用的延迟预算(毫秒)，大于0时借连接最多等待预算的一半
+	 * @param adjustSeconds       调整周期(秒)，0表示不调整
+	 * @param metrics             记录调整，可以为null
+	 */
+	public JedisPoolManager(int minIdle, int maxIdle, int maxTotal, int maxTotalLimit, long maxWaitMillis,
+			long latencyBudgetMillis, long adjustSeconds, RedisMetrics metrics) {
+		this.minIdle = minIdle;
+		this.maxIdle = Math.max(maxIdle, minIdle);
+		this.maxTotal = maxTotal;
+		this.maxTotalLimit = Math.max(maxTotalLimit, maxTotal);
+		this.maxWaitMillis = latencyBudgetMillis > 0 ? Math.min(maxWaitMillis, Math.max(1, latencyBudgetMillis / 2))
+				: maxWaitMillis;
+		this.metrics = metrics;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-pool-manager");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (adjustSeconds > 0) {
+			scheduler.scheduleAtFixedRate(this::sample, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+			scheduler.scheduleAtFixedRate(this::adjust, adjustSeconds, adjustSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	/**
+	 * 接管连接池：设置等待时间和空闲连接数，预热后开始调整
+	 *
+	 * @param name 名称，用于日志
+	 * @param pool 连接池
+	 */
+	public void manage(String name, ResizableJedisPool pool) {
+		pool.setMaxTotal(maxTotal);
+		pool.setMaxIdle(maxIdle);
+		pool.setMinIdle(minIdle);
+		pool.setMaxWaitMillis(maxWaitMillis);
+		prewarm(name, pool);
+		pools.add(new ManagedPool(name, pool));
+		record(pool, 0);
+	}
+
+	/**
+	 * 并行建好minIdle个连接，部署后的第一波请求不用在请求线程里建连接；
+	 * redis连不上时不阻止启动，之后借连接时再建
+	 */
+	private void prewarm(String name, ResizableJedisPool pool) {
+		int count = minIdle - pool.getNumIdle();
+		if (count <= 0) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		AtomicInteger created = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(count, PREWARM_THREADS), r -> {
+			Thread thread = new Thread(r, "redis-pool-prewarm");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < count; i++) {
+			executor.execute(() -> {
+				try {
+					pool.addObjects(1);
+					created.incrementAndGet();
+				} catch (JedisException e) {
+					logger.warn("pool {} prewarm connection failed: {}", name, e.getMessage());
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(PREWARM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.info("pool {} prewarmed {}/{} connections in {}ms", name, created.get(), count,
+				System.currentTimeMillis() - start);
+	}
+
+	private void sample() {
+		for (ManagedPool managed : pools) {
+			managed.peakActive = Math.max(managed.peakActive, managed.pool.getNumActive());
+			managed.peakWaiters = Math.max(managed.peakWaiters, managed.pool.getNumWaiters());
+		}
+	}
+
+	private void adjust() {
+		for (ManagedPool managed : pools) {
+			try {
+				adjust(managed);
+			} catch (RuntimeException e) {
+				// 异常不能抛出，否则定时任务被取消
+				logger.error("pool " + managed.name + " adjust failed! reids cache exception: ", e);
+			} finally {
+				managed.peakActive = 0;
+				managed.peakWaiters = 0;
+			}
+		}
+	}
+
+	private void adjust(ManagedPool managed) {
+		ResizableJedisPool pool = managed.pool;
+		int current = pool.getMaxTotal();
+		long borrowed = pool.getBorrowedCount();
+		// 平均等待是最近100次借用的，这个周期没有借用时不参考
+		long meanWait = borrowed > managed.borrowed ? pool.getMeanBorrowWaitTimeMillis() : 0;
+		managed.borrowed = borrowed;
+		int peak = managed.peakActive;
+		boolean pressure = managed.peakWaiters > 0 || peak >= current * HIGH_UTILIZATION
+				|| meanWait > maxWaitMillis / 4;
+		int next = current;
+		if (pressure && current < maxTotalLimit) {
+			next = Math.min(maxTotalLimit, current + Math.max(1, current / 2));
+		} else if (!pressure && peak * 2 < current && current > maxTotal) {
+			next = Math.max(maxTotal, Math.max(peak * 2, current - current / 4));
+		}
+		int idle = Math.min(next, Math.max(maxIdle, peak));
+		boolean idleChanged = idle != pool.getMaxIdle();
+		if (idleChanged) {
+			pool.setMaxIdle(idle);
+		}
+		if (next != current) {
+			pool.setMaxTotal(next);
+			logger.info("pool {} max total {} -> {}, max idle {}, peak active {}, peak waiters {}, mean wait {}ms",
+					managed.name, current, next, idle, peak, managed.peakWaiters, meanWait);
+			record(pool, next - current);
+		} else if (idleChanged) {
+			record(pool, 0);
+		}
+		if (next == current && managed.peakWaiters > 0) {
+			logger.warn("pool {} is saturated at limit {}, peak waiters {}, mean wait {}ms", managed.name, current,
+					managed.peakWaiters, meanWait);
+		}
+	}
+
+	private void record(ResizableJedisPool pool, int delta) {
+		if (metrics != null) {
+			metrics.recordPoolSize(pool, pool.getMaxTotal(), pool.getMaxIdle(), pool.getMaxWaitMillis(), delta);
+		}
+	}
+
+	/**
+	 * 采样字段只在调度线程读写
+	 */
+	private static final class ManagedPool {
+
+		private final String name;
+
+		private final ResizableJedisPool pool;
+
+		private int peakActive;
+
+		private int peakWaiters;
+
+		private long borrowed;
+
+		private ManagedPool(String name, ResizableJedisPool pool) {
+			this.name = name;
+			this.pool = pool;
+		}
+	}
+}
@@ -0,0 +1,315 @@
+package com.api.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * 进程内一级缓存，挡在RedisClient的get/hget/hgetAll前面
+ * 容量有上限（LRU淘汰）并带过期时间。通过RedisClient的写操作会发布失效消息到pub/sub频道，
+ * 所有实例订阅该频道并删除本地副本。订阅断开期间不使用本地缓存，重新订阅时清空。
+ * 不经过RedisClient的写入（其他服务、lua脚本内的写）不会触发失效，只能等过期。
+ * 回填时从主节点读取，避免落后的从节点把刚失效的旧值写回本地缓存。
+ * 失效消息为"实例id|键"，本实例收到自己发出的消息时跳过，本地副本在发布前已经删除
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class NearCache {
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final JedisPool jedisPool;
+
+	private final String channel;
+
+	private final String[] prefixes;
+
+	private final Cache<String, Optional<String>> values;
+
+	private final Cache<String, Map<String, String>> hashes;
+
+	private final Cache<String, ConcurrentMap<String, Optional<String>>> fields;
+
+	/**
+	 * 失效版本的分段数，键按hash落到一段，只有同一段的失效才会取消回填
+	 */
+	private static final int VERSION_STRIPES = 1024;
+
+	/**
+	 * 失效消息中实例id和键的分隔符，UUID里没有这个字符
+	 */
+	private static final char SEPARATOR = '|';
+
+	/**
+	 * 键失效时所在段加1，读穿期间该段发生过失效则不回填，避免把旧值写回本地
+	 */
+	private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+	/**
+	 * 清空本地缓存时加1，取消所有进行中的回填
+	 */
+	private final AtomicLong epoch = new AtomicLong();
+
+	/**
+	 * 本实例的id，用于识别自己发布的失效消息
+	 */
+	private final String instanceId = UUID.randomUUID().toString();
+
+	private volatile boolean subscribed;
+
+	/**
+	 * @param jedisPool  连接池，用于发布失效消息
+	 * @param subscriber 共享的订阅连接
+	 * @param maxSize    每类缓存的最大条目数
+	 * @param ttlSeconds 本地副本的最长存活时间
+	 * @param channel    失效频道
+	 * @param prefixes   只缓存这些前缀的键，为空时缓存所有键
+	 */
+	public NearCache(JedisPool jedisPool, RedisSubscriber subscriber, long maxSize, long ttlSeconds, String channel,
+			String[] prefixes) {
+		this.jedisPool = jedisPool;
+		this.channel = channel;
+		this.prefixes = prefixes;
+		this.values = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.build();
+		this.hashes = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.build();
+		this.fields = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.build();
+		subscriber.subscribe(channel, new RedisSubscriber.Listener() {
+
+			@Override
+			public void onSubscribe() {
+				// 断开期间可能错过了失效消息
+				invalidateAll();
+				subscribed = true;
+			}
+
+			@Override
+			public void onDisconnect() {
+				subscribed = false;
+				invalidateAll();
+			}
+
+			@Override
+			public void onMessage(String message) {
+				int separator = message.indexOf(SEPARATOR);
+				if (separator < 0) {
+					evict(message);
+				} else if (!instanceId.equals(message.substring(0, separator))) {
+					evict(message.substring(separator + 1));
+				}
+			}
+		});
+	}
+
+	/**
+	 * 该键是否走本地缓存
+	 *
+	 * @param key 键
+	 * @return 是否缓存
+	 */
+	public boolean isCacheable(String key) {
+		if (prefixes.length == 0) {
+			return true;
+		}
+		for (String prefix : prefixes) {
+			if (key.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 读字符串值，未命中时调用loader读redis并回填
+	 *
+	 * @param key    键
+	 * @param loader 从redis读取
+	 * @return 值
+	 */
+	public String get(String key, Supplier<String> loader) {
+		if (!subscribed || !isCacheable(key)) {
+			return loader.get();
+		}
+		Optional<String> cached = values.getIfPresent(key);
+		if (cached != null) {
+			return cached.orElse(null);
+		}
+		long before = version(key);
+		String value = ReadPreference.primary(loader);
+		if (version(key) == before) {
+			values.put(key, Optional.ofNullable(value));
+		}
+		return value;
+	}
+
+	/**
+	 * 读哈希字段，未命中时调用loader读redis并回填
+	 *
+	 * @param key    键
+	 * @param field  字段
+	 * @param loader 从redis读取
+	 * @return 值
+	 */
+	public String hget(String key, String field, Supplier<String> loader) {
+		if (!subscribed || !isCacheable(key)) {
+			return loader.get();
+		}
+		Map<String, String> hash = hashes.getIfPresent(key);
+		if (hash != null) {
+			return hash.get(field);
+		}
+		ConcurrentMap<String, Optional<String>> cachedFields = fields.getIfPresent(key);
+		Optional<String> cached = cachedFields == null ? null : cachedFields.get(field);
+		if (cached != null) {
+			return cached.orElse(null);
+		}
+		long before = version(key);
+		String value = ReadPreference.primary(loader);
+		if (version(key) == before) {
+			fields.asMap().computeIfAbsent(key, k -> new ConcurrentHashMap<String, Optional<String>>())
+					.put(field, Optional.ofNullable(value));
+		}
+		return value;
+	}
+
+	/**
+	 * 读整个哈希，未命中时调用loader读redis并回填，返回副本
+	 *
+	 * @param key    键
+	 * @param loader 从redis读取
+	 * @return 哈希内容
+	 */
+	public Map<String, String> hgetAll(String key, Supplier<Map<String, String>> loader) {
+		if (!subscribed || !isCacheable(key)) {
+			return loader.get();
+		}
+		Map<String, String> cached = hashes.getIfPresent(key);
+		if (cached != null) {
+			return new HashMap<String, String>(cached);
+		}
+		long before = version(key);
+		Map<String, String> value = ReadPreference.primary(loader);
+		if (version(key) == before) {
+			hashes.put(key, Collections.unmodifiableMap(new HashMap<String, String>(value)));
+		}
+		return value;
+	}
+
+	/**
+	 * 键被修改后调用：删除本地副本并通知其他实例
+	 *
+	 * @param key 键
+	 */
+	public void invalidate(String key) {
+		if (!isCacheable(key)) {
+			return;
+		}
+		evict(key);
+		try (Jedis jedis = jedisPool.getResource()) {
+			jedis.publish(channel, message(key));
+		} catch (Exception e) {
+			logger.error("near cache publish key:{} failed! reids cache exception: ", key, e);
+		}
+	}
+
+	/**
+	 * 批量修改后调用，失效消息在一次往返内发出
+	 *
+	 * @param keys 键
+	 */
+	public void invalidate(Collection<String> keys) {
+		boolean any = false;
+		for (String key : keys) {
+			if (isCacheable(key)) {
+				evict(key);
+				any = true;
+			}
+		}
+		if (!any) {
+			return;
+		}
+		try (Jedis jedis = jedisPool.getResource()) {
+			Pipeline pipeline = jedis.pipelined();
+			for (String key : keys) {
+				if (isCacheable(key)) {
+					pipeline.publish(channel, message(key));
+				}
+			}
+			pipeline.sync();
+		} catch (Exception e) {
+			logger.error("near cache publish keys:{} failed! reids cache exception: ", keys, e);
+		}
+	}
+
+	/**
+	 * 清空本地缓存
+	 */
+	public void invalidateAll() {
+		epoch.incrementAndGet();
+		values.invalidateAll();
+		hashes.invalidateAll();
+		fields.invalidateAll();
+	}
+
+	/**
+	 * 是否已订阅失效频道，未订阅时所有读取直接走redis
+	 *
+	 * @return 是否可用
+	 */
+	public boolean isSubscribed() {
+		return subscribed;
+	}
+
+	/**
+	 * 本地缓存的条目数
+	 *
+	 * @return 条目数
+	 */
+	public long size() {
+		return values.size() + hashes.size() + fields.size();
+	}
+
+	/**
+	 * 键所在段的失效次数加上清空次数，回填前后不相等说明期间可能失效过
+	 */
+	private long version(String key) {
+		return epoch.get() + versions.get(stripe(key));
+	}
+
+	private static int stripe(String key) {
+		return (key.hashCode() & Integer.MAX_VALUE) % VERSION_STRIPES;
+	}
+
+	private String message(String key) {
+		return instanceId + SEPARATOR + key;
+	}
+
+	private void evict(String key) {
+		versions.incrementAndGet(stripe(key));
+		values.invalidate(key);
+		hashes.invalidate(key);
+		fields.invalidate(key);
+	}
+}
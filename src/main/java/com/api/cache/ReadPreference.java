@@ -0,0 +1,72 @@
+package com.api.cache;
+
+import java.util.function.Supplier;
+
+/**
+ * 读主节点：配置了从节点时只读命令默认发往从节点，刚写入就要读到的场景在这里面读
+ *
+ * <pre>
+ * redisClient.set("order:1", "paid");
+ * String status = ReadPreference.primary(() -&gt; redisClient.get("order:1"));
+ *
+ * // 当前线程内一段逻辑都读主节点
+ * try (ReadPreference.Scope scope = ReadPreference.primary()) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class ReadPreference {
+
+	/**
+	 * 当前线程进入读主范围的层数，支持嵌套
+	 */
+	private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+	private static final Scope SCOPE = () -> DEPTH.get()[0]--;
+
+	private ReadPreference() {
+	}
+
+	/**
+	 * 在当前线程内读主节点执行
+	 *
+	 * @param reads 读操作
+	 * @return 读操作的结果
+	 */
+	public static <T> T primary(Supplier<T> reads) {
+		try (Scope scope = primary()) {
+			return reads.get();
+		}
+	}
+
+	/**
+	 * 当前线程从此读主节点，直到返回的Scope关闭
+	 *
+	 * @return 读主范围
+	 */
+	public static Scope primary() {
+		DEPTH.get()[0]++;
+		return SCOPE;
+	}
+
+	/**
+	 * 当前线程是否要求读主节点
+	 *
+	 * @return 是否读主
+	 */
+	public static boolean isPrimary() {
+		return DEPTH.get()[0] > 0;
+	}
+
+	/**
+	 * 读主范围，关闭后恢复原来的读节点选择
+	 */
+	public interface Scope extends AutoCloseable {
+
+		@Override
+		void close();
+	}
+}
@@ -0,0 +1,450 @@
+package com.api.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import com.api.compress.Compression;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.ZParams;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 批量命令，先在本地排队，execute时借一个连接通过Pipeline一次性发送
+ * 集群模式下命令按key所在节点分组，每个节点一个Pipeline，多个节点并行执行；
+ * 因槽位迁移收到MOVED/ASK的命令在该节点上并没有执行，之后单独重定向重试
+ *
+ * <pre>
+ * RedisBatch batch = redisClient.batch();
+ * RedisBatch.Result&lt;String&gt; name = batch.get("user:1:name");
+ * RedisBatch.Result&lt;Double&gt; score = batch.zscore("rankingBase", "jack");
+ * batch.execute();
+ * name.get();
+ * </pre>
+ *
+ * 启用压缩时byte[]值的set/setex/hset/get/hget与RedisClient一样压缩和解压；
+ * 通过add/write直接在Pipeline上执行的命令不经过压缩，读到的是redis中保存的原始字节
+ *
+ * 非线程安全，一个批次只应在一个线程内使用
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class RedisBatch {
+
+	private final RedisRouter router;
+
+	private final NearCache nearCache;
+
+	private final Compression compression;
+
+	private final List<Result<?>> results = new ArrayList<Result<?>>();
+
+	/**
+	 * 写命令涉及的键，执行后通知本地缓存失效
+	 */
+	private final Set<String> changedKeys = new HashSet<String>();
+
+	RedisBatch(RedisRouter router, NearCache nearCache, Compression compression) {
+		this.router = router;
+		this.nearCache = nearCache;
+		this.compression = compression;
+	}
+
+	/**
+	 * 排队一个命令
+	 *
+	 * @param key     命令的键，集群模式下决定发往哪个节点，多key命令的键须在同一槽位
+	 * @param command 在Pipeline上执行的命令
+	 * @return 命令的结果，execute之后可取
+	 */
+	public <T> Result<T> add(String key, Function<Pipeline, Response<T>> command) {
+		Result<T> result = new Result<T>(key, command);
+		results.add(result);
+		return result;
+	}
+
+	/**
+	 * 排队一个会修改key的命令
+	 *
+	 * @param key     被修改的键
+	 * @param command 在Pipeline上执行的命令
+	 * @return 命令的结果，execute之后可取
+	 */
+	public <T> Result<T> write(String key, Function<Pipeline, Response<T>> command) {
+		changedKeys.add(key);
+		return add(key, command);
+	}
+
+	/**
+	 * 已排队的命令数量
+	 *
+	 * @return 命令数量
+	 */
+	public int size() {
+		return results.size();
+	}
+
+	/**
+	 * 一次往返执行所有排队的命令，执行后批次被清空，可以继续复用
+	 */
+	public void execute() {
+		if (results.isEmpty()) {
+			return;
+		}
+		try {
+			Map<JedisPool, List<Result<?>>> groups = new LinkedHashMap<JedisPool, List<Result<?>>>();
+			for (Result<?> result : results) {
+				groups.computeIfAbsent(router.poolOf(result.key), pool -> new ArrayList<Result<?>>()).add(result);
+			}
+			Map<JedisPool, Consumer<Jedis>> commands = new LinkedHashMap<JedisPool, Consumer<Jedis>>();
+			for (Map.Entry<JedisPool, List<Result<?>>> group : groups.entrySet()) {
+				commands.put(group.getKey(), jedis -> {
+					Pipeline pipeline = jedis.pipelined();
+					for (Result<?> result : group.getValue()) {
+						result.apply(pipeline);
+					}
+					pipeline.sync();
+					for (Result<?> result : group.getValue()) {
+						result.replied = true;
+					}
+				});
+			}
+			router.executeOnPools(commands);
+			if (router.isCluster()) {
+				for (Result<?> result : results) {
+					if (result.redirected()) {
+						redirect(result);
+					}
+				}
+			}
+		} finally {
+			results.clear();
+			if (nearCache != null && !changedKeys.isEmpty()) {
+				nearCache.invalidate(changedKeys);
+			}
+			changedKeys.clear();
+		}
+	}
+
+	/**
+	 * 单独执行一个被重定向的命令，由路由处理MOVED/ASK
+	 */
+	private void redirect(Result<?> result) {
+		router.execute(result.key, jedis -> {
+			Pipeline pipeline = jedis.pipelined();
+			result.apply(pipeline);
+			pipeline.sync();
+			result.replied = true;
+			if (result.redirected()) {
+				result.response.get();
+			}
+			return null;
+		});
+	}
+
+	public Result<String> get(String key) {
+		return add(key, p -> p.get(key));
+	}
+
+	public Result<String> set(String key, String value) {
+		return write(key, p -> p.set(key, value));
+	}
+
+	public Result<String> setex(String key, int seconds, String value) {
+		return write(key, p -> p.setex(key, seconds, value));
+	}
+
+	/**
+	 * 读取二进制值，启用压缩时自动解压
+	 */
+	public Result<byte[]> get(byte[] key) {
+		return decompressed(SafeEncoder.encode(key), p -> p.get(key));
+	}
+
+	/**
+	 * 设置二进制值，启用压缩时超过阈值的值压缩后写入
+	 */
+	public Result<String> set(String key, byte[] value) {
+		byte[] stored = compress(value);
+		return write(key, p -> p.set(SafeEncoder.encode(key), stored));
+	}
+
+	public Result<String> setex(String key, int seconds, byte[] value) {
+		byte[] stored = compress(value);
+		return write(key, p -> p.setex(SafeEncoder.encode(key), seconds, stored));
+	}
+
+	public Result<Long> del(String key) {
+		return write(key, p -> p.del(key));
+	}
+
+	public Result<Boolean> exists(String key) {
+		return add(key, p -> p.exists(key));
+	}
+
+	public Result<Long> expire(String key, int seconds) {
+		return write(key, p -> p.expire(key, seconds));
+	}
+
+	public Result<Long> incr(String key) {
+		return write(key, p -> p.incr(key));
+	}
+
+	public Result<Long> incrBy(String key, long count) {
+		return write(key, p -> p.incrBy(key, count));
+	}
+
+	/**
+	 * 读取散列字段的二进制值，启用压缩时自动解压
+	 */
+	public Result<byte[]> hget(byte[] key, byte[] field) {
+		return decompressed(SafeEncoder.encode(key), p -> p.hget(key, field));
+	}
+
+	public Result<Long> hset(String key, String field, byte[] value) {
+		byte[] stored = compress(value);
+		return write(key, p -> p.hset(SafeEncoder.encode(key), SafeEncoder.encode(field), stored));
+	}
+
+	public Result<String> hget(String key, String field) {
+		return add(key, p -> p.hget(key, field));
+	}
+
+	public Result<Long> hset(String key, String field, String value) {
+		return write(key, p -> p.hset(key, field, value));
+	}
+
+	public Result<String> hmset(String key, Map<String, String> tuple) {
+		return write(key, p -> p.hmset(key, tuple));
+	}
+
+	public Result<List<String>> hmget(String key, String... fields) {
+		return add(key, p -> p.hmget(key, fields));
+	}
+
+	public Result<Map<String, String>> hgetAll(String key) {
+		return add(key, p -> p.hgetAll(key));
+	}
+
+	public Result<Long> hdel(String key, String... fields) {
+		return write(key, p -> p.hdel(key, fields));
+	}
+
+	public Result<Long> hincrBy(String key, String field, long value) {
+		return write(key, p -> p.hincrBy(key, field, value));
+	}
+
+	public Result<Long> lpush(String key, String... items) {
+		return write(key, p -> p.lpush(key, items));
+	}
+
+	public Result<Long> rpush(String key, String... items) {
+		return write(key, p -> p.rpush(key, items));
+	}
+
+	public Result<List<String>> lrange(String key, long start, long end) {
+		return add(key, p -> p.lrange(key, start, end));
+	}
+
+	public Result<Long> sadd(String key, String... members) {
+		return write(key, p -> p.sadd(key, members));
+	}
+
+	public Result<Long> srem(String key, String... members) {
+		return write(key, p -> p.srem(key, members));
+	}
+
+	public Result<Set<String>> smembers(String key) {
+		return add(key, p -> p.smembers(key));
+	}
+
+	public Result<Boolean> sismember(String key, String member) {
+		return add(key, p -> p.sismember(key, member));
+	}
+
+	public Result<Long> scard(String key) {
+		return add(key, p -> p.scard(key));
+	}
+
+	public Result<Long> zadd(String key, double score, String member) {
+		return write(key, p -> p.zadd(key, score, member));
+	}
+
+	public Result<Long> zadd(String key, Map<String, Double> scoreMembers) {
+		return write(key, p -> p.zadd(key, scoreMembers));
+	}
+
+	public Result<Double> zincrby(String key, double score, String member) {
+		return write(key, p -> p.zincrby(key, score, member));
+	}
+
+	public Result<Long> zrem(String key, String... members) {
+		return write(key, p -> p.zrem(key, members));
+	}
+
+	public Result<Double> zscore(String key, String member) {
+		return add(key, p -> p.zscore(key, member));
+	}
+
+	public Result<Long> zrevrank(String key, String member) {
+		return add(key, p -> p.zrevrank(key, member));
+	}
+
+	public Result<Set<String>> zrevrange(String key, long start, long end) {
+		return add(key, p -> p.zrevrange(key, start, end));
+	}
+
+	public Result<Set<Tuple>> zrevrangeWithScores(String key, long start, long end) {
+		return add(key, p -> p.zrevrangeWithScores(key, start, end));
+	}
+
+	public Result<Set<String>> zrange(String key, long start, long end) {
+		return add(key, p -> p.zrange(key, start, end));
+	}
+
+	public Result<Long> zcard(String key) {
+		return add(key, p -> p.zcard(key));
+	}
+
+	/**
+	 * 集群模式下dstkey和sets必须在同一槽位
+	 */
+	public Result<Long> zinterstore(String dstkey, ZParams params, String... sets) {
+		return write(dstkey, p -> p.zinterstore(dstkey, params, sets));
+	}
+
+	public Result<Boolean> setbit(String key, long offset, boolean value) {
+		return write(key, p -> p.setbit(key, offset, value));
+	}
+
+	public Result<Boolean> getbit(String key, long offset) {
+		return add(key, p -> p.getbit(key, offset));
+	}
+
+	public Result<Long> bitcount(String key) {
+		return add(key, p -> p.bitcount(key));
+	}
+
+	public Result<Long> pfadd(String key, String... elements) {
+		return write(key, p -> p.pfadd(key, elements));
+	}
+
+	public Result<Long> pfcount(String key) {
+		return add(key, p -> p.pfcount(key));
+	}
+
+	/**
+	 * 集群模式下destKey和sourceKeys必须在同一槽位
+	 */
+	public Result<String> pfmerge(String destKey, String... sourceKeys) {
+		return write(destKey, p -> p.pfmerge(destKey, sourceKeys));
+	}
+
+	private byte[] compress(byte[] value) {
+		return compression == null ? value : compression.compress(value);
+	}
+
+	/**
+	 * 排队一个读二进制值的命令，取结果时解压
+	 */
+	private Result<byte[]> decompressed(String key, Function<Pipeline, Response<byte[]>> command) {
+		Result<byte[]> result = new Result<byte[]>(key, command, compression == null ? null : compression::decompress);
+		results.add(result);
+		return result;
+	}
+
+	/**
+	 * 单个命令的结果
+	 *
+	 * @param <T> 结果类型
+	 */
+	public static final class Result<T> {
+
+		private final String key;
+
+		private final Function<Pipeline, Response<T>> command;
+
+		/**
+		 * 对应答的处理，如解压，为null时原样返回
+		 */
+		private final UnaryOperator<T> reply;
+
+		private Response<T> response;
+
+		private boolean replied;
+
+		private Result(String key, Function<Pipeline, Response<T>> command) {
+			this(key, command, null);
+		}
+
+		private Result(String key, Function<Pipeline, Response<T>> command, UnaryOperator<T> reply) {
+			this.key = key;
+			this.command = command;
+			this.reply = reply;
+		}
+
+		private void apply(Pipeline pipeline) {
+			replied = false;
+			response = command.apply(pipeline);
+		}
+
+		/**
+		 * 应答是否为MOVED/ASK
+		 */
+		private boolean redirected() {
+			try {
+				response.get();
+				return false;
+			} catch (JedisRedirectionException e) {
+				return true;
+			} catch (JedisDataException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * 是否已交给连接发送，execute抛出异常时没有发送的命令(如借连接失败)一定没有执行
+		 *
+		 * @return 已发送返回true，发送后没有应答的命令在redis端可能已经执行
+		 */
+		public boolean isSent() {
+			return response != null;
+		}
+
+		/**
+		 * 是否收到了应答，execute抛出异常时用于区分已执行的命令和没有执行或结果未知的命令
+		 *
+		 * @return 收到应答返回true，包括redis返回的错误
+		 */
+		public boolean isReplied() {
+			return replied;
+		}
+
+		/**
+		 * 获取结果，该命令在redis端执行失败时抛出JedisDataException
+		 *
+		 * @return 命令结果
+		 */
+		public T get() {
+			if (response == null) {
+				throw new IllegalStateException("batch has not been executed");
+			}
+			T value = response.get();
+			return reply == null ? value : reply.apply(value);
+		}
+	}
+}
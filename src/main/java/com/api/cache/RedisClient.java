@@ -1,24 +1,43 @@
 package com.api.cache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.api.compress.Compression;
+
 import redis.clients.jedis.BinaryClient;
+import redis.clients.jedis.BitOP;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.SortingParams;
 import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
 /**
  * 封装jedis客户端工具类
+ * 命令经RedisRouter发往key所在节点，单机和集群模式下用法相同；
+ * 配置了从节点时只读命令发往从节点，需要读到刚写入的值时用 {@link ReadPreference#primary(java.util.function.Supplier)}
  * 
  * @author zhaoxingwu
  *
@@ -28,17 +47,94 @@ public class RedisClient {
 
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 
+	/**
+	 * SCAN的起始游标
+	 */
+	private static final String SCAN_START = "0";
+
+	/**
+	 * 流式迭代默认的每页COUNT
+	 */
+	private static final int SCAN_COUNT = 100;
+
+	/**
+	 * 一次XACK最多带几个id
+	 */
+	private static final int XACK_CHUNK = 1000;
+
+	@Autowired
+	private RedisRouter redisRouter;
+
+	@Autowired(required = false)
+	private NearCache nearCache;
+
+	@Autowired(required = false)
+	private Compression compression;
+
+	@Autowired(required = false)
+	private BigKeys bigKeys;
+
+	@Autowired
+	private RedisScripts redisScripts;
+
 	@Autowired
-	private JedisPool jedisPool;
+	private RedisLock redisLock;
+
+	private CacheAside cacheAside;
+
+	@PostConstruct
+	public void init() {
+		cacheAside = new CacheAside(redisRouter, redisLock, this::changed);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		cacheAside.close();
+	}
 
 	/**
-	 * 释放连接
+	 * 键被修改，通知本地缓存失效
 	 * 
-	 * @param jedis
+	 * @param key
+	 */
+	private void changed(String key) {
+		if (nearCache != null)
+			nearCache.invalidate(key);
+	}
+
+	private byte[] compress(byte[] value) {
+		return compression == null ? value : compression.compress(value);
+	}
+
+	private byte[] decompress(byte[] value) {
+		return compression == null ? value : compression.decompress(value);
+	}
+
+	/**
+	 * 一条命令的元素数超过阈值时告警，建议改用BigKeys分块读写
+	 */
+	private void checkElements(String command, String key, int elements) {
+		if (bigKeys != null) {
+			bigKeys.checkElements(command, key, elements);
+		}
+	}
+
+	/**
+	 * 一个值的字节数超过阈值时告警
 	 */
-	private void release(Jedis jedis) {
-		if (jedis != null)
-			jedis.close();
+	private void checkBytes(String command, String key, long bytes) {
+		if (bigKeys != null) {
+			bigKeys.checkBytes(command, key, bytes);
+		}
+	}
+
+	/**
+	 * 一个字符串值按UTF-8编码后的字节数超过阈值时告警
+	 */
+	private void checkBytes(String command, String key, String value) {
+		if (bigKeys != null) {
+			bigKeys.checkBytes(command, key, value);
+		}
 	}
 
 	/**
@@ -48,12 +144,10 @@ public class RedisClient {
 	 * @return
 	 */
 	public Long incr(String key) {
-		Jedis jedis = jedisPool.getResource();
-
 		try {
-			return jedis.incr(key);
+			return redisRouter.execute(key, jedis -> jedis.incr(key));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
@@ -65,11 +159,10 @@ public class RedisClient {
 	 * @return
 	 */
 	public Long incrBy(String key, Integer count) {
-		Jedis jedis = jedisPool.getResource();
 		try {
-			return jedis.incrBy(key, count);
+			return redisRouter.execute(key, jedis -> jedis.incrBy(key, count));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
@@ -80,13 +173,7 @@ public class RedisClient {
 	 * @return 是否存在
 	 */
 	public boolean exist(String key) {
-		Jedis jedis = jedisPool.getResource();
-
-		try {
-			return jedis.exists(key);
-		} finally {
-			release(jedis);
-		}
+		return redisRouter.read(key, jedis -> jedis.exists(key));
 	}
 
 	/**
@@ -98,11 +185,11 @@ public class RedisClient {
 	 *         中你尝试更新 key 的过期时间)返回 0 。
 	 */
 	public boolean expire(String key, int seconds) {
-		Jedis jedis = jedisPool.getResource();
 		try {
-			return 1 == jedis.expire(key, seconds);
+			return 1 == redisRouter.execute(key, jedis -> jedis.expire(key, seconds));
 		} finally {
-			release(jedis);
+			// 本地副本按自己的ttl过期，不失效时redis端先过期后仍会返回旧值
+			changed(key);
 		}
 	}
 
@@ -115,14 +202,23 @@ public class RedisClient {
 	 *         中你尝试更新 key 的过期时间)返回 0 。
 	 */
 	public boolean expireAt(String key, long unixTime) {
-		Jedis jedis = jedisPool.getResource();
 		try {
-			return 1 == jedis.expireAt(key, unixTime);
+			return 1 == redisRouter.execute(key, jedis -> jedis.expireAt(key, unixTime));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
+	/**
+	 * 获取剩余过期时间
+	 *
+	 * @param key 键
+	 * @return 剩余秒数，没有过期时间返回 -1，不存在返回 -2
+	 */
+	public Long ttl(String key) {
+		return redisRouter.read(key, jedis -> jedis.ttl(key));
+	}
+
 	/**
 	 * 更改键的名称
 	 *
@@ -132,7 +228,12 @@ public class RedisClient {
 	 *         OLD_KEY_NAME 不存在时，返回一个错误。 当 NEW_KEY_NAME 已经存在时， RENAME 命令将覆盖旧值。
 	 */
 	public boolean rename(String key1, String key2) {
-		return false;
+		try {
+			return "OK".equals(redisRouter.execute(new String[] { key1, key2 }, jedis -> jedis.rename(key1, key2)));
+		} finally {
+			changed(key1);
+			changed(key2);
+		}
 	}
 
 	/**
@@ -142,11 +243,10 @@ public class RedisClient {
 	 * @return 被删除的数量
 	 */
 	public Long del(String key) {
-		Jedis jedis = jedisPool.getResource();
 		try {
-			return jedis.del(key);
+			return redisRouter.execute(key, jedis -> jedis.del(key));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
@@ -157,11 +257,10 @@ public class RedisClient {
 	 * @return 被删除的数量
 	 */
 	public Long del(byte[] key) {
-		Jedis jedis = jedisPool.getResource();
 		try {
-			return jedis.del(key);
+			return redisRouter.execute(key, jedis -> jedis.del(key));
 		} finally {
-			release(jedis);
+			changed(SafeEncoder.encode(key));
 		}
 	}
 
@@ -172,28 +271,51 @@ public class RedisClient {
 	 * @return 值
 	 */
 	public String get(String key) {
-		Jedis jedis = jedisPool.getResource();
-
-		try {
-			return jedis.get(key);
-		} finally {
-			release(jedis);
+		if (nearCache != null) {
+			return nearCache.get(key, () -> getFromRedis(key));
 		}
+		return getFromRedis(key);
+	}
+
+	private String getFromRedis(String key) {
+		return redisRouter.read(key, jedis -> jedis.get(key));
 	}
 
 	/**
-	 * 根据键获取值
+	 * 读取缓存，不存在时加载并写入，代替调用方自己 get、加载、setex
+	 * 本进程内同一个key同时未命中只加载一次；过期时间加最多10%的随机量；
+	 * 快过期时按概率由某次读取触发后台刷新，热点key过期前已被更新，不会在过期瞬间集中加载
+	 *
+	 * @param key        键
+	 * @param ttlSeconds 过期时间（秒）
+	 * @param loader     加载，返回null时不写入
+	 * @return 值
+	 */
+	public String getOrLoad(String key, int ttlSeconds, Supplier<String> loader) {
+		return cacheAside.getOrLoad(key, ttlSeconds, loader, false);
+	}
+
+	/**
+	 * 读取缓存，不存在时加载并写入
+	 *
+	 * @param key        键
+	 * @param ttlSeconds 过期时间（秒）
+	 * @param loader     加载，返回null时不写入
+	 * @param lock       是否用redis锁合并多个节点的加载，加载代价高、节点多时使用
+	 * @return 值
+	 */
+	public String getOrLoad(String key, int ttlSeconds, Supplier<String> loader, boolean lock) {
+		return cacheAside.getOrLoad(key, ttlSeconds, loader, lock);
+	}
+
+	/**
+	 * 根据键获取二进制值，启用压缩时自动解压
 	 *
 	 * @param key 键
 	 * @return 值
 	 */
 	public byte[] get(byte[] key) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.get(key);
-		} finally {
-			release(jedis);
-		}
+		return decompress(redisRouter.read(key, jedis -> jedis.get(key)));
 	}
 
 	/**
@@ -205,12 +327,11 @@ public class RedisClient {
 	 *         在设置操作成功完成时，才返回 OK 。
 	 */
 	public String set(String key, String value) {
-		Jedis jedis = jedisPool.getResource();
-
+		checkBytes("SET", key, value);
 		try {
-			return jedis.set(key, value);
+			return redisRouter.execute(key, jedis -> jedis.set(key, value));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
@@ -223,37 +344,57 @@ public class RedisClient {
 	 * @return 设置成功时返回 OK 。
 	 */
 	public String setex(String key, int seconds, String value) {
-		Jedis jedis = jedisPool.getResource();
-
+		checkBytes("SETEX", key, value);
 		try {
-			return jedis.setex(key, seconds, value);
+			return redisRouter.execute(key, jedis -> jedis.setex(key, seconds, value));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
+	/**
+	 * 设置二进制值和过期时间，启用压缩时超过阈值的值压缩后写入
+	 *
+	 * @param key     键
+	 * @param seconds 过期时间（秒）
+	 * @param value   值
+	 * @return 成功返回 OK
+	 */
 	public String setex(String key, int seconds, byte[] value) {
-		Jedis jedis = jedisPool.getResource();
+		byte[] stored = compress(value);
+		checkBytes("SETEX", key, stored.length);
+		try {
+			return redisRouter.execute(key, jedis -> jedis.setex(key.getBytes(), seconds, stored));
+		} finally {
+			changed(key);
+		}
+	}
 
+	/**
+	 * 设置二进制值，启用压缩时超过阈值的值压缩后写入
+	 *
+	 * @param key   键
+	 * @param value 值
+	 * @return 成功返回 OK
+	 */
+	public String set(String key, byte[] value) {
+		byte[] stored = compress(value);
+		checkBytes("SET", key, stored.length);
 		try {
-			return jedis.setex(key.getBytes(), seconds, value);
+			return redisRouter.execute(key, jedis -> jedis.set(SafeEncoder.encode(key), stored));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
 	public String getSet(String key, String value) {
 		String pre = "";
-		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			if (jedis != null) {
-				pre = jedis.getSet(key, value);
-			}
+			pre = redisRouter.execute(key, jedis -> jedis.getSet(key, value));
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 		return pre;
 	}
@@ -267,16 +408,12 @@ public class RedisClient {
 	 */
 	public Long setnx(String key, String value) {
 		Long ok = 0L;
-		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			if (jedis != null) {
-				ok = jedis.setnx(key, value);
-			}
+			ok = redisRouter.execute(key, jedis -> jedis.setnx(key, value));
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 		return ok;
 	}
@@ -293,11 +430,13 @@ public class RedisClient {
 	 */
 	public boolean setNxExp(String key, String value, int expireSeconds) {
 		logger.info("redis setNxExp key={} ,value={}, expireSeconds:{}", key, value, expireSeconds);
-		try (Jedis jedis = jedisPool.getResource()) {
-			String result = jedis.set(key, value, "NX", "EX", expireSeconds);
+		try {
+			String result = redisRouter.execute(key, jedis -> jedis.set(key, value, "NX", "EX", expireSeconds));
 			return "OK".equalsIgnoreCase(result);
 		} catch (Exception e) {
 			logger.error("redis setNxExp Error", e);
+		} finally {
+			changed(key);
 		}
 		return false;
 	}
@@ -317,16 +456,12 @@ public class RedisClient {
 	 */
 	public String set(String key, String value, String NX_OR_XX, String EX_OR_PX, long time) {
 		String ok = "";
-		Jedis jedis = null;
 		try {
-			jedis = jedisPool.getResource();
-			if (jedis != null) {
-				ok = jedis.set(key, value, NX_OR_XX, EX_OR_PX, time);
-			}
+			ok = redisRouter.execute(key, jedis -> jedis.set(key, value, NX_OR_XX, EX_OR_PX, time));
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 		return ok;
 	}
@@ -350,15 +485,41 @@ public class RedisClient {
 	 * @return 是否成功.如果字段是哈希表中的一个新建字段，并且值设置成功，返回 1 。 如果哈希表中域字段已经存在且旧值已被新值覆盖，返回 0 。
 	 */
 	public Long hset(String key, String field, String value) {
-		Jedis jedis = jedisPool.getResource();
+		try {
+			return redisRouter.execute(key, jedis -> jedis.hset(key, field, value));
+		} finally {
+			changed(key);
+		}
+	}
 
+	/**
+	 * 设置散列字段的二进制值
+	 *
+	 * @param key   键
+	 * @param field 列
+	 * @param value 值
+	 * @return 新建字段返回 1，覆盖旧值返回 0
+	 */
+	public Long hset(String key, String field, byte[] value) {
+		byte[] stored = compress(value);
 		try {
-			return jedis.hset(key, field, value);
+			return redisRouter.execute(key, jedis -> jedis.hset(SafeEncoder.encode(key), SafeEncoder.encode(field), stored));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
+	/**
+	 * 获取散列字段的二进制值，不经过本地缓存，启用压缩时自动解压
+	 *
+	 * @param key   键
+	 * @param field 列
+	 * @return 值。如果没找到，返回 NULL
+	 */
+	public byte[] hget(byte[] key, byte[] field) {
+		return decompress(redisRouter.read(key, jedis -> jedis.hget(key, field)));
+	}
+
 	/**
 	 * 获取存储在指定键的哈希字段的值。
 	 *
@@ -367,13 +528,14 @@ public class RedisClient {
 	 * @return 值。如果没找到，返回 NULL
 	 */
 	public String hget(String key, String field) {
-		Jedis jedis = jedisPool.getResource();
-
-		try {
-			return jedis.hget(key, field);
-		} finally {
-			release(jedis);
+		if (nearCache != null) {
+			return nearCache.hget(key, field, () -> hgetFromRedis(key, field));
 		}
+		return hgetFromRedis(key, field);
+	}
+
+	private String hgetFromRedis(String key, String field) {
+		return redisRouter.read(key, jedis -> jedis.hget(key, field));
 	}
 
 	/**
@@ -383,11 +545,11 @@ public class RedisClient {
 	 * @param tuple 多个哈希键值
 	 */
 	public String hmset(String key, Map<String, String> tuple) {
-		Jedis jedis = jedisPool.getResource();
+		checkElements("HMSET", key, tuple.size());
 		try {
-			return jedis.hmset(key, tuple);
+			return redisRouter.execute(key, jedis -> jedis.hmset(key, tuple));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
@@ -399,12 +561,10 @@ public class RedisClient {
 	 * @return 是否删除成功（1成功，0失败）
 	 */
 	public Long hdel(String key, String field) {
-		Jedis jedis = jedisPool.getResource();
-
 		try {
-			return jedis.hdel(key, field);
+			return redisRouter.execute(key, jedis -> jedis.hdel(key, field));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
@@ -416,12 +576,10 @@ public class RedisClient {
 	 * @return 是否删除成功（1成功，0失败）
 	 */
 	public Long hdel(String key, String[] fields) {
-		Jedis jedis = jedisPool.getResource();
-
 		try {
-			return jedis.hdel(key, fields);
+			return redisRouter.execute(key, jedis -> jedis.hdel(key, fields));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
 	}
 
@@ -443,13 +601,7 @@ public class RedisClient {
 	 * @return 是否存在
 	 */
 	public boolean hexists(String key, String field) {
-		Jedis jedis = jedisPool.getResource();
-
-		try {
-			return jedis.hexists(key, field);
-		} finally {
-			release(jedis);
-		}
+		return redisRouter.read(key, jedis -> jedis.hexists(key, field));
 	}
 
 	/**
@@ -479,13 +631,16 @@ public class RedisClient {
 	 * @return 返回该键对应的哈希列表
 	 */
 	public Map<String, String> hgetAll(String key) {
-		Jedis jedis = jedisPool.getResource();
-
-		try {
-			return jedis.hgetAll(key);
-		} finally {
-			release(jedis);
+		if (nearCache != null) {
+			return nearCache.hgetAll(key, () -> hgetAllFromRedis(key));
 		}
+		return hgetAllFromRedis(key);
+	}
+
+	private Map<String, String> hgetAllFromRedis(String key) {
+		Map<String, String> hash = redisRouter.read(key, jedis -> jedis.hgetAll(key));
+		checkElements("HGETALL", key, hash.size());
+		return hash;
 	}
 
 	/**
@@ -502,23 +657,47 @@ public class RedisClient {
 	/**
 	 * 迭代哈希表中的键值对。
 	 *
-	 * @param key   键
-	 * @param count 游标
+	 * @param key    键
+	 * @param cursor 游标
 	 * @return 数组列表
 	 */
-	public ScanResult<Map.Entry<String, String>> hscan(String key, int count) {
-		return null;
+	public ScanResult<Map.Entry<String, String>> hscan(String key, int cursor) {
+		return redisRouter.read(key, jedis -> jedis.hscan(key, String.valueOf(cursor)));
 	}
 
 	/**
-	 * 迭代哈希表中的键值对
+	 * 迭代哈希表中的键值对，返回第一页
 	 *
 	 * @param key     键
 	 * @param pattern 匹配字符串
 	 * @return 数组列表
 	 */
 	public ScanResult<Map.Entry<String, String>> hscan(String key, String pattern) {
-		return null;
+		return redisRouter.read(key, jedis -> jedis.hscan(key, SCAN_START, new ScanParams().match(pattern)));
+	}
+
+	/**
+	 * 惰性迭代哈希表中的全部键值对，见 {@link #hscanStream(String, String, int)}
+	 *
+	 * @param key 键
+	 * @return 键值对流
+	 */
+	public Stream<Map.Entry<String, String>> hscanStream(String key) {
+		return hscanStream(key, null, SCAN_COUNT);
+	}
+
+	/**
+	 * 惰性迭代哈希表中的键值对，每次取一页并在后台预取下一页，内存占用与哈希表大小无关。
+	 * 没有遍历完时需要关闭流
+	 *
+	 * @param key     键
+	 * @param pattern 匹配字符串，null匹配全部
+	 * @param count   每页的COUNT
+	 * @return 键值对流，可能重复
+	 */
+	public Stream<Map.Entry<String, String>> hscanStream(String key, String pattern, int count) {
+		ScanParams params = scanParams(pattern, count);
+		return scanStream(key, (jedis, cursor) -> jedis.hscan(key, cursor, params));
 	}
 
 	/**
@@ -529,7 +708,8 @@ public class RedisClient {
 	 * @return 执行 RPUSH 操作后，列表的长度
 	 */
 	public Long rpush(String key, String[] items) {
-		return null;
+		checkElements("RPUSH", key, items.length);
+		return redisRouter.execute(key, jedis -> jedis.rpush(key, items));
 	}
 
 	/**
@@ -541,12 +721,8 @@ public class RedisClient {
 	 * @return 插入的数量
 	 */
 	public Long lpush(String key, String[] items) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.lpush(key, items);
-		} finally {
-			release(jedis);
-		}
+		checkElements("LPUSH", key, items.length);
+		return redisRouter.execute(key, jedis -> jedis.lpush(key, items));
 	}
 
 	/**
@@ -556,7 +732,7 @@ public class RedisClient {
 	 * @return 列表长度
 	 */
 	public Long llen(String key) {
-		return null;
+		return redisRouter.read(key, jedis -> jedis.llen(key));
 	}
 
 	/**
@@ -568,12 +744,9 @@ public class RedisClient {
 	 * @return 范围内的元素集合
 	 */
 	public List<String> lrange(String key, long start, long end) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.lrange(key, start, end);
-		} finally {
-			release(jedis);
-		}
+		List<String> items = redisRouter.read(key, jedis -> jedis.lrange(key, start, end));
+		checkElements("LRANGE", key, items.size());
+		return items;
 	}
 
 	/**
@@ -638,12 +811,7 @@ public class RedisClient {
 	 * @return 列表的最后一个元素。 当列表不存在时，返回 nil 。
 	 */
 	public String rpop(String key) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.rpop(key);
-		} finally {
-			release(jedis);
-		}
+		return redisRouter.execute(key, jedis -> jedis.rpop(key));
 	}
 
 	/**
@@ -694,9 +862,8 @@ public class RedisClient {
 	 * @return 被添加到集合中的新元素的数量，不包括被忽略的元素。
 	 */
 	public Long sadd(String key, String... members) {
-		try (Jedis jedis = jedisPool.getResource()) {
-			return jedis.sadd(key, members);
-		}
+		checkElements("SADD", key, members.length);
+		return redisRouter.execute(key, jedis -> jedis.sadd(key, members));
 	}
 
 	/**
@@ -706,12 +873,9 @@ public class RedisClient {
 	 * @return 集合中的所有成员。
 	 */
 	public Set<String> smembers(String key) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.smembers(key);
-		} finally {
-			release(jedis);
-		}
+		Set<String> members = redisRouter.read(key, jedis -> jedis.smembers(key));
+		checkElements("SMEMBERS", key, members.size());
+		return members;
 	}
 
 	/**
@@ -742,7 +906,7 @@ public class RedisClient {
 	 * @return 集合的数量。 当集合 key 不存在时，返回 0 。
 	 */
 	public Long scard(String key) {
-		return null;
+		return redisRouter.read(key, jedis -> jedis.scard(key));
 	}
 
 	/**
@@ -753,54 +917,74 @@ public class RedisClient {
 	 * @return 如果成员元素是集合的成员，返回 1 。 如果成员元素不是集合的成员，或 key 不存在，返回 0 。
 	 */
 	public Boolean sismember(String key, String value) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.sismember(key, value);
-		} finally {
-			release(jedis);
-		}
+		return redisRouter.read(key, jedis -> jedis.sismember(key, value));
 	}
 	
 	/**
 	 * 取交集
+	 * 集群模式下key不在同一槽位时，批量取出各集合后在本地计算
 	 * @param keys
 	 * @return
 	 */
 	public Set<String> sinter(String... keys) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.sinter(keys);
-		} finally {
-			release(jedis);
+		if (!redisRouter.isCluster() || RedisKeys.sameSlot(keys)) {
+			return redisRouter.read(keys, jedis -> jedis.sinter(keys));
 		}
+		List<Set<String>> sets = smembers(keys);
+		Set<String> result = new HashSet<String>(sets.get(0));
+		for (int i = 1; i < sets.size(); i++) {
+			result.retainAll(sets.get(i));
+		}
+		return result;
 	}
 	
 	/**
 	 * 取并集
+	 * 集群模式下key不在同一槽位时，批量取出各集合后在本地计算
 	 * @param keys
 	 * @return
 	 */
 	public Set<String> sunion(String... keys) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.sunion(keys);
-		} finally {
-			release(jedis);
+		if (!redisRouter.isCluster() || RedisKeys.sameSlot(keys)) {
+			return redisRouter.read(keys, jedis -> jedis.sunion(keys));
 		}
+		Set<String> result = new HashSet<String>();
+		for (Set<String> set : smembers(keys)) {
+			result.addAll(set);
+		}
+		return result;
 	}
 	
 	/**
 	 * 取差集
+	 * 集群模式下key不在同一槽位时，批量取出各集合后在本地计算
 	 * @param keys
 	 * @return
 	 */
 	public Set<String> sdiff(String... keys) {
-		Jedis jedis = jedisPool.getResource();
-		try {
-			return jedis.sdiff(keys);
-		} finally {
-			release(jedis);
+		if (!redisRouter.isCluster() || RedisKeys.sameSlot(keys)) {
+			return redisRouter.read(keys, jedis -> jedis.sdiff(keys));
+		}
+		List<Set<String>> sets = smembers(keys);
+		Set<String> result = new HashSet<String>(sets.get(0));
+		for (int i = 1; i < sets.size(); i++) {
+			result.removeAll(sets.get(i));
 		}
+		return result;
+	}
+
+	private List<Set<String>> smembers(String[] keys) {
+		RedisBatch batch = batch();
+		List<RedisBatch.Result<Set<String>>> results = new ArrayList<RedisBatch.Result<Set<String>>>(keys.length);
+		for (String key : keys) {
+			results.add(batch.smembers(key));
+		}
+		batch.execute();
+		List<Set<String>> sets = new ArrayList<Set<String>>(keys.length);
+		for (RedisBatch.Result<Set<String>> result : results) {
+			sets.add(result.get());
+		}
+		return sets;
 	}
 
 	/**
@@ -833,112 +1017,95 @@ public class RedisClient {
 	 * @return 数组列表
 	 */
 	public ScanResult<String> sscan(String key, String pattern) {
-		return null;
+		return redisRouter.read(key, jedis -> jedis.sscan(key, SCAN_START, new ScanParams().match(pattern)));
 	}
 
 	/**
 	 * 迭代集合键中的元素
 	 *
-	 * @param key   键
-	 * @param count 游标
+	 * @param key    键
+	 * @param cursor 游标
 	 * @return 少量的元素
 	 */
-	public ScanResult<String> sscan(String key, int count) {
-		return null;
+	public ScanResult<String> sscan(String key, int cursor) {
+		return redisRouter.read(key, jedis -> jedis.sscan(key, String.valueOf(cursor)));
+	}
+
+	/**
+	 * 惰性迭代集合中的全部元素，见 {@link #sscanStream(String, String, int)}
+	 *
+	 * @param key 键
+	 * @return 元素流
+	 */
+	public Stream<String> sscanStream(String key) {
+		return sscanStream(key, null, SCAN_COUNT);
+	}
+
+	/**
+	 * 惰性迭代集合中的元素，每次取一页并在后台预取下一页，内存占用与集合大小无关。
+	 * 没有遍历完时需要关闭流
+	 *
+	 * @param key     键
+	 * @param pattern 匹配值，null匹配全部
+	 * @param count   每页的COUNT
+	 * @return 元素流，可能重复
+	 */
+	public Stream<String> sscanStream(String key, String pattern, int count) {
+		ScanParams params = scanParams(pattern, count);
+		return scanStream(key, (jedis, cursor) -> jedis.sscan(key, cursor, params));
 	}
 
 	/*
 	 * 有序集合(sorted set)操作
 	 */
 
-	public Long zadd(String paramString1, double paramDouble, String paramString2) {
-		return null;
+	public Long zadd(String key, double score, String member) {
+		return redisRouter.execute(key, jedis -> jedis.zadd(key, score, member));
 	}
 
 	public Long zadd(String key, Map<String, Double> paramMap) {
-		Jedis jedis = jedisPool.getResource();
-		Long result = 0l;
-		try {
-			result = jedis.zadd(key, paramMap);
-		} finally {
-			release(jedis);
-		}
-		return result;
+		checkElements("ZADD", key, paramMap.size());
+		return redisRouter.execute(key, jedis -> jedis.zadd(key, paramMap));
 	}
 
-	public Set<String> zrange(String key, long paramLong1, long paramLong2) {
-		return null;
+	public Set<String> zrange(String key, long start, long end) {
+		return redisRouter.read(key, jedis -> jedis.zrange(key, start, end));
 	}
 
 	public Long zrem(String key, String[] paramArrayOfString) {
-		Jedis jedis = jedisPool.getResource();
-		Long result = null;
-		try {
-			result = jedis.zrem(key, paramArrayOfString);
-		} finally {
-			release(jedis);
-		}
-		return result;
+		return redisRouter.execute(key, jedis -> jedis.zrem(key, paramArrayOfString));
 	}
 
 	public Double zincrby(String key, double score, String member) {
-		Jedis jedis = jedisPool.getResource();
-		Double result = null;
-		try {
-			result = jedis.zincrby(key, score, member);
-		} finally {
-			release(jedis);
-		}
-		return result;
+		return redisRouter.execute(key, jedis -> jedis.zincrby(key, score, member));
 	}
 
-	public Long zrank(String paramString1, String paramString2) {
-		return null;
+	public Long zrank(String key, String member) {
+		return redisRouter.read(key, jedis -> jedis.zrank(key, member));
 	}
 
 	public Long zrevrank(String paramString1, String paramString2) {
-		Jedis jedis = jedisPool.getResource();
-		Long result = null;
-		try {
-			result = jedis.zrevrank(paramString1, paramString2);
-		} finally {
-			release(jedis);
-		}
-		return result;
+		return redisRouter.read(paramString1, jedis -> jedis.zrevrank(paramString1, paramString2));
 	}
 
 	public Set<String> zrevrange(String key, long paramLong1, long paramLong2) {
-		Jedis jedis = jedisPool.getResource();
-		Set<String> result = null;
-		try {
-			result = jedis.zrevrange(key, paramLong1, paramLong2);
-		} finally {
-			release(jedis);
-		}
-		return result;
+		return redisRouter.read(key, jedis -> jedis.zrevrange(key, paramLong1, paramLong2));
 	}
 
-	public Set<Tuple> zrangeWithScores(String key, long paramLong1, long paramLong2) {
-		return null;
+	public Set<Tuple> zrangeWithScores(String key, long start, long end) {
+		return redisRouter.read(key, jedis -> jedis.zrangeWithScores(key, start, end));
 	}
 
-	public Set<Tuple> zrevrangeWithScores(String key, long paramLong1, long paramLong2) {
-		return null;
+	public Set<Tuple> zrevrangeWithScores(String key, long start, long end) {
+		return redisRouter.read(key, jedis -> jedis.zrevrangeWithScores(key, start, end));
 	}
 
 	public Long zcard(String key) {
-		return null;
+		return redisRouter.read(key, jedis -> jedis.zcard(key));
 	}
 
 	public Double zscore(String paramString1, String paramString2) {
-		Jedis jedis = jedisPool.getResource();
-		Double result = 0.0;
-		try {
-			result = jedis.zscore(paramString1, paramString2);
-		} finally {
-			release(jedis);
-		}
-		return result;
+		return redisRouter.read(paramString1, jedis -> jedis.zscore(paramString1, paramString2));
 	}
 
 	public List<String> sort(String key) {
@@ -1058,63 +1225,644 @@ public class RedisClient {
 		return null;
 	}
 
-	public ScanResult<Tuple> zscan(String key, int count) {
-		return null;
+	/**
+	 * 迭代有序集合中的元素和分值
+	 *
+	 * @param key    键
+	 * @param cursor 游标
+	 * @return 少量的元素
+	 */
+	public ScanResult<Tuple> zscan(String key, int cursor) {
+		return redisRouter.read(key, jedis -> jedis.zscan(key, String.valueOf(cursor)));
 	}
 
-	public ScanResult<Tuple> zscan(String paramString1, String pattern) {
-		return null;
+	/**
+	 * 迭代有序集合中的元素和分值，返回第一页
+	 *
+	 * @param key     键
+	 * @param pattern 匹配值
+	 * @return 少量的元素
+	 */
+	public ScanResult<Tuple> zscan(String key, String pattern) {
+		return redisRouter.read(key, jedis -> jedis.zscan(key, SCAN_START, new ScanParams().match(pattern)));
+	}
+
+	/**
+	 * 惰性迭代有序集合中的全部元素，见 {@link #zscanStream(String, String, int)}
+	 *
+	 * @param key 键
+	 * @return 元素和分值流
+	 */
+	public Stream<Tuple> zscanStream(String key) {
+		return zscanStream(key, null, SCAN_COUNT);
+	}
+
+	/**
+	 * 惰性迭代有序集合中的元素，每次取一页并在后台预取下一页，内存占用与集合大小无关。
+	 * 返回顺序不是分值顺序，没有遍历完时需要关闭流
+	 *
+	 * @param key     键
+	 * @param pattern 匹配值，null匹配全部
+	 * @param count   每页的COUNT
+	 * @return 元素和分值流，可能重复
+	 */
+	public Stream<Tuple> zscanStream(String key, String pattern, int count) {
+		ScanParams params = scanParams(pattern, count);
+		return scanStream(key, (jedis, cursor) -> jedis.zscan(key, cursor, params));
+	}
+
+	/*
+	 * 流(stream)操作
+	 * jedis 2.9没有流命令，通过lua脚本执行，需要redis 6.2及以上；脚本不能阻塞，读取时不支持BLOCK
+	 */
+
+	/**
+	 * 追加一条消息
+	 *
+	 * @param key    流
+	 * @param fields 字段
+	 * @param maxLen 按 MAXLEN ~ 近似裁剪到的长度，0表示不裁剪
+	 * @return 消息id
+	 */
+	public String xadd(String key, Map<String, String> fields, long maxLen) {
+		return xadd(key, Collections.singletonList(fields), maxLen).get(0);
+	}
+
+	/**
+	 * 一次往返追加多条消息
+	 *
+	 * @param key     流
+	 * @param entries 每条消息的字段
+	 * @param maxLen  按 MAXLEN ~ 近似裁剪到的长度，0表示不裁剪
+	 * @return 消息id，顺序与入参一致
+	 */
+	@SuppressWarnings("rawtypes")
+	public List<String> xadd(String key, List<Map<String, String>> entries, long maxLen) {
+		List<String> args = new ArrayList<String>();
+		args.add(String.valueOf(maxLen));
+		for (Map<String, String> fields : entries) {
+			args.add(String.valueOf(fields.size() * 2));
+			for (Map.Entry<String, String> field : fields.entrySet()) {
+				args.add(field.getKey());
+				args.add(field.getValue());
+			}
+		}
+		List ids = redisScripts.get("stream_add", List.class).execute(Collections.singletonList(key), args);
+		List<String> result = new ArrayList<String>(ids.size());
+		for (Object id : ids) {
+			result.add((String) id);
+		}
+		return result;
+	}
+
+	/**
+	 * 创建消费组，流不存在时一并创建
+	 *
+	 * @param key     流
+	 * @param group   消费组
+	 * @param startId 从哪条之后开始消费，"0"为全部，"$"为只消费之后的新消息
+	 * @return 是否新建，消费组已存在时返回false
+	 */
+	public boolean xgroupCreate(String key, String group, String startId) {
+		try {
+			stream(key, "XGROUP", "CREATE", group, startId, "MKSTREAM");
+			return true;
+		} catch (JedisDataException e) {
+			if (e.getMessage() != null && e.getMessage().contains("BUSYGROUP")) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 以消费组的身份读取消息(XREADGROUP)
+	 *
+	 * @param key      流
+	 * @param group    消费组
+	 * @param consumer 消费者
+	 * @param count    最多读几条
+	 * @param startId  ">"读从未投递过的新消息，"0"读投递给该消费者但未确认的消息
+	 * @return 消息，没有时为空列表
+	 */
+	public List<StreamEntry> xreadgroup(String key, String group, String consumer, int count, String startId) {
+		Object reply = stream(key, "XREADGROUP", group, consumer, String.valueOf(count), startId);
+		if (reply == null) {
+			return Collections.emptyList();
+		}
+		// [[流, [[id, [字段, 值, ...]], ...]]]
+		return streamEntries(((List<?>) ((List<?>) reply).get(0)).get(1));
+	}
+
+	/**
+	 * 确认消息，每次最多确认 {@link #XACK_CHUNK} 条，避免超过lua unpack的参数个数上限
+	 *
+	 * @param key   流
+	 * @param group 消费组
+	 * @param ids   消息id
+	 * @return 确认的条数
+	 */
+	public long xack(String key, String group, Collection<String> ids) {
+		long acked = 0;
+		List<String> args = new ArrayList<String>(Math.min(ids.size(), XACK_CHUNK) + 2);
+		for (String id : ids) {
+			if (args.isEmpty()) {
+				args.add("XACK");
+				args.add(group);
+			}
+			args.add(id);
+			if (args.size() - 2 == XACK_CHUNK) {
+				acked += (Long) stream(key, args.toArray(new String[args.size()]));
+				args.clear();
+			}
+		}
+		if (!args.isEmpty()) {
+			acked += (Long) stream(key, args.toArray(new String[args.size()]));
+		}
+		return acked;
+	}
+
+	/**
+	 * 把空闲超过minIdleMillis的待确认消息转给consumer(XAUTOCLAIM)，用于接管已退出的消费者的消息
+	 *
+	 * @param key           流
+	 * @param group         消费组
+	 * @param consumer      接管的消费者
+	 * @param minIdleMillis 最小空闲时间(毫秒)
+	 * @param start         游标，从"0-0"开始
+	 * @param count         最多转几条
+	 * @return 转到的消息和下一次的游标，游标为"0-0"时已遍历完
+	 */
+	public ScanResult<StreamEntry> xautoclaim(String key, String group, String consumer, long minIdleMillis,
+			String start, int count) {
+		List<?> reply = (List<?>) stream(key, "XAUTOCLAIM", group, consumer, String.valueOf(minIdleMillis), start,
+				"COUNT", String.valueOf(count));
+		return new ScanResult<StreamEntry>((String) reply.get(0), streamEntries(reply.get(1)));
+	}
+
+	/**
+	 * @param key 流
+	 * @return 消息条数
+	 */
+	public long xlen(String key) {
+		return (Long) stream(key, "XLEN");
+	}
+
+	/**
+	 * @param key   流
+	 * @param group 消费组
+	 * @return 消费组中已投递未确认的条数
+	 */
+	public long xpending(String key, String group) {
+		// [条数, 最小id, 最大id, [[消费者, 条数], ...]]
+		return (Long) ((List<?>) stream(key, "XPENDING", group)).get(0);
+	}
+
+	/**
+	 * 按 MAXLEN ~ 近似裁剪
+	 *
+	 * @param key    流
+	 * @param maxLen 保留的长度
+	 * @return 删除的条数
+	 */
+	public long xtrim(String key, long maxLen) {
+		return (Long) stream(key, "XTRIM", "MAXLEN", "~", String.valueOf(maxLen));
+	}
+
+	private Object stream(String key, String... args) {
+		return redisScripts.get("stream_command", Object.class).execute(Collections.singletonList(key),
+				Arrays.asList(args));
+	}
+
+	private static List<StreamEntry> streamEntries(Object reply) {
+		List<?> items = (List<?>) reply;
+		List<StreamEntry> entries = new ArrayList<StreamEntry>(items.size());
+		for (Object item : items) {
+			List<?> entry = (List<?>) item;
+			List<?> values = (List<?>) entry.get(1);
+			Map<String, String> fields = null;
+			if (values != null) {
+				fields = new LinkedHashMap<String, String>(values.size());
+				for (int i = 0; i + 1 < values.size(); i += 2) {
+					fields.put((String) values.get(i), (String) values.get(i + 1));
+				}
+			}
+			entries.add(new StreamEntry((String) entry.get(0), fields));
+		}
+		return entries;
 	}
 
 	/*
 	 * 其他操作
 	 */
 
+	/**
+	 * 惰性迭代匹配的键，见 {@link #scanKeys(String, int)}
+	 *
+	 * @param pattern 匹配字符串，null匹配全部
+	 * @return 键流
+	 */
+	public Stream<String> scanKeys(String pattern) {
+		return scanKeys(pattern, SCAN_COUNT);
+	}
+
+	/**
+	 * 用SCAN惰性迭代匹配的键，代替阻塞服务端的KEYS。每次取一页并在后台预取下一页，内存占用与键的数量无关；
+	 * 集群模式下依次迭代每个主节点。没有遍历完时需要关闭流
+	 *
+	 * @param pattern 匹配字符串，null匹配全部
+	 * @param count   每页的COUNT
+	 * @return 键流，可能重复
+	 */
+	public Stream<String> scanKeys(String pattern, int count) {
+		ScanParams params = scanParams(pattern, count);
+		List<JedisPool> masters = redisRouter.masters();
+		return new ScanIterator<String>(masters.size(), (source, cursor) -> {
+			try (Jedis jedis = masters.get(source).getResource()) {
+				return jedis.scan(cursor, params);
+			}
+		}).stream();
+	}
+
+	/**
+	 * 单个key的游标迭代，创建时选定节点，每一页都在这个节点上取；节点中途不可用时抛出异常，不换节点继续
+	 */
+	private <T> Stream<T> scanStream(String key, BiFunction<Jedis, String, ScanResult<T>> scan) {
+		JedisPool pool = redisRouter.readPool(key);
+		return new ScanIterator<T>(1, (source, cursor) -> {
+			try (Jedis jedis = pool.getResource()) {
+				return scan.apply(jedis, cursor);
+			}
+		}).stream();
+	}
+
+	private static ScanParams scanParams(String pattern, int count) {
+		ScanParams params = new ScanParams().count(count);
+		if (pattern != null) {
+			params.match(pattern);
+		}
+		return params;
+	}
+
+	/**
+	 * 阻塞直到列表头部有元素，阻塞期间占用一个连接池中的连接，持续消费用 {@link com.api.queue.ListQueue}
+	 *
+	 * @param key 键
+	 * @return [键, 元素]
+	 */
 	public List<String> blpop(String key) {
-		return null;
+		return blpop(0, key);
 	}
 
-	public List<String> blpop(int paramInt, String key) {
-		return null;
+	public List<String> blpop(int timeout, String key) {
+		return redisRouter.execute(key, jedis -> jedis.blpop(timeout, key));
 	}
 
+	/**
+	 * 阻塞直到列表尾部有元素，阻塞期间占用一个连接池中的连接，持续消费用 {@link com.api.queue.ListQueue}
+	 *
+	 * @param key 键
+	 * @return [键, 元素]
+	 */
 	public List<String> brpop(String key) {
-		return null;
+		return brpop(0, key);
+	}
+
+	public List<String> brpop(int timeout, String key) {
+		return redisRouter.execute(key, jedis -> jedis.brpop(timeout, key));
 	}
 
-	public List<String> brpop(int paramInt, String key) {
-		Jedis jedis = jedisPool.getResource();
-		List<String> result = new ArrayList<String>();
+	/**
+	 * 设置位图中偏移处的位
+	 *
+	 * @param key    键
+	 * @param offset 位偏移
+	 * @param value  位的值
+	 * @return 原来的值
+	 */
+	public Boolean setbit(String key, long offset, boolean value) {
 		try {
-			result = jedis.brpop(paramInt, key);
+			return redisRouter.execute(key, jedis -> jedis.setbit(key, offset, value));
 		} finally {
-			release(jedis);
+			changed(key);
 		}
-		return result;
 	}
 
+	public Boolean getbit(String key, long offset) {
+		return redisRouter.read(key, jedis -> jedis.getbit(key, offset));
+	}
+
+	/**
+	 * 位图中为1的位数
+	 *
+	 * @param key 键
+	 * @return 位数
+	 */
 	public Long bitcount(String key) {
-		return null;
+		return redisRouter.read(key, jedis -> jedis.bitcount(key));
 	}
 
-	public Long bitcount(String key, long paramLong1, long paramLong2) {
-		return null;
+	/**
+	 * 位图在字节范围内为1的位数
+	 *
+	 * @param key   键
+	 * @param start 起始字节，可以为负
+	 * @param end   结束字节(包含)，可以为负
+	 * @return 位数
+	 */
+	public Long bitcount(String key, long start, long end) {
+		return redisRouter.read(key, jedis -> jedis.bitcount(key, start, end));
 	}
 
-	public Long pfadd(String key, String[] paramArrayOfString) {
-		return null;
+	/**
+	 * 多个位图按位运算后存入destKey，集群模式下所有key须在同一槽位
+	 *
+	 * @param op      AND/OR/XOR/NOT
+	 * @param destKey 结果键
+	 * @param keys    参与运算的键
+	 * @return 结果的字节数
+	 */
+	public Long bitop(BitOP op, String destKey, String... keys) {
+		try {
+			return redisRouter.execute(concat(destKey, keys), jedis -> jedis.bitop(op, destKey, keys));
+		} finally {
+			changed(destKey);
+		}
+	}
+
+	/**
+	 * 向HyperLogLog添加元素，大量去重计数用 {@link com.api.counter.UniqueCounter} 在本地预聚合
+	 *
+	 * @param key      键
+	 * @param elements 元素
+	 * @return 估计的基数有变化返回1，否则返回0
+	 */
+	public Long pfadd(String key, String... elements) {
+		try {
+			return redisRouter.execute(key, jedis -> jedis.pfadd(key, elements));
+		} finally {
+			changed(key);
+		}
 	}
 
+	/**
+	 * HyperLogLog估计的基数，标准误差0.81%
+	 *
+	 * @param key 键
+	 * @return 基数
+	 */
 	public long pfcount(String key) {
-		return 0;
+		return redisRouter.read(key, jedis -> jedis.pfcount(key));
 	}
-	
+
+	/**
+	 * 多个HyperLogLog并集的基数，不修改各个key，集群模式下所有key须在同一槽位
+	 *
+	 * @param keys 键
+	 * @return 基数
+	 */
+	public long pfcount(String... keys) {
+		return redisRouter.read(keys, jedis -> jedis.pfcount(keys));
+	}
+
+	/**
+	 * 把多个HyperLogLog合并到destKey，destKey已存在时一并合并；集群模式下所有key须在同一槽位
+	 *
+	 * @param destKey    结果键
+	 * @param sourceKeys 源键
+	 * @return OK
+	 */
+	public String pfmerge(String destKey, String... sourceKeys) {
+		try {
+			return redisRouter.execute(concat(destKey, sourceKeys), jedis -> jedis.pfmerge(destKey, sourceKeys));
+		} finally {
+			changed(destKey);
+		}
+	}
+
+	private static String[] concat(String key, String[] keys) {
+		String[] all = new String[keys.length + 1];
+		all[0] = key;
+		System.arraycopy(keys, 0, all, 1, keys.length);
+		return all;
+	}
+
+
 	public Object eval(String script, List<String> keys, List<String> args) {
-    	Jedis jedis = jedisPool.getResource();
-    	try {
-    		return jedis.eval(script, keys, args);
-        } finally {
-            release(jedis);
-        }
+		return redisRouter.execute(keys.toArray(new String[keys.size()]), jedis -> jedis.eval(script, keys, args));
+	}
+
+	/**
+	 * 按SHA1执行已缓存在redis中的脚本，脚本不存在时抛出JedisNoScriptException
+	 *
+	 * @param sha1 脚本的SHA1
+	 * @param keys 键
+	 * @param args 参数
+	 * @return 脚本返回值
+	 */
+	public Object evalsha(String sha1, List<String> keys, List<String> args) {
+		return redisRouter.execute(keys.toArray(new String[keys.size()]), jedis -> jedis.evalsha(sha1, keys, args));
+	}
+
+	/**
+	 * 将脚本缓存到redis中，集群模式下缓存到每个主节点
+	 *
+	 * @param script 脚本内容
+	 * @return 脚本的SHA1
+	 */
+	public String scriptLoad(String script) {
+		return redisRouter.executeOnMasters(jedis -> jedis.scriptLoad(script)).get(0);
+	}
+
+	/*
+	 * 批量操作
+	 */
+
+	/**
+	 * 创建一个批次，排队的命令在execute时通过Pipeline一次往返发送
+	 * 集群模式下按节点分组，各节点并行发送
+	 *
+	 * @return 批次
+	 */
+	public RedisBatch batch() {
+		return new RedisBatch(redisRouter, nearCache, compression);
+	}
+
+	/**
+	 * 批量获取多个键的值
+	 * 集群模式下按槽位拆成多个MGET，各节点并行执行
+	 *
+	 * @param keys 键
+	 * @return 值列表，顺序与键一致，不存在的键对应null
+	 */
+	public List<String> mget(String... keys) {
+		if (keys.length == 0) {
+			return new ArrayList<String>();
+		}
+		if (!redisRouter.isCluster() || RedisKeys.sameSlot(keys)) {
+			return redisRouter.read(keys, jedis -> jedis.mget(keys));
+		}
+		List<List<Integer>> groups = new ArrayList<List<Integer>>(groupBySlot(keys).values());
+		RedisBatch batch = batch();
+		List<RedisBatch.Result<List<String>>> results = new ArrayList<RedisBatch.Result<List<String>>>(groups.size());
+		for (List<Integer> indexes : groups) {
+			String[] slotKeys = new String[indexes.size()];
+			for (int i = 0; i < slotKeys.length; i++) {
+				slotKeys[i] = keys[indexes.get(i)];
+			}
+			results.add(batch.add(slotKeys[0], p -> p.mget(slotKeys)));
+		}
+		batch.execute();
+		List<String> values = new ArrayList<String>(Collections.<String>nCopies(keys.length, null));
+		for (int g = 0; g < groups.size(); g++) {
+			List<Integer> indexes = groups.get(g);
+			List<String> slotValues = results.get(g).get();
+			for (int i = 0; i < indexes.size(); i++) {
+				values.set(indexes.get(i), slotValues.get(i));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * 批量获取多个键的二进制值，启用压缩时自动解压
+	 * 集群模式下按槽位拆成多个MGET，各节点并行执行
+	 *
+	 * @param keys 键
+	 * @return 值列表，顺序与键一致，不存在的键对应null
+	 */
+	public List<byte[]> mget(byte[]... keys) {
+		List<byte[]> values = new ArrayList<byte[]>(Collections.<byte[]>nCopies(keys.length, null));
+		if (keys.length == 0) {
+			return values;
+		}
+		String[] names = new String[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			names[i] = SafeEncoder.encode(keys[i]);
+		}
+		if (!redisRouter.isCluster() || RedisKeys.sameSlot(names)) {
+			List<byte[]> stored = redisRouter.read(names, jedis -> jedis.mget(keys));
+			for (int i = 0; i < keys.length; i++) {
+				values.set(i, decompress(stored.get(i)));
+			}
+			return values;
+		}
+		List<List<Integer>> groups = new ArrayList<List<Integer>>(groupBySlot(names).values());
+		RedisBatch batch = batch();
+		List<RedisBatch.Result<List<byte[]>>> results = new ArrayList<RedisBatch.Result<List<byte[]>>>(groups.size());
+		for (List<Integer> indexes : groups) {
+			byte[][] slotKeys = new byte[indexes.size()][];
+			for (int i = 0; i < slotKeys.length; i++) {
+				slotKeys[i] = keys[indexes.get(i)];
+			}
+			results.add(batch.add(names[indexes.get(0)], p -> p.mget(slotKeys)));
+		}
+		batch.execute();
+		for (int g = 0; g < groups.size(); g++) {
+			List<Integer> indexes = groups.get(g);
+			List<byte[]> slotValues = results.get(g).get();
+			for (int i = 0; i < indexes.size(); i++) {
+				values.set(indexes.get(i), decompress(slotValues.get(i)));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * 批量设置多个键值
+	 *
+	 * @param tuple 键值对
+	 * @return 总是返回 OK
+	 */
+	public String mset(Map<String, String> tuple) {
+		if (tuple.isEmpty()) {
+			return "OK";
+		}
+		String[] keysvalues = new String[tuple.size() * 2];
+		int i = 0;
+		for (Map.Entry<String, String> entry : tuple.entrySet()) {
+			keysvalues[i++] = entry.getKey();
+			keysvalues[i++] = entry.getValue();
+		}
+		try {
+			if (!redisRouter.isCluster()) {
+				return redisRouter.execute(keysvalues[0], jedis -> jedis.mset(keysvalues));
+			}
+			// 集群模式下按槽位拆成多个MSET，各节点并行执行
+			String[] keys = tuple.keySet().toArray(new String[tuple.size()]);
+			RedisBatch batch = batch();
+			List<RedisBatch.Result<String>> results = new ArrayList<RedisBatch.Result<String>>();
+			for (List<Integer> indexes : groupBySlot(keys).values()) {
+				String[] slotKeysvalues = new String[indexes.size() * 2];
+				for (int j = 0; j < indexes.size(); j++) {
+					slotKeysvalues[j * 2] = keysvalues[indexes.get(j) * 2];
+					slotKeysvalues[j * 2 + 1] = keysvalues[indexes.get(j) * 2 + 1];
+				}
+				results.add(batch.add(slotKeysvalues[0], p -> p.mset(slotKeysvalues)));
+			}
+			batch.execute();
+			for (RedisBatch.Result<String> result : results) {
+				result.get();
+			}
+			return "OK";
+		} finally {
+			if (nearCache != null)
+				nearCache.invalidate(tuple.keySet());
+		}
+	}
+
+	/**
+	 * 按槽位分组
+	 *
+	 * @param keys 键
+	 * @return 槽位 -> 该槽位的键在数组中的下标
+	 */
+	private static Map<Integer, List<Integer>> groupBySlot(String[] keys) {
+		Map<Integer, List<Integer>> slots = new LinkedHashMap<Integer, List<Integer>>();
+		for (int i = 0; i < keys.length; i++) {
+			slots.computeIfAbsent(RedisKeys.slot(keys[i]), slot -> new ArrayList<Integer>()).add(i);
+		}
+		return slots;
+	}
+
+	/**
+	 * 一次往返获取多个哈希的所有字段和值
+	 *
+	 * @param keys 键
+	 * @return 键 -> 哈希内容，不存在的键对应空Map
+	 */
+	public Map<String, Map<String, String>> mhgetAll(Collection<String> keys) {
+		RedisBatch batch = batch();
+		Map<String, RedisBatch.Result<Map<String, String>>> results = new LinkedHashMap<String, RedisBatch.Result<Map<String, String>>>();
+		for (String key : keys) {
+			results.put(key, batch.hgetAll(key));
+		}
+		batch.execute();
+		Map<String, Map<String, String>> values = new LinkedHashMap<String, Map<String, String>>();
+		for (Map.Entry<String, RedisBatch.Result<Map<String, String>>> entry : results.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+		return values;
+	}
+
+	/**
+	 * 一次往返获取有序集合中多个成员的分数
+	 *
+	 * @param key     键
+	 * @param members 成员
+	 * @return 成员 -> 分数，不存在的成员对应null
+	 */
+	public Map<String, Double> mzscore(String key, Collection<String> members) {
+		RedisBatch batch = batch();
+		Map<String, RedisBatch.Result<Double>> results = new LinkedHashMap<String, RedisBatch.Result<Double>>();
+		for (String member : members) {
+			results.put(member, batch.zscore(key, member));
+		}
+		batch.execute();
+		Map<String, Double> scores = new LinkedHashMap<String, Double>();
+		for (Map.Entry<String, RedisBatch.Result<Double>> entry : results.entrySet()) {
+			scores.put(entry.getKey(), entry.getValue().get());
+		}
+		return scores;
 	}
 }
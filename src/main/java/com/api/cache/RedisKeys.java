@@ -0,0 +1,101 @@
+package com.api.cache;
+
+import redis.clients.util.JedisClusterCRC16;
+
+/**
+ * 集群模式下的key工具
+ * 集群按key中第一个{...}内的内容（hash tag）计算槽位，hash tag相同的key一定在同一节点，
+ * 可以一起用于多key命令、脚本和事务
+ *
+ * <pre>
+ * RedisKeys.tagged("1001", "follow");   // {1001}:follow
+ * RedisKeys.tagged("1001", "fans");     // {1001}:fans，与上面同槽位
+ * RedisKeys.related("lock_", "order:1"); // lock_{order:1}，与order:1同槽位
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class RedisKeys {
+
+	private RedisKeys() {
+	}
+
+	/**
+	 * 用tag作为hash tag拼接key
+	 *
+	 * @param tag  决定槽位的部分，如用户id
+	 * @param name 其余部分
+	 * @return {tag}:name
+	 */
+	public static String tagged(String tag, String name) {
+		return "{" + tag + "}:" + name;
+	}
+
+	/**
+	 * 生成与key同槽位的关联key：key已带hash tag时沿用，否则把整个key作为hash tag
+	 *
+	 * @param prefix 前缀
+	 * @param key    关联的key
+	 * @return 关联key
+	 */
+	public static String related(String prefix, String key) {
+		if (hasHashTag(key)) {
+			return prefix + key;
+		}
+		return prefix + "{" + key + "}";
+	}
+
+	/**
+	 * key中决定槽位的部分，没有hash tag时是整个key
+	 *
+	 * @param key 键
+	 * @return hash tag
+	 */
+	public static String hashTag(String key) {
+		int start = key.indexOf('{');
+		if (start >= 0) {
+			int end = key.indexOf('}', start + 1);
+			if (end > start + 1) {
+				return key.substring(start + 1, end);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * key是否带有非空的hash tag
+	 *
+	 * @param key 键
+	 * @return 带有时返回true
+	 */
+	public static boolean hasHashTag(String key) {
+		int start = key.indexOf('{');
+		return start >= 0 && key.indexOf('}', start + 1) > start + 1;
+	}
+
+	/**
+	 * key所在槽位
+	 *
+	 * @param key 键
+	 * @return 0 ~ 16383
+	 */
+	public static int slot(String key) {
+		return JedisClusterCRC16.getSlot(key);
+	}
+
+	/**
+	 * 多个key是否在同一槽位
+	 *
+	 * @param keys 键
+	 * @return 同一槽位或不足两个key时返回true
+	 */
+	public static boolean sameSlot(String... keys) {
+		for (int i = 1; i < keys.length; i++) {
+			if (slot(keys[i]) != slot(keys[0])) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,15 +1,32 @@
 package com.api.cache;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Resource;
-
-import static java.lang.Thread.sleep;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
- * 基于redis的分布式锁 参考博客：http://blog.csdn.net/ugg/article/details/41894947
+ * 基于redis的分布式锁
+ * 加锁为一次 SET NX PX，值为持有者令牌；解锁用lua比较令牌后删除，不会误删他人的锁，并发布解锁通知。
+ * 等待者阻塞在本地信号上，收到解锁通知即重试，锁交接约一次往返；订阅不可用时退化为短间隔轮询。
+ * 不指定租约的锁由看门狗每 1/3 租约续期一次，持有期不受租约限制，进程挂掉后最多一个租约即释放
+ *
  * @author zhaoxingwu
  *
  */
@@ -17,80 +34,299 @@ import static java.lang.Thread.sleep;
 public final class RedisLock {
 
 	public static final String LOCK_PREFIX = "lock";
+
+	/**
+	 * 解锁通知频道，消息内容为锁KEY
+	 */
+	public static final String RELEASE_CHANNEL = "lock:released";
+
+	/**
+	 * 看门狗模式的租约(毫秒)
+	 */
+	public static final long WATCHDOG_LEASE_MILLIS = 30000;
+
+	/**
+	 * 订阅不可用或锁无过期时间时的轮询间隔(毫秒)
+	 */
+	private static final long POLL_MILLIS = 50;
+
 	private static final Logger logger = LoggerFactory.getLogger(RedisLock.class);
+
+	@Resource
+	private RedisScripts redisScripts;
+
 	@Resource
-	private RedisClient redisClient;
+	private RedisSubscriber redisSubscriber;
+
+	@SuppressWarnings("rawtypes")
+	private RedisScript<List> lockScript;
+
+	private RedisScript<Long> unlockScript;
+
+	private RedisScript<Long> renewScript;
 
 	/**
-	 * 获得锁
-	 * 
-	 * @param key
-	 * @param lockTime
-	 * @param tryTime
-	 * @return
+	 * 本进程持有的锁：锁KEY -> 令牌，供 releaseLock(key) 使用，固定租约的锁到期后移除
 	 */
-	public boolean lock(String key, int lockTime, int tryTime) {
-		boolean lockStatus = false;
-		key = String.format("%s_%s", LOCK_PREFIX, key);
+	private final Map<String, String> tokens = new ConcurrentHashMap<String, String>();
 
-		// 重试一定次数，还是拿不到，就放弃
-		try {
-			long status;
-			long tryFailTime = System.currentTimeMillis() + tryTime;
-			do {
-				status = redisClient.setnx(key, Long.toString(System.currentTimeMillis() + lockTime));
-				if (status == 1) {
-					lockStatus = true;
-				} else {
-					// 获取锁失败，查看锁是否超时
-					String time = redisClient.get(key);
-					// 在加锁和检查之间，锁被删除了，尝试重新加锁
-					if (time == null) {
-						continue;
-					}
-					// 锁的超时时间戳小于当前时间，证明锁已经超时
-					if (Long.parseLong(time) < System.currentTimeMillis()) {
-						String oldTime = redisClient.getSet(key, Long.toString(System.currentTimeMillis() + lockTime));
-						if (oldTime == null || oldTime.equals(time)) {
-							lockStatus = true;
-							break;
-						}
-					}
-					try {
-						sleep(tryTime / 10);
-					} catch (Exception e) {
-						logger.error("lock key:{} sleep failed!", key);
-					}
+	/**
+	 * 看门狗续期任务或固定租约到期的清理任务：令牌 -> 任务
+	 */
+	private final Map<String, ScheduledFuture<?>> renewals = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+
+	/**
+	 * 等待中的锁KEY -> 信号，没有等待者时自动回收
+	 */
+	private final Cache<String, Signal> signals = CacheBuilder.newBuilder().weakValues().build();
+
+	private ScheduledThreadPoolExecutor watchdog;
+
+	@PostConstruct
+	public void init() {
+		lockScript = redisScripts.get("lock", List.class);
+		unlockScript = redisScripts.get("unlock", Long.class);
+		renewScript = redisScripts.get("lock_renew", Long.class);
+		watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "redis-lock-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// 提前解锁时取消的清理任务立即移出队列，不会堆积到租约结束
+		watchdog.setRemoveOnCancelPolicy(true);
+		redisSubscriber.subscribe(RELEASE_CHANNEL, new RedisSubscriber.Listener() {
+
+			@Override
+			public void onMessage(String lockKey) {
+				wake(lockKey);
+			}
+
+			@Override
+			public void onDisconnect() {
+				// 让等待者立即切换到轮询
+				for (Signal signal : signals.asMap().values()) {
+					signal.wake();
 				}
-			} while (status == 0 && tryFailTime > System.currentTimeMillis());
+			}
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		watchdog.shutdownNow();
+	}
+
+	/**
+	 * 获得锁，租约固定，到期自动释放
+	 *
+	 * @param key      锁名称
+	 * @param lockTime 租约(毫秒)
+	 * @param tryTime  最长等待时间(毫秒)
+	 * @return 是否拿到锁
+	 */
+	public boolean lock(String key, int lockTime, int tryTime) {
+		return acquire(key, lockTime, tryTime, false) != null;
+	}
+
+	/**
+	 * 获得锁，由看门狗续期，直到 releaseLock
+	 *
+	 * @param key     锁名称
+	 * @param tryTime 最长等待时间(毫秒)
+	 * @return 是否拿到锁
+	 */
+	public boolean lock(String key, int tryTime) {
+		return acquire(key, WATCHDOG_LEASE_MILLIS, tryTime, true) != null;
+	}
+
+	/**
+	 * 获得锁并返回令牌，由看门狗续期，直到 unlock
+	 *
+	 * @param key       锁名称
+	 * @param waitMillis 最长等待时间(毫秒)
+	 * @return 令牌，没拿到锁返回null
+	 */
+	public String tryLock(String key, long waitMillis) {
+		return acquire(key, WATCHDOG_LEASE_MILLIS, waitMillis, true);
+	}
 
-			if (lockStatus) {
-				redisClient.expire(key, lockTime / 1000);
-				logger.info("lock key:{} success!", key);
+	/**
+	 * 获得锁并返回令牌，租约固定，到期自动释放
+	 *
+	 * @param key         锁名称
+	 * @param leaseMillis 租约(毫秒)
+	 * @param waitMillis  最长等待时间(毫秒)
+	 * @return 令牌，没拿到锁返回null
+	 */
+	public String tryLock(String key, long leaseMillis, long waitMillis) {
+		return acquire(key, leaseMillis, waitMillis, false);
+	}
+
+	/**
+	 * 用令牌解锁，锁已过期或被他人持有时不做任何事
+	 *
+	 * @param key   锁名称
+	 * @param token tryLock返回的令牌
+	 * @return 是否解锁成功
+	 */
+	public boolean unlock(String key, String token) {
+		String lockKey = lockKey(key);
+		stopRenewal(lockKey, token);
+		try {
+			Long released = unlockScript.execute(Collections.singletonList(lockKey),
+					Arrays.asList(token, RELEASE_CHANNEL));
+			if (released != null && released == 1) {
+				wake(lockKey);
+				logger.info("release lock key:{} success!", lockKey);
+				return true;
 			}
+			logger.info("release lock key:{} failed!", lockKey);
 		} catch (Exception e) {
-			logger.error("redis lock key:{} failed! reids cache exception: ", key, e);
+			logger.error("redis release key:{} failed! reids cache exception: ", lockKey, e);
 		}
-
-		return lockStatus;
+		return false;
 	}
 
 	/**
-	 * 解锁
-	 * 
-	 * @param key
+	 * 解锁本进程持有的锁
+	 *
+	 * @param key 锁名称
 	 */
 	public void releaseLock(String key) {
-		key = String.format("%s_%s", LOCK_PREFIX, key);
+		String token = tokens.get(lockKey(key));
+		if (token == null) {
+			logger.info("release lock key:{} failed! not held by this process", lockKey(key));
+			return;
+		}
+		unlock(key, token);
+	}
+
+	/**
+	 * 本进程是否持有该锁，固定租约的锁到期后不再算持有
+	 *
+	 * @param key 锁名称
+	 * @return 是否持有
+	 */
+	public boolean isHeld(String key) {
+		return tokens.containsKey(lockKey(key));
+	}
+
+	private String acquire(String key, long leaseMillis, long waitMillis, boolean renew) {
+		if (leaseMillis <= 0) {
+			throw new IllegalArgumentException("lease must be positive: " + leaseMillis);
+		}
+		String lockKey = lockKey(key);
+		String token = UUID.randomUUID().toString();
+		List<String> keys = Collections.singletonList(lockKey);
+		List<String> args = Arrays.asList(token, Long.toString(leaseMillis));
+		long deadline = System.currentTimeMillis() + waitMillis;
 		try {
-			long deletedCount = redisClient.del(key);
-			if (deletedCount == 1) {
-				logger.info("release lock key:{} success!", key);
-			} else {
-				logger.info("release lock key:{} failed!", key);
+			// 持有强引用，等待期间信号不会被回收
+			Signal signal = signals.get(lockKey, Signal::new);
+			while (true) {
+				long sequence = signal.sequence();
+				List<?> reply = lockScript.execute(keys, args);
+				if ((Long) reply.get(0) == 1) {
+					held(lockKey, token, leaseMillis, renew);
+					logger.info("lock key:{} success!", lockKey);
+					return token;
+				}
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return null;
+				}
+				long pttl = (Long) reply.get(1);
+				long wait = Math.min(remaining, pttl > 0 ? pttl : POLL_MILLIS);
+				if (!redisSubscriber.isSubscribed(RELEASE_CHANNEL)) {
+					wait = Math.min(wait, POLL_MILLIS);
+				}
+				signal.await(sequence, wait);
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} catch (Exception e) {
-			logger.error("redis release key:{} failed! reids cache exception: ", key, e);
+			logger.error("redis lock key:{} failed! reids cache exception: ", lockKey, e);
+		}
+		return null;
+	}
+
+	private void held(String lockKey, String token, long leaseMillis, boolean renew) {
+		tokens.put(lockKey, token);
+		if (!renew) {
+			// 不解锁时锁在redis端到期，本地令牌也随之移除，否则tokens只增不减
+			ScheduledFuture<?> expiry = watchdog.schedule(() -> stopRenewal(lockKey, token), leaseMillis,
+					TimeUnit.MILLISECONDS);
+			renewals.put(token, expiry);
+			if (expiry.isDone()) {
+				renewals.remove(token);
+			}
+			return;
+		}
+		long period = Math.max(1, leaseMillis / 3);
+		List<String> keys = Collections.singletonList(lockKey);
+		List<String> args = Arrays.asList(token, Long.toString(leaseMillis));
+		renewals.put(token, watchdog.scheduleAtFixedRate(() -> {
+			try {
+				Long renewed = renewScript.execute(keys, args);
+				if (renewed == null || renewed == 0) {
+					logger.warn("renew lock key:{} failed! lock lost", lockKey);
+					stopRenewal(lockKey, token);
+				}
+			} catch (Exception e) {
+				// 下一轮再试，连续失败超过租约后锁会丢失
+				logger.error("renew lock key:{} failed! reids cache exception: ", lockKey, e);
+			}
+		}, period, period, TimeUnit.MILLISECONDS));
+	}
+
+	private void stopRenewal(String lockKey, String token) {
+		tokens.remove(lockKey, token);
+		ScheduledFuture<?> renewal = renewals.remove(token);
+		if (renewal != null) {
+			renewal.cancel(false);
+		}
+	}
+
+	private void wake(String lockKey) {
+		Signal signal = signals.getIfPresent(lockKey);
+		if (signal != null) {
+			signal.wake();
+		}
+	}
+
+	/**
+	 * 锁key带上业务key的hash tag，集群模式下与业务key在同一节点
+	 */
+	private String lockKey(String key) {
+		return RedisKeys.related(LOCK_PREFIX + "_", key);
+	}
+
+	/**
+	 * 某个锁的等待信号，每次解锁序号加1
+	 */
+	private static final class Signal {
+
+		private long sequence;
+
+		private synchronized long sequence() {
+			return sequence;
+		}
+
+		/**
+		 * 等到序号变化或超时
+		 */
+		private synchronized void await(long expected, long millis) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + millis;
+			long remaining = millis;
+			while (sequence == expected && remaining > 0) {
+				wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+		}
+
+		private synchronized void wake() {
+			sequence++;
+			notifyAll();
 		}
 	}
 }
@@ -0,0 +1,118 @@
+package com.api.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 命令路由：找到key所在节点的连接并执行命令
+ * 单机模式所有key都在同一个连接池；集群模式按key的槽位定位节点，处理MOVED/ASK重定向
+ *
+ * @author zhaoxingwu
+ *
+ */
+public interface RedisRouter {
+
+	/**
+	 * 在key所在节点上执行命令
+	 *
+	 * @param key     键
+	 * @param command 命令
+	 * @return 命令结果
+	 */
+	<T> T execute(String key, Function<Jedis, T> command);
+
+	/**
+	 * 在key所在节点上执行命令
+	 *
+	 * @param key     键
+	 * @param command 命令
+	 * @return 命令结果
+	 */
+	<T> T execute(byte[] key, Function<Jedis, T> command);
+
+	/**
+	 * 执行多key命令，集群模式下所有key必须在同一槽位，没有key时在任一节点执行
+	 *
+	 * @param keys    键
+	 * @param command 命令
+	 * @return 命令结果
+	 */
+	<T> T execute(String[] keys, Function<Jedis, T> command);
+
+	/**
+	 * 执行只读命令，配置了从节点时发往从节点，ReadPreference要求读主时在主节点执行
+	 *
+	 * @param key     键
+	 * @param command 只读命令
+	 * @return 命令结果
+	 */
+	<T> T read(String key, Function<Jedis, T> command);
+
+	/**
+	 * 执行只读命令，配置了从节点时发往从节点
+	 *
+	 * @param key     键
+	 * @param command 只读命令
+	 * @return 命令结果
+	 */
+	<T> T read(byte[] key, Function<Jedis, T> command);
+
+	/**
+	 * 执行多key只读命令，配置了从节点时发往从节点
+	 *
+	 * @param keys    键
+	 * @param command 只读命令
+	 * @return 命令结果
+	 */
+	<T> T read(String[] keys, Function<Jedis, T> command);
+
+	/**
+	 * 选定执行一串只读命令的节点，如游标迭代的每一页都要发往同一节点，换节点后SCAN不再保证返回全部元素
+	 *
+	 * @param key 键
+	 * @return 配置了从节点时为选中的从节点，要求读主或没有可用从节点时为key所在主节点
+	 */
+	JedisPool readPool(String key);
+
+	/**
+	 * 在每个主节点上执行同一命令，如加载脚本
+	 *
+	 * @param command 命令
+	 * @return 每个节点的结果
+	 */
+	<T> List<T> executeOnMasters(Function<Jedis, T> command);
+
+	/**
+	 * 在多个节点上各自执行，集群模式下并行，全部结束后有失败的抛出第一个异常
+	 *
+	 * @param commands 节点连接池 -> 在该节点连接上的执行
+	 */
+	void executeOnPools(Map<JedisPool, Consumer<Jedis>> commands);
+
+	/**
+	 * key所在节点的连接池，用于把key按节点分组
+	 *
+	 * @param key 键，为null时返回任一主节点
+	 * @return 连接池
+	 */
+	JedisPool poolOf(String key);
+
+	/**
+	 * 所有主节点的连接池
+	 *
+	 * @return 连接池
+	 */
+	List<JedisPool> masters();
+
+	/**
+	 * 是否集群模式
+	 *
+	 * @return 集群模式返回true
+	 */
+	boolean isCluster();
+}
@@ -0,0 +1,137 @@
+package com.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 已注册的lua脚本，通过EVALSHA调用
+ * redis中脚本缓存丢失（重启、SCRIPT FLUSH、切主）时自动重新加载后再执行
+ *
+ * @author zhaoxingwu
+ *
+ * @param <T> 脚本返回值类型
+ */
+public class RedisScript<T> {
+
+	private final String name;
+
+	private final String script;
+
+	private final String sha1;
+
+	private final Class<T> resultType;
+
+	private final RedisClient redisClient;
+
+	RedisScript(String name, String script, String sha1, Class<T> resultType, RedisClient redisClient) {
+		this.name = name;
+		this.script = script;
+		this.sha1 = sha1;
+		this.resultType = resultType;
+		this.redisClient = redisClient;
+	}
+
+	/**
+	 * 执行脚本
+	 *
+	 * @param keys 键
+	 * @param args 参数
+	 * @return 脚本返回值
+	 */
+	public T execute(List<String> keys, List<String> args) {
+		Object result;
+		try {
+			result = redisClient.evalsha(sha1, keys, args);
+		} catch (JedisNoScriptException e) {
+			redisClient.scriptLoad(script);
+			result = redisClient.evalsha(sha1, keys, args);
+		}
+		return resultType.cast(result);
+	}
+
+	/**
+	 * 在一次往返内对多组键/参数执行脚本，脚本中途丢失时只对未执行的组重新加载后重试
+	 * 返回值中的字符串以String表示，整数以Long表示
+	 *
+	 * @param keysList 每组的键
+	 * @param argsList 每组的参数，与keysList一一对应
+	 * @return 每组的返回值，顺序与入参一致
+	 */
+	public List<T> executeBatch(List<List<String>> keysList, List<List<String>> argsList) {
+		List<T> values = new ArrayList<T>(Collections.<T>nCopies(keysList.size(), null));
+		List<Integer> pending = new ArrayList<Integer>(keysList.size());
+		for (int i = 0; i < keysList.size(); i++) {
+			pending.add(i);
+		}
+		byte[] sha1Bytes = SafeEncoder.encode(sha1);
+		boolean reloaded = false;
+		while (!pending.isEmpty()) {
+			RedisBatch batch = redisClient.batch();
+			List<RedisBatch.Result<Object>> results = new ArrayList<RedisBatch.Result<Object>>(pending.size());
+			for (Integer i : pending) {
+				List<String> rawKeys = keysList.get(i);
+				List<byte[]> keys = encode(rawKeys);
+				List<byte[]> args = encode(argsList.get(i));
+				String key = rawKeys.isEmpty() ? null : rawKeys.get(0);
+				results.add(batch.add(key, p -> p.evalsha(sha1Bytes, keys, args)));
+			}
+			batch.execute();
+			List<Integer> missing = new ArrayList<Integer>();
+			for (int j = 0; j < results.size(); j++) {
+				try {
+					values.set(pending.get(j), resultType.cast(decode(results.get(j).get())));
+				} catch (JedisNoScriptException e) {
+					if (reloaded) {
+						throw e;
+					}
+					missing.add(pending.get(j));
+				}
+			}
+			if (!missing.isEmpty()) {
+				redisClient.scriptLoad(script);
+				reloaded = true;
+			}
+			pending = missing;
+		}
+		return values;
+	}
+
+	private static List<byte[]> encode(List<String> values) {
+		List<byte[]> encoded = new ArrayList<byte[]>(values.size());
+		for (String value : values) {
+			encoded.add(SafeEncoder.encode(value));
+		}
+		return encoded;
+	}
+
+	private static Object decode(Object value) {
+		if (value instanceof byte[]) {
+			return SafeEncoder.encode((byte[]) value);
+		}
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			List<Object> decoded = new ArrayList<Object>(list.size());
+			for (Object item : list) {
+				decoded.add(decode(item));
+			}
+			return decoded;
+		}
+		return value;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getScript() {
+		return script;
+	}
+
+	public String getSha1() {
+		return sha1;
+	}
+}
@@ -0,0 +1,100 @@
+package com.api.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * lua脚本注册表
+ * 启动时一次性读取classpath下lua目录中的所有脚本并SCRIPT LOAD到redis，之后按文件名（不含.lua）取用
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class RedisScripts {
+
+	private static final String SCRIPT_LOCATION = "classpath*:lua/*.lua";
+
+	private static final String SCRIPT_SUFFIX = ".lua";
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	private RedisClient redisClient;
+
+	private Map<String, String> scripts = Collections.emptyMap();
+
+	private Map<String, String> sha1s = Collections.emptyMap();
+
+	@PostConstruct
+	public void init() throws IOException {
+		Map<String, String> loaded = new HashMap<String, String>();
+		Map<String, String> digests = new HashMap<String, String>();
+		Resource[] resources = new PathMatchingResourcePatternResolver().getResources(SCRIPT_LOCATION);
+		for (Resource resource : resources) {
+			String filename = resource.getFilename();
+			String name = filename.substring(0, filename.length() - SCRIPT_SUFFIX.length());
+			try (InputStream inputStream = resource.getInputStream()) {
+				String script = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+				loaded.put(name, script);
+				digests.put(name, sha1Hex(script));
+			}
+		}
+		scripts = loaded;
+		sha1s = digests;
+
+		// redis不可用时不阻止启动，第一次调用时会自动加载
+		for (Map.Entry<String, String> entry : scripts.entrySet()) {
+			try {
+				redisClient.scriptLoad(entry.getValue());
+				logger.info("load lua script:{} success!", entry.getKey());
+			} catch (Exception e) {
+				logger.error("load lua script:{} failed! reids cache exception: ", entry.getKey(), e);
+			}
+		}
+	}
+
+	/**
+	 * 获取脚本
+	 *
+	 * @param name       脚本名，即文件名去掉.lua
+	 * @param resultType 脚本返回值类型，整数为Long，字符串为String，数组为List
+	 * @return 脚本
+	 */
+	public <T> RedisScript<T> get(String name, Class<T> resultType) {
+		String script = scripts.get(name);
+		if (script == null) {
+			throw new IllegalArgumentException("lua script not found: " + name);
+		}
+		return new RedisScript<T>(name, script, sha1s.get(name), resultType, redisClient);
+	}
+
+	private static String sha1Hex(String script) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package com.api.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * 共享的pub/sub订阅连接
+ * 订阅会独占连接，所以不从连接池借，而是单独维护一个连接和一个后台线程，断线后自动重连并重新订阅所有频道
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class RedisSubscriber {
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final String host;
+
+	private final int port;
+
+	private final String password;
+
+	private final Map<String, List<Listener>> listeners = new ConcurrentHashMap<String, List<Listener>>();
+
+	/**
+	 * 当前连接上已发出SUBSCRIBE的频道
+	 */
+	private final Set<String> requested = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * 当前连接上已确认订阅的频道
+	 */
+	private final Set<String> confirmed = ConcurrentHashMap.newKeySet();
+
+	private final Dispatcher dispatcher = new Dispatcher();
+
+	private volatile boolean running = true;
+
+	private Thread subscribeThread;
+
+	public RedisSubscriber(String host, int port, String password) {
+		this.host = host;
+		this.port = port;
+		this.password = password;
+	}
+
+	/**
+	 * 订阅频道，第一次订阅时建立连接
+	 *
+	 * @param channel  频道
+	 * @param listener 监听器，在订阅线程中回调，不能阻塞
+	 */
+	public synchronized void subscribe(String channel, Listener listener) {
+		listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<Listener>()).add(listener);
+		if (subscribeThread == null) {
+			subscribeThread = new Thread(this::run, "redis-subscriber");
+			subscribeThread.setDaemon(true);
+			subscribeThread.start();
+		} else if (confirmed.contains(channel)) {
+			listener.onSubscribe();
+		} else {
+			subscribeMissing();
+		}
+	}
+
+	/**
+	 * 连接已建立时，为后加入的频道补发SUBSCRIBE
+	 */
+	private synchronized void subscribeMissing() {
+		if (!dispatcher.isSubscribed()) {
+			return;
+		}
+		for (String channel : listeners.keySet()) {
+			if (requested.add(channel)) {
+				dispatcher.subscribe(channel);
+			}
+		}
+	}
+
+	/**
+	 * 是否已确认订阅该频道
+	 *
+	 * @param channel 频道
+	 * @return 是否已订阅
+	 */
+	public boolean isSubscribed(String channel) {
+		return confirmed.contains(channel);
+	}
+
+	private void run() {
+		while (running) {
+			try (Jedis jedis = new Jedis(host, port, 2000, 0)) {
+				if (StringUtils.isNotEmpty(password)) {
+					jedis.auth(password);
+				}
+				String[] channels;
+				synchronized (this) {
+					requested.clear();
+					requested.addAll(listeners.keySet());
+					channels = requested.toArray(new String[0]);
+				}
+				jedis.subscribe(dispatcher, channels);
+			} catch (Exception e) {
+				if (running) {
+					logger.error("redis subscribe channels:{} failed! reids cache exception: ", listeners.keySet(), e);
+				}
+			}
+			confirmed.clear();
+			for (List<Listener> channelListeners : listeners.values()) {
+				for (Listener listener : channelListeners) {
+					listener.onDisconnect();
+				}
+			}
+			if (running) {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	@PreDestroy
+	public void close() {
+		running = false;
+		if (dispatcher.isSubscribed()) {
+			dispatcher.unsubscribe();
+		}
+		if (subscribeThread != null) {
+			subscribeThread.interrupt();
+		}
+	}
+
+	/**
+	 * 频道监听器
+	 */
+	public interface Listener {
+
+		/**
+		 * 收到消息
+		 *
+		 * @param message 消息内容
+		 */
+		void onMessage(String message);
+
+		/**
+		 * 订阅成功，包括断线重连后的重新订阅
+		 */
+		default void onSubscribe() {
+		}
+
+		/**
+		 * 连接断开，断开期间的消息会丢失
+		 */
+		default void onDisconnect() {
+		}
+	}
+
+	private class Dispatcher extends JedisPubSub {
+
+		@Override
+		public void onSubscribe(String channel, int subscribedChannels) {
+			logger.info("redis subscribe channel:{} success!", channel);
+			confirmed.add(channel);
+			subscribeMissing();
+			List<Listener> channelListeners = listeners.get(channel);
+			if (channelListeners != null) {
+				for (Listener listener : channelListeners) {
+					listener.onSubscribe();
+				}
+			}
+		}
+
+		@Override
+		public void onMessage(String channel, String message) {
+			List<Listener> channelListeners = listeners.get(channel);
+			if (channelListeners != null) {
+				for (Listener listener : channelListeners) {
+					listener.onMessage(message);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package com.api.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * 主节点的从节点集合，只读命令从这里选一个从节点执行
+ * 选择未完成请求最少的从节点，相同时选平均耗时低的，起点轮转避免空闲时总选第一个；
+ * 后台定时检查复制状态，与主节点断开或复制偏移量落后超过maxLagBytes的从节点暂不使用，
+ * 执行时连不上的从节点在下次检查前也不再使用。没有可用从节点时读主节点
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class ReplicaSet {
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * 平均耗时中新样本的权重
+	 */
+	private static final double LATENCY_WEIGHT = 0.2;
+
+	private final JedisPool primary;
+
+	private final List<Replica> replicas;
+
+	private final long maxLagBytes;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final ScheduledExecutorService checker;
+
+	/**
+	 * @param primary     主节点连接池，用于读取主节点的复制偏移量
+	 * @param replicas    从节点连接池
+	 * @param names       从节点名称(host:port)，与replicas一一对应
+	 * @param maxLagBytes 允许落后主节点的复制字节数
+	 * @param checkMillis 检查复制状态的间隔(毫秒)
+	 */
+	public ReplicaSet(JedisPool primary, List<JedisPool> replicas, List<String> names, long maxLagBytes,
+			long checkMillis) {
+		this.primary = primary;
+		this.replicas = new ArrayList<Replica>(replicas.size());
+		for (int i = 0; i < replicas.size(); i++) {
+			this.replicas.add(new Replica(names.get(i), replicas.get(i)));
+		}
+		this.maxLagBytes = maxLagBytes;
+		// 检查之前从节点都不可用，读主节点
+		this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-replica-checker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		checker.scheduleWithFixedDelay(this::check, 0, checkMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void close() {
+		checker.shutdownNow();
+		for (Replica replica : replicas) {
+			replica.pool.close();
+		}
+	}
+
+	/**
+	 * 在选中的从节点上执行只读命令，没有可用从节点或从节点连不上时在主节点执行
+	 *
+	 * @param command 命令
+	 * @return 命令结果
+	 */
+	public <T> T execute(Function<Jedis, T> command) {
+		Replica replica = select();
+		if (replica != null) {
+			try {
+				return replica.execute(command);
+			} catch (JedisConnectionException e) {
+				replica.available = false;
+				logger.warn("redis replica {} unavailable, read from primary: {}", replica.name, e.getMessage());
+			}
+		}
+		try (Jedis jedis = primary.getResource()) {
+			return command.apply(jedis);
+		}
+	}
+
+	/**
+	 * 选一个从节点的连接池，用于必须固定在同一节点上的多次读取，没有可用从节点时为主节点
+	 *
+	 * @return 连接池
+	 */
+	public JedisPool pool() {
+		Replica replica = select();
+		return replica == null ? primary : replica.pool;
+	}
+
+	/**
+	 * 各从节点当前状态
+	 *
+	 * @return 从节点状态
+	 */
+	public List<Replica> getReplicas() {
+		return replicas;
+	}
+
+	private Replica select() {
+		int size = replicas.size();
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+		Replica best = null;
+		for (int i = 0; i < size; i++) {
+			Replica replica = replicas.get((start + i) % size);
+			if (!replica.available) {
+				continue;
+			}
+			if (best == null || replica.outstanding.get() < best.outstanding.get()
+					|| (replica.outstanding.get() == best.outstanding.get() && replica.latency < best.latency)) {
+				best = replica;
+			}
+		}
+		return best;
+	}
+
+	private void check() {
+		long primaryOffset;
+		try (Jedis jedis = primary.getResource()) {
+			primaryOffset = offset(jedis.info("replication"), "master_repl_offset");
+		} catch (Exception e) {
+			// 主节点不可用时保持现状，读请求照常发往从节点
+			logger.warn("redis replica check read primary offset failed! reids cache exception: ", e);
+			return;
+		}
+		for (Replica replica : replicas) {
+			boolean available = false;
+			try (Jedis jedis = replica.pool.getResource()) {
+				String info = jedis.info("replication");
+				if (info.contains("master_link_status:up")) {
+					replica.lagBytes = Math.max(0, primaryOffset - offset(info, "slave_repl_offset"));
+					available = replica.lagBytes <= maxLagBytes;
+				}
+			} catch (Exception e) {
+				logger.warn("redis replica {} check failed: {}", replica.name, e.getMessage());
+			}
+			if (replica.available != available) {
+				logger.info("redis replica {} available:{} lagBytes:{}", replica.name, available, replica.lagBytes);
+			}
+			replica.available = available;
+		}
+	}
+
+	private static long offset(String info, String field) {
+		int start = info.indexOf(field + ":");
+		if (start < 0) {
+			return 0;
+		}
+		start += field.length() + 1;
+		int end = start;
+		while (end < info.length() && Character.isDigit(info.charAt(end))) {
+			end++;
+		}
+		return Long.parseLong(info.substring(start, end));
+	}
+
+	/**
+	 * 单个从节点
+	 */
+	public static final class Replica {
+
+		private final String name;
+
+		private final JedisPool pool;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		/**
+		 * 平均耗时(微秒)
+		 */
+		private volatile double latency;
+
+		private volatile long lagBytes;
+
+		private volatile boolean available;
+
+		private Replica(String name, JedisPool pool) {
+			this.name = name;
+			this.pool = pool;
+		}
+
+		private <T> T execute(Function<Jedis, T> command) {
+			outstanding.incrementAndGet();
+			long start = System.nanoTime();
+			try (Jedis jedis = pool.getResource()) {
+				return command.apply(jedis);
+			} finally {
+				outstanding.decrementAndGet();
+				double sample = (System.nanoTime() - start) / 1000.0;
+				latency = latency == 0 ? sample : latency + (sample - latency) * LATENCY_WEIGHT;
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getOutstanding() {
+			return outstanding.get();
+		}
+
+		public double getLatency() {
+			return latency;
+		}
+
+		public long getLagBytes() {
+			return lagBytes;
+		}
+
+		public boolean isAvailable() {
+			return available;
+		}
+	}
+}
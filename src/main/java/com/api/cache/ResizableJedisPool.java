@@ -0,0 +1,58 @@
+package com.api.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 运行中可以调整大小的连接池，由 {@link JedisPoolManager} 根据借连接的等待和使用率调整
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class ResizableJedisPool extends JedisPool {
+
+	public ResizableJedisPool(GenericObjectPoolConfig config, String host, int port, int timeout, String password) {
+		super(config, host, port, timeout, StringUtils.isEmpty(password) ? null : password);
+	}
+
+	public int getMaxTotal() {
+		return internalPool.getMaxTotal();
+	}
+
+	public void setMaxTotal(int maxTotal) {
+		internalPool.setMaxTotal(maxTotal);
+	}
+
+	public int getMaxIdle() {
+		return internalPool.getMaxIdle();
+	}
+
+	public void setMaxIdle(int maxIdle) {
+		internalPool.setMaxIdle(maxIdle);
+	}
+
+	public int getMinIdle() {
+		return internalPool.getMinIdle();
+	}
+
+	public void setMinIdle(int minIdle) {
+		internalPool.setMinIdle(minIdle);
+	}
+
+	public long getMaxWaitMillis() {
+		return internalPool.getMaxWaitMillis();
+	}
+
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		internalPool.setMaxWaitMillis(maxWaitMillis);
+	}
+
+	/**
+	 * @return 自创建以来借出的次数
+	 */
+	public long getBorrowedCount() {
+		return internalPool.getBorrowedCount();
+	}
+}
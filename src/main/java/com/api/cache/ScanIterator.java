@@ -0,0 +1,135 @@
+package com.api.cache;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 基于游标的惰性迭代（SCAN/HSCAN/SSCAN/ZSCAN）
+ * 第一次hasNext时才取第一页；每取到一页立即在后台预取下一页，内存中最多两页，与集合大小无关。
+ * 每页单独借还连接，迭代过程中不占用连接。
+ * 多个来源（集群模式下的每个主节点）依次迭代。
+ * 遵循SCAN的语义：迭代期间一直存在的元素一定会返回，但可能重复
+ *
+ * @author zhaoxingwu
+ *
+ */
+final class ScanIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private static final String START = "0";
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	/**
+	 * 预取下一页的线程，每个迭代最多同时预取一页
+	 */
+	private static final ExecutorService PREFETCH = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "redis-scan-prefetch-" + THREADS.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final int sources;
+
+	private final BiFunction<Integer, String, ScanResult<T>> fetch;
+
+	private int source;
+
+	private boolean started;
+
+	private Iterator<T> page = Collections.<T>emptyIterator();
+
+	private CompletableFuture<ScanResult<T>> next;
+
+	/**
+	 * @param sources 来源数量
+	 * @param fetch   (来源序号, 游标) -> 一页结果
+	 */
+	ScanIterator(int sources, BiFunction<Integer, String, ScanResult<T>> fetch) {
+		this.sources = sources;
+		this.fetch = fetch;
+	}
+
+	/**
+	 * 包装成Stream，关闭Stream时取消预取
+	 *
+	 * @return 顺序流
+	 */
+	Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!started) {
+			started = true;
+			next = prefetch(START);
+		}
+		while (!page.hasNext()) {
+			if (next == null) {
+				return false;
+			}
+			ScanResult<T> result = join(next);
+			page = result.getResult().iterator();
+			advance(result.getStringCursor());
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	@Override
+	public void close() {
+		if (next != null) {
+			next.cancel(false);
+			next = null;
+		}
+		page = Collections.<T>emptyIterator();
+	}
+
+	private void advance(String cursor) {
+		if (!START.equals(cursor)) {
+			next = prefetch(cursor);
+		} else if (++source < sources) {
+			next = prefetch(START);
+		} else {
+			next = null;
+		}
+	}
+
+	private CompletableFuture<ScanResult<T>> prefetch(String cursor) {
+		int current = source;
+		return CompletableFuture.supplyAsync(() -> fetch.apply(current, cursor), PREFETCH);
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new JedisException(e.getCause());
+		}
+	}
+}
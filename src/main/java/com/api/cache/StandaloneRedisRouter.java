@@ -0,0 +1,129 @@
+package com.api.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 单机模式：写命令都从主节点的连接池借连接执行，配置了从节点时只读命令发往从节点
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class StandaloneRedisRouter implements RedisRouter {
+
+	private final JedisPool jedisPool;
+
+	private final ReplicaSet replicas;
+
+	public StandaloneRedisRouter(JedisPool jedisPool) {
+		this(jedisPool, null);
+	}
+
+	/**
+	 * @param jedisPool 主节点连接池
+	 * @param replicas  从节点，没有时传null
+	 */
+	public StandaloneRedisRouter(JedisPool jedisPool, ReplicaSet replicas) {
+		this.jedisPool = jedisPool;
+		this.replicas = replicas;
+	}
+
+	@PreDestroy
+	public void close() {
+		if (replicas != null) {
+			replicas.close();
+		}
+	}
+
+	@Override
+	public <T> T execute(String key, Function<Jedis, T> command) {
+		try (Jedis jedis = jedisPool.getResource()) {
+			return command.apply(jedis);
+		}
+	}
+
+	@Override
+	public <T> T execute(byte[] key, Function<Jedis, T> command) {
+		try (Jedis jedis = jedisPool.getResource()) {
+			return command.apply(jedis);
+		}
+	}
+
+	@Override
+	public <T> T execute(String[] keys, Function<Jedis, T> command) {
+		try (Jedis jedis = jedisPool.getResource()) {
+			return command.apply(jedis);
+		}
+	}
+
+	@Override
+	public <T> T read(String key, Function<Jedis, T> command) {
+		if (replicas == null || ReadPreference.isPrimary()) {
+			return execute(key, command);
+		}
+		return replicas.execute(command);
+	}
+
+	@Override
+	public <T> T read(byte[] key, Function<Jedis, T> command) {
+		if (replicas == null || ReadPreference.isPrimary()) {
+			return execute(key, command);
+		}
+		return replicas.execute(command);
+	}
+
+	@Override
+	public <T> T read(String[] keys, Function<Jedis, T> command) {
+		if (replicas == null || ReadPreference.isPrimary()) {
+			return execute(keys, command);
+		}
+		return replicas.execute(command);
+	}
+
+	@Override
+	public JedisPool readPool(String key) {
+		if (replicas == null || ReadPreference.isPrimary()) {
+			return jedisPool;
+		}
+		return replicas.pool();
+	}
+
+	@Override
+	public <T> List<T> executeOnMasters(Function<Jedis, T> command) {
+		try (Jedis jedis = jedisPool.getResource()) {
+			return Collections.singletonList(command.apply(jedis));
+		}
+	}
+
+	@Override
+	public void executeOnPools(Map<JedisPool, Consumer<Jedis>> commands) {
+		for (Map.Entry<JedisPool, Consumer<Jedis>> entry : commands.entrySet()) {
+			try (Jedis jedis = entry.getKey().getResource()) {
+				entry.getValue().accept(jedis);
+			}
+		}
+	}
+
+	@Override
+	public JedisPool poolOf(String key) {
+		return jedisPool;
+	}
+
+	@Override
+	public List<JedisPool> masters() {
+		return Collections.singletonList(jedisPool);
+	}
+
+	@Override
+	public boolean isCluster() {
+		return false;
+	}
+}
@@ -0,0 +1,48 @@
+package com.api.cache;
+
+import java.util.Map;
+
+/**
+ * 流中的一条消息
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class StreamEntry {
+
+	private final String id;
+
+	private final Map<String, String> fields;
+
+	public StreamEntry(String id, Map<String, String> fields) {
+		this.id = id;
+		this.fields = fields;
+	}
+
+	/**
+	 * @return 消息id，如 1526919030474-0
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return 字段，消息已被裁剪或删除而仍在待确认列表中时为null
+	 */
+	public Map<String, String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * @param name 字段名
+	 * @return 字段值，不存在时为null
+	 */
+	public String get(String name) {
+		return fields == null ? null : fields.get(name);
+	}
+
+	@Override
+	public String toString() {
+		return "StreamEntry [id=" + id + ", fields=" + fields + "]";
+	}
+}
@@ -0,0 +1,125 @@
+package com.api.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.codec.Codec;
+import com.api.codec.Codecs;
+import com.api.metrics.RedisMetrics;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 对象读写，值经Codec编码后以二进制存入redis
+ * 不指定Codec时按调用方传入的类型使用 {@link Codecs#of(Class)}：能用紧凑二进制编码的类型用BinaryCodec，否则用fastjson；
+ * 写入和读取须传入同一个类型，编码结果中的结构指纹与读取的类型不同时按未命中处理。
+ * 编码后大小按类型记入RedisMetrics
+ *
+ * <pre>
+ * typedRedisClient.setex("profile:" + id, 600, profile, Profile.class);
+ * Profile profile = typedRedisClient.get("profile:" + id, Profile.class);
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class TypedRedisClient {
+
+	@Autowired
+	private RedisClient redisClient;
+
+	@Autowired(required = false)
+	private RedisMetrics redisMetrics;
+
+	public <T> T get(String key, Class<T> type) {
+		return get(key, Codecs.of(type));
+	}
+
+	/**
+	 * 读取对象
+	 *
+	 * @param key   键
+	 * @param codec 编解码
+	 * @return 对象，不存在或数据结构已变化时返回null
+	 */
+	public <T> T get(String key, Codec<T> codec) {
+		byte[] bytes = redisClient.get(SafeEncoder.encode(key));
+		return bytes == null ? null : codec.decode(bytes);
+	}
+
+	public <T> String set(String key, T value, Class<T> type) {
+		return set(key, value, Codecs.of(type));
+	}
+
+	/**
+	 * 写入对象
+	 *
+	 * @param key   键
+	 * @param value 对象，不能为null
+	 * @param codec 编解码
+	 * @return 成功返回 OK
+	 */
+	public <T> String set(String key, T value, Codec<T> codec) {
+		return redisClient.set(key, encode(value, codec));
+	}
+
+	public <T> String setex(String key, int seconds, T value, Class<T> type) {
+		return setex(key, seconds, value, Codecs.of(type));
+	}
+
+	/**
+	 * 写入对象并设置过期时间
+	 *
+	 * @param key     键
+	 * @param seconds 过期时间（秒）
+	 * @param value   对象，不能为null
+	 * @param codec   编解码
+	 * @return 成功返回 OK
+	 */
+	public <T> String setex(String key, int seconds, T value, Codec<T> codec) {
+		return redisClient.setex(key, seconds, encode(value, codec));
+	}
+
+	public <T> T hget(String key, String field, Class<T> type) {
+		return hget(key, field, Codecs.of(type));
+	}
+
+	/**
+	 * 读取哈希字段中的对象
+	 *
+	 * @param key   键
+	 * @param field 列
+	 * @param codec 编解码
+	 * @return 对象，不存在或数据结构已变化时返回null
+	 */
+	public <T> T hget(String key, String field, Codec<T> codec) {
+		byte[] bytes = redisClient.hget(SafeEncoder.encode(key), SafeEncoder.encode(field));
+		return bytes == null ? null : codec.decode(bytes);
+	}
+
+	public <T> Long hset(String key, String field, T value, Class<T> type) {
+		return hset(key, field, value, Codecs.of(type));
+	}
+
+	/**
+	 * 把对象写入哈希字段
+	 *
+	 * @param key   键
+	 * @param field 列
+	 * @param value 对象，不能为null
+	 * @param codec 编解码
+	 * @return 新建字段返回 1，覆盖旧值返回 0
+	 */
+	public <T> Long hset(String key, String field, T value, Codec<T> codec) {
+		return redisClient.hset(key, field, encode(value, codec));
+	}
+
+	private <T> byte[] encode(T value, Codec<T> codec) {
+		byte[] bytes = codec.encode(value);
+		if (redisMetrics != null) {
+			redisMetrics.recordEncoded(value.getClass().getName(), bytes.length);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,397 @@
+package com.api.codec;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 紧凑二进制编解码，按字段名排序依次写出字段值，不写字段名
+ * 支持基本类型及包装类、String、枚举、Date、BigDecimal、byte[]，以及由它们组成的List/Set/Map和嵌套对象（需要无参构造）。
+ * 编码结果以格式字节和4字节结构指纹开头，类的字段变化后指纹不同，旧数据解码为null，按缓存未命中处理。
+ * 按声明的类型编码，值或字段的实际类型是声明类型的子类时编码抛出IllegalArgumentException，
+ * 不会静默丢弃子类的字段；多态的值请使用JsonCodec。
+ * 编码直接写入线程内复用的缓冲，只在最后拷贝一次
+ *
+ * 通过 {@link Codecs#of(Class)} 获取，不支持的类型会自动使用JsonCodec
+ *
+ * @author zhaoxingwu
+ *
+ * @param <T> 值类型
+ */
+public class BinaryCodec<T> implements Codec<T> {
+
+	static final byte FORMAT = 1;
+
+	private final Class<T> type;
+
+	private final ValueCodec root;
+
+	private final int fingerprint;
+
+	/**
+	 * @param type 值类型
+	 * @throws IllegalArgumentException 类型或其字段不支持
+	 */
+	public BinaryCodec(Class<T> type) {
+		this.type = type;
+		StringBuilder descriptor = new StringBuilder();
+		this.root = valueCodec(type, new HashMap<Class<?>, ObjectCodec>(), descriptor);
+		this.fingerprint = descriptor.toString().hashCode();
+	}
+
+	@Override
+	public byte[] encode(T value) {
+		ByteWriter writer = ByteWriter.get();
+		writer.write(FORMAT);
+		writer.writeFixedInt(fingerprint);
+		root.write(writer, value);
+		return writer.toByteArray();
+	}
+
+	@Override
+	public T decode(byte[] bytes) {
+		if (bytes.length < 5 || bytes[0] != FORMAT) {
+			return null;
+		}
+		ByteReader reader = new ByteReader(bytes, 1);
+		if (reader.readFixedInt() != fingerprint) {
+			return null;
+		}
+		return type.cast(root.read(reader));
+	}
+
+	/**
+	 * 非null值的编解码
+	 */
+	private interface ValueCodec {
+
+		void write(ByteWriter writer, Object value);
+
+		Object read(ByteReader reader);
+	}
+
+	private static ValueCodec valueCodec(Type type, Map<Class<?>, ObjectCodec> objects, StringBuilder descriptor) {
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) type;
+			Class<?> raw = (Class<?>) parameterized.getRawType();
+			Type[] arguments = parameterized.getActualTypeArguments();
+			if (Collection.class.isAssignableFrom(raw)) {
+				descriptor.append(raw.getSimpleName()).append('<');
+				ValueCodec element = nullable(valueCodec(arguments[0], objects, descriptor));
+				descriptor.append('>');
+				return new CollectionCodec(collectionFactory(raw), element);
+			}
+			if (Map.class.isAssignableFrom(raw)) {
+				descriptor.append(raw.getSimpleName()).append('<');
+				ValueCodec key = nullable(valueCodec(arguments[0], objects, descriptor));
+				descriptor.append(',');
+				ValueCodec value = nullable(valueCodec(arguments[1], objects, descriptor));
+				descriptor.append('>');
+				return new MapCodec(mapFactory(raw), key, value);
+			}
+			throw new IllegalArgumentException("unsupported type: " + type);
+		}
+		if (!(type instanceof Class)) {
+			throw new IllegalArgumentException("unsupported type: " + type);
+		}
+		Class<?> clazz = (Class<?>) type;
+		ValueCodec scalar = scalarCodec(clazz);
+		if (scalar != null) {
+			descriptor.append(clazz.getSimpleName());
+			return scalar;
+		}
+		if (clazz.isEnum()) {
+			descriptor.append("enum");
+			return enumCodec(clazz);
+		}
+		if (clazz.isArray() || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())
+				|| clazz.getName().startsWith("java.")) {
+			throw new IllegalArgumentException("unsupported type: " + type);
+		}
+		descriptor.append(clazz.getName());
+		ObjectCodec codec = objects.get(clazz);
+		if (codec == null) {
+			// 先登记再解析字段，支持自引用的类型
+			codec = new ObjectCodec(clazz);
+			objects.put(clazz, codec);
+			descriptor.append('{');
+			codec.init(objects, descriptor);
+			descriptor.append('}');
+		}
+		return codec;
+	}
+
+	private static ValueCodec scalarCodec(Class<?> clazz) {
+		if (clazz == String.class) {
+			return codec((w, v) -> w.writeString((String) v), ByteReader::readString);
+		}
+		if (clazz == Integer.class || clazz == int.class) {
+			return codec((w, v) -> w.writeSignedLong((Integer) v), r -> (int) r.readSignedLong());
+		}
+		if (clazz == Long.class || clazz == long.class) {
+			return codec((w, v) -> w.writeSignedLong((Long) v), ByteReader::readSignedLong);
+		}
+		if (clazz == Double.class || clazz == double.class) {
+			return codec((w, v) -> w.writeFixedLong(Double.doubleToRawLongBits((Double) v)),
+					r -> Double.longBitsToDouble(r.readFixedLong()));
+		}
+		if (clazz == Float.class || clazz == float.class) {
+			return codec((w, v) -> w.writeFixedInt(Float.floatToRawIntBits((Float) v)),
+					r -> Float.intBitsToFloat(r.readFixedInt()));
+		}
+		if (clazz == Boolean.class || clazz == boolean.class) {
+			return codec((w, v) -> w.write((Boolean) v ? 1 : 0), r -> r.readByte() != 0);
+		}
+		if (clazz == Short.class || clazz == short.class) {
+			return codec((w, v) -> w.writeSignedLong((Short) v), r -> (short) r.readSignedLong());
+		}
+		if (clazz == Byte.class || clazz == byte.class) {
+			return codec((w, v) -> w.write((Byte) v), ByteReader::readByte);
+		}
+		if (clazz == Character.class || clazz == char.class) {
+			return codec((w, v) -> w.writeVarInt((Character) v), r -> (char) r.readVarInt());
+		}
+		if (clazz == Date.class) {
+			return codec((w, v) -> w.writeSignedLong(((Date) v).getTime()), r -> new Date(r.readSignedLong()));
+		}
+		if (clazz == BigDecimal.class) {
+			return codec((w, v) -> w.writeString(v.toString()), r -> new BigDecimal(r.readString()));
+		}
+		if (clazz == byte[].class) {
+			return codec((w, v) -> {
+				byte[] bytes = (byte[]) v;
+				w.writeVarInt(bytes.length);
+				w.write(bytes, 0, bytes.length);
+			}, r -> {
+				byte[] bytes = new byte[r.readVarInt()];
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = r.readByte();
+				}
+				return bytes;
+			});
+		}
+		return null;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ValueCodec enumCodec(Class<?> clazz) {
+		Class<? extends Enum> enumType = (Class<? extends Enum>) clazz;
+		return codec((w, v) -> w.writeString(((Enum<?>) v).name()), r -> Enum.valueOf(enumType, r.readString()));
+	}
+
+	private static ValueCodec codec(Writer writer, Reader reader) {
+		return new ValueCodec() {
+
+			@Override
+			public void write(ByteWriter w, Object value) {
+				writer.write(w, value);
+			}
+
+			@Override
+			public Object read(ByteReader r) {
+				return reader.read(r);
+			}
+		};
+	}
+
+	/**
+	 * 前加一个字节标记是否为null
+	 */
+	private static ValueCodec nullable(ValueCodec codec) {
+		return codec((w, v) -> {
+			if (v == null) {
+				w.write(0);
+			} else {
+				w.write(1);
+				codec.write(w, v);
+			}
+		}, r -> r.readByte() == 0 ? null : codec.read(r));
+	}
+
+	private static Supplier<Collection<Object>> collectionFactory(Class<?> raw) {
+		if (raw == List.class || raw == Collection.class || raw == ArrayList.class) {
+			return ArrayList::new;
+		}
+		if (raw == Set.class || raw == LinkedHashSet.class) {
+			return LinkedHashSet::new;
+		}
+		if (raw == HashSet.class) {
+			return HashSet::new;
+		}
+		throw new IllegalArgumentException("unsupported collection: " + raw);
+	}
+
+	private static Supplier<Map<Object, Object>> mapFactory(Class<?> raw) {
+		if (raw == Map.class || raw == LinkedHashMap.class) {
+			return LinkedHashMap::new;
+		}
+		if (raw == HashMap.class) {
+			return HashMap::new;
+		}
+		throw new IllegalArgumentException("unsupported map: " + raw);
+	}
+
+	private interface Writer {
+		void write(ByteWriter writer, Object value);
+	}
+
+	private interface Reader {
+		Object read(ByteReader reader);
+	}
+
+	private static final class CollectionCodec implements ValueCodec {
+
+		private final Supplier<Collection<Object>> factory;
+
+		private final ValueCodec element;
+
+		private CollectionCodec(Supplier<Collection<Object>> factory, ValueCodec element) {
+			this.factory = factory;
+			this.element = element;
+		}
+
+		@Override
+		public void write(ByteWriter writer, Object value) {
+			Collection<?> collection = (Collection<?>) value;
+			writer.writeVarInt(collection.size());
+			for (Object item : collection) {
+				element.write(writer, item);
+			}
+		}
+
+		@Override
+		public Object read(ByteReader reader) {
+			int size = reader.readVarInt();
+			Collection<Object> collection = factory.get();
+			for (int i = 0; i < size; i++) {
+				collection.add(element.read(reader));
+			}
+			return collection;
+		}
+	}
+
+	private static final class MapCodec implements ValueCodec {
+
+		private final Supplier<Map<Object, Object>> factory;
+
+		private final ValueCodec key;
+
+		private final ValueCodec value;
+
+		private MapCodec(Supplier<Map<Object, Object>> factory, ValueCodec key, ValueCodec value) {
+			this.factory = factory;
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public void write(ByteWriter writer, Object map) {
+			Map<?, ?> entries = (Map<?, ?>) map;
+			writer.writeVarInt(entries.size());
+			for (Map.Entry<?, ?> entry : entries.entrySet()) {
+				key.write(writer, entry.getKey());
+				value.write(writer, entry.getValue());
+			}
+		}
+
+		@Override
+		public Object read(ByteReader reader) {
+			int size = reader.readVarInt();
+			Map<Object, Object> map = factory.get();
+			for (int i = 0; i < size; i++) {
+				map.put(key.read(reader), value.read(reader));
+			}
+			return map;
+		}
+	}
+
+	/**
+	 * 普通对象：按字段名顺序写字段，基本类型字段不写null标记
+	 */
+	private static final class ObjectCodec implements ValueCodec {
+
+		private final Class<?> clazz;
+
+		private final Constructor<?> constructor;
+
+		private Field[] fields;
+
+		private ValueCodec[] codecs;
+
+		private ObjectCodec(Class<?> clazz) {
+			this.clazz = clazz;
+			try {
+				this.constructor = clazz.getDeclaredConstructor();
+				this.constructor.setAccessible(true);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("no default constructor: " + clazz.getName());
+			}
+		}
+
+		private void init(Map<Class<?>, ObjectCodec> objects, StringBuilder descriptor) {
+			List<Field> all = new ArrayList<Field>();
+			for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+						all.add(field);
+					}
+				}
+			}
+			all.sort(Comparator.comparing(Field::getName));
+			fields = all.toArray(new Field[0]);
+			codecs = new ValueCodec[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				Field field = fields[i];
+				field.setAccessible(true);
+				descriptor.append(field.getName()).append(':');
+				ValueCodec codec = valueCodec(field.getGenericType(), objects, descriptor);
+				codecs[i] = field.getType().isPrimitive() ? codec : nullable(codec);
+				descriptor.append(';');
+			}
+		}
+
+		@Override
+		public void write(ByteWriter writer, Object value) {
+			if (value.getClass() != clazz) {
+				throw new IllegalArgumentException("polymorphic value " + value.getClass().getName() + " declared as "
+						+ clazz.getName() + " is not supported by binary codec, use JsonCodec");
+			}
+			try {
+				for (int i = 0; i < fields.length; i++) {
+					codecs[i].write(writer, fields[i].get(value));
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public Object read(ByteReader reader) {
+			try {
+				Object value = constructor.newInstance();
+				for (int i = 0; i < fields.length; i++) {
+					fields[i].set(value, codecs[i].read(reader));
+				}
+				return value;
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.api.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按ByteWriter的格式读取
+ *
+ * @author zhaoxingwu
+ *
+ */
+final class ByteReader {
+
+	private final byte[] buffer;
+
+	private int position;
+
+	ByteReader(byte[] buffer, int position) {
+		this.buffer = buffer;
+		this.position = position;
+	}
+
+	byte readByte() {
+		return buffer[position++];
+	}
+
+	int readVarInt() {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer[position++];
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("malformed varint");
+	}
+
+	long readVarLong() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("malformed varlong");
+	}
+
+	long readSignedLong() {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	long readFixedLong() {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value |= (long) (buffer[position++] & 0xFF) << (i * 8);
+		}
+		return value;
+	}
+
+	int readFixedInt() {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value |= (buffer[position++] & 0xFF) << (i * 8);
+		}
+		return value;
+	}
+
+	String readString() {
+		int length = readVarInt();
+		String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	boolean hasRemaining() {
+		return position < buffer.length;
+	}
+}
@@ -0,0 +1,155 @@
+package com.api.codec;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 线程内复用的写缓冲，编码时直接写入，最后只拷贝一次得到结果
+ * 变长整数为7位一组的varint，有符号整数先做zigzag；字符串为varint长度加UTF-8
+ *
+ * @author zhaoxingwu
+ *
+ */
+final class ByteWriter extends OutputStream {
+
+	private static final int INITIAL_SIZE = 1024;
+
+	/**
+	 * 超过该大小的缓冲用完后不保留，避免偶尔的大值长期占用内存
+	 */
+	private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<ByteWriter> LOCAL = ThreadLocal.withInitial(ByteWriter::new);
+
+	private byte[] buffer = new byte[INITIAL_SIZE];
+
+	private int count;
+
+	private ByteWriter() {
+	}
+
+	/**
+	 * 取当前线程的缓冲并清空
+	 */
+	static ByteWriter get() {
+		ByteWriter writer = LOCAL.get();
+		writer.count = 0;
+		return writer;
+	}
+
+	/**
+	 * 拷贝出已写入的内容
+	 */
+	byte[] toByteArray() {
+		byte[] bytes = Arrays.copyOf(buffer, count);
+		if (buffer.length > MAX_RETAINED_SIZE) {
+			buffer = new byte[INITIAL_SIZE];
+		}
+		count = 0;
+		return bytes;
+	}
+
+	private void ensure(int extra) {
+		if (count + extra > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		ensure(1);
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		ensure(length);
+		System.arraycopy(bytes, offset, buffer, count, length);
+		count += length;
+	}
+
+	void writeVarInt(int value) {
+		ensure(5);
+		while ((value & ~0x7F) != 0) {
+			buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[count++] = (byte) value;
+	}
+
+	void writeVarLong(long value) {
+		ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[count++] = (byte) value;
+	}
+
+	void writeSignedLong(long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	void writeFixedLong(long value) {
+		ensure(8);
+		for (int i = 0; i < 8; i++) {
+			buffer[count++] = (byte) (value >>> (i * 8));
+		}
+	}
+
+	void writeFixedInt(int value) {
+		ensure(4);
+		for (int i = 0; i < 4; i++) {
+			buffer[count++] = (byte) (value >>> (i * 8));
+		}
+	}
+
+	/**
+	 * 写字符串，不经过中间的byte[]
+	 */
+	void writeString(String value) {
+		int length = value.length();
+		int utf8Length = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				utf8Length++;
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				utf8Length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				utf8Length++;
+			} else {
+				utf8Length += 3;
+			}
+		}
+		writeVarInt(utf8Length);
+		ensure(utf8Length);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer[count++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[count++] = (byte) (0xC0 | (c >> 6));
+				buffer[count++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// 不成对的代理字符，与String.getBytes一致替换为?
+				buffer[count++] = (byte) '?';
+			} else {
+				buffer[count++] = (byte) (0xE0 | (c >> 12));
+				buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[count++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+}
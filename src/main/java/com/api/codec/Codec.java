@@ -0,0 +1,27 @@
+package com.api.codec;
+
+/**
+ * 值的编解码，TypedRedisClient用它把对象存成redis中的二进制值
+ *
+ * @author zhaoxingwu
+ *
+ * @param <T> 值类型
+ */
+public interface Codec<T> {
+
+	/**
+	 * 编码
+	 *
+	 * @param value 值，不为null
+	 * @return 编码结果
+	 */
+	byte[] encode(T value);
+
+	/**
+	 * 解码，数据格式不符（如类结构已变化）时返回null，调用方按未命中处理
+	 *
+	 * @param bytes 编码结果，不为null
+	 * @return 值
+	 */
+	T decode(byte[] bytes);
+}
@@ -0,0 +1,37 @@
+package com.api.codec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 默认编解码：优先BinaryCodec，类型不支持时使用JsonCodec。按类缓存，结构只解析一次
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class Codecs {
+
+	private static final ConcurrentMap<Class<?>, Codec<?>> CODECS = new ConcurrentHashMap<Class<?>, Codec<?>>();
+
+	private Codecs() {
+	}
+
+	/**
+	 * 获取类型的默认编解码
+	 *
+	 * @param type 值类型
+	 * @return 编解码
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Codec<T> of(Class<T> type) {
+		return (Codec<T>) CODECS.computeIfAbsent(type, Codecs::create);
+	}
+
+	private static <T> Codec<T> create(Class<T> type) {
+		try {
+			return new BinaryCodec<T>(type);
+		} catch (IllegalArgumentException e) {
+			return new JsonCodec<T>(type);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.api.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * fastjson编解码，BinaryCodec不支持的类型使用它
+ * 编码结果前加一个格式字节；解码也兼容没有格式字节的纯json，可以直接读取以前用toJSONString写入的值
+ *
+ * @author zhaoxingwu
+ *
+ * @param <T> 值类型
+ */
+public class JsonCodec<T> implements Codec<T> {
+
+	static final byte FORMAT = 2;
+
+	private final Type type;
+
+	public JsonCodec(Type type) {
+		this.type = type;
+	}
+
+	@Override
+	public byte[] encode(T value) {
+		ByteWriter writer = ByteWriter.get();
+		writer.write(FORMAT);
+		try {
+			JSON.writeJSONString(writer, value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return writer.toByteArray();
+	}
+
+	@Override
+	public T decode(byte[] bytes) {
+		if (bytes.length == 0) {
+			return null;
+		}
+		int offset = bytes[0] == FORMAT ? 1 : 0;
+		return JSON.parseObject(bytes, offset, bytes.length - offset, StandardCharsets.UTF_8, type);
+	}
+}
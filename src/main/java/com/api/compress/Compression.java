@@ -0,0 +1,215 @@
+package com.api.compress;
+
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.api.metrics.RedisMetrics;
+
+/**
+ * 二进制值的透明压缩，RedisClient、RedisBatch、AsyncRedisClient的byte[]读写经过它
+ * 不小于threshold的值用配置的压缩方式压缩；配置了字典时，dictionaryThreshold到threshold之间的小值用字典压缩。
+ * 压缩后不到原值的 {@link #MAX_RATIO} 时才使用压缩结果，格式为：头部字节、原长度(varint)、压缩结果。
+ * 读取时按第一个字节找到压缩方式解压，不是已注册的头部字节时原样返回，启用前写入的值和其他客户端写入的值照常读取。
+ * 头部字节取0xF5-0xFF，这些字节不会出现在UTF-8文本的开头，也不是BinaryCodec/JsonCodec的格式字节；
+ * 恰好以这些字节开头又解压失败、或声明的原长度超过压缩方式最大膨胀倍数的值也原样返回。
+ * 压缩和解压的字节数、耗时按压缩方式记入RedisMetrics
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class Compression {
+
+	/**
+	 * 头部字节的最小值
+	 */
+	public static final int MIN_HEADER = 0xF5;
+
+	/**
+	 * 压缩结果不小于原值的这个比例时不压缩
+	 */
+	public static final double MAX_RATIO = 0.9;
+
+	/**
+	 * 原长度上限，与redis字符串的上限相同，防止损坏的数据分配过大的数组
+	 */
+	private static final int MAX_LENGTH = 512 * 1024 * 1024;
+
+	private final String codec;
+
+	private final int threshold;
+
+	private final int dictionaryThreshold;
+
+	private final RedisMetrics metrics;
+
+	private final Compressor[] compressors = new Compressor[256];
+
+	private final DictionaryCompressor dictionaryCompressor;
+
+	private Compressor compressor;
+
+	@Autowired(required = false)
+	private List<Compressor> customCompressors;
+
+	/**
+	 * @param codec               写入用的压缩方式名称：deflate或自定义压缩方式的名称
+	 * @param threshold           不小于这个字节数的值才压缩
+	 * @param level               deflate的压缩级别
+	 * @param dictionaries        字典，为空时不用字典压缩
+	 * @param dictionaryThreshold 不小于这个字节数的小值用字典压缩
+	 * @param metrics             记录压缩指标，可以为null
+	 */
+	public Compression(String codec, int threshold, int level, List<byte[]> dictionaries, int dictionaryThreshold,
+			RedisMetrics metrics) {
+		if (threshold <= 0) {
+			throw new IllegalArgumentException("threshold must be positive: " + threshold);
+		}
+		this.codec = codec;
+		this.threshold = threshold;
+		this.dictionaryThreshold = Math.max(1, dictionaryThreshold);
+		this.metrics = metrics;
+		register(new DeflateCompressor(level));
+		if (dictionaries.isEmpty()) {
+			this.dictionaryCompressor = null;
+		} else {
+			this.dictionaryCompressor = new DictionaryCompressor(level, dictionaries);
+			register(dictionaryCompressor);
+		}
+	}
+
+	/**
+	 * 注册自定义压缩方式，选择写入用的压缩方式
+	 */
+	@PostConstruct
+	public void init() {
+		if (customCompressors != null) {
+			for (Compressor custom : customCompressors) {
+				register(custom);
+			}
+		}
+		for (Compressor registered : compressors) {
+			if (registered != null && registered.name().equals(codec)) {
+				compressor = registered;
+			}
+		}
+		if (compressor == null) {
+			throw new IllegalArgumentException("unknown compression codec: " + codec);
+		}
+	}
+
+	/**
+	 * 注册压缩方式，用于读取它写入的值
+	 *
+	 * @param custom 压缩方式
+	 */
+	public void register(Compressor custom) {
+		int header = custom.header() & 0xff;
+		if (header < MIN_HEADER) {
+			throw new IllegalArgumentException(
+					"compressor " + custom.name() + " header must be at least 0x" + Integer.toHexString(MIN_HEADER));
+		}
+		Compressor existing = compressors[header];
+		if (existing != null && existing != custom) {
+			throw new IllegalArgumentException("compressor " + custom.name() + " header 0x"
+					+ Integer.toHexString(header) + " is used by " + existing.name());
+		}
+		compressors[header] = custom;
+	}
+
+	/**
+	 * 压缩要写入的值
+	 *
+	 * @param value 原值
+	 * @return 压缩后的值，太小或压缩效果不好时为原值
+	 */
+	public byte[] compress(byte[] value) {
+		Compressor selected;
+		if (value.length >= threshold) {
+			selected = compressor;
+		} else if (dictionaryCompressor != null && value.length >= dictionaryThreshold) {
+			selected = dictionaryCompressor;
+		} else {
+			return value;
+		}
+		long start = System.nanoTime();
+		byte[] compressed = selected.compress(value);
+		int headerLength = 1 + varintLength(value.length);
+		boolean worth = compressed != null && compressed.length + headerLength <= value.length * MAX_RATIO;
+		byte[] result = value;
+		if (worth) {
+			result = new byte[headerLength + compressed.length];
+			result[0] = selected.header();
+			writeVarint(result, 1, value.length);
+			System.arraycopy(compressed, 0, result, headerLength, compressed.length);
+		}
+		if (metrics != null) {
+			metrics.recordCompress(selected.name(), value.length, result.length, System.nanoTime() - start, worth);
+		}
+		return result;
+	}
+
+	/**
+	 * 解压读取的值
+	 *
+	 * @param value 读取的值，可以为null
+	 * @return 原值，不是压缩结果时原样返回
+	 */
+	public byte[] decompress(byte[] value) {
+		if (value == null || value.length < 2) {
+			return value;
+		}
+		Compressor selected = compressors[value[0] & 0xff];
+		if (selected == null) {
+			return value;
+		}
+		long start = System.nanoTime();
+		int length = 0;
+		int shift = 0;
+		int offset = 1;
+		while (offset < value.length && shift < 35) {
+			byte b = value[offset++];
+			length |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				break;
+			}
+			shift += 7;
+		}
+		if (length <= 0 || length > MAX_LENGTH || offset >= value.length) {
+			return value;
+		}
+		// 恰好以头部字节开头的未压缩值会被读成任意长度，超过可能的膨胀倍数时不分配
+		if (length > (long) (value.length - offset) * selected.maxExpansion()) {
+			return value;
+		}
+		byte[] original;
+		try {
+			original = selected.decompress(value, offset, value.length - offset, length);
+		} catch (IllegalArgumentException e) {
+			// 恰好以头部字节开头的未压缩值
+			return value;
+		}
+		if (metrics != null) {
+			metrics.recordDecompress(selected.name(), System.nanoTime() - start);
+		}
+		return original;
+	}
+
+	private static int varintLength(int value) {
+		int length = 1;
+		while ((value >>>= 7) != 0) {
+			length++;
+		}
+		return length;
+	}
+
+	private static void writeVarint(byte[] bytes, int offset, int value) {
+		while ((value & ~0x7f) != 0) {
+			bytes[offset++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset] = (byte) value;
+	}
+}
@@ -0,0 +1,54 @@
+package com.api.compress;
+
+/**
+ * 值的压缩方式，由 {@link Compression} 在压缩结果前写入头部字节，读取时按头部字节选择解压方式
+ * 自定义的压缩方式(如LZ4、Zstd)声明为spring bean即被注册，jedis.compression.codec 设为它的名称时用于写入
+ *
+ * @author zhaoxingwu
+ *
+ */
+public interface Compressor {
+
+	/**
+	 * 头部字节，取值 {@link Compression#MIN_HEADER} 到0xFF，不同的压缩方式不能相同，写入后不能再改
+	 *
+	 * @return 头部字节
+	 */
+	byte header();
+
+	/**
+	 * 名称，用于配置和指标
+	 *
+	 * @return 名称
+	 */
+	String name();
+
+	/**
+	 * 压缩，可能被多个线程同时调用
+	 *
+	 * @param data 原值
+	 * @return 压缩结果，不比原值小时返回null
+	 */
+	byte[] compress(byte[] data);
+
+	/**
+	 * 解压，可能被多个线程同时调用
+	 *
+	 * @param data           压缩结果所在数组
+	 * @param offset         起始位置
+	 * @param length         长度
+	 * @param originalLength 原值长度
+	 * @return 原值
+	 * @throws IllegalArgumentException 数据不是这种方式的压缩结果
+	 */
+	byte[] decompress(byte[] data, int offset, int length, int originalLength);
+
+	/**
+	 * 原值最多是压缩结果的多少倍，读取时声明的原长度超过这个倍数则不解压，不按伪造的长度分配数组
+	 *
+	 * @return 最大膨胀倍数，默认为deflate的上限
+	 */
+	default int maxExpansion() {
+		return DeflateCompressor.MAX_EXPANSION;
+	}
+}
@@ -0,0 +1,120 @@
+package com.api.compress;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * JDK自带的deflate压缩，不加zlib头尾，压缩率高但比LZ4等慢，适合几十KB的序列化结果
+ * Deflater和Inflater创建代价高且占用本地内存，每个线程复用一个
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class DeflateCompressor implements Compressor {
+
+	public static final byte HEADER = (byte) 0xF5;
+
+	/**
+	 * deflate的最大压缩比约为1032:1(每个258字节的匹配最少占2位)
+	 */
+	public static final int MAX_EXPANSION = 1032;
+
+	private final int level;
+
+	private final ThreadLocal<Deflater> deflaters;
+
+	private final ThreadLocal<Inflater> inflaters;
+
+	/**
+	 * @param level 压缩级别，1最快，9压缩率最高，-1为默认(6)
+	 */
+	public DeflateCompressor(int level) {
+		this(level, true);
+	}
+
+	DeflateCompressor(int level, boolean nowrap) {
+		this.level = level;
+		this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, nowrap));
+		this.inflaters = ThreadLocal.withInitial(() -> new Inflater(nowrap));
+	}
+
+	@Override
+	public byte header() {
+		return HEADER;
+	}
+
+	@Override
+	public String name() {
+		return "deflate";
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public byte[] compress(byte[] data) {
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		prepare(deflater);
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] out = new byte[data.length];
+		int length = 0;
+		while (!deflater.finished() && length < out.length) {
+			length += deflater.deflate(out, length, out.length - length);
+		}
+		if (!deflater.finished()) {
+			return null;
+		}
+		return Arrays.copyOf(out, length);
+	}
+
+	@Override
+	public byte[] decompress(byte[] data, int offset, int length, int originalLength) {
+		if (originalLength > (long) length * MAX_EXPANSION) {
+			throw new IllegalArgumentException("corrupted " + name() + " data, " + length + " bytes can not inflate to "
+					+ originalLength + " bytes");
+		}
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(data, offset, length);
+		byte[] out = new byte[originalLength];
+		int inflated = 0;
+		try {
+			while (!inflater.finished()) {
+				int n = inflater.inflate(out, inflated, out.length - inflated);
+				inflated += n;
+				if (n == 0) {
+					if (inflater.needsDictionary()) {
+						setDictionary(inflater);
+					} else if (inflater.needsInput() || inflated == out.length) {
+						break;
+					}
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("corrupted " + name() + " data", e);
+		}
+		if (!inflater.finished() || inflated != originalLength) {
+			throw new IllegalArgumentException("corrupted " + name() + " data, inflated " + inflated + " of "
+					+ originalLength + " bytes");
+		}
+		return out;
+	}
+
+	/**
+	 * 压缩前设置预置字典
+	 */
+	protected void prepare(Deflater deflater) {
+	}
+
+	/**
+	 * 解压中需要预置字典
+	 */
+	protected void setDictionary(Inflater inflater) {
+		throw new IllegalArgumentException(name() + " data needs a dictionary");
+	}
+}
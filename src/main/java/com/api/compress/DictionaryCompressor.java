@@ -0,0 +1,71 @@
+package com.api.compress;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 预置字典的deflate压缩，用于几百字节、结构相似的json：字段名和常见取值放进字典后，
+ * 单个小值也能引用字典中的内容，普通deflate对这类值几乎压缩不了
+ * 字典取典型值的拼接，常见的内容放在末尾，不超过32KB。
+ * 使用zlib格式，压缩结果带字典的Adler32校验值，解压时按它找到字典；
+ * 换字典时把新字典放在第一个，旧字典留在后面，之前写入的值仍能读取
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class DictionaryCompressor extends DeflateCompressor {
+
+	public static final byte HEADER = (byte) 0xF6;
+
+	private final byte[] dictionary;
+
+	/**
+	 * 字典的Adler32 -> 字典
+	 */
+	private final Map<Integer, byte[]> dictionaries = new LinkedHashMap<Integer, byte[]>();
+
+	/**
+	 * @param level        压缩级别
+	 * @param dictionaries 字典，第一个用于压缩，全部用于解压
+	 */
+	public DictionaryCompressor(int level, List<byte[]> dictionaries) {
+		super(level, false);
+		if (dictionaries.isEmpty()) {
+			throw new IllegalArgumentException("at least one dictionary is required");
+		}
+		this.dictionary = dictionaries.get(0);
+		for (byte[] bytes : dictionaries) {
+			Adler32 adler = new Adler32();
+			adler.update(bytes);
+			this.dictionaries.put((int) adler.getValue(), bytes);
+		}
+	}
+
+	@Override
+	public byte header() {
+		return HEADER;
+	}
+
+	@Override
+	public String name() {
+		return "dictionary";
+	}
+
+	@Override
+	protected void prepare(Deflater deflater) {
+		deflater.setDictionary(dictionary);
+	}
+
+	@Override
+	protected void setDictionary(Inflater inflater) {
+		byte[] bytes = dictionaries.get(inflater.getAdler());
+		if (bytes == null) {
+			throw new IllegalArgumentException("unknown dictionary " + Integer.toHexString(inflater.getAdler()));
+		}
+		inflater.setDictionary(bytes);
+	}
+}
@@ -1,11 +1,38 @@
 package com.api.config;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import com.api.cache.AsyncRedisClient;
+import com.api.cache.BigKeys;
+import com.api.cache.ClusterRedisRouter;
+import com.api.cache.JedisPoolManager;
+import com.api.cache.NearCache;
+import com.api.cache.RedisRouter;
+import com.api.cache.RedisSubscriber;
+import com.api.cache.ReplicaSet;
+import com.api.cache.ResizableJedisPool;
+import com.api.cache.StandaloneRedisRouter;
+import com.api.compress.Compression;
+import com.api.metrics.HotKeys;
+import com.api.metrics.InstrumentedJedisPool;
+import com.api.metrics.RedisMetrics;
+
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
@@ -19,15 +46,186 @@ public class RedisConfiguration {
     @Bean(name = "jedis.pool")
     @Autowired
     public JedisPool jedisPool(@Qualifier("jedis.config") JedisPoolConfig config,
+                               @Qualifier("jedis.metrics") RedisMetrics metrics,
+                               @Qualifier("jedis.poolManager") JedisPoolManager poolManager,
+                               @Qualifier("jedis.hotKeys") HotKeys hotKeys,
                                @Value("${jedis.host}") String host,
                                @Value("${jedis.port}") int port,
                                @Value("${jedis.timeout}") int timeout,
-                               @Value("${jedis.password}") String password) {
-        if (StringUtils.isEmpty(password)) {
-            return new JedisPool(config, host, port, timeout);
-        } else {
-            return new JedisPool(config, host, port, timeout, password);
+                               @Value("${jedis.password}") String password,
+                               @Value("${jedis.metrics.enabled:true}") boolean metricsEnabled,
+                               @Value("${jedis.hotKeys.enabled:false}") boolean hotKeysEnabled) {
+        ResizableJedisPool pool = pool(config, host, port, timeout, password, metricsEnabled ? metrics : null,
+                hotKeysEnabled ? hotKeys : null);
+        if (metricsEnabled) {
+            metrics.bindPool(pool);
+        }
+        poolManager.manage(host + ":" + port, pool);
+        return pool;
+    }
+
+    /**
+     * 命令路由，配置了 jedis.cluster.nodes 时为集群模式，RedisClient按key的槽位把命令发往所在节点；
+     * 单机模式下配置了 jedis.replica.nodes 时只读命令发往从节点
+     */
+    @Bean(name = "jedis.router")
+    public RedisRouter redisRouter(@Qualifier("jedis.pool") JedisPool jedisPool,
+                                   @Qualifier("jedis.config") JedisPoolConfig config,
+                                   @Qualifier("jedis.metrics") RedisMetrics metrics,
+                                   @Qualifier("jedis.poolManager") JedisPoolManager poolManager,
+                                   @Qualifier("jedis.hotKeys") HotKeys hotKeys,
+                                   @Value("${jedis.cluster.nodes:}") String[] nodes,
+                                   @Value("${jedis.replica.nodes:}") String[] replicaNodes,
+                                   @Value("${jedis.timeout}") int timeout,
+                                   @Value("${jedis.password}") String password,
+                                   @Value("${jedis.metrics.enabled:true}") boolean metricsEnabled,
+                                   @Value("${jedis.hotKeys.enabled:false}") boolean hotKeysEnabled,
+                                   @Value("${jedis.cluster.maxAttempts:5}") int maxAttempts,
+                                   @Value("${jedis.cluster.threads:8}") int threads,
+                                   @Value("${jedis.replica.maxLagBytes:1048576}") long maxLagBytes,
+                                   @Value("${jedis.replica.checkMillis:1000}") long checkMillis) {
+        if (nodes.length > 0) {
+            Set<HostAndPort> hostAndPorts = new HashSet<HostAndPort>();
+            for (String node : nodes) {
+                hostAndPorts.add(hostAndPort(node));
+            }
+            return new ClusterRedisRouter(hostAndPorts, config, timeout,
+                    StringUtils.isEmpty(password) ? null : password, maxAttempts, threads);
+        }
+        if (replicaNodes.length == 0) {
+            return new StandaloneRedisRouter(jedisPool);
         }
+        List<JedisPool> replicas = new ArrayList<JedisPool>();
+        List<String> names = new ArrayList<String>();
+        for (String node : replicaNodes) {
+            HostAndPort hostAndPort = hostAndPort(node);
+            ResizableJedisPool replica = pool(config, hostAndPort.getHost(), hostAndPort.getPort(), timeout, password,
+                    metricsEnabled ? metrics : null, hotKeysEnabled ? hotKeys : null);
+            poolManager.manage(hostAndPort.toString(), replica);
+            replicas.add(replica);
+            names.add(hostAndPort.toString());
+        }
+        return new StandaloneRedisRouter(jedisPool,
+                new ReplicaSet(jedisPool, replicas, names, maxLagBytes, checkMillis));
+    }
+
+    /**
+     * 连接池管理：启动时预热 jedis.pool.minIdle 个连接，按负载在 maxTotal 和 maxTotalLimit 之间调整最大连接数，
+     * 借连接最多等待 jedis.pool.latencyBudgetMillis 的一半。集群模式的连接池由JedisCluster创建，不受管理
+     */
+    @Bean(name = "jedis.poolManager")
+    public JedisPoolManager jedisPoolManager(@Qualifier("jedis.metrics") RedisMetrics metrics,
+                                             @Value("${jedis.pool.minIdle:0}") int minIdle,
+                                             @Value("${jedis.pool.maxIdle}") int maxIdle,
+                                             @Value("${jedis.pool.maxTotal}") int maxTotal,
+                                             @Value("${jedis.pool.maxTotalLimit:0}") int maxTotalLimit,
+                                             @Value("${jedis.pool.maxWaitMillis}") long maxWaitMillis,
+                                             @Value("${jedis.pool.latencyBudgetMillis:0}") long latencyBudgetMillis,
+                                             @Value("${jedis.pool.adjustSeconds:5}") long adjustSeconds) {
+        return new JedisPoolManager(minIdle, maxIdle, maxTotal, maxTotalLimit, maxWaitMillis, latencyBudgetMillis,
+                adjustSeconds, metrics);
+    }
+
+    /**
+     * 命令指标，jedis.metrics.enabled=false 时连接池不记录
+     */
+    @Bean(name = "jedis.metrics")
+    public RedisMetrics redisMetrics(@Value("${jedis.metrics.reportSeconds:60}") long reportSeconds) {
+        return new RedisMetrics(reportSeconds);
+    }
+
+    /**
+     * 热点key检测，jedis.hotKeys.enabled=true 且记录指标时连接池记录每条命令访问的key；集群模式不记录
+     */
+    @Bean(name = "jedis.hotKeys")
+    public HotKeys hotKeys(@Value("${jedis.hotKeys.topK:20}") int topK,
+                           @Value("${jedis.hotKeys.threshold:10000}") long threshold,
+                           @Value("${jedis.hotKeys.windowSeconds:10}") long windowSeconds) {
+        return new HotKeys(topK, threshold, windowSeconds);
+    }
+
+    /**
+     * 异步客户端，少量流水线连接被所有调用共享
+     */
+    @Bean(name = "jedis.asyncClient")
+    public AsyncRedisClient asyncRedisClient(@Value("${jedis.host}") String host,
+                                             @Value("${jedis.port}") int port,
+                                             @Value("${jedis.timeout}") int timeout,
+                                             @Value("${jedis.password}") String password,
+                                             @Value("${jedis.async.connections:2}") int connections) {
+        return new AsyncRedisClient(host, port, timeout, password, connections);
+    }
+
+    /**
+     * 共享的pub/sub订阅连接，第一次订阅时才建立
+     */
+    @Bean(name = "jedis.subscriber")
+    public RedisSubscriber redisSubscriber(@Value("${jedis.host}") String host,
+                                           @Value("${jedis.port}") int port,
+                                           @Value("${jedis.password}") String password) {
+        return new RedisSubscriber(host, port, password);
+    }
+
+    /**
+     * 本地一级缓存，jedis.nearCache.enabled=true 时启用
+     */
+    @Bean(name = "jedis.nearCache")
+    @ConditionalOnProperty(name = "jedis.nearCache.enabled", havingValue = "true")
+    public NearCache nearCache(@Qualifier("jedis.pool") JedisPool jedisPool,
+                               @Qualifier("jedis.subscriber") RedisSubscriber subscriber,
+                               @Value("${jedis.nearCache.maxSize:10000}") long maxSize,
+                               @Value("${jedis.nearCache.ttlSeconds:60}") long ttlSeconds,
+                               @Value("${jedis.nearCache.channel:near-cache:invalidate}") String channel,
+                               @Value("${jedis.nearCache.prefixes:}") String[] prefixes) {
+        return new NearCache(jedisPool, subscriber, maxSize, ttlSeconds, channel, prefixes);
+    }
+
+    /**
+     * 二进制值透明压缩，jedis.compression.enabled=true 时启用；不小于 threshold 字节的值用 codec 压缩，
+     * 配置了 dictionaries 时 dictionaryThreshold 到 threshold 之间的小值用第一个字典压缩，其余字典用于读取旧值
+     */
+    @Bean(name = "jedis.compression")
+    @ConditionalOnProperty(name = "jedis.compression.enabled", havingValue = "true")
+    public Compression compression(@Qualifier("jedis.metrics") RedisMetrics metrics,
+                                   @Value("${jedis.compression.codec:deflate}") String codec,
+                                   @Value("${jedis.compression.threshold:1024}") int threshold,
+                                   @Value("${jedis.compression.level:1}") int level,
+                                   @Value("${jedis.compression.dictionaries:}") String[] dictionaries,
+                                   @Value("${jedis.compression.dictionaryThreshold:64}") int dictionaryThreshold,
+                                   @Value("${jedis.metrics.enabled:true}") boolean metricsEnabled) throws IOException {
+        List<byte[]> loaded = new ArrayList<byte[]>();
+        ResourceLoader loader = new DefaultResourceLoader();
+        for (String location : dictionaries) {
+            try (InputStream inputStream = loader.getResource(location.trim()).getInputStream()) {
+                loaded.add(IOUtils.toByteArray(inputStream));
+            }
+        }
+        return new Compression(codec, threshold, level, loaded, dictionaryThreshold, metricsEnabled ? metrics : null);
+    }
+
+    /**
+     * 大key分块读写，一条命令最多 chunkElements 个元素、约 chunkBytes 个字符；
+     * RedisClient一条命令超过 warnElements 个元素或一个值超过 warnBytes 字节时告警，0不告警
+     */
+    @Bean(name = "jedis.bigKeys")
+    public BigKeys bigKeys(@Value("${jedis.bigKeys.chunkElements:500}") int chunkElements,
+                           @Value("${jedis.bigKeys.chunkBytes:1048576}") int chunkBytes,
+                           @Value("${jedis.bigKeys.warnElements:5000}") int warnElements,
+                           @Value("${jedis.bigKeys.warnBytes:1048576}") long warnBytes) {
+        return new BigKeys(chunkElements, chunkBytes, warnElements, warnBytes);
+    }
+
+    private static ResizableJedisPool pool(JedisPoolConfig config, String host, int port, int timeout,
+                                           String password, RedisMetrics metrics, HotKeys hotKeys) {
+        if (metrics != null) {
+            return new InstrumentedJedisPool(config, host, port, timeout, password, metrics, hotKeys);
+        }
+        return new ResizableJedisPool(config, host, port, timeout, password);
+    }
+
+    private static HostAndPort hostAndPort(String node) {
+        String[] parts = node.trim().split(":");
+        return new HostAndPort(parts[0], Integer.parseInt(parts[1]));
     }
 
     @Bean(name = "jedis.config")
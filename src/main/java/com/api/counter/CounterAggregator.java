@@ -0,0 +1,427 @@
+package com.api.counter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * 计数合并写入：incr/incrBy/hincrBy/zincrby先在本地按计数器合并，定时或待写计数器过多时用pipeline批量写入
+ * 每次调用不再借连接、不再一次往返，同一个计数器一个周期内只写一条命令。
+ * 本地缓冲按线程分成多段，同一个热点计数器的并发累加落在不同段上；每段是ConcurrentHashMap，
+ * merge和remove对同一计数器是原子的，写入时取走的增量之后的累加进入新的条目，不会丢失。
+ * 写入失败时没有发送的增量(如借不到连接)放回缓冲下次重试；已发送但没有收到应答(如读超时)的增量在redis端
+ * 可能已经执行，重试会重复计数，记录后丢弃，即超时时至多一次、可能少计；redis返回错误(如WRONGTYPE)的增量记录错误日志后丢弃。
+ * 停机前写入所有缓冲。
+ * redis中的值最多落后 {@link #FLUSH_MILLIS} 加一次写入的耗时，{@link #getMaxStalenessMillis()} 为实际观察到的最大值
+ *
+ * <pre>
+ * counterAggregator.incr("article:views:" + id);
+ * counterAggregator.hincrBy("article:stats:" + id, "likes", 1);
+ * counterAggregator.zincrby("ranking:hot", 1, articleId);
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class CounterAggregator {
+
+	/**
+	 * 定时写入的间隔(毫秒)
+	 */
+	public static final long FLUSH_MILLIS = 1000;
+
+	/**
+	 * 待写计数器超过这个数时立即写入
+	 */
+	public static final int MAX_PENDING = 10000;
+
+	/**
+	 * 一个pipeline最多几条命令
+	 */
+	private static final int FLUSH_CHUNK = 1000;
+
+	private static final int STRIPES = 16;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	private RedisClient redisClient;
+
+	private final List<Map<Counter, Long>> longs = stripes();
+
+	private final List<Map<Counter, Double>> doubles = stripes();
+
+	/**
+	 * 缓冲中的计数器数，按条目新建和取走增减，同一计数器在不同段上算多个
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * 缓冲中最早一次还没写入的累加的时间，缓冲为空时为0
+	 */
+	private final AtomicLong pendingSince = new AtomicLong();
+
+	private final AtomicLong maxStalenessMillis = new AtomicLong();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	private final LongAdder increments = new LongAdder();
+
+	private final LongAdder commands = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder unconfirmed = new LongAdder();
+
+	private ScheduledExecutorService flusher;
+
+	@PostConstruct
+	public void init() {
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-counter-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停机前写入所有缓冲的增量
+	 */
+	@PreDestroy
+	public void destroy() {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			// flush已记录日志
+		}
+	}
+
+	/**
+	 * 计数加1
+	 *
+	 * @param key 键
+	 */
+	public void incr(String key) {
+		incrBy(key, 1);
+	}
+
+	/**
+	 * 计数加指定值
+	 *
+	 * @param key   键
+	 * @param delta 增量，可以为负
+	 */
+	public void incrBy(String key, long delta) {
+		add(longs, new Counter(key, null, false), delta, Long::sum);
+	}
+
+	/**
+	 * 哈希字段计数加指定值
+	 *
+	 * @param key   键
+	 * @param field 字段
+	 * @param delta 增量，可以为负
+	 */
+	public void hincrBy(String key, String field, long delta) {
+		add(longs, new Counter(key, field, false), delta, Long::sum);
+	}
+
+	/**
+	 * 有序集合成员加分
+	 *
+	 * @param key    键
+	 * @param score  增量，可以为负
+	 * @param member 成员
+	 */
+	public void zincrby(String key, double score, String member) {
+		add(doubles, new Counter(key, member, true), score, Double::sum);
+	}
+
+	/**
+	 * 把缓冲的增量按pipeline写入redis，没有收到应答的放回缓冲等下次重试
+	 *
+	 * @return 写入的命令数
+	 */
+	public synchronized int flush() {
+		long since = pendingSince.getAndSet(0);
+		if (since == 0) {
+			return 0;
+		}
+		long start = System.currentTimeMillis();
+		maxStalenessMillis.accumulateAndGet(start - since, Math::max);
+		// 同一计数器在不同段上的增量合并成一条命令
+		Map<Counter, Number> deltas = new LinkedHashMap<Counter, Number>();
+		for (Map<Counter, Long> stripe : longs) {
+			for (Counter counter : stripe.keySet()) {
+				Long delta = stripe.remove(counter);
+				if (delta != null) {
+					pending.decrementAndGet();
+					deltas.merge(counter, delta, (a, b) -> a.longValue() + b.longValue());
+				}
+			}
+		}
+		for (Map<Counter, Double> stripe : doubles) {
+			for (Counter counter : stripe.keySet()) {
+				Double delta = stripe.remove(counter);
+				if (delta != null) {
+					pending.decrementAndGet();
+					deltas.merge(counter, delta, (a, b) -> a.doubleValue() + b.doubleValue());
+				}
+			}
+		}
+		List<Map.Entry<Counter, Number>> entries = new ArrayList<Map.Entry<Counter, Number>>(deltas.entrySet());
+		RedisBatch batch = redisClient.batch();
+		List<RedisBatch.Result<?>> results = new ArrayList<RedisBatch.Result<?>>(FLUSH_CHUNK);
+		RuntimeException failure = null;
+		int written = 0;
+		int lost = 0;
+		try {
+			for (int from = 0; from < entries.size(); from += FLUSH_CHUNK) {
+				List<Map.Entry<Counter, Number>> chunk = entries.subList(from,
+						Math.min(from + FLUSH_CHUNK, entries.size()));
+				if (failure != null) {
+					// 前面的一批失败，还没发送的放回缓冲
+					for (Map.Entry<Counter, Number> entry : chunk) {
+						restore(entry.getKey(), entry.getValue());
+					}
+					continue;
+				}
+				results.clear();
+				for (Map.Entry<Counter, Number> entry : chunk) {
+					results.add(queue(batch, entry.getKey(), entry.getValue()));
+				}
+				try {
+					batch.execute();
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+				// 逐条检查：没有发送的放回缓冲；发送后没有应答的可能已执行，重试会重复计数，丢弃；
+				// redis返回错误的重试也不会成功，记录后丢弃
+				for (int i = 0; i < chunk.size(); i++) {
+					Map.Entry<Counter, Number> entry = chunk.get(i);
+					RedisBatch.Result<?> result = results.get(i);
+					if (!result.isSent()) {
+						restore(entry.getKey(), entry.getValue());
+						continue;
+					}
+					if (!result.isReplied()) {
+						lost++;
+						continue;
+					}
+					try {
+						result.get();
+						written++;
+					} catch (JedisDataException e) {
+						rejected.increment();
+						logger.error("counter " + entry.getKey() + " delta " + entry.getValue()
+								+ " flush failed! reids cache exception: ", e);
+					}
+				}
+			}
+		} finally {
+			commands.add(written);
+			unconfirmed.add(lost);
+			// 写入期间新建的条目已记下更晚的时间，只在缓冲还有条目而时间被清空时补上
+			if (pending.get() > 0) {
+				pendingSince.compareAndSet(0, start);
+			}
+		}
+		if (failure != null) {
+			if (lost > 0) {
+				logger.error("counter flush dropped {} deltas sent without reply", lost);
+			}
+			logger.error("counter flush failed! reids cache exception: ", failure);
+			throw failure;
+		}
+		return written;
+	}
+
+	/**
+	 * @return 缓冲中的计数器数
+	 */
+	public int getPendingCount() {
+		return Math.max(0, pending.get());
+	}
+
+	/**
+	 * @return 缓冲中最早一次还没写入的累加已经等了多久(毫秒)，缓冲为空时为0
+	 */
+	public long getStalenessMillis() {
+		long since = pendingSince.get();
+		return since == 0 ? 0 : System.currentTimeMillis() - since;
+	}
+
+	/**
+	 * @return 写入时观察到的最大等待(毫秒)，即redis中的值最多落后多久
+	 */
+	public long getMaxStalenessMillis() {
+		return maxStalenessMillis.get();
+	}
+
+	/**
+	 * @return 累计的累加调用次数
+	 */
+	public long getIncrements() {
+		return increments.sum();
+	}
+
+	/**
+	 * @return 累计写入redis的命令数，与累加次数之比即合并的效果
+	 */
+	public long getFlushedCommands() {
+		return commands.sum();
+	}
+
+	/**
+	 * @return 累计被redis拒绝(如WRONGTYPE)而丢弃的命令数
+	 */
+	public long getRejectedCommands() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return 累计发送后没有收到应答而丢弃的命令数，这些增量在redis端可能执行了也可能没有
+	 */
+	public long getUnconfirmedCommands() {
+		return unconfirmed.sum();
+	}
+
+	private <V> void add(List<Map<Counter, V>> stripes, Counter counter, V delta, BinaryOperator<V> sum) {
+		merge(stripes, counter, delta, sum);
+		increments.increment();
+	}
+
+	private <V> void merge(List<Map<Counter, V>> stripes, Counter counter, V delta, BinaryOperator<V> sum) {
+		stripes.get(stripe()).compute(counter, (c, value) -> {
+			if (value == null) {
+				added();
+				return delta;
+			}
+			return sum.apply(value, delta);
+		});
+	}
+
+	private static RedisBatch.Result<?> queue(RedisBatch batch, Counter counter, Number delta) {
+		if (counter.zset) {
+			return batch.zincrby(counter.key, delta.doubleValue(), counter.field);
+		}
+		if (counter.field == null) {
+			return batch.incrBy(counter.key, delta.longValue());
+		}
+		return batch.hincrBy(counter.key, counter.field, delta.longValue());
+	}
+
+	private void restore(Counter counter, Number delta) {
+		if (counter.zset) {
+			merge(doubles, counter, delta.doubleValue(), Double::sum);
+		} else {
+			merge(longs, counter, delta.longValue(), Long::sum);
+		}
+	}
+
+	/**
+	 * 缓冲新增一个条目：记下最早的时间，待写过多时安排立即写入
+	 */
+	private void added() {
+		if (pendingSince.get() == 0) {
+			pendingSince.compareAndSet(0, System.currentTimeMillis());
+		}
+		if (pending.incrementAndGet() >= MAX_PENDING && flushScheduled.compareAndSet(false, true)) {
+			flusher.execute(() -> {
+				flushScheduled.set(false);
+				flushQuietly();
+			});
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			// 增量已放回缓冲，下个周期重试；异常不能抛出，否则定时任务被取消
+			logger.debug("counter will retry flushing", e);
+		}
+	}
+
+	private static int stripe() {
+		return (int) (Thread.currentThread().getId() % STRIPES);
+	}
+
+	private static <V> List<Map<Counter, V>> stripes() {
+		List<Map<Counter, V>> stripes = new ArrayList<Map<Counter, V>>(STRIPES);
+		for (int i = 0; i < STRIPES; i++) {
+			stripes.add(new ConcurrentHashMap<Counter, V>());
+		}
+		return stripes;
+	}
+
+	/**
+	 * 计数器：字符串计数field为null；哈希计数field为字段；有序集合field为成员
+	 */
+	private static final class Counter {
+
+		private final String key;
+
+		private final String field;
+
+		private final boolean zset;
+
+		private Counter(String key, String field, boolean zset) {
+			this.key = key;
+			this.field = field;
+			this.zset = zset;
+		}
+
+		@Override
+		public String toString() {
+			return field == null ? key : key + " " + field;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = key.hashCode() * 31 + (field == null ? 0 : field.hashCode());
+			return zset ? ~hash : hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Counter)) {
+				return false;
+			}
+			Counter other = (Counter) obj;
+			return zset == other.zset && key.equals(other.key)
+					&& (field == null ? other.field == null : field.equals(other.field));
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.api.counter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 本地HyperLogLog，哈希和寄存器与redis完全一致：MurmurHash64A(种子0xadc83b19)，2^14个寄存器，
+ * 低14位选寄存器，其余位末尾0的个数加1为寄存器的值。本地寄存器和对同样元素PFADD得到的寄存器相同，
+ * 按redis的dense格式编码后可以直接PFMERGE，合并是取每个寄存器的最大值，重复合并不会重复计数。
+ * 元素不多时同时保留原始元素，写入时用PFADD，redis中的key保持sparse格式，不必为几个元素发送12KB的寄存器。
+ * 非线程安全，由 {@link UniqueCounter} 在ConcurrentHashMap.compute中访问
+ *
+ * @author zhaoxingwu
+ *
+ */
+final class HyperLogLog {
+
+	static final int P = 14;
+
+	static final int REGISTERS = 1 << P;
+
+	/**
+	 * 6位一个寄存器
+	 */
+	private static final int BITS = 6;
+
+	private static final int HEADER_SIZE = 16;
+
+	static final int DENSE_SIZE = HEADER_SIZE + (REGISTERS * BITS + 7) / 8;
+
+	private static final long SEED = 0xadc83b19L;
+
+	private static final long M = 0xc6a4a7935bd1e995L;
+
+	private static final int R = 47;
+
+	/**
+	 * 保留原始元素的上限，超过后只保留寄存器
+	 */
+	static final int RAW_LIMIT = 64;
+
+	private final byte[] registers = new byte[REGISTERS];
+
+	private Set<String> raw = new LinkedHashSet<String>();
+
+	void add(String element) {
+		long hash = hash(element);
+		int index = (int) (hash & (REGISTERS - 1));
+		// 保证至少有一个1，寄存器的值不超过64-P+1
+		int rank = Long.numberOfTrailingZeros((hash >>> P) | (1L << (64 - P))) + 1;
+		if (rank > registers[index]) {
+			registers[index] = (byte) rank;
+		}
+		if (raw != null && raw.add(element) && raw.size() > RAW_LIMIT) {
+			raw = null;
+		}
+	}
+
+	/**
+	 * 合并另一个HyperLogLog，用于写入失败后放回
+	 *
+	 * @return this
+	 */
+	HyperLogLog merge(HyperLogLog other) {
+		for (int i = 0; i < REGISTERS; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+		if (raw != null && other.raw != null) {
+			raw.addAll(other.raw);
+			if (raw.size() > RAW_LIMIT) {
+				raw = null;
+			}
+		} else {
+			raw = null;
+		}
+		return this;
+	}
+
+	/**
+	 * @return 原始元素，超过 {@link #RAW_LIMIT} 后为null
+	 */
+	String[] raw() {
+		return raw == null ? null : raw.toArray(new String[raw.size()]);
+	}
+
+	/**
+	 * 按redis的dense格式编码："HYLL"、编码(0为dense)、3字节保留、8字节基数缓存(最高位置1表示无效)，
+	 * 之后每个寄存器6位，从低位开始紧密排列
+	 */
+	byte[] toDense() {
+		byte[] dense = new byte[DENSE_SIZE];
+		dense[0] = 'H';
+		dense[1] = 'Y';
+		dense[2] = 'L';
+		dense[3] = 'L';
+		dense[HEADER_SIZE - 1] = (byte) 0x80;
+		for (int i = 0; i < REGISTERS; i++) {
+			int value = registers[i];
+			if (value == 0) {
+				continue;
+			}
+			int bit = i * BITS;
+			int b = HEADER_SIZE + bit / 8;
+			int shift = bit & 7;
+			dense[b] |= (byte) (value << shift);
+			if (shift > 8 - BITS) {
+				dense[b + 1] |= (byte) (value >>> (8 - shift));
+			}
+		}
+		return dense;
+	}
+
+	/**
+	 * redis的MurmurHash64A，按小端读取
+	 */
+	static long hash(String element) {
+		byte[] data = element.getBytes(StandardCharsets.UTF_8);
+		int length = data.length;
+		long h = SEED ^ (length * M);
+		int blocks = length / 8;
+		for (int i = 0; i < blocks; i++) {
+			int offset = i * 8;
+			long k = (data[offset] & 0xffL) | (data[offset + 1] & 0xffL) << 8 | (data[offset + 2] & 0xffL) << 16
+					| (data[offset + 3] & 0xffL) << 24 | (data[offset + 4] & 0xffL) << 32
+					| (data[offset + 5] & 0xffL) << 40 | (data[offset + 6] & 0xffL) << 48
+					| (data[offset + 7] & 0xffL) << 56;
+			k *= M;
+			k ^= k >>> R;
+			k *= M;
+			h ^= k;
+			h *= M;
+		}
+		int tail = blocks * 8;
+		switch (length & 7) {
+		case 7:
+			h ^= (data[tail + 6] & 0xffL) << 48;
+		case 6:
+			h ^= (data[tail + 5] & 0xffL) << 40;
+		case 5:
+			h ^= (data[tail + 4] & 0xffL) << 32;
+		case 4:
+			h ^= (data[tail + 3] & 0xffL) << 24;
+		case 3:
+			h ^= (data[tail + 2] & 0xffL) << 16;
+		case 2:
+			h ^= (data[tail + 1] & 0xffL) << 8;
+		case 1:
+			h ^= data[tail] & 0xffL;
+			h *= M;
+		default:
+		}
+		h ^= h >>> R;
+		h *= M;
+		h ^= h >>> R;
+		return h;
+	}
+}
@@ -0,0 +1,381 @@
+package com.api.counter;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+import com.api.cache.RedisKeys;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 去重计数(UV)：每个指标每天一个HyperLogLog，12KB以内，标准误差0.81%，代替存放原始id的集合
+ * id先加到本地按天划分的HyperLogLog寄存器中，定时或待写窗口过多时用pipeline批量写入：
+ * 元素少时PFADD原始元素，多时把寄存器按redis格式写入临时key再PFMERGE，一个窗口一个周期只写一次。
+ * 合并取寄存器最大值，失败后放回重试或部分重复写入都不会重复计数。
+ * 跨天查询先把已结束的整月PFMERGE成月汇总key(之后直接复用)，再与其余天的key一起PFCOUNT，不扫描原始数据。
+ * 同一指标的key带相同的hash tag，集群模式下在同一槽位，可以多key合并
+ *
+ * <pre>
+ * uniqueCounter.add("page:home", userId);
+ * uniqueCounter.count("page:home");
+ * uniqueCounter.count("page:home", LocalDate.now().minusDays(29), LocalDate.now());
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class UniqueCounter {
+
+	/**
+	 * 定时写入的间隔(毫秒)
+	 */
+	public static final long FLUSH_MILLIS = 5000;
+
+	/**
+	 * 待写窗口超过这个数时立即写入
+	 */
+	public static final int MAX_PENDING = 1000;
+
+	/**
+	 * 按天的key和月汇总key的保留天数
+	 */
+	public static final int RETAIN_DAYS = 400;
+
+	/**
+	 * 一个pipeline最多写几个窗口，寄存器一个窗口12KB
+	 */
+	private static final int FLUSH_CHUNK = 100;
+
+	/**
+	 * 跨天后多久认为前一天不再有写入，之后才汇总
+	 */
+	private static final long CLOSE_DELAY_MILLIS = 60000;
+
+	/**
+	 * 临时key的过期时间(毫秒)，写入中途失败时也不会留下
+	 */
+	private static final long TEMP_TTL_MILLIS = 60000;
+
+	private static final String PREFIX = "uv:";
+
+	private static final String TEMP_PREFIX = "uv:temp:";
+
+	private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+	private static final int RETAIN_SECONDS = (int) TimeUnit.DAYS.toSeconds(RETAIN_DAYS);
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	private RedisClient redisClient;
+
+	/**
+	 * 临时key带上实例标识，多个实例同时写同一个窗口时互不覆盖
+	 */
+	private final String instance = UUID.randomUUID().toString().substring(0, 8);
+
+	private final Map<Window, HyperLogLog> windows = new ConcurrentHashMap<Window, HyperLogLog>();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	private final LongAdder adds = new LongAdder();
+
+	private final LongAdder merges = new LongAdder();
+
+	private final LongAdder pfadds = new LongAdder();
+
+	private ScheduledExecutorService flusher;
+
+	@PostConstruct
+	public void init() {
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-unique-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停机前写入所有本地窗口
+	 */
+	@PreDestroy
+	public void destroy() {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			// flush已记录日志
+		}
+	}
+
+	/**
+	 * 记录今天的一次访问
+	 *
+	 * @param metric 指标，如页面
+	 * @param id     访问者
+	 */
+	public void add(String metric, String id) {
+		add(metric, LocalDate.now(), id);
+	}
+
+	/**
+	 * 记录某天的一次访问，补录已汇总的月份时汇总在写入后重建
+	 *
+	 * @param metric 指标
+	 * @param day    日期
+	 * @param id     访问者
+	 */
+	public void add(String metric, LocalDate day, String id) {
+		boolean[] created = new boolean[1];
+		windows.compute(new Window(metric, day), (window, hll) -> {
+			if (hll == null) {
+				hll = new HyperLogLog();
+				created[0] = true;
+			}
+			hll.add(id);
+			return hll;
+		});
+		adds.increment();
+		if (created[0] && windows.size() >= MAX_PENDING && flushScheduled.compareAndSet(false, true)) {
+			flusher.execute(() -> {
+				flushScheduled.set(false);
+				flushQuietly();
+			});
+		}
+	}
+
+	/**
+	 * @return 今天的去重数
+	 */
+	public long count(String metric) {
+		return count(metric, LocalDate.now());
+	}
+
+	/**
+	 * @return 某天的去重数，不含本地还没写入的
+	 */
+	public long count(String metric, LocalDate day) {
+		return redisClient.pfcount(dayKey(metric, day));
+	}
+
+	/**
+	 * 多天的去重数，不含本地还没写入的；范围内已结束的整月用月汇总
+	 *
+	 * @param metric 指标
+	 * @param from   开始日期(包含)
+	 * @param to     结束日期(包含)
+	 * @return 去重数
+	 */
+	public long count(String metric, LocalDate from, LocalDate to) {
+		if (from.isAfter(to)) {
+			throw new IllegalArgumentException("from " + from + " is after " + to);
+		}
+		List<String> keys = new ArrayList<String>();
+		LocalDate day = from;
+		while (!day.isAfter(to)) {
+			LocalDate monthEnd = day.with(TemporalAdjusters.lastDayOfMonth());
+			if (day.getDayOfMonth() == 1 && !monthEnd.isAfter(to) && closed(monthEnd)) {
+				keys.add(monthRollup(metric, day));
+				day = monthEnd.plusDays(1);
+			} else {
+				keys.add(dayKey(metric, day));
+				day = day.plusDays(1);
+			}
+		}
+		return redisClient.pfcount(keys.toArray(new String[keys.size()]));
+	}
+
+	/**
+	 * 把本地窗口按pipeline写入redis，失败时放回等下次重试
+	 *
+	 * @return 写入的窗口数
+	 */
+	public synchronized int flush() {
+		List<Map.Entry<Window, HyperLogLog>> entries = new ArrayList<Map.Entry<Window, HyperLogLog>>();
+		for (Window window : windows.keySet()) {
+			HyperLogLog hll = windows.remove(window);
+			if (hll != null) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<Window, HyperLogLog>(window, hll));
+			}
+		}
+		RedisBatch batch = redisClient.batch();
+		int written = 0;
+		int chunk = 0;
+		try {
+			for (Map.Entry<Window, HyperLogLog> entry : entries) {
+				ship(batch, entry.getKey(), entry.getValue());
+				if (++chunk == FLUSH_CHUNK) {
+					batch.execute();
+					written += chunk;
+					chunk = 0;
+				}
+			}
+			batch.execute();
+			written += chunk;
+		} catch (RuntimeException e) {
+			// 失败的一批和还没发送的放回，其中已写入的再合并一次不会重复计数
+			for (Map.Entry<Window, HyperLogLog> entry : entries.subList(written, entries.size())) {
+				windows.merge(entry.getKey(), entry.getValue(), HyperLogLog::merge);
+			}
+			logger.error("unique counter flush failed! reids cache exception: ", e);
+			throw e;
+		}
+		return written;
+	}
+
+	/**
+	 * @return 本地待写的窗口数
+	 */
+	public int getPendingCount() {
+		return windows.size();
+	}
+
+	/**
+	 * @return 累计的add调用次数
+	 */
+	public long getAdds() {
+		return adds.sum();
+	}
+
+	/**
+	 * @return 累计以寄存器PFMERGE写入的窗口数
+	 */
+	public long getMerges() {
+		return merges.sum();
+	}
+
+	/**
+	 * @return 累计以原始元素PFADD写入的窗口数
+	 */
+	public long getPfadds() {
+		return pfadds.sum();
+	}
+
+	private void ship(RedisBatch batch, Window window, HyperLogLog hll) {
+		String key = window.key;
+		String[] raw = hll.raw();
+		if (raw != null) {
+			batch.pfadd(key, raw);
+			pfadds.increment();
+		} else {
+			String temp = RedisKeys.related(TEMP_PREFIX + instance + ":", key);
+			byte[] dense = hll.toDense();
+			batch.write(temp, p -> p.psetex(SafeEncoder.encode(temp), TEMP_TTL_MILLIS, dense));
+			batch.pfmerge(key, temp);
+			batch.del(temp);
+			merges.increment();
+		}
+		batch.expire(key, RETAIN_SECONDS);
+		LocalDate monthEnd = window.day.with(TemporalAdjusters.lastDayOfMonth());
+		if (closed(monthEnd)) {
+			// 补录已结束的月份，删除月汇总，下次查询重建
+			batch.del(monthKey(window.metric, window.day));
+		}
+	}
+
+	/**
+	 * 整月的汇总key，不存在时由当月每天的key合并生成
+	 */
+	private String monthRollup(String metric, LocalDate firstDay) {
+		String key = monthKey(metric, firstDay);
+		if (redisClient.exist(key)) {
+			return key;
+		}
+		int days = firstDay.lengthOfMonth();
+		String[] dayKeys = new String[days];
+		for (int i = 0; i < days; i++) {
+			dayKeys[i] = dayKey(metric, firstDay.plusDays(i));
+		}
+		// 并发生成时结果相同
+		RedisBatch batch = redisClient.batch();
+		batch.pfmerge(key, dayKeys);
+		batch.expire(key, RETAIN_SECONDS);
+		batch.execute();
+		return key;
+	}
+
+	/**
+	 * 第二天开始 {@link #CLOSE_DELAY_MILLIS} 之后，这一天不再有写入
+	 */
+	private static boolean closed(LocalDate day) {
+		long nextDay = day.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		return System.currentTimeMillis() >= nextDay + CLOSE_DELAY_MILLIS;
+	}
+
+	static String dayKey(String metric, LocalDate day) {
+		return PREFIX + RedisKeys.tagged(metric, DAY.format(day));
+	}
+
+	static String monthKey(String metric, LocalDate day) {
+		return PREFIX + RedisKeys.tagged(metric, MONTH.format(day));
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			// 窗口已放回，下个周期重试；异常不能抛出，否则定时任务被取消
+			logger.debug("unique counter will retry flushing", e);
+		}
+	}
+
+	/**
+	 * 一个指标一天的窗口
+	 */
+	private static final class Window {
+
+		private final String metric;
+
+		private final LocalDate day;
+
+		private final String key;
+
+		private Window(String metric, LocalDate day) {
+			this.metric = metric;
+			this.day = day;
+			this.key = dayKey(metric, day);
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Window && key.equals(((Window) obj).key);
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.api.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+import com.api.cache.RedisScript;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * 基于redis位图的布隆过滤器，用于"是否见过"这类判断：不存在时一定返回false，存在时以设定的误判率可能误判为true
+ * 位数和哈希个数按预计元素数和误判率计算，n个元素、误判率p时约占 -n*ln(p)/ln(2)^2 位，1亿个元素1%误判约114MB，
+ * 远小于存放原始id的集合。k个位置在本地计算(murmur3_128的两个64位值做双重哈希)，
+ * 一个元素的k个位在同一个key上，由一次lua调用设置或检查；批量操作的多个元素通过一次pipeline执行。
+ * 大的过滤器按元素哈希分成多个key，集群模式下分布到不同节点，单个key不超过 {@link BloomFilters#MAX_SHARD_BITS} 位
+ *
+ * 通过 {@link BloomFilters#filter} 创建
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class BloomFilter {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final String name;
+
+	private final long expectedInsertions;
+
+	private final double fpp;
+
+	private final int shards;
+
+	private final long shardBits;
+
+	private final int hashes;
+
+	private final RedisClient redisClient;
+
+	private final RedisScript<Long> addScript;
+
+	private final RedisScript<Long> containsScript;
+
+	BloomFilter(String name, long expectedInsertions, double fpp, int shards, long shardBits, int hashes,
+			RedisClient redisClient, RedisScript<Long> addScript, RedisScript<Long> containsScript) {
+		this.name = name;
+		this.expectedInsertions = expectedInsertions;
+		this.fpp = fpp;
+		this.shards = shards;
+		this.shardBits = shardBits;
+		this.hashes = hashes;
+		this.redisClient = redisClient;
+		this.addScript = addScript;
+		this.containsScript = containsScript;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getExpectedInsertions() {
+		return expectedInsertions;
+	}
+
+	public double getFpp() {
+		return fpp;
+	}
+
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * @return 总位数
+	 */
+	public long getBits() {
+		return shardBits * shards;
+	}
+
+	/**
+	 * @return 每个元素的哈希个数
+	 */
+	public int getHashes() {
+		return hashes;
+	}
+
+	/**
+	 * 加入元素
+	 *
+	 * @param id 元素
+	 * @return 元素原来一定不存在时返回true；false表示可能已存在
+	 */
+	public boolean add(String id) {
+		Positions positions = positions(id);
+		return addScript.execute(positions.keys(), positions.offsets) == 1;
+	}
+
+	/**
+	 * 元素是否可能存在
+	 *
+	 * @param id 元素
+	 * @return false表示一定不存在；true表示可能存在
+	 */
+	public boolean mightContain(String id) {
+		Positions positions = positions(id);
+		return containsScript.execute(positions.keys(), positions.offsets) == 1;
+	}
+
+	/**
+	 * 一次往返加入多个元素，元素很多时每 {@link BloomFilters#BULK_CHUNK} 个一次往返
+	 *
+	 * @param ids 元素
+	 * @return 与ids一一对应，元素原来一定不存在时为true
+	 */
+	public List<Boolean> addAll(List<String> ids) {
+		return executeAll(addScript, ids);
+	}
+
+	/**
+	 * 一次往返判断多个元素，元素很多时每 {@link BloomFilters#BULK_CHUNK} 个一次往返
+	 *
+	 * @param ids 元素
+	 * @return 与ids一一对应，false表示一定不存在
+	 */
+	public List<Boolean> mightContainAll(List<String> ids) {
+		return executeAll(containsScript, ids);
+	}
+
+	/**
+	 * 按为1的位数估计已加入的元素数：-m/k * ln(1 - X/m)
+	 *
+	 * @return 估计的元素数
+	 */
+	public long approximateCount() {
+		RedisBatch batch = redisClient.batch();
+		List<RedisBatch.Result<Long>> counts = new ArrayList<RedisBatch.Result<Long>>(shards);
+		for (int i = 0; i < shards; i++) {
+			counts.add(batch.bitcount(shardKey(i)));
+		}
+		batch.execute();
+		long ones = 0;
+		for (RedisBatch.Result<Long> count : counts) {
+			ones += count.get();
+		}
+		double bits = getBits();
+		if (ones >= bits) {
+			return Long.MAX_VALUE;
+		}
+		return Math.round(-bits / hashes * Math.log(1 - ones / bits));
+	}
+
+	/**
+	 * 删除所有位，参数记录保留
+	 */
+	public void clear() {
+		RedisBatch batch = redisClient.batch();
+		for (int i = 0; i < shards; i++) {
+			batch.del(shardKey(i));
+		}
+		batch.execute();
+	}
+
+	private List<Boolean> executeAll(RedisScript<Long> script, List<String> ids) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Boolean> results = new ArrayList<Boolean>(ids.size());
+		for (int from = 0; from < ids.size(); from += BloomFilters.BULK_CHUNK) {
+			List<String> chunk = ids.subList(from, Math.min(ids.size(), from + BloomFilters.BULK_CHUNK));
+			List<List<String>> keysList = new ArrayList<List<String>>(chunk.size());
+			List<List<String>> argsList = new ArrayList<List<String>>(chunk.size());
+			for (String id : chunk) {
+				Positions positions = positions(id);
+				keysList.add(positions.keys());
+				argsList.add(positions.offsets);
+			}
+			for (Long result : script.executeBatch(keysList, argsList)) {
+				results.add(result == 1);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * 双重哈希：第i个位置为 (h1 + i * h2) mod 位数，同Guava的BloomFilter；分片由两个哈希值混合后选取，与位置无关
+	 */
+	private Positions positions(String id) {
+		HashCode hash = HASH.hashBytes(id.getBytes(StandardCharsets.UTF_8));
+		byte[] bytes = hash.asBytes();
+		long h1 = fromBytes(bytes, 0);
+		long h2 = fromBytes(bytes, 8);
+		int shard = shards == 1 ? 0 : Math.floorMod(Long.hashCode(h1 ^ Long.rotateLeft(h2, 32)), shards);
+		List<String> offsets = new ArrayList<String>(hashes);
+		long combined = h1;
+		for (int i = 0; i < hashes; i++) {
+			offsets.add(Long.toString((combined & Long.MAX_VALUE) % shardBits));
+			combined += h2;
+		}
+		return new Positions(shardKey(shard), offsets);
+	}
+
+	private String shardKey(int shard) {
+		return name + ":" + shard;
+	}
+
+	private static long fromBytes(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = offset + 7; i >= offset; i--) {
+			value = (value << 8) | (bytes[i] & 0xffL);
+		}
+		return value;
+	}
+
+	/**
+	 * 一个元素所在的key和k个位偏移
+	 */
+	private static final class Positions {
+
+		private final String key;
+
+		private final List<String> offsets;
+
+		private Positions(String key, List<String> offsets) {
+			this.key = key;
+			this.offsets = offsets;
+		}
+
+		private List<String> keys() {
+			return Arrays.asList(key);
+		}
+	}
+}
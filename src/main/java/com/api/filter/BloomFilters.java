@@ -0,0 +1,102 @@
+package com.api.filter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisClient;
+import com.api.cache.RedisScripts;
+
+/**
+ * 布隆过滤器管理，按预计元素数和误判率计算位数、哈希个数和分片数
+ * 参数记录在 名称:config 中，同一名称以不同参数创建时抛出异常，避免按不同的位置读写同一个位图
+ *
+ * <pre>
+ * BloomFilter seen = bloomFilters.filter("bloom:article", 10000000, 0.01);
+ * if (!seen.mightContain(id)) {
+ *     return null; // 一定不存在，不用查数据库
+ * }
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class BloomFilters {
+
+	/**
+	 * 单个key的最大位数(32MB)，更大的过滤器分成多个key
+	 */
+	public static final long MAX_SHARD_BITS = 1L << 28;
+
+	/**
+	 * 批量操作一次往返最多几个元素
+	 */
+	public static final int BULK_CHUNK = 1000;
+
+	private static final String CONFIG_SUFFIX = ":config";
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	private RedisClient redisClient;
+
+	@Autowired
+	private RedisScripts redisScripts;
+
+	private final Map<String, BloomFilter> filters = new ConcurrentHashMap<String, BloomFilter>();
+
+	/**
+	 * 获取不分片的布隆过滤器，超过 {@link #MAX_SHARD_BITS} 位时仍会分片
+	 *
+	 * @see #filter(String, long, double, int)
+	 */
+	public BloomFilter filter(String name, long expectedInsertions, double fpp) {
+		return filter(name, expectedInsertions, fpp, 1);
+	}
+
+	/**
+	 * 获取布隆过滤器，同一个名称只创建一次，之后的参数被忽略
+	 *
+	 * @param name               名称，分片的键为 名称:序号
+	 * @param expectedInsertions 预计元素数，超过后误判率上升
+	 * @param fpp                误判率，0到1之间
+	 * @param shards             分片数，集群模式下分到不同节点
+	 * @return 布隆过滤器
+	 */
+	public BloomFilter filter(String name, long expectedInsertions, double fpp, int shards) {
+		if (expectedInsertions <= 0) {
+			throw new IllegalArgumentException("expected insertions must be positive: " + expectedInsertions);
+		}
+		if (fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("fpp must be between 0 and 1: " + fpp);
+		}
+		if (shards <= 0) {
+			throw new IllegalArgumentException("shards must be positive: " + shards);
+		}
+		return filters.computeIfAbsent(name, n -> create(n, expectedInsertions, fpp, shards));
+	}
+
+	private BloomFilter create(String name, long expectedInsertions, double fpp, int shards) {
+		long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		int hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+		int shardCount = (int) Math.max(shards, (bits + MAX_SHARD_BITS - 1) / MAX_SHARD_BITS);
+		long shardBits = (bits + shardCount - 1) / shardCount;
+		String config = shardCount + ":" + shardBits + ":" + hashes;
+		String configKey = name + CONFIG_SUFFIX;
+		redisClient.setnx(configKey, config);
+		String existing = redisClient.get(configKey);
+		if (!config.equals(existing)) {
+			throw new IllegalStateException("bloom filter " + name + " exists with shards:bits:hashes " + existing
+					+ ", requested " + config);
+		}
+		logger.info("bloom filter {} created, {} bits in {} shards, {} hashes", name, shardCount * shardBits,
+				shardCount, hashes);
+		return new BloomFilter(name, expectedInsertions, fpp, shardCount, shardBits, hashes, redisClient,
+				redisScripts.get("bloom_add", Long.class), redisScripts.get("bloom_contains", Long.class));
+	}
+}
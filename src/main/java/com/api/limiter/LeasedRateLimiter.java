@@ -0,0 +1,248 @@
+package com.api.limiter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.api.cache.RedisScript;
+
+/**
+ * 本地租约限流：每个实例按固定窗口从redis批量租借许可，再在本地用无锁计数发放
+ * 本地有余量时不访问redis；窗口在redis端耗尽后，本实例在该窗口内直接拒绝，同样不访问redis。
+ * 窗口越满租约越小，减少滞留在各实例中用不掉的许可；租约闲置超过窗口的 1/{@link #RETURN_FRACTION} 时
+ * 由 {@link RateLimiter} 定时把剩余许可归还给redis，其他实例可以继续租用，
+ * 耗尽的实例也按同样的间隔重新申请一次，拿到其他实例归还的许可。
+ * redis端总发放量不超过上限，各实例时钟偏差会让窗口边界前后错开，超发量不超过一个窗口的上限
+ *
+ * 通过 {@link RateLimiter#leased} 创建
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class LeasedRateLimiter {
+
+	/**
+	 * 闲置多久归还租约：窗口长度的几分之一
+	 */
+	static final int RETURN_FRACTION = 10;
+
+	/**
+	 * 闲置归还的最短间隔(毫秒)
+	 */
+	private static final long MIN_RETURN_MILLIS = 100;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final String name;
+
+	private final long limit;
+
+	private final long windowMillis;
+
+	private final int maxLease;
+
+	private final int shares;
+
+	private final long returnMillis;
+
+	@SuppressWarnings("rawtypes")
+	private final RedisScript<List> leaseScript;
+
+	private final RedisScript<Long> returnScript;
+
+	private final Map<String, Lease> leases = new ConcurrentHashMap<String, Lease>();
+
+	private volatile long prunedWindow;
+
+	/**
+	 * @param name         限流器名称，用于区分redis中的计数
+	 * @param limit        每个窗口的许可上限（所有实例合计）
+	 * @param windowMillis 窗口长度(毫秒)
+	 * @param maxLease     单次租约上限
+	 * @param shares       剩余许可按几份分摊，一般取实例数
+	 */
+	@SuppressWarnings("rawtypes")
+	LeasedRateLimiter(String name, long limit, long windowMillis, int maxLease, int shares,
+			RedisScript<List> leaseScript, RedisScript<Long> returnScript) {
+		if (limit <= 0 || windowMillis <= 0 || maxLease <= 0 || shares <= 0) {
+			throw new IllegalArgumentException("limit, window, max lease and shares must be positive");
+		}
+		this.name = name;
+		this.limit = limit;
+		this.windowMillis = windowMillis;
+		this.maxLease = maxLease;
+		this.shares = shares;
+		this.returnMillis = Math.max(MIN_RETURN_MILLIS, windowMillis / RETURN_FRACTION);
+		this.leaseScript = leaseScript;
+		this.returnScript = returnScript;
+	}
+
+	/**
+	 * 获取一个许可
+	 *
+	 * @param key 限流对象
+	 * @return 结果，remaining为本实例剩余的租约许可
+	 */
+	public LimitResult acquire(String key) {
+		return acquire(key, 1);
+	}
+
+	/**
+	 * 获取多个许可
+	 *
+	 * @param key     限流对象
+	 * @param permits 许可数，不能超过上限
+	 * @return 结果，remaining为本实例剩余的租约许可
+	 */
+	public LimitResult acquire(String key, int permits) {
+		if (permits <= 0 || permits > limit) {
+			throw new IllegalArgumentException("permits must be between 1 and " + limit + ": " + permits);
+		}
+		long now = System.currentTimeMillis();
+		long window = now / windowMillis;
+		Lease lease = current(key, window);
+		lease.lastUsed = now;
+		if (lease.tryTake(permits)) {
+			return new LimitResult(true, lease.available.get(), 0);
+		}
+		synchronized (lease) {
+			if (!lease.tryTake(permits)) {
+				if (now < lease.retryAt || !lease.renew(key, permits, now) || !lease.tryTake(permits)) {
+					return new LimitResult(false, lease.available.get(), (window + 1) * windowMillis - now);
+				}
+			}
+		}
+		return new LimitResult(true, lease.available.get(), 0);
+	}
+
+	/**
+	 * 把当前窗口闲置超过 {@link #getReturnMillis()} 的租约中未用完的许可归还给redis，由RateLimiter定时调用
+	 */
+	public void returnIdle() {
+		long now = System.currentTimeMillis();
+		long window = now / windowMillis;
+		for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+			Lease lease = entry.getValue();
+			if (lease.window == window && now - lease.lastUsed >= returnMillis) {
+				giveBack(entry.getKey(), lease);
+			}
+		}
+	}
+
+	/**
+	 * 把当前窗口未用完的许可归还给redis，停机前调用
+	 */
+	public void close() {
+		long window = System.currentTimeMillis() / windowMillis;
+		for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+			if (entry.getValue().window == window) {
+				giveBack(entry.getKey(), entry.getValue());
+			}
+		}
+		leases.clear();
+	}
+
+	/**
+	 * @return 租约闲置多久后归还(毫秒)
+	 */
+	public long getReturnMillis() {
+		return returnMillis;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	private Lease current(String key, long window) {
+		Lease lease = leases.get(key);
+		if (lease != null && lease.window == window) {
+			return lease;
+		}
+		if (prunedWindow != window) {
+			prunedWindow = window;
+			leases.values().removeIf(l -> l.window < window);
+		}
+		return leases.compute(key, (k, old) -> old != null && old.window >= window ? old : new Lease(window));
+	}
+
+	private void giveBack(String key, Lease lease) {
+		long unused = lease.available.getAndSet(0);
+		if (unused <= 0) {
+			return;
+		}
+		try {
+			returnScript.execute(Collections.singletonList(redisKey(key, lease.window)),
+					Collections.singletonList(Long.toString(unused)));
+		} catch (Exception e) {
+			logger.error("return lease key:{} failed! reids cache exception: ", key, e);
+		}
+	}
+
+	private String redisKey(String key, long window) {
+		return String.format("%s:lease:%s:%s:%d", RateLimiter.LIMIT_PREFIX, name, key, window);
+	}
+
+	/**
+	 * 某个限流对象在某个窗口内的本地租约
+	 */
+	private final class Lease {
+
+		private final long window;
+
+		private final AtomicLong available = new AtomicLong();
+
+		/**
+		 * redis端该窗口已无剩余时，到这个时间点之前不再申请，之后再试一次以拿到其他实例归还的许可
+		 */
+		private volatile long retryAt;
+
+		/**
+		 * 最近一次获取许可的时间
+		 */
+		private volatile long lastUsed;
+
+		private Lease(long window) {
+			this.window = window;
+		}
+
+		private boolean tryTake(int permits) {
+			long current;
+			do {
+				current = available.get();
+				if (current < permits) {
+					return false;
+				}
+			} while (!available.compareAndSet(current, current - permits));
+			return true;
+		}
+
+		/**
+		 * 从redis续租，调用方持有本对象锁
+		 *
+		 * @return 是否租到了许可
+		 */
+		private boolean renew(String key, int permits, long now) {
+			long need = permits - available.get();
+			List<String> args = new ArrayList<String>(5);
+			args.add(Long.toString(limit));
+			args.add(Long.toString(Math.max(1, need)));
+			args.add(Integer.toString(maxLease));
+			args.add(Integer.toString(shares));
+			args.add(Long.toString(windowMillis * 2));
+			List<?> reply = leaseScript.execute(Collections.singletonList(redisKey(key, window)), args);
+			long granted = (Long) reply.get(0);
+			long left = (Long) reply.get(1);
+			if (left <= 0) {
+				retryAt = now + returnMillis;
+			}
+			available.addAndGet(granted);
+			return granted > 0;
+		}
+	}
+}
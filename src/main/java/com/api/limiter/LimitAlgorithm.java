@@ -0,0 +1,35 @@
+package com.api.limiter;
+
+/**
+ * 限流算法，每种算法对应lua目录下的一个脚本
+ *
+ * @author zhaoxingwu
+ *
+ */
+public enum LimitAlgorithm {
+
+	/**
+	 * 滑动窗口日志：精确，但每个许可在redis中占一条记录，适合上限较小的场景
+	 */
+	SLIDING_WINDOW_LOG("sliding_window_log"),
+
+	/**
+	 * 滑动窗口计数：用相邻两个固定窗口加权估算，内存固定，不会出现窗口边界的两倍突发
+	 */
+	SLIDING_WINDOW_COUNTER("sliding_window_counter"),
+
+	/**
+	 * 令牌桶：匀速补充，允许不超过桶容量的突发
+	 */
+	TOKEN_BUCKET("token_bucket");
+
+	private final String script;
+
+	LimitAlgorithm(String script) {
+		this.script = script;
+	}
+
+	public String getScript() {
+		return script;
+	}
+}
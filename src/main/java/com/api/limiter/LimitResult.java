@@ -0,0 +1,58 @@
+package com.api.limiter;
+
+import java.util.List;
+
+/**
+ * 限流结果
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class LimitResult {
+
+	private final boolean allowed;
+
+	private final long remaining;
+
+	private final long retryAfterMillis;
+
+	public LimitResult(boolean allowed, long remaining, long retryAfterMillis) {
+		this.allowed = allowed;
+		this.remaining = remaining;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * 由脚本返回的 {是否通过, 剩余许可, 建议重试等待} 构造
+	 */
+	static LimitResult of(List<?> reply) {
+		return new LimitResult(((Long) reply.get(0)) == 1, (Long) reply.get(1), (Long) reply.get(2));
+	}
+
+	/**
+	 * @return 是否通过
+	 */
+	public boolean isAllowed() {
+		return allowed;
+	}
+
+	/**
+	 * @return 当前剩余的许可数
+	 */
+	public long getRemaining() {
+		return remaining;
+	}
+
+	/**
+	 * @return 未通过时建议等待多少毫秒再重试，通过时为0
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "LimitResult [allowed=" + allowed + ", remaining=" + remaining + ", retryAfterMillis="
+				+ retryAfterMillis + "]";
+	}
+}
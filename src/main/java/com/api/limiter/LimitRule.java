@@ -0,0 +1,117 @@
+package com.api.limiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流规则
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class LimitRule {
+
+	private final LimitAlgorithm algorithm;
+
+	private final long limit;
+
+	private final long refillTokens;
+
+	private final long periodMillis;
+
+	private LimitRule(LimitAlgorithm algorithm, long limit, long refillTokens, long periodMillis) {
+		if (limit <= 0 || refillTokens <= 0 || periodMillis <= 0) {
+			throw new IllegalArgumentException("limit, refill tokens and period must be positive");
+		}
+		this.algorithm = algorithm;
+		this.limit = limit;
+		this.refillTokens = refillTokens;
+		this.periodMillis = periodMillis;
+	}
+
+	/**
+	 * 滑动窗口日志
+	 *
+	 * @param limit  窗口内许可上限
+	 * @param window 窗口长度
+	 * @param unit   时间单位
+	 * @return 规则
+	 */
+	public static LimitRule slidingWindowLog(long limit, long window, TimeUnit unit) {
+		return new LimitRule(LimitAlgorithm.SLIDING_WINDOW_LOG, limit, limit, unit.toMillis(window));
+	}
+
+	/**
+	 * 滑动窗口计数
+	 *
+	 * @param limit  窗口内许可上限
+	 * @param window 窗口长度
+	 * @param unit   时间单位
+	 * @return 规则
+	 */
+	public static LimitRule slidingWindowCounter(long limit, long window, TimeUnit unit) {
+		return new LimitRule(LimitAlgorithm.SLIDING_WINDOW_COUNTER, limit, limit, unit.toMillis(window));
+	}
+
+	/**
+	 * 令牌桶
+	 *
+	 * @param capacity     桶容量，即最大突发
+	 * @param refillTokens 每周期补充的令牌数
+	 * @param period       补充周期
+	 * @param unit         时间单位
+	 * @return 规则
+	 */
+	public static LimitRule tokenBucket(long capacity, long refillTokens, long period, TimeUnit unit) {
+		return new LimitRule(LimitAlgorithm.TOKEN_BUCKET, capacity, refillTokens, unit.toMillis(period));
+	}
+
+	/**
+	 * 脚本参数
+	 *
+	 * @param permits 本次请求许可数
+	 * @return 参数
+	 */
+	List<String> args(int permits) {
+		if (permits <= 0 || permits > limit) {
+			throw new IllegalArgumentException("permits must be between 1 and " + limit + ": " + permits);
+		}
+		List<String> args = new ArrayList<String>(4);
+		args.add(Long.toString(limit));
+		switch (algorithm) {
+		case TOKEN_BUCKET:
+			args.add(Long.toString(refillTokens));
+			args.add(Long.toString(periodMillis));
+			args.add(Integer.toString(permits));
+			break;
+		case SLIDING_WINDOW_LOG:
+			args.add(Long.toString(periodMillis));
+			args.add(Integer.toString(permits));
+			args.add(Long.toHexString(ThreadLocalRandom.current().nextLong()));
+			break;
+		default:
+			args.add(Long.toString(periodMillis));
+			args.add(Integer.toString(permits));
+			break;
+		}
+		return args;
+	}
+
+	public LimitAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	public long getRefillTokens() {
+		return refillTokens;
+	}
+
+	public long getPeriodMillis() {
+		return periodMillis;
+	}
+}
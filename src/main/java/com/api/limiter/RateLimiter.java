@@ -0,0 +1,160 @@
+package com.api.limiter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisScript;
+import com.api.cache.RedisScripts;
+
+/**
+ * 基于lua脚本的分布式限流，按key分别计数
+ *
+ * <pre>
+ * LimitRule rule = LimitRule.slidingWindowCounter(100, 1, TimeUnit.SECONDS);
+ * LimitResult result = rateLimiter.acquire("user:" + userId, rule);
+ * if (!result.isAllowed()) {
+ *     // result.getRetryAfterMillis() 之后再试
+ * }
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class RateLimiter {
+
+	public static final String LIMIT_PREFIX = "limit";
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	private RedisScripts redisScripts;
+
+	@SuppressWarnings("rawtypes")
+	private final Map<LimitAlgorithm, RedisScript<List>> scripts = new EnumMap<LimitAlgorithm, RedisScript<List>>(
+			LimitAlgorithm.class);
+
+	private final Map<String, LeasedRateLimiter> leasedLimiters = new ConcurrentHashMap<String, LeasedRateLimiter>();
+
+	private ScheduledExecutorService leaseReturner;
+
+	@PostConstruct
+	public void init() {
+		for (LimitAlgorithm algorithm : LimitAlgorithm.values()) {
+			scripts.put(algorithm, redisScripts.get(algorithm.getScript(), List.class));
+		}
+		leaseReturner = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-lease-return");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		leaseReturner.shutdownNow();
+		for (LeasedRateLimiter limiter : leasedLimiters.values()) {
+			limiter.close();
+		}
+	}
+
+	/**
+	 * 获取本地租约限流器，适合单个key调用量很大的场景，绝大多数请求不访问redis。同一个名称只创建一次，之后的参数被忽略
+	 *
+	 * @param name     限流器名称
+	 * @param limit    每个窗口的许可上限（所有实例合计）
+	 * @param window   窗口长度
+	 * @param unit     时间单位
+	 * @param maxLease 单次租约上限，越大访问redis越少，滞留在单个实例中的许可也越多
+	 * @param shares   剩余许可按几份分摊，一般取实例数
+	 * @return 限流器，闲置的租约和停机时未用完的许可自动归还
+	 */
+	public LeasedRateLimiter leased(String name, long limit, long window, TimeUnit unit, int maxLease, int shares) {
+		return leasedLimiters.computeIfAbsent(name, n -> {
+			LeasedRateLimiter limiter = new LeasedRateLimiter(n, limit, unit.toMillis(window), maxLease, shares,
+					redisScripts.get("lease", List.class), redisScripts.get("lease_return", Long.class));
+			long period = limiter.getReturnMillis();
+			leaseReturner.scheduleWithFixedDelay(() -> returnIdle(limiter), period, period, TimeUnit.MILLISECONDS);
+			return limiter;
+		});
+	}
+
+	/**
+	 * 获取一个许可
+	 *
+	 * @param key  限流对象，如用户id、ip
+	 * @param rule 规则
+	 * @return 结果
+	 */
+	public LimitResult acquire(String key, LimitRule rule) {
+		return acquire(key, rule, 1);
+	}
+
+	/**
+	 * 获取多个许可，要么全部获得，要么一个都不占用
+	 *
+	 * @param key     限流对象
+	 * @param rule    规则
+	 * @param permits 许可数，不能超过规则上限
+	 * @return 结果
+	 */
+	public LimitResult acquire(String key, LimitRule rule, int permits) {
+		List<?> reply = scripts.get(rule.getAlgorithm()).execute(Collections.singletonList(redisKey(key, rule)),
+				rule.args(permits));
+		return LimitResult.of(reply);
+	}
+
+	/**
+	 * 一次往返为多个限流对象分别获取许可
+	 *
+	 * @param keys    限流对象
+	 * @param rule    规则
+	 * @param permits 每个对象的许可数
+	 * @return 限流对象 -> 结果，顺序与入参一致
+	 */
+	public Map<String, LimitResult> acquire(Collection<String> keys, LimitRule rule, int permits) {
+		List<List<String>> keysList = new ArrayList<List<String>>(keys.size());
+		List<List<String>> argsList = new ArrayList<List<String>>(keys.size());
+		for (String key : keys) {
+			keysList.add(Collections.singletonList(redisKey(key, rule)));
+			argsList.add(rule.args(permits));
+		}
+		List<?> replies = scripts.get(rule.getAlgorithm()).executeBatch(keysList, argsList);
+		Map<String, LimitResult> results = new LinkedHashMap<String, LimitResult>();
+		int i = 0;
+		for (String key : keys) {
+			results.put(key, LimitResult.of((List<?>) replies.get(i++)));
+		}
+		return results;
+	}
+
+	private static String redisKey(String key, LimitRule rule) {
+		return String.format("%s:%s:%s", LIMIT_PREFIX, rule.getAlgorithm().getScript(), key);
+	}
+
+	private void returnIdle(LeasedRateLimiter limiter) {
+		try {
+			limiter.returnIdle();
+		} catch (RuntimeException e) {
+			// 异常不能抛出，否则定时任务被取消
+			logger.error("lease " + limiter.getName() + " return failed! reids cache exception: ", e);
+		}
+	}
+}
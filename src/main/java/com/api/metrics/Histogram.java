@@ -0,0 +1,127 @@
+package com.api.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁直方图，对数分桶：每个2的幂区间再分8个子桶，相对误差不超过12.5%
+ * 每个桶是一个分段计数器(LongAdder)，只在第一次落入时创建，记录时不分配对象
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class Histogram {
+
+	/**
+	 * 每个2的幂区间的子桶数(2^3)
+	 */
+	private static final int SUB_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/**
+	 * 小于该值时每个值一个桶
+	 */
+	private static final int LINEAR = SUB_BUCKETS * 2;
+
+	/**
+	 * 最大可区分到 2^40，更大的值记入最后一个桶
+	 */
+	private static final int MAX_EXPONENT = 40;
+
+	private static final int BUCKETS = LINEAR + (MAX_EXPONENT - SUB_BITS - 1) * SUB_BUCKETS;
+
+	private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<LongAdder>(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * 记录一个值
+	 *
+	 * @param value 非负值，负数按0记录
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int index = index(value);
+		LongAdder bucket = buckets.get(index);
+		if (bucket == null) {
+			buckets.compareAndSet(index, null, new LongAdder());
+			bucket = buckets.get(index);
+		}
+		bucket.increment();
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * 分位数，返回所在桶的上界
+	 *
+	 * @param quantile 0到1之间，如0.99
+	 * @return 分位值，没有记录时返回0
+	 */
+	public long percentile(double quantile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			LongAdder bucket = buckets.get(i);
+			if (bucket != null) {
+				counts[i] = bucket.sum();
+				total += counts[i];
+			}
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, rank)) {
+				return Math.min(upperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int index(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if (exponent >= MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int exponent = (index - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+		int sub = (index - LINEAR) % SUB_BUCKETS;
+		return (1L << exponent) + ((long) (sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,62 @@
+package com.api.metrics;
+
+import java.util.Map;
+
+/**
+ * 一个窗口内某个key的访问统计
+ * 次数是Count-Min估计值，可能偏大不会偏小；读写和按命令的次数从key进入候选表后开始累计，可能偏小
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class HotKey {
+
+	private final String key;
+
+	private final long count;
+
+	private final long reads;
+
+	private final long writes;
+
+	private final Map<String, Long> commands;
+
+	HotKey(String key, long count, long reads, long writes, Map<String, Long> commands) {
+		this.key = key;
+		this.count = count;
+		this.reads = reads;
+		this.writes = writes;
+		this.commands = commands;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * 窗口内的访问次数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public long getReads() {
+		return reads;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	/**
+	 * 按命令名的次数
+	 */
+	public Map<String, Long> getCommands() {
+		return commands;
+	}
+
+	@Override
+	public String toString() {
+		return key + ": count=" + count + ", reads=" + reads + ", writes=" + writes + ", commands=" + commands;
+	}
+}
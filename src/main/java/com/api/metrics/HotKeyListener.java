@@ -0,0 +1,18 @@
+package com.api.metrics;
+
+/**
+ * 热点key通知，实现类注册为spring bean后由HotKeys在key的访问次数达到阈值时调用
+ * 例如告警、把key加入本地缓存
+ *
+ * @author zhaoxingwu
+ *
+ */
+public interface HotKeyListener {
+
+	/**
+	 * 一个key在当前窗口内的访问次数达到阈值，每个窗口每个key最多通知一次，在通知线程中调用
+	 *
+	 * @param hotKey 达到阈值时的统计
+	 */
+	void onHotKey(HotKey hotKey);
+}
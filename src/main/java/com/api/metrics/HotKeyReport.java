@@ -0,0 +1,52 @@
+package com.api.metrics;
+
+import java.util.List;
+
+/**
+ * 热点key报告：当前窗口(未结束)和上一个完整窗口的前K个key
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class HotKeyReport {
+
+	private final long windowStart;
+
+	private final long windowSeconds;
+
+	private final List<HotKey> current;
+
+	private final List<HotKey> previous;
+
+	HotKeyReport(long windowStart, long windowSeconds, List<HotKey> current, List<HotKey> previous) {
+		this.windowStart = windowStart;
+		this.windowSeconds = windowSeconds;
+		this.current = current;
+		this.previous = previous;
+	}
+
+	/**
+	 * 当前窗口的开始时间
+	 */
+	public long getWindowStart() {
+		return windowStart;
+	}
+
+	public long getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	/**
+	 * 当前窗口到目前为止的前K个key，按次数从大到小
+	 */
+	public List<HotKey> getCurrent() {
+		return current;
+	}
+
+	/**
+	 * 上一个窗口的前K个key，按次数从大到小
+	 */
+	public List<HotKey> getPrevious() {
+		return previous;
+	}
+}
@@ -0,0 +1,424 @@
+package com.api.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 热点key检测：InstrumentedJedisPool的连接发送命令时记录命令访问的key，按时间窗口统计访问最多的K个key
+ * 每个窗口一个Count-Min草图估计每个key的次数，估计值超过窗口内被替换掉的最小值时进入候选表；
+ * 候选表开放寻址，探测范围内满了就替换估计次数最少的(Space-Saving)，替换后提高准入门槛，长尾key很快不再进入。
+ * 记录只有几次原子自增，不加锁；热点key命中候选表后不分配对象，进入候选表时才复制key。
+ * key在一个窗口内的次数达到阈值时通知HotKeyListener，每个窗口每个key最多一次
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class HotKeys {
+
+	private static final Protocol.Command[] COMMANDS = Protocol.Command.values();
+
+	/**
+	 * 只读命令，其余带key的命令按写统计，脚本按写统计
+	 */
+	private static final boolean[] READS = flags("GET", "EXISTS", "TYPE", "TTL", "PTTL", "MGET", "STRLEN", "SUBSTR",
+			"GETRANGE", "GETBIT", "BITPOS", "BITCOUNT", "HGET", "HMGET", "HEXISTS", "HLEN", "HKEYS", "HVALS", "HGETALL",
+			"HSCAN", "LLEN", "LRANGE", "LINDEX", "SMEMBERS", "SCARD", "SISMEMBER", "SINTER", "SUNION", "SDIFF",
+			"SRANDMEMBER", "SSCAN", "ZRANGE", "ZRANK", "ZREVRANK", "ZREVRANGE", "ZCARD", "ZSCORE", "ZCOUNT",
+			"ZRANGEBYSCORE", "ZREVRANGEBYSCORE", "ZLEXCOUNT", "ZRANGEBYLEX", "ZREVRANGEBYLEX", "ZSCAN", "SORT", "DUMP",
+			"PFCOUNT", "GEODIST", "GEOHASH", "GEOPOS", "GEORADIUS", "GEORADIUSBYMEMBER", "WATCH");
+
+	/**
+	 * 第一个参数不是key的命令
+	 */
+	private static final boolean[] NO_KEY = flags("PING", "QUIT", "FLUSHDB", "KEYS", "RANDOMKEY", "DBSIZE", "SELECT",
+			"FLUSHALL", "MULTI", "DISCARD", "EXEC", "UNWATCH", "AUTH", "SUBSCRIBE", "PUBLISH", "UNSUBSCRIBE",
+			"PSUBSCRIBE", "PUNSUBSCRIBE", "PUBSUB", "SAVE", "BGSAVE", "BGREWRITEAOF", "LASTSAVE", "SHUTDOWN", "INFO",
+			"MONITOR", "SLAVEOF", "CONFIG", "SYNC", "ECHO", "DEBUG", "SCRIPT", "SLOWLOG", "OBJECT", "SENTINEL", "CLIENT",
+			"TIME", "MIGRATE", "SCAN", "WAIT", "CLUSTER", "ASKING", "READONLY", "BITOP");
+
+	/**
+	 * Count-Min草图的行数和每行的计数器个数
+	 */
+	private static final int DEPTH = 4;
+
+	private static final int WIDTH = 1 << 13;
+
+	/**
+	 * 候选表是前K个的几倍
+	 */
+	private static final int CANDIDATE_FACTOR = 4;
+
+	/**
+	 * 候选表开放寻址的最大探测次数
+	 */
+	private static final int MAX_PROBE = 8;
+
+	/**
+	 * 等待通知的最大个数，超过时丢弃
+	 */
+	private static final int MAX_PENDING_ALERTS = 1000;
+
+	private static final AtomicIntegerFieldUpdater<Entry> ALERTED = AtomicIntegerFieldUpdater.newUpdater(Entry.class,
+			"alerted");
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final int topK;
+
+	private final long threshold;
+
+	private final long windowSeconds;
+
+	private final List<HotKeyListener> listeners = new CopyOnWriteArrayList<HotKeyListener>();
+
+	private final ScheduledExecutorService rotator;
+
+	private final ExecutorService notifier;
+
+	private volatile Window current;
+
+	private volatile Window previous;
+
+	/**
+	 * @param topK          报告前几个key
+	 * @param threshold     一个窗口内访问多少次通知HotKeyListener，0表示不通知
+	 * @param windowSeconds 窗口长度(秒)
+	 */
+	public HotKeys(int topK, long threshold, long windowSeconds) {
+		this.topK = topK;
+		this.threshold = threshold;
+		this.windowSeconds = windowSeconds;
+		this.current = new Window(System.currentTimeMillis());
+		this.rotator = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-hotkeys-rotator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		rotator.scheduleAtFixedRate(this::rotate, windowSeconds, windowSeconds, TimeUnit.SECONDS);
+		this.notifier = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING_ALERTS), r -> {
+					Thread thread = new Thread(r, "redis-hotkeys-notifier");
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	@PreDestroy
+	public void close() {
+		rotator.shutdownNow();
+		notifier.shutdownNow();
+	}
+
+	@Autowired(required = false)
+	public void setListeners(List<HotKeyListener> listeners) {
+		this.listeners.addAll(listeners);
+	}
+
+	public void addListener(HotKeyListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * 记录一条命令访问的key，由连接在发送命令时调用
+	 *
+	 * @param command 命令
+	 * @param args    命令参数
+	 */
+	public void record(Protocol.Command command, byte[][] args) {
+		switch (command) {
+		case MGET:
+		case DEL:
+		case EXISTS:
+		case WATCH:
+			for (byte[] key : args) {
+				record(command, key);
+			}
+			return;
+		case MSET:
+		case MSETNX:
+			for (int i = 0; i < args.length; i += 2) {
+				record(command, args[i]);
+			}
+			return;
+		case EVAL:
+		case EVALSHA:
+			// 脚本 key个数 key... arg...
+			int keys = args.length > 1 ? parseInt(args[1]) : 0;
+			for (int i = 0; i < keys && i + 2 < args.length; i++) {
+				record(command, args[i + 2]);
+			}
+			return;
+		default:
+			if (args.length > 0 && !NO_KEY[command.ordinal()]) {
+				record(command, args[0]);
+			}
+		}
+	}
+
+	/**
+	 * 记录一次key访问
+	 *
+	 * @param command 命令
+	 * @param key     键
+	 */
+	public void record(Protocol.Command command, byte[] key) {
+		Window window = current;
+		long hash = hash(key);
+		long estimate = window.increment(hash);
+		if (estimate <= window.floor) {
+			return;
+		}
+		Entry entry = window.entry(key, hash, estimate);
+		if (entry == null) {
+			return;
+		}
+		if (READS[command.ordinal()]) {
+			entry.reads.increment();
+		} else {
+			entry.writes.increment();
+		}
+		entry.commands.incrementAndGet(command.ordinal());
+		if (threshold > 0 && estimate >= threshold && ALERTED.compareAndSet(entry, 0, 1)) {
+			notifier.execute(() -> alert(window, entry));
+		}
+	}
+
+	/**
+	 * @return 当前窗口和上一个窗口的前K个key
+	 */
+	public HotKeyReport report() {
+		Window window = current;
+		Window last = previous;
+		return new HotKeyReport(window.start, windowSeconds, window.top(topK),
+				last == null ? Collections.<HotKey>emptyList() : last.top(topK));
+	}
+
+	private void rotate() {
+		previous = current;
+		current = new Window(System.currentTimeMillis());
+	}
+
+	private void alert(Window window, Entry entry) {
+		HotKey hotKey = window.hotKey(entry);
+		logger.warn("hot key {}", hotKey);
+		for (HotKeyListener listener : listeners) {
+			try {
+				listener.onHotKey(hotKey);
+			} catch (Exception e) {
+				logger.error("hot key listener {} failed!", listener.getClass().getName(), e);
+			}
+		}
+	}
+
+	private static long hash(byte[] key) {
+		// FNV-1a，再做一次murmur3的混合让高低位都均匀
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			h ^= b;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static int parseInt(byte[] bytes) {
+		int value = 0;
+		for (byte b : bytes) {
+			if (b < '0' || b > '9') {
+				return 0;
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	private static boolean[] flags(String... names) {
+		Set<String> set = new HashSet<String>(Arrays.asList(names));
+		boolean[] flags = new boolean[COMMANDS.length];
+		for (Protocol.Command command : COMMANDS) {
+			flags[command.ordinal()] = set.contains(command.name());
+		}
+		return flags;
+	}
+
+	private final class Window {
+
+		private final long start;
+
+		private final AtomicLongArray sketch = new AtomicLongArray(DEPTH * WIDTH);
+
+		private final AtomicReferenceArray<Entry> entries;
+
+		/**
+		 * 进入候选表的门槛：被替换掉的候选中最大的估计次数，只增不减，并发时偶尔少增不影响正确性
+		 */
+		private volatile long floor;
+
+		private Window(long start) {
+			this.start = start;
+			int capacity = Integer.highestOneBit(Math.max(MAX_PROBE, topK * CANDIDATE_FACTOR) - 1) << 1;
+			this.entries = new AtomicReferenceArray<Entry>(capacity);
+		}
+
+		private long increment(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			long min = Long.MAX_VALUE;
+			for (int i = 0; i < DEPTH; i++) {
+				min = Math.min(min, sketch.incrementAndGet(i * WIDTH + ((h1 + i * h2) & (WIDTH - 1))));
+			}
+			return min;
+		}
+
+		private long estimate(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			long min = Long.MAX_VALUE;
+			for (int i = 0; i < DEPTH; i++) {
+				min = Math.min(min, sketch.get(i * WIDTH + ((h1 + i * h2) & (WIDTH - 1))));
+			}
+			return min;
+		}
+
+		/**
+		 * 找到key的候选，没有时插入空位或替换估计次数更少的候选
+		 *
+		 * @return 候选，估计次数不够替换时为null
+		 */
+		private Entry entry(byte[] key, long hash, long estimate) {
+			int mask = entries.length() - 1;
+			int first = (int) (hash >>> 40) & mask;
+			for (int i = 0; i < MAX_PROBE; i++) {
+				int slot = (first + i) & mask;
+				Entry entry = entries.get(slot);
+				if (entry == null) {
+					Entry created = new Entry(key.clone(), hash);
+					if (entries.compareAndSet(slot, null, created)) {
+						return created;
+					}
+					entry = entries.get(slot);
+				}
+				if (entry.hash == hash && Arrays.equals(entry.key, key)) {
+					return entry;
+				}
+			}
+			int victimSlot = -1;
+			Entry victim = null;
+			long victimEstimate = estimate;
+			for (int i = 0; i < MAX_PROBE; i++) {
+				int slot = (first + i) & mask;
+				Entry entry = entries.get(slot);
+				long entryEstimate = estimate(entry.hash);
+				if (entryEstimate < victimEstimate) {
+					victimSlot = slot;
+					victim = entry;
+					victimEstimate = entryEstimate;
+				}
+			}
+			if (victim == null) {
+				return null;
+			}
+			Entry created = new Entry(key.clone(), hash);
+			if (!entries.compareAndSet(victimSlot, victim, created)) {
+				return null;
+			}
+			if (victimEstimate > floor) {
+				floor = victimEstimate;
+			}
+			return created;
+		}
+
+		private List<HotKey> top(int n) {
+			List<Entry> candidates = new ArrayList<Entry>();
+			for (int i = 0; i < entries.length(); i++) {
+				Entry entry = entries.get(i);
+				if (entry != null) {
+					candidates.add(entry);
+				}
+			}
+			long[] estimates = new long[candidates.size()];
+			Integer[] order = new Integer[candidates.size()];
+			for (int i = 0; i < order.length; i++) {
+				estimates[i] = estimate(candidates.get(i).hash);
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Long.compare(estimates[b], estimates[a]));
+			// 并发替换时同一个key可能进入两个位置，只保留一个
+			Map<String, HotKey> top = new LinkedHashMap<String, HotKey>();
+			for (int i = 0; i < order.length && top.size() < n; i++) {
+				HotKey hotKey = hotKey(candidates.get(order[i]), estimates[order[i]]);
+				top.putIfAbsent(hotKey.getKey(), hotKey);
+			}
+			return new ArrayList<HotKey>(top.values());
+		}
+
+		private HotKey hotKey(Entry entry) {
+			return hotKey(entry, estimate(entry.hash));
+		}
+
+		private HotKey hotKey(Entry entry, long count) {
+			Map<String, Long> commands = new TreeMap<String, Long>();
+			for (int i = 0; i < COMMANDS.length; i++) {
+				long calls = entry.commands.get(i);
+				if (calls > 0) {
+					commands.put(COMMANDS[i].name(), calls);
+				}
+			}
+			return new HotKey(SafeEncoder.encode(entry.key), count, entry.reads.sum(), entry.writes.sum(), commands);
+		}
+	}
+
+	private static final class Entry {
+
+		private final byte[] key;
+
+		private final long hash;
+
+		private final LongAdder reads = new LongAdder();
+
+		private final LongAdder writes = new LongAdder();
+
+		private final AtomicLongArray commands = new AtomicLongArray(COMMANDS.length);
+
+		/**
+		 * 不能是private，否则AtomicIntegerFieldUpdater无权访问
+		 */
+		volatile int alerted;
+
+		private Entry(byte[] key, long hash) {
+			this.key = key;
+			this.hash = hash;
+		}
+	}
+}
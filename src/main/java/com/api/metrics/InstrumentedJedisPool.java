@@ -0,0 +1,259 @@
+package com.api.metrics;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+import com.api.cache.ResizableJedisPool;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 带指标的连接池，对使用方就是普通的JedisPool，同样可以调整大小
+ * 借连接时记录等待时间；池中的连接在发送命令时记下命令和时间，读到应答时记录耗时和大小。
+ * pipeline中的命令按发送顺序排队，读到一个应答出队一个，耗时为从发送到读到该应答。
+ * 主从多个池可以共用一个RedisMetrics，连接数指标只统计用bindPool关联的池。
+ * 传入HotKeys时发送命令的同时记录访问的key
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class InstrumentedJedisPool extends ResizableJedisPool {
+
+	private final RedisMetrics metrics;
+
+	public InstrumentedJedisPool(GenericObjectPoolConfig config, String host, int port, int timeout, String password,
+			RedisMetrics metrics) {
+		this(config, host, port, timeout, password, metrics, null);
+	}
+
+	/**
+	 * @param hotKeys 热点key检测，不检测时传null
+	 */
+	public InstrumentedJedisPool(GenericObjectPoolConfig config, String host, int port, int timeout, String password,
+			RedisMetrics metrics, HotKeys hotKeys) {
+		super(config, host, port, timeout, password);
+		this.metrics = metrics;
+		// 换成创建带指标连接的工厂，父类建的池里还没有连接
+		initPool(config, new MeteredJedisFactory(host, port, timeout, password, metrics, hotKeys));
+	}
+
+	@Override
+	public Jedis getResource() {
+		long start = System.nanoTime();
+		boolean error = true;
+		try {
+			Jedis jedis = super.getResource();
+			error = false;
+			return jedis;
+		} finally {
+			metrics.recordBorrow(System.nanoTime() - start, error);
+		}
+	}
+
+	/**
+	 * 与jedis自带的工厂行为一致，只是创建的连接带指标
+	 */
+	private static final class MeteredJedisFactory implements PooledObjectFactory<Jedis> {
+
+		private final String host;
+
+		private final int port;
+
+		private final int timeout;
+
+		private final String password;
+
+		private final RedisMetrics metrics;
+
+		private final HotKeys hotKeys;
+
+		private MeteredJedisFactory(String host, int port, int timeout, String password, RedisMetrics metrics,
+				HotKeys hotKeys) {
+			this.host = host;
+			this.port = port;
+			this.timeout = timeout;
+			this.password = password;
+			this.metrics = metrics;
+			this.hotKeys = hotKeys;
+		}
+
+		@Override
+		public PooledObject<Jedis> makeObject() throws Exception {
+			Jedis jedis = new MeteredJedis(host, port, timeout, metrics, hotKeys);
+			try {
+				jedis.connect();
+				if (StringUtils.isNotEmpty(password)) {
+					jedis.auth(password);
+				}
+			} catch (JedisException e) {
+				jedis.close();
+				throw e;
+			}
+			return new DefaultPooledObject<Jedis>(jedis);
+		}
+
+		@Override
+		public void destroyObject(PooledObject<Jedis> pooledJedis) throws Exception {
+			Jedis jedis = pooledJedis.getObject();
+			if (jedis.isConnected()) {
+				try {
+					jedis.quit();
+				} catch (Exception e) {
+					// 连接已坏，直接断开
+				}
+				jedis.disconnect();
+			}
+		}
+
+		@Override
+		public boolean validateObject(PooledObject<Jedis> pooledJedis) {
+			try {
+				Jedis jedis = pooledJedis.getObject();
+				return jedis.isConnected() && "PONG".equals(jedis.ping());
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		@Override
+		public void activateObject(PooledObject<Jedis> pooledJedis) throws Exception {
+		}
+
+		@Override
+		public void passivateObject(PooledObject<Jedis> pooledJedis) throws Exception {
+		}
+	}
+
+	private static final class MeteredJedis extends Jedis {
+
+		private MeteredJedis(String host, int port, int timeout, RedisMetrics metrics, HotKeys hotKeys) {
+			super(host, port, timeout, timeout);
+			client = new MeteredClient(host, port, metrics, hotKeys);
+			client.setConnectionTimeout(timeout);
+			client.setSoTimeout(timeout);
+		}
+	}
+
+	/**
+	 * 发送的命令排成环形队列，连接同一时刻只被一个线程使用，不需要同步
+	 */
+	private static final class MeteredClient extends Client {
+
+		private final RedisMetrics metrics;
+
+		private final HotKeys hotKeys;
+
+		private Protocol.Command[] commands = new Protocol.Command[16];
+
+		private long[] starts = new long[16];
+
+		private long[] sizes = new long[16];
+
+		private int head;
+
+		private int pending;
+
+		private MeteredClient(String host, int port, RedisMetrics metrics, HotKeys hotKeys) {
+			super(host, port);
+			this.metrics = metrics;
+			this.hotKeys = hotKeys;
+		}
+
+		@Override
+		protected Connection sendCommand(Protocol.Command command, byte[]... args) {
+			long size = 0;
+			for (byte[] arg : args) {
+				size += arg.length;
+			}
+			if (pending == commands.length) {
+				grow();
+			}
+			int tail = (head + pending) & (commands.length - 1);
+			commands[tail] = command;
+			starts[tail] = System.nanoTime();
+			sizes[tail] = size;
+			pending++;
+			if (hotKeys != null) {
+				hotKeys.record(command, args);
+			}
+			return super.sendCommand(command, args);
+		}
+
+		@Override
+		protected Object readProtocolWithCheckingBroken() {
+			Object reply;
+			try {
+				reply = super.readProtocolWithCheckingBroken();
+			} catch (JedisDataException e) {
+				complete(null, true);
+				throw e;
+			} catch (RuntimeException e) {
+				complete(null, true);
+				// 连接已坏，之后的应答都读不到了
+				pending = 0;
+				throw e;
+			}
+			complete(reply, false);
+			return reply;
+		}
+
+		@Override
+		public void disconnect() {
+			pending = 0;
+			super.disconnect();
+		}
+
+		private void complete(Object reply, boolean error) {
+			if (pending == 0) {
+				return;
+			}
+			long nanos = System.nanoTime() - starts[head];
+			metrics.recordCommand(commands[head], nanos, sizes[head], sizeOf(reply), error);
+			commands[head] = null;
+			head = (head + 1) & (commands.length - 1);
+			pending--;
+		}
+
+		private void grow() {
+			int length = commands.length;
+			Protocol.Command[] newCommands = new Protocol.Command[length * 2];
+			long[] newStarts = new long[length * 2];
+			long[] newSizes = new long[length * 2];
+			for (int i = 0; i < pending; i++) {
+				int from = (head + i) & (length - 1);
+				newCommands[i] = commands[from];
+				newStarts[i] = starts[from];
+				newSizes[i] = sizes[from];
+			}
+			commands = newCommands;
+			starts = newStarts;
+			sizes = newSizes;
+			head = 0;
+		}
+
+		private static long sizeOf(Object reply) {
+			if (reply instanceof byte[]) {
+				return ((byte[]) reply).length;
+			}
+			if (reply instanceof List) {
+				List<?> list = (List<?>) reply;
+				long size = 0;
+				for (int i = 0; i < list.size(); i++) {
+					size += sizeOf(list.get(i));
+				}
+				return size;
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.api.metrics;
+
+/**
+ * 指标输出，实现类注册为spring bean后由RedisMetrics定期调用
+ * 例如写日志、推送到监控系统
+ *
+ * @author zhaoxingwu
+ *
+ */
+public interface MetricsSink {
+
+	/**
+	 * 输出一次快照，在上报线程中调用
+	 *
+	 * @param snapshot 自启动以来的累计指标
+	 */
+	void report(MetricsSnapshot snapshot);
+}
@@ -0,0 +1,376 @@
+package com.api.metrics;
+
+import java.util.Map;
+
+/**
+ * 某一时刻的redis指标，耗时单位为微秒，大小单位为字节
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class MetricsSnapshot {
+
+	private final long timestamp;
+
+	private final Map<String, CommandSnapshot> commands;
+
+	private final Map<String, SizeSnapshot> encoded;
+
+	private final Map<String, CompressionSnapshot> compression;
+
+	private final int poolActive;
+
+	private final int poolIdle;
+
+	private final int poolWaiters;
+
+	private final long borrowCount;
+
+	private final long borrowErrors;
+
+	private final long borrowP50;
+
+	private final long borrowP99;
+
+	private final long borrowMax;
+
+	private final int poolMaxTotal;
+
+	private final int poolMaxIdle;
+
+	private final long poolMaxWaitMillis;
+
+	private final long poolGrows;
+
+	private final long poolShrinks;
+
+	MetricsSnapshot(long timestamp, Map<String, CommandSnapshot> commands, Map<String, SizeSnapshot> encoded,
+			Map<String, CompressionSnapshot> compression, int poolActive, int poolIdle, int poolWaiters, Histogram borrow, long borrowErrors, int poolMaxTotal,
+			int poolMaxIdle, long poolMaxWaitMillis, long poolGrows, long poolShrinks) {
+		this.timestamp = timestamp;
+		this.commands = commands;
+		this.encoded = encoded;
+		this.compression = compression;
+		this.poolActive = poolActive;
+		this.poolIdle = poolIdle;
+		this.poolWaiters = poolWaiters;
+		this.borrowCount = borrow.getCount();
+		this.borrowErrors = borrowErrors;
+		this.borrowP50 = borrow.percentile(0.5);
+		this.borrowP99 = borrow.percentile(0.99);
+		this.borrowMax = borrow.getMax();
+		this.poolMaxTotal = poolMaxTotal;
+		this.poolMaxIdle = poolMaxIdle;
+		this.poolMaxWaitMillis = poolMaxWaitMillis;
+		this.poolGrows = poolGrows;
+		this.poolShrinks = poolShrinks;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * 按命令名的指标
+	 */
+	public Map<String, CommandSnapshot> getCommands() {
+		return commands;
+	}
+
+	/**
+	 * 按类型的编码后大小
+	 */
+	public Map<String, SizeSnapshot> getEncoded() {
+		return encoded;
+	}
+
+	/**
+	 * @return 按压缩方式的压缩率和耗时
+	 */
+	public Map<String, CompressionSnapshot> getCompression() {
+		return compression;
+	}
+
+	public int getPoolActive() {
+		return poolActive;
+	}
+
+	public int getPoolIdle() {
+		return poolIdle;
+	}
+
+	public int getPoolWaiters() {
+		return poolWaiters;
+	}
+
+	public long getBorrowCount() {
+		return borrowCount;
+	}
+
+	public long getBorrowErrors() {
+		return borrowErrors;
+	}
+
+	public long getBorrowP50() {
+		return borrowP50;
+	}
+
+	public long getBorrowP99() {
+		return borrowP99;
+	}
+
+	public long getBorrowMax() {
+		return borrowMax;
+	}
+
+	/**
+	 * 连接池当前的最大连接数，由JedisPoolManager调整
+	 */
+	public int getPoolMaxTotal() {
+		return poolMaxTotal;
+	}
+
+	public int getPoolMaxIdle() {
+		return poolMaxIdle;
+	}
+
+	/**
+	 * 借连接最多等待(毫秒)，由延迟预算得出
+	 */
+	public long getPoolMaxWaitMillis() {
+		return poolMaxWaitMillis;
+	}
+
+	/**
+	 * 所有连接池扩大的次数
+	 */
+	public long getPoolGrows() {
+		return poolGrows;
+	}
+
+	/**
+	 * 所有连接池缩小的次数
+	 */
+	public long getPoolShrinks() {
+		return poolShrinks;
+	}
+
+	/**
+	 * 单个命令的指标
+	 */
+	public static class CommandSnapshot {
+
+		private final long calls;
+
+		private final long errors;
+
+		private final double mean;
+
+		private final long p50;
+
+		private final long p99;
+
+		private final long p999;
+
+		private final long max;
+
+		private final long requestBytesP99;
+
+		private final long replyBytesP99;
+
+		private final long replyBytesMax;
+
+		CommandSnapshot(long errors, Histogram latency, Histogram requestBytes, Histogram replyBytes) {
+			this.calls = latency.getCount();
+			this.errors = errors;
+			this.mean = latency.getMean();
+			this.p50 = latency.percentile(0.5);
+			this.p99 = latency.percentile(0.99);
+			this.p999 = latency.percentile(0.999);
+			this.max = latency.getMax();
+			this.requestBytesP99 = requestBytes.percentile(0.99);
+			this.replyBytesP99 = replyBytes.percentile(0.99);
+			this.replyBytesMax = replyBytes.getMax();
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getP999() {
+			return p999;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public long getRequestBytesP99() {
+			return requestBytesP99;
+		}
+
+		public long getReplyBytesP99() {
+			return replyBytesP99;
+		}
+
+		public long getReplyBytesMax() {
+			return replyBytesMax;
+		}
+
+		@Override
+		public String toString() {
+			return "calls=" + calls + ", errors=" + errors + ", p50=" + p50 + "us, p99=" + p99 + "us, p999=" + p999
+					+ "us, max=" + max + "us, replyBytesP99=" + replyBytesP99;
+		}
+	}
+
+	/**
+	 * 编码后大小的分布
+	 */
+	public static class SizeSnapshot {
+
+		private final long count;
+
+		private final double mean;
+
+		private final long p50;
+
+		private final long p99;
+
+		private final long max;
+
+		SizeSnapshot(Histogram sizes) {
+			this.count = sizes.getCount();
+			this.mean = sizes.getMean();
+			this.p50 = sizes.percentile(0.5);
+			this.p99 = sizes.percentile(0.99);
+			this.max = sizes.getMax();
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + mean + ", p99=" + p99 + ", max=" + max;
+		}
+	}
+
+	/**
+	 * 一种压缩方式的累计字节数和耗时
+	 */
+	public static class CompressionSnapshot {
+
+		private final long compressions;
+
+		private final long rejected;
+
+		private final long originalBytes;
+
+		private final long storedBytes;
+
+		private final long compressNanos;
+
+		private final long decompressions;
+
+		private final long decompressNanos;
+
+		CompressionSnapshot(long compressions, long rejected, long originalBytes, long storedBytes,
+				long compressNanos, long decompressions, long decompressNanos) {
+			this.compressions = compressions;
+			this.rejected = rejected;
+			this.originalBytes = originalBytes;
+			this.storedBytes = storedBytes;
+			this.compressNanos = compressNanos;
+			this.decompressions = decompressions;
+			this.decompressNanos = decompressNanos;
+		}
+
+		/**
+		 * @return 压缩次数，包括没有使用压缩结果的
+		 */
+		public long getCompressions() {
+			return compressions;
+		}
+
+		/**
+		 * @return 压缩效果不好、写入原值的次数
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getOriginalBytes() {
+			return originalBytes;
+		}
+
+		public long getStoredBytes() {
+			return storedBytes;
+		}
+
+		/**
+		 * @return 写入字节数与原值字节数之比，越小越好
+		 */
+		public double getRatio() {
+			return originalBytes == 0 ? 1 : (double) storedBytes / originalBytes;
+		}
+
+		/**
+		 * @return 压缩累计耗时(纳秒)
+		 */
+		public long getCompressNanos() {
+			return compressNanos;
+		}
+
+		public long getDecompressions() {
+			return decompressions;
+		}
+
+		/**
+		 * @return 解压累计耗时(纳秒)
+		 */
+		public long getDecompressNanos() {
+			return decompressNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "compressions=" + compressions + ", rejected=" + rejected + ", ratio=" + getRatio()
+					+ ", compressNanos=" + compressNanos + ", decompressions=" + decompressions + ", decompressNanos="
+					+ decompressNanos;
+		}
+	}
+}
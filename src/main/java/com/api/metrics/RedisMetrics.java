@@ -0,0 +1,296 @@
+package com.api.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.util.Pool;
+
+/**
+ * redis命令指标：按命令统计调用次数、错误次数、耗时分布和请求/应答大小，以及连接池的借用等待和活跃/空闲连接数
+ * 另外按类型统计TypedRedisClient编码后的大小，按压缩方式统计压缩率和耗时，以及JedisPoolManager对连接池大小的调整。
+ * 由InstrumentedJedisPool在连接层记录，所有经过连接池的调用（RedisClient、批量、脚本、锁）都会被统计。
+ * 命令按枚举序号直接定位，记录时不查表也不分配对象
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class RedisMetrics {
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private static final Protocol.Command[] COMMANDS = Protocol.Command.values();
+
+	private final AtomicReferenceArray<CommandStats> commands = new AtomicReferenceArray<CommandStats>(
+			COMMANDS.length);
+
+	private final Histogram borrow = new Histogram();
+
+	private final LongAdder borrowErrors = new LongAdder();
+
+	private final LongAdder poolGrows = new LongAdder();
+
+	private final LongAdder poolShrinks = new LongAdder();
+
+	private volatile int poolMaxTotal;
+
+	private volatile int poolMaxIdle;
+
+	private volatile long poolMaxWaitMillis;
+
+	/**
+	 * 按类型统计的编码后大小
+	 */
+	private final ConcurrentMap<String, Histogram> encoded = new ConcurrentHashMap<String, Histogram>();
+
+	/**
+	 * 按压缩方式统计的字节数和耗时
+	 */
+	private final ConcurrentMap<String, CompressionStats> compression = new ConcurrentHashMap<String, CompressionStats>();
+
+	private final long reportSeconds;
+
+	private volatile Pool<?> pool;
+
+	@Autowired(required = false)
+	private List<MetricsSink> sinks;
+
+	private ScheduledExecutorService reporter;
+
+	/**
+	 * @param reportSeconds 向MetricsSink上报的间隔(秒)
+	 */
+	public RedisMetrics(long reportSeconds) {
+		this.reportSeconds = reportSeconds;
+	}
+
+	@PostConstruct
+	public void init() {
+		if (sinks == null || sinks.isEmpty() || reportSeconds <= 0) {
+			return;
+		}
+		reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(this::report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+		}
+	}
+
+	/**
+	 * 关联连接池，用于读取活跃/空闲连接数
+	 *
+	 * @param pool 连接池
+	 */
+	public void bindPool(Pool<?> pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * 记录一次命令
+	 *
+	 * @param command      命令
+	 * @param nanos        从发送到读完应答的耗时
+	 * @param requestBytes 参数总字节数
+	 * @param replyBytes   应答字节数
+	 * @param error        是否失败
+	 */
+	public void recordCommand(Protocol.Command command, long nanos, long requestBytes, long replyBytes,
+			boolean error) {
+		int index = command.ordinal();
+		CommandStats stats = commands.get(index);
+		if (stats == null) {
+			commands.compareAndSet(index, null, new CommandStats());
+			stats = commands.get(index);
+		}
+		stats.latency.record(nanos / 1000);
+		stats.requestBytes.record(requestBytes);
+		stats.replyBytes.record(replyBytes);
+		if (error) {
+			stats.errors.increment();
+		}
+	}
+
+	/**
+	 * 记录一次从连接池借连接
+	 *
+	 * @param nanos 等待耗时
+	 * @param error 是否失败（超时或连不上）
+	 */
+	public void recordBorrow(long nanos, boolean error) {
+		borrow.record(nanos / 1000);
+		if (error) {
+			borrowErrors.increment();
+		}
+	}
+
+	/**
+	 * 记录连接池的当前大小和一次调整，大小只记录bindPool关联的池
+	 *
+	 * @param pool          连接池
+	 * @param maxTotal      最大连接数
+	 * @param maxIdle       最大空闲连接数
+	 * @param maxWaitMillis 借连接最多等待(毫秒)
+	 * @param delta         最大连接数的变化，正数为扩大，负数为缩小，0为初始值
+	 */
+	public void recordPoolSize(Pool<?> pool, int maxTotal, int maxIdle, long maxWaitMillis, int delta) {
+		if (delta > 0) {
+			poolGrows.increment();
+		} else if (delta < 0) {
+			poolShrinks.increment();
+		}
+		if (pool == this.pool) {
+			poolMaxTotal = maxTotal;
+			poolMaxIdle = maxIdle;
+			poolMaxWaitMillis = maxWaitMillis;
+		}
+	}
+
+	/**
+	 * 记录一次对象编码
+	 *
+	 * @param type  值类型
+	 * @param bytes 编码后字节数
+	 */
+	public void recordEncoded(String type, int bytes) {
+		Histogram histogram = encoded.get(type);
+		if (histogram == null) {
+			histogram = encoded.computeIfAbsent(type, t -> new Histogram());
+		}
+		histogram.record(bytes);
+	}
+
+	/**
+	 * 记录一次压缩
+	 *
+	 * @param codec         压缩方式
+	 * @param originalBytes 原值字节数
+	 * @param storedBytes   写入的字节数，没有使用压缩结果时等于原值字节数
+	 * @param nanos         压缩耗时
+	 * @param used          是否使用了压缩结果，压缩效果不好时不使用
+	 */
+	public void recordCompress(String codec, int originalBytes, int storedBytes, long nanos, boolean used) {
+		CompressionStats stats = compressionStats(codec);
+		stats.compressions.increment();
+		stats.compressNanos.add(nanos);
+		stats.originalBytes.add(originalBytes);
+		stats.storedBytes.add(storedBytes);
+		if (!used) {
+			stats.rejected.increment();
+		}
+	}
+
+	/**
+	 * 记录一次解压
+	 *
+	 * @param codec 压缩方式
+	 * @param nanos 解压耗时
+	 */
+	public void recordDecompress(String codec, long nanos) {
+		CompressionStats stats = compressionStats(codec);
+		stats.decompressions.increment();
+		stats.decompressNanos.add(nanos);
+	}
+
+	private CompressionStats compressionStats(String codec) {
+		CompressionStats stats = compression.get(codec);
+		if (stats == null) {
+			stats = compression.computeIfAbsent(codec, c -> new CompressionStats());
+		}
+		return stats;
+	}
+
+	/**
+	 * 自启动以来的累计指标
+	 *
+	 * @return 快照
+	 */
+	public MetricsSnapshot snapshot() {
+		Map<String, MetricsSnapshot.CommandSnapshot> snapshots = new TreeMap<String, MetricsSnapshot.CommandSnapshot>();
+		for (int i = 0; i < COMMANDS.length; i++) {
+			CommandStats stats = commands.get(i);
+			if (stats != null) {
+				snapshots.put(COMMANDS[i].name(), new MetricsSnapshot.CommandSnapshot(stats.errors.sum(),
+						stats.latency, stats.requestBytes, stats.replyBytes));
+			}
+		}
+		Map<String, MetricsSnapshot.SizeSnapshot> sizes = new TreeMap<String, MetricsSnapshot.SizeSnapshot>();
+		for (Map.Entry<String, Histogram> entry : encoded.entrySet()) {
+			sizes.put(entry.getKey(), new MetricsSnapshot.SizeSnapshot(entry.getValue()));
+		}
+		Map<String, MetricsSnapshot.CompressionSnapshot> compressions = new TreeMap<String, MetricsSnapshot.CompressionSnapshot>();
+		for (Map.Entry<String, CompressionStats> entry : compression.entrySet()) {
+			CompressionStats stats = entry.getValue();
+			compressions.put(entry.getKey(),
+					new MetricsSnapshot.CompressionSnapshot(stats.compressions.sum(), stats.rejected.sum(),
+							stats.originalBytes.sum(), stats.storedBytes.sum(), stats.compressNanos.sum(),
+							stats.decompressions.sum(), stats.decompressNanos.sum()));
+		}
+		Pool<?> current = pool;
+		return new MetricsSnapshot(System.currentTimeMillis(), snapshots, sizes, compressions,
+				current == null ? 0 : current.getNumActive(), current == null ? 0 : current.getNumIdle(),
+				current == null ? 0 : current.getNumWaiters(), borrow, borrowErrors.sum(), poolMaxTotal, poolMaxIdle,
+				poolMaxWaitMillis, poolGrows.sum(), poolShrinks.sum());
+	}
+
+	private void report() {
+		MetricsSnapshot snapshot = snapshot();
+		for (MetricsSink sink : sinks) {
+			try {
+				sink.report(snapshot);
+			} catch (Exception e) {
+				logger.error("redis metrics report to {} failed!", sink.getClass().getName(), e);
+			}
+		}
+	}
+
+	private static final class CommandStats {
+
+		private final Histogram latency = new Histogram();
+
+		private final Histogram requestBytes = new Histogram();
+
+		private final Histogram replyBytes = new Histogram();
+
+		private final LongAdder errors = new LongAdder();
+	}
+
+	private static final class CompressionStats {
+
+		private final LongAdder compressions = new LongAdder();
+
+		private final LongAdder rejected = new LongAdder();
+
+		private final LongAdder originalBytes = new LongAdder();
+
+		private final LongAdder storedBytes = new LongAdder();
+
+		private final LongAdder compressNanos = new LongAdder();
+
+		private final LongAdder decompressions = new LongAdder();
+
+		private final LongAdder decompressNanos = new LongAdder();
+	}
+}
@@ -0,0 +1,32 @@
+package com.api.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 查看redis指标：GET /redis/metrics
+ * 查看热点key：GET /redis/hotkeys
+ *
+ * @author zhaoxingwu
+ *
+ */
+@RestController
+public class RedisMetricsEndpoint {
+
+	@Autowired
+	private RedisMetrics redisMetrics;
+
+	@Autowired
+	private HotKeys hotKeys;
+
+	@GetMapping("/redis/metrics")
+	public MetricsSnapshot metrics() {
+		return redisMetrics.snapshot();
+	}
+
+	@GetMapping("/redis/hotkeys")
+	public HotKeyReport hotKeys() {
+		return hotKeys.report();
+	}
+}
@@ -0,0 +1,315 @@
+package com.api.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+import com.api.cache.RedisKeys;
+import com.api.cache.RedisRouter;
+import com.api.cache.RedisScript;
+import com.api.cache.ResizableJedisPool;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+/**
+ * 基于list的可靠队列，至少投递一次
+ * 生产者LPUSH到队列头部，一次命令写入多条；消费者从尾部取消息，同时原子地在有序集合中登记可见性超时，
+ * 处理完成后确认删除；超时未确认的消息由 {@link ListQueues} 定时放回队列，被再次消费。
+ * 处理中的消息只记在有序集合里，确认和放回每条都是O(log N)，与处理中的消息数无关；
+ * 处理中列表只暂存阻塞取出(BRPOPLPUSH)后还没登记超时的消息。
+ * 超时时间点在脚本中按redis的TIME计算，各实例的时钟偏差不会导致提前重新投递。
+ * 队列的所有键带同一个hash tag，集群模式下在同一槽位
+ *
+ * 通过 {@link ListQueues#queue} 创建
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class ListQueue {
+
+	public static final String QUEUE_PREFIX = "queue:";
+
+	/**
+	 * 单条LPUSH、单次确认最多带几条消息
+	 */
+	private static final int PUSH_CHUNK = 1000;
+
+	/**
+	 * 每次最多放回几条超时消息，最多补登记几条处理中列表的消息
+	 */
+	private static final int REQUEUE_LIMIT = 1000;
+
+	private final String name;
+
+	private final String queueKey;
+
+	private final String processingKey;
+
+	private final String deadlineKey;
+
+	private final long visibilityMillis;
+
+	private final int timeout;
+
+	private final String password;
+
+	private final RedisClient redisClient;
+
+	private final RedisRouter redisRouter;
+
+	@SuppressWarnings("rawtypes")
+	private final RedisScript<List> takeScript;
+
+	private final RedisScript<Long> ackScript;
+
+	private final RedisScript<Long> requeueScript;
+
+	private final List<QueueConsumer> consumers = new ArrayList<QueueConsumer>();
+
+	/**
+	 * @param name             队列名
+	 * @param visibilityMillis 取出后多久未确认则重新投递(毫秒)
+	 * @param timeout          消费者连接的超时(毫秒)
+	 * @param password         消费者连接的密码
+	 */
+	@SuppressWarnings("rawtypes")
+	ListQueue(String name, long visibilityMillis, int timeout, String password, RedisClient redisClient,
+			RedisRouter redisRouter, RedisScript<List> takeScript, RedisScript<Long> ackScript,
+			RedisScript<Long> requeueScript) {
+		if (visibilityMillis <= 0) {
+			throw new IllegalArgumentException("visibility millis must be positive");
+		}
+		this.name = name;
+		this.queueKey = RedisKeys.related(QUEUE_PREFIX, name);
+		this.processingKey = queueKey + ":processing";
+		this.deadlineKey = queueKey + ":deadline";
+		this.visibilityMillis = visibilityMillis;
+		this.timeout = timeout;
+		this.password = password;
+		this.redisClient = redisClient;
+		this.redisRouter = redisRouter;
+		this.takeScript = takeScript;
+		this.ackScript = ackScript;
+		this.requeueScript = requeueScript;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getVisibilityMillis() {
+		return visibilityMillis;
+	}
+
+	/**
+	 * 发送一条消息
+	 *
+	 * @param body 内容
+	 * @return 消息
+	 */
+	public QueueMessage send(String body) {
+		QueueMessage message = QueueMessage.create(body);
+		redisClient.lpush(queueKey, new String[] { message.getRaw() });
+		return message;
+	}
+
+	/**
+	 * 批量发送，每条LPUSH带多条消息，所有LPUSH在一次往返内完成
+	 *
+	 * @param bodies 内容
+	 * @return 发送的消息，顺序与入参一致
+	 */
+	public List<QueueMessage> send(Collection<String> bodies) {
+		List<QueueMessage> messages = new ArrayList<QueueMessage>(bodies.size());
+		for (String body : bodies) {
+			messages.add(QueueMessage.create(body));
+		}
+		RedisBatch batch = redisClient.batch();
+		for (int from = 0; from < messages.size(); from += PUSH_CHUNK) {
+			List<QueueMessage> chunk = messages.subList(from, Math.min(from + PUSH_CHUNK, messages.size()));
+			String[] raws = new String[chunk.size()];
+			for (int i = 0; i < raws.length; i++) {
+				raws[i] = chunk.get(i).getRaw();
+			}
+			batch.lpush(queueKey, raws);
+		}
+		batch.execute();
+		return messages;
+	}
+
+	/**
+	 * 不阻塞地取最多max条消息，处理完成后需要 {@link #ack}
+	 *
+	 * @param max 最多取几条
+	 * @return 消息，队列为空时为空列表
+	 */
+	public List<QueueMessage> poll(int max) {
+		return take(max, null);
+	}
+
+	/**
+	 * 队列为空时最多阻塞timeoutSeconds秒等待第一条消息，再不阻塞地补取到max条
+	 * 阻塞期间占用一个连接池中的连接，持续消费用 {@link #consume}
+	 *
+	 * @param max            最多取几条
+	 * @param timeoutSeconds 最长等待(秒)，0表示一直等待
+	 * @return 消息，超时时为空列表
+	 */
+	public List<QueueMessage> poll(int max, int timeoutSeconds) {
+		List<QueueMessage> messages = take(max, null);
+		if (!messages.isEmpty()) {
+			return messages;
+		}
+		String first = redisRouter.execute(queueKey,
+				jedis -> jedis.brpoplpush(queueKey, processingKey, timeoutSeconds));
+		return first == null ? messages : take(max, first);
+	}
+
+	/**
+	 * 确认消息处理完成
+	 *
+	 * @param messages 消息
+	 * @return 确认的条数，已超时被重新投递的消息不计入
+	 */
+	public long ack(List<QueueMessage> messages) {
+		if (messages.isEmpty()) {
+			return 0;
+		}
+		long acked = 0;
+		for (int from = 0; from < messages.size(); from += PUSH_CHUNK) {
+			List<QueueMessage> chunk = messages.subList(from, Math.min(from + PUSH_CHUNK, messages.size()));
+			List<String> raws = new ArrayList<String>(chunk.size());
+			for (QueueMessage message : chunk) {
+				raws.add(message.getRaw());
+			}
+			acked += ackScript.execute(Collections.singletonList(deadlineKey), raws);
+		}
+		return acked;
+	}
+
+	public long ack(QueueMessage message) {
+		return ack(Collections.singletonList(message));
+	}
+
+	/**
+	 * 启动消费者线程，每个线程独占一个连接阻塞等待，取到消息后批量交给handler，handler正常返回后批量确认；
+	 * handler抛出异常时不确认，超时后重新投递。
+	 * 阻塞用的连接来自这组消费者自己的连接池，大小等于线程数，不占用RedisClient的连接池
+	 *
+	 * @param threads   线程数，即独占的连接数
+	 * @param batchSize 每次最多取几条
+	 * @param handler   处理消息
+	 * @return 消费者，停止时调用 {@link QueueConsumer#stop()}
+	 */
+	public synchronized QueueConsumer consume(int threads, int batchSize, Consumer<List<QueueMessage>> handler) {
+		if (threads <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("threads and batch size must be positive");
+		}
+		QueueConsumer consumer = new QueueConsumer(this, blockingPool(threads), threads, batchSize, handler);
+		consumers.add(consumer);
+		consumer.start();
+		return consumer;
+	}
+
+	/**
+	 * 把超时未确认的消息放回队列
+	 *
+	 * @return 放回的条数
+	 */
+	public long requeueExpired() {
+		return requeueScript.execute(Arrays.asList(queueKey, processingKey, deadlineKey),
+				Arrays.asList(String.valueOf(visibilityMillis), String.valueOf(REQUEUE_LIMIT)));
+	}
+
+	/**
+	 * @return 等待消费的条数
+	 */
+	public long size() {
+		return redisClient.llen(queueKey);
+	}
+
+	/**
+	 * @return 已取出未确认的条数
+	 */
+	public long inflight() {
+		return redisClient.zcard(deadlineKey);
+	}
+
+	/**
+	 * 删除队列中所有消息，包括未确认的
+	 */
+	public void clear() {
+		RedisBatch batch = redisClient.batch();
+		batch.del(queueKey);
+		batch.del(processingKey);
+		batch.del(deadlineKey);
+		batch.execute();
+	}
+
+	void stop() {
+		List<QueueConsumer> running;
+		synchronized (this) {
+			running = new ArrayList<QueueConsumer>(consumers);
+		}
+		for (QueueConsumer consumer : running) {
+			consumer.stop();
+		}
+	}
+
+	synchronized void removed(QueueConsumer consumer) {
+		consumers.remove(consumer);
+	}
+
+	/**
+	 * @param first 已由BRPOPLPUSH移入处理中列表的消息，没有时为null
+	 */
+	List<QueueMessage> take(int max, String first) {
+		if (max <= 0) {
+			throw new IllegalArgumentException("max must be positive");
+		}
+		List<String> args = new ArrayList<String>(3);
+		args.add(String.valueOf(max));
+		args.add(String.valueOf(visibilityMillis));
+		if (first != null) {
+			args.add(first);
+		}
+		List<?> raws = takeScript.execute(Arrays.asList(queueKey, processingKey, deadlineKey), args);
+		List<QueueMessage> messages = new ArrayList<QueueMessage>(raws.size());
+		for (Object raw : raws) {
+			messages.add(QueueMessage.parse((String) raw));
+		}
+		return messages;
+	}
+
+	String getQueueKey() {
+		return queueKey;
+	}
+
+	String getProcessingKey() {
+		return processingKey;
+	}
+
+	/**
+	 * 队列所在节点上的独立连接池，连接数等于消费者线程数
+	 */
+	private JedisPool blockingPool(int threads) {
+		String host;
+		int port;
+		try (Jedis jedis = redisRouter.poolOf(queueKey).getResource()) {
+			host = jedis.getClient().getHost();
+			port = jedis.getClient().getPort();
+		}
+		JedisPoolConfig config = new JedisPoolConfig();
+		config.setMaxTotal(threads);
+		config.setMaxIdle(threads);
+		config.setMinIdle(0);
+		return new ResizableJedisPool(config, host, port, timeout, password);
+	}
+}
@@ -0,0 +1,119 @@
+package com.api.queue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisClient;
+import com.api.cache.RedisRouter;
+import com.api.cache.RedisScript;
+import com.api.cache.RedisScripts;
+
+/**
+ * 队列管理，负责定时把各队列超时未确认的消息放回队列
+ *
+ * <pre>
+ * ListQueue queue = listQueues.queue("order", 30, TimeUnit.SECONDS);
+ * queue.send(Arrays.asList("a", "b", "c"));
+ * queue.consume(4, 100, messages -&gt; { ... });
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class ListQueues {
+
+	/**
+	 * 检查超时的最小间隔(毫秒)
+	 */
+	private static final long MIN_REQUEUE_MILLIS = 100;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	private RedisClient redisClient;
+
+	@Autowired
+	private RedisRouter redisRouter;
+
+	@Autowired
+	private RedisScripts redisScripts;
+
+	/**
+	 * 消费者独立连接池的超时和密码，与jedis.pool相同
+	 */
+	@Value("${jedis.timeout}")
+	private int timeout;
+
+	@Value("${jedis.password}")
+	private String password;
+
+	private final Map<String, ListQueue> queues = new ConcurrentHashMap<String, ListQueue>();
+
+	private ScheduledExecutorService reaper;
+
+	@PostConstruct
+	public void init() {
+		reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-queue-reaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * 停止所有消费者
+	 */
+	@PreDestroy
+	public void destroy() {
+		reaper.shutdownNow();
+		for (ListQueue queue : queues.values()) {
+			queue.stop();
+		}
+	}
+
+	/**
+	 * 获取队列，同一个名称只创建一次，之后的参数被忽略
+	 *
+	 * @param name       队列名
+	 * @param visibility 取出后多久未确认则重新投递
+	 * @param unit       时间单位
+	 * @return 队列
+	 */
+	@SuppressWarnings("rawtypes")
+	public ListQueue queue(String name, long visibility, TimeUnit unit) {
+		return queues.computeIfAbsent(name, n -> {
+			ListQueue queue = new ListQueue(n, unit.toMillis(visibility), timeout, password, redisClient, redisRouter,
+					redisScripts.get("queue_take", List.class), redisScripts.get("queue_ack", Long.class),
+					redisScripts.get("queue_requeue", Long.class));
+			long period = Math.max(MIN_REQUEUE_MILLIS, queue.getVisibilityMillis() / 2);
+			reaper.scheduleWithFixedDelay(() -> requeue(queue), period, period, TimeUnit.MILLISECONDS);
+			return queue;
+		});
+	}
+
+	private void requeue(ListQueue queue) {
+		try {
+			long requeued = queue.requeueExpired();
+			if (requeued > 0) {
+				logger.warn("queue {} requeued {} expired messages", queue.getName(), requeued);
+			}
+		} catch (RuntimeException e) {
+			// 异常不能抛出，否则定时任务被取消
+			logger.error("queue " + queue.getName() + " requeue failed! reids cache exception: ", e);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.api.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 一组消费者线程，每个线程从这组消费者自己的连接池借一个连接一直持有，只用于阻塞等待，不会反复建立和归还连接；
+ * 连接池大小等于线程数，阻塞的连接不占用RedisClient的连接池，也不会被连接池管理当作繁忙而扩容。
+ * 队列有积压时不阻塞，直接用脚本批量取；队列为空时用BRPOPLPUSH阻塞等待第一条。
+ * 阻塞等待最多 {@link #BLOCK_SECONDS} 秒，停止后最多这么久线程退出
+ *
+ * 通过 {@link ListQueue#consume} 创建
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class QueueConsumer {
+
+	private static final int BLOCK_SECONDS = 1;
+
+	/**
+	 * 连接失败后等待多久重连(毫秒)
+	 */
+	private static final long RECONNECT_MILLIS = 1000;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final ListQueue queue;
+
+	private final JedisPool pool;
+
+	private final int batchSize;
+
+	private final Consumer<List<QueueMessage>> handler;
+
+	private final List<Thread> threads;
+
+	private volatile boolean running = true;
+
+	QueueConsumer(ListQueue queue, JedisPool pool, int threads, int batchSize,
+			Consumer<List<QueueMessage>> handler) {
+		this.queue = queue;
+		this.pool = pool;
+		this.batchSize = batchSize;
+		this.handler = handler;
+		this.threads = new ArrayList<Thread>(threads);
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(this::run, "redis-queue-" + queue.getName() + "-" + (i + 1));
+			thread.setDaemon(true);
+			this.threads.add(thread);
+		}
+	}
+
+	void start() {
+		for (Thread thread : threads) {
+			thread.start();
+		}
+	}
+
+	/**
+	 * 停止消费，等待线程处理完手上的消息后退出
+	 */
+	public void stop() {
+		running = false;
+		for (Thread thread : threads) {
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(BLOCK_SECONDS) * 5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		pool.close();
+		queue.removed(this);
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void run() {
+		Jedis jedis = null;
+		try {
+			while (running) {
+				try {
+					if (jedis == null) {
+						jedis = pool.getResource();
+					}
+					List<QueueMessage> messages = queue.take(batchSize, null);
+					if (messages.isEmpty()) {
+						String first = jedis.brpoplpush(queue.getQueueKey(), queue.getProcessingKey(), BLOCK_SECONDS);
+						if (first == null) {
+							continue;
+						}
+						messages = queue.take(batchSize, first);
+					}
+					handle(messages);
+				} catch (JedisConnectionException e) {
+					logger.error("queue " + queue.getName() + " consume failed! reids cache exception: ", e);
+					if (jedis != null) {
+						jedis.close();
+						jedis = null;
+					}
+					sleep();
+				} catch (JedisException e) {
+					logger.error("queue " + queue.getName() + " consume failed! reids cache exception: ", e);
+					sleep();
+				}
+			}
+		} finally {
+			if (jedis != null) {
+				jedis.close();
+			}
+		}
+	}
+
+	private void handle(List<QueueMessage> messages) {
+		try {
+			handler.accept(messages);
+		} catch (RuntimeException e) {
+			// 不确认，超时后重新投递
+			logger.error("queue " + queue.getName() + " handle " + messages.size() + " messages failed!", e);
+			return;
+		}
+		queue.ack(messages);
+	}
+
+	private void sleep() {
+		try {
+			Thread.sleep(RECONNECT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+}
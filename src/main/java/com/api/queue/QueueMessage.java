@@ -0,0 +1,80 @@
+package com.api.queue;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 队列中的消息
+ * 在redis中保存为 "id|body"，id在所有进程中唯一，相同内容的消息也能分别确认
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class QueueMessage {
+
+	private static final char SEPARATOR = '|';
+
+	/**
+	 * 进程前缀 + 递增序号，不含分隔符
+	 */
+	private static final String PROCESS = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	private final String id;
+
+	private final String body;
+
+	private final String raw;
+
+	private QueueMessage(String id, String body, String raw) {
+		this.id = id;
+		this.body = body;
+		this.raw = raw;
+	}
+
+	/**
+	 * 生成新消息
+	 */
+	static QueueMessage create(String body) {
+		String id = PROCESS + "-" + Long.toString(SEQUENCE.incrementAndGet(), 36);
+		return new QueueMessage(id, body, id + SEPARATOR + body);
+	}
+
+	/**
+	 * 从redis中保存的形式解析，不是本类写入的消息整体作为内容
+	 */
+	static QueueMessage parse(String raw) {
+		int index = raw.indexOf(SEPARATOR);
+		if (index < 0) {
+			return new QueueMessage(raw, raw, raw);
+		}
+		return new QueueMessage(raw.substring(0, index), raw.substring(index + 1), raw);
+	}
+
+	/**
+	 * @return 消息id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return 消息内容
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * @return redis中保存的形式，用于确认
+	 */
+	String getRaw() {
+		return raw;
+	}
+
+	@Override
+	public String toString() {
+		return "QueueMessage [id=" + id + ", body=" + body + "]";
+	}
+}
@@ -0,0 +1,283 @@
+package com.api.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.api.cache.StreamEntry;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 流消费者：一个读取线程 + 固定数量的工作线程
+ * 读取线程批量读取新消息，定期接管其他消费者空闲过久的消息，按顺序字段的哈希分派到工作线程，
+ * 每个工作线程只有一个线程，同一个值的消息按投递顺序处理；处理成功的消息id由读取线程攒批确认。
+ * 分派出去还没处理完的消息不超过 工作线程数 * 批大小 * 2，处理跟不上时读取线程暂停读取。
+ * 没有新消息时读取间隔从1毫秒逐步加倍到 {@link #MAX_IDLE_MILLIS}
+ * 分派出去还没确认的消息记在本地，接管时跳过，避免在工作线程排队的消息空闲超时后被自己再次分派。
+ * 处理失败的消息在空闲超时后才重新投递，此时同一个值后面的消息可能已经处理完，重试的消息不保证顺序。
+ * 确认失败时保留待确认的id下次重试，最多保留 {@link #MAX_UNACKED} 条，更早的丢弃后由接管重新投递
+ *
+ * 通过 {@link StreamQueue#consume} 创建
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class StreamConsumer {
+
+	private static final long MAX_IDLE_MILLIS = 50;
+
+	/**
+	 * 出错后等待多久重试(毫秒)
+	 */
+	private static final long RETRY_MILLIS = 1000;
+
+	/**
+	 * 确认失败时最多保留多少条待确认的id
+	 */
+	private static final int MAX_UNACKED = 10000;
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final StreamQueue queue;
+
+	private final String name;
+
+	private final int batchSize;
+
+	private final String orderField;
+
+	private final Consumer<StreamEntry> handler;
+
+	private final List<ExecutorService> workers;
+
+	private final Semaphore outstanding;
+
+	private final ConcurrentLinkedQueue<String> done = new ConcurrentLinkedQueue<String>();
+
+	/**
+	 * 已分派、还没确认的消息id
+	 */
+	private final Set<String> inflight = ConcurrentHashMap.newKeySet();
+
+	private final Thread reader;
+
+	private volatile boolean running = true;
+
+	private int next;
+
+	StreamConsumer(StreamQueue queue, String name, int workers, int batchSize, String orderField,
+			Consumer<StreamEntry> handler) {
+		this.queue = queue;
+		this.name = name;
+		this.batchSize = batchSize;
+		this.orderField = orderField;
+		this.handler = handler;
+		this.outstanding = new Semaphore(workers * batchSize * 2);
+		this.workers = new ArrayList<ExecutorService>(workers);
+		for (int i = 0; i < workers; i++) {
+			String threadName = "redis-stream-" + queue.getName() + "-" + name + "-" + (i + 1);
+			this.workers.add(new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+					r -> {
+						Thread thread = new Thread(r, threadName);
+						thread.setDaemon(true);
+						return thread;
+					}));
+		}
+		this.reader = new Thread(this::run, "redis-stream-" + queue.getName() + "-" + name);
+		this.reader.setDaemon(true);
+	}
+
+	void start() {
+		reader.start();
+	}
+
+	/**
+	 * 停止读取，等待已分派的消息处理完并确认
+	 */
+	public void stop() {
+		running = false;
+		try {
+			reader.join(RETRY_MILLIS * 5);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		queue.removed(this);
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	private void run() {
+		try {
+			recover();
+			long idle = 0;
+			long nextClaim = System.currentTimeMillis() + queue.getClaimIdleMillis();
+			while (running) {
+				try {
+					flush();
+					if (System.currentTimeMillis() >= nextClaim) {
+						dispatch(queue.claim(name, batchSize));
+						nextClaim = System.currentTimeMillis() + queue.getClaimIdleMillis() / 2;
+					}
+					List<StreamEntry> entries = read();
+					if (entries.isEmpty()) {
+						idle = Math.min(MAX_IDLE_MILLIS, Math.max(1, idle * 2));
+						Thread.sleep(idle);
+					} else {
+						idle = 0;
+						dispatch(entries);
+					}
+				} catch (JedisException e) {
+					logger.error("stream " + queue.getName() + " consume failed! reids cache exception: ", e);
+					Thread.sleep(RETRY_MILLIS);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			shutdown();
+		}
+	}
+
+	/**
+	 * 先处理上次投递给本消费者但未确认的消息
+	 */
+	private void recover() throws InterruptedException {
+		String startId = StreamQueue.PENDING;
+		while (running) {
+			try {
+				List<StreamEntry> entries = queue.pending(name, startId, batchSize);
+				if (entries.isEmpty()) {
+					return;
+				}
+				startId = entries.get(entries.size() - 1).getId();
+				List<StreamEntry> live = new ArrayList<StreamEntry>(entries.size());
+				for (StreamEntry entry : entries) {
+					if (entry.getFields() == null) {
+						// 内容已被裁剪，无法处理
+						done.add(entry.getId());
+					} else {
+						live.add(entry);
+					}
+				}
+				dispatch(live);
+			} catch (JedisException e) {
+				logger.error("stream " + queue.getName() + " recover failed! reids cache exception: ", e);
+				Thread.sleep(RETRY_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * 按空闲的处理能力读取，处理能力用完时不读取
+	 * 只有读取线程获取许可，读到的条数不超过可用许可，dispatch不会阻塞
+	 */
+	private List<StreamEntry> read() {
+		int available = Math.min(batchSize, outstanding.availablePermits());
+		if (available == 0) {
+			return new ArrayList<StreamEntry>();
+		}
+		return queue.read(name, available);
+	}
+
+	private void dispatch(List<StreamEntry> entries) throws InterruptedException {
+		for (StreamEntry entry : entries) {
+			if (!inflight.add(entry.getId())) {
+				// 自己接管到的、还在本地处理或等待确认的消息
+				continue;
+			}
+			outstanding.acquire();
+			workers.get(worker(entry)).execute(() -> handle(entry));
+		}
+	}
+
+	private int worker(StreamEntry entry) {
+		String value = orderField == null ? null : entry.get(orderField);
+		if (value == null) {
+			next = (next + 1) % workers.size();
+			return next;
+		}
+		return (value.hashCode() & Integer.MAX_VALUE) % workers.size();
+	}
+
+	private void handle(StreamEntry entry) {
+		try {
+			handler.accept(entry);
+			done.add(entry.getId());
+		} catch (RuntimeException e) {
+			// 不确认，空闲超时后被重新投递
+			inflight.remove(entry.getId());
+			logger.error("stream " + queue.getName() + " handle entry " + entry.getId() + " failed!", e);
+		} finally {
+			outstanding.release();
+		}
+	}
+
+	/**
+	 * 批量确认处理成功的消息
+	 */
+	private void flush() {
+		if (done.isEmpty()) {
+			return;
+		}
+		List<String> ids = new ArrayList<String>();
+		String id;
+		while ((id = done.poll()) != null) {
+			ids.add(id);
+		}
+		try {
+			queue.ack(ids);
+			for (String acked : ids) {
+				inflight.remove(acked);
+			}
+		} catch (JedisException e) {
+			int dropped = ids.size() - MAX_UNACKED;
+			if (dropped > 0) {
+				// 丢弃最早的，仍在消费组的待确认列表中，空闲超时后被接管重新处理
+				List<String> stale = ids.subList(0, dropped);
+				for (String unacked : stale) {
+					inflight.remove(unacked);
+				}
+				stale.clear();
+				logger.warn("stream {} dropped {} unacked ids, they will be redelivered", queue.getName(), dropped);
+			}
+			done.addAll(ids);
+			throw e;
+		}
+	}
+
+	private void shutdown() {
+		for (ExecutorService worker : workers) {
+			worker.shutdown();
+		}
+		try {
+			for (ExecutorService worker : workers) {
+				worker.awaitTermination(RETRY_MILLIS * 5, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			flush();
+		} catch (JedisException e) {
+			logger.error("stream " + queue.getName() + " ack failed! reids cache exception: ", e);
+		}
+	}
+}
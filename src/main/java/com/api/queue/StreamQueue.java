@@ -0,0 +1,238 @@
+package com.api.queue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.api.cache.RedisClient;
+import com.api.cache.StreamEntry;
+
+import redis.clients.jedis.ScanResult;
+
+/**
+ * 基于redis流和消费组的队列，至少投递一次
+ * 消息保留在流中直到被裁剪，多个消费组各自完整消费一遍；同一消费组内的消费者分摊消息。
+ * 追加时按 MAXLEN ~ 近似裁剪；投递后未确认的消息空闲超过claimIdleMillis后可被其他消费者接管(XAUTOCLAIM)
+ *
+ * 通过 {@link StreamQueues#stream} 创建
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class StreamQueue {
+
+	public static final String STREAM_PREFIX = "stream:";
+
+	/**
+	 * 第一次读取未确认消息的起始id
+	 */
+	static final String PENDING = "0";
+
+	private static final String NEW = ">";
+
+	private static final String CLAIM_START = "0-0";
+
+	/**
+	 * 一次脚本调用最多追加几条
+	 */
+	private static final int ADD_CHUNK = 500;
+
+	private final String name;
+
+	private final String key;
+
+	private final String group;
+
+	private final long maxLen;
+
+	private final long claimIdleMillis;
+
+	private final RedisClient redisClient;
+
+	private final List<StreamConsumer> consumers = new ArrayList<StreamConsumer>();
+
+	/**
+	 * @param name            队列名
+	 * @param group           消费组
+	 * @param maxLen          近似保留的最大长度，0表示不裁剪
+	 * @param claimIdleMillis 未确认的消息空闲多久后可被接管(毫秒)
+	 */
+	StreamQueue(String name, String group, long maxLen, long claimIdleMillis, RedisClient redisClient) {
+		if (maxLen < 0 || claimIdleMillis <= 0) {
+			throw new IllegalArgumentException("max len must not be negative and claim idle millis must be positive");
+		}
+		this.name = name;
+		this.key = STREAM_PREFIX + name;
+		this.group = group;
+		this.maxLen = maxLen;
+		this.claimIdleMillis = claimIdleMillis;
+		this.redisClient = redisClient;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	public long getClaimIdleMillis() {
+		return claimIdleMillis;
+	}
+
+	/**
+	 * 发送一条消息
+	 *
+	 * @param fields 字段
+	 * @return 消息id
+	 */
+	public String publish(Map<String, String> fields) {
+		return redisClient.xadd(key, fields, maxLen);
+	}
+
+	/**
+	 * 批量发送，每次脚本调用追加多条
+	 *
+	 * @param entries 每条消息的字段
+	 * @return 消息id，顺序与入参一致
+	 */
+	public List<String> publish(List<Map<String, String>> entries) {
+		List<String> ids = new ArrayList<String>(entries.size());
+		for (int from = 0; from < entries.size(); from += ADD_CHUNK) {
+			List<Map<String, String>> chunk = entries.subList(from, Math.min(from + ADD_CHUNK, entries.size()));
+			ids.addAll(redisClient.xadd(key, chunk, maxLen));
+		}
+		return ids;
+	}
+
+	/**
+	 * 读取从未投递过的新消息，处理完成后需要 {@link #ack}
+	 *
+	 * @param consumer 消费者
+	 * @param count    最多读几条
+	 * @return 消息，没有时为空列表
+	 */
+	public List<StreamEntry> read(String consumer, int count) {
+		return redisClient.xreadgroup(key, group, consumer, count, NEW);
+	}
+
+	/**
+	 * 读取已投递给该消费者但未确认的消息，消费者重启后先处理这些
+	 *
+	 * @param consumer 消费者
+	 * @param startId  从哪条之后读，第一次为"0"
+	 * @param count    最多读几条
+	 * @return 消息，读完时为空列表
+	 */
+	public List<StreamEntry> pending(String consumer, String startId, int count) {
+		return redisClient.xreadgroup(key, group, consumer, count, startId);
+	}
+
+	/**
+	 * 批量确认
+	 *
+	 * @param ids 消息id
+	 * @return 确认的条数
+	 */
+	public long ack(Collection<String> ids) {
+		return redisClient.xack(key, group, ids);
+	}
+
+	/**
+	 * 接管空闲超过claimIdleMillis的未确认消息，通常来自已退出的消费者；
+	 * 已被裁剪掉内容的消息无法处理，直接确认
+	 *
+	 * @param consumer 接管的消费者
+	 * @param count    最多接管几条
+	 * @return 接管的消息
+	 */
+	public List<StreamEntry> claim(String consumer, int count) {
+		List<StreamEntry> claimed = new ArrayList<StreamEntry>();
+		List<String> lost = new ArrayList<String>();
+		String cursor = CLAIM_START;
+		do {
+			ScanResult<StreamEntry> page = redisClient.xautoclaim(key, group, consumer, claimIdleMillis, cursor,
+					count - claimed.size());
+			for (StreamEntry entry : page.getResult()) {
+				if (entry.getFields() == null) {
+					lost.add(entry.getId());
+				} else {
+					claimed.add(entry);
+				}
+			}
+			cursor = page.getStringCursor();
+		} while (!CLAIM_START.equals(cursor) && claimed.size() < count);
+		if (!lost.isEmpty()) {
+			ack(lost);
+		}
+		return claimed;
+	}
+
+	/**
+	 * 启动消费者：一个线程批量读取，按orderField的值分派到固定的工作线程，同一个值的消息按顺序处理；
+	 * 处理成功的消息由读取线程批量确认，处理失败的不确认，空闲超过claimIdleMillis后重新投递，重新投递的消息不保证顺序
+	 *
+	 * @param consumer   消费者名，重启后使用相同的名称会先处理上次未确认的消息
+	 * @param workers    工作线程数
+	 * @param batchSize  每次最多读几条
+	 * @param orderField 保证顺序的字段，为null时不保证顺序
+	 * @param handler    处理消息
+	 * @return 消费者，停止时调用 {@link StreamConsumer#stop()}
+	 */
+	public synchronized StreamConsumer consume(String consumer, int workers, int batchSize, String orderField,
+			Consumer<StreamEntry> handler) {
+		if (workers <= 0 || batchSize <= 0) {
+			throw new IllegalArgumentException("workers and batch size must be positive");
+		}
+		StreamConsumer streamConsumer = new StreamConsumer(this, consumer, workers, batchSize, orderField, handler);
+		consumers.add(streamConsumer);
+		streamConsumer.start();
+		return streamConsumer;
+	}
+
+	/**
+	 * @return 流中的消息条数
+	 */
+	public long size() {
+		return redisClient.xlen(key);
+	}
+
+	/**
+	 * @return 消费组中已投递未确认的条数
+	 */
+	public long pendingCount() {
+		return redisClient.xpending(key, group);
+	}
+
+	/**
+	 * 删除流中所有消息和消费进度，重新创建消费组
+	 */
+	public void clear() {
+		redisClient.del(key);
+		createGroup();
+	}
+
+	/**
+	 * 创建消费组，已存在时忽略
+	 */
+	void createGroup() {
+		redisClient.xgroupCreate(key, group, PENDING);
+	}
+
+	void stop() {
+		List<StreamConsumer> running;
+		synchronized (this) {
+			running = new ArrayList<StreamConsumer>(consumers);
+		}
+		for (StreamConsumer consumer : running) {
+			consumer.stop();
+		}
+	}
+
+	synchronized void removed(StreamConsumer consumer) {
+		consumers.remove(consumer);
+	}
+}
@@ -0,0 +1,61 @@
+package com.api.queue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisClient;
+
+/**
+ * 流队列管理，负责创建消费组和停止消费者
+ *
+ * <pre>
+ * StreamQueue queue = streamQueues.stream("order", "billing", 100000, 30, TimeUnit.SECONDS);
+ * queue.publish(entries);
+ * queue.consume("billing-1", 4, 100, "userId", entry -&gt; { ... });
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class StreamQueues {
+
+	@Autowired
+	private RedisClient redisClient;
+
+	private final Map<String, StreamQueue> queues = new ConcurrentHashMap<String, StreamQueue>();
+
+	/**
+	 * 停止所有消费者
+	 */
+	@PreDestroy
+	public void destroy() {
+		for (StreamQueue queue : queues.values()) {
+			queue.stop();
+		}
+	}
+
+	/**
+	 * 获取流队列，同一个流名和消费组只创建一次，之后的参数被忽略
+	 *
+	 * @param name      流名
+	 * @param group     消费组，不存在时创建，从流的第一条开始消费
+	 * @param maxLen    近似保留的最大长度，0表示不裁剪
+	 * @param claimIdle 未确认的消息空闲多久后可被其他消费者接管
+	 * @param unit      时间单位
+	 * @return 流队列
+	 */
+	public StreamQueue stream(String name, String group, long maxLen, long claimIdle, TimeUnit unit) {
+		return queues.computeIfAbsent(name + ":" + group, n -> {
+			StreamQueue queue = new StreamQueue(name, group, maxLen, unit.toMillis(claimIdle), redisClient);
+			queue.createGroup();
+			return queue;
+		});
+	}
+}
@@ -0,0 +1,261 @@
+package com.api.ranking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+
+import redis.clients.jedis.Tuple;
+
+/**
+ * 基于有序集合的排行榜，分数从高到低排名
+ * 加分先在本地按成员合并，定时用一次pipeline的ZINCRBY写入redis，热门成员每个周期只写一次；
+ * 前N名从本地快照读取，快照过期后由一个线程刷新，其他线程继续读旧快照。
+ * 因此写入后最多延迟一个刷新周期可见，前N名最多延迟一个快照周期
+ *
+ * 通过 {@link Leaderboards#leaderboard} 创建
+ *
+ * @author zhaoxingwu
+ *
+ */
+public class Leaderboard {
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private final String key;
+
+	private final int snapshotSize;
+
+	private final long snapshotMillis;
+
+	private final RedisClient redisClient;
+
+	/**
+	 * 待写入的加分：成员 -> 合并后的增量
+	 */
+	private final Map<String, Double> pending = new ConcurrentHashMap<String, Double>();
+
+	private final ReentrantLock refreshing = new ReentrantLock();
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * @param key            有序集合的键
+	 * @param snapshotSize   本地快照保存前几名
+	 * @param snapshotMillis 快照有效期(毫秒)
+	 */
+	Leaderboard(String key, int snapshotSize, long snapshotMillis, RedisClient redisClient) {
+		if (snapshotSize <= 0 || snapshotMillis <= 0) {
+			throw new IllegalArgumentException("snapshot size and snapshot millis must be positive");
+		}
+		this.key = key;
+		this.snapshotSize = snapshotSize;
+		this.snapshotMillis = snapshotMillis;
+		this.redisClient = redisClient;
+	}
+
+	/**
+	 * @return 有序集合的键
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * 加分，合并到本地缓冲，下次刷新时写入redis
+	 *
+	 * @param member 成员
+	 * @param delta  增量，可以为负
+	 */
+	public void incr(String member, double delta) {
+		pending.merge(member, delta, Double::sum);
+	}
+
+	/**
+	 * 直接设置分数，不经过缓冲，同一成员缓冲中的加分会在刷新时继续累加
+	 *
+	 * @param member 成员
+	 * @param score  分数
+	 */
+	public void set(String member, double score) {
+		redisClient.zadd(key, score, member);
+	}
+
+	/**
+	 * 删除成员，同时丢弃该成员还没写入的加分
+	 *
+	 * @param member 成员
+	 */
+	public void remove(String member) {
+		pending.remove(member);
+		redisClient.zrem(key, new String[] { member });
+	}
+
+	/**
+	 * 把缓冲中的加分用一次pipeline写入redis，失败时加回缓冲等下次重试
+	 *
+	 * @return 写入的成员数
+	 */
+	public int flush() {
+		if (pending.isEmpty()) {
+			return 0;
+		}
+		Map<String, Double> deltas = new HashMap<String, Double>();
+		for (String member : pending.keySet()) {
+			// remove和merge对同一成员是原子的，移除之后的加分进入新的条目，不会丢失
+			Double delta = pending.remove(member);
+			if (delta != null && delta != 0) {
+				deltas.put(member, delta);
+			}
+		}
+		if (deltas.isEmpty()) {
+			return 0;
+		}
+		RedisBatch batch = redisClient.batch();
+		for (Map.Entry<String, Double> entry : deltas.entrySet()) {
+			batch.zincrby(key, entry.getValue(), entry.getKey());
+		}
+		try {
+			batch.execute();
+		} catch (RuntimeException e) {
+			for (Map.Entry<String, Double> entry : deltas.entrySet()) {
+				pending.merge(entry.getKey(), entry.getValue(), Double::sum);
+			}
+			logger.error("leaderboard flush failed! reids cache exception: ", e);
+			throw e;
+		}
+		return deltas.size();
+	}
+
+	/**
+	 * 前n名，n不超过快照大小时读本地快照
+	 *
+	 * @param n 名次数
+	 * @return 从第1名开始的列表
+	 */
+	public List<RankEntry> top(int n) {
+		if (n <= 0) {
+			return Collections.emptyList();
+		}
+		if (n > snapshotSize) {
+			return range(0, n - 1);
+		}
+		List<RankEntry> entries = snapshot().entries;
+		return entries.size() <= n ? entries : entries.subList(0, n);
+	}
+
+	/**
+	 * 分页读取，不使用快照
+	 *
+	 * @param page 页码，从1开始
+	 * @param size 每页条数
+	 * @return 该页的列表
+	 */
+	public List<RankEntry> page(int page, int size) {
+		if (page <= 0 || size <= 0) {
+			throw new IllegalArgumentException("page and size must be positive");
+		}
+		long start = (long) (page - 1) * size;
+		return range(start, start + size - 1);
+	}
+
+	/**
+	 * 成员前后各radius名，包含成员自己
+	 *
+	 * @param member 成员
+	 * @param radius 前后各取几名
+	 * @return 从高到低的列表，成员不在榜上时为空
+	 */
+	public List<RankEntry> around(String member, int radius) {
+		Long rank = redisClient.zrevrank(key, member);
+		if (rank == null) {
+			return Collections.emptyList();
+		}
+		return range(Math.max(0, rank - radius), rank + radius);
+	}
+
+	/**
+	 * 成员的名次和分数，一次往返
+	 *
+	 * @param member 成员
+	 * @return 不在榜上时为null
+	 */
+	public RankEntry rank(String member) {
+		RedisBatch batch = redisClient.batch();
+		RedisBatch.Result<Long> rank = batch.zrevrank(key, member);
+		RedisBatch.Result<Double> score = batch.zscore(key, member);
+		batch.execute();
+		if (rank.get() == null || score.get() == null) {
+			return null;
+		}
+		return new RankEntry(member, score.get(), rank.get() + 1);
+	}
+
+	/**
+	 * @return 榜上成员数
+	 */
+	public long size() {
+		return redisClient.zcard(key);
+	}
+
+	private Snapshot snapshot() {
+		Snapshot current = snapshot;
+		if (current != null && !current.expired()) {
+			return current;
+		}
+		if (current != null) {
+			// 已有旧快照时只让一个线程刷新
+			if (!refreshing.tryLock()) {
+				return current;
+			}
+		} else {
+			refreshing.lock();
+		}
+		try {
+			current = snapshot;
+			if (current == null || current.expired()) {
+				current = new Snapshot(range(0, snapshotSize - 1), System.currentTimeMillis() + snapshotMillis);
+				snapshot = current;
+			}
+			return current;
+		} finally {
+			refreshing.unlock();
+		}
+	}
+
+	private List<RankEntry> range(long start, long end) {
+		Set<Tuple> tuples = redisClient.zrevrangeWithScores(key, start, end);
+		List<RankEntry> entries = new ArrayList<RankEntry>(tuples.size());
+		long rank = start;
+		for (Tuple tuple : tuples) {
+			entries.add(new RankEntry(tuple.getElement(), tuple.getScore(), ++rank));
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	private static final class Snapshot {
+
+		private final List<RankEntry> entries;
+
+		private final long expiresAt;
+
+		private Snapshot(List<RankEntry> entries, long expiresAt) {
+			this.entries = entries;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean expired() {
+			return System.currentTimeMillis() >= expiresAt;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.api.ranking;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisClient;
+
+/**
+ * 排行榜管理，负责定时把各排行榜缓冲的加分写入redis
+ *
+ * <pre>
+ * Leaderboard board = leaderboards.leaderboard("ranking:daily", 100, 1, TimeUnit.SECONDS, 200);
+ * board.incr(userId, 10);
+ * List&lt;RankEntry&gt; top = board.top(10);
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class Leaderboards {
+
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@Autowired
+	private RedisClient redisClient;
+
+	private final Map<String, Leaderboard> leaderboards = new ConcurrentHashMap<String, Leaderboard>();
+
+	private ScheduledExecutorService flusher;
+
+	@PostConstruct
+	public void init() {
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "redis-leaderboard-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * 停机前写入所有缓冲的加分
+	 */
+	@PreDestroy
+	public void destroy() {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Leaderboard leaderboard : leaderboards.values()) {
+			try {
+				leaderboard.flush();
+			} catch (RuntimeException e) {
+				// flush已记录日志，继续写其他排行榜
+			}
+		}
+	}
+
+	/**
+	 * 获取排行榜，同一个键只创建一次，之后的参数被忽略
+	 *
+	 * @param key          有序集合的键
+	 * @param snapshotSize 本地快照保存前几名
+	 * @param snapshotTtl  快照有效期
+	 * @param unit         时间单位
+	 * @param flushMillis  缓冲的加分多久写入一次(毫秒)
+	 * @return 排行榜
+	 */
+	public Leaderboard leaderboard(String key, int snapshotSize, long snapshotTtl, TimeUnit unit, long flushMillis) {
+		if (flushMillis <= 0) {
+			throw new IllegalArgumentException("flush millis must be positive");
+		}
+		return leaderboards.computeIfAbsent(key, k -> {
+			Leaderboard leaderboard = new Leaderboard(k, snapshotSize, unit.toMillis(snapshotTtl), redisClient);
+			flusher.scheduleWithFixedDelay(() -> flush(leaderboard), flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+			return leaderboard;
+		});
+	}
+
+	private void flush(Leaderboard leaderboard) {
+		try {
+			leaderboard.flush();
+		} catch (RuntimeException e) {
+			// 加分已放回缓冲，下个周期重试；异常不能抛出，否则定时任务被取消
+			logger.debug("leaderboard " + leaderboard.getKey() + " will retry flushing", e);
+		}
+	}
+}
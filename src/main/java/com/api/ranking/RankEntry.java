@@ -0,0 +1,48 @@
+package com.api.ranking;
+
+/**
+ * 排行榜中的一项
+ *
+ * @author zhaoxingwu
+ *
+ */
+public final class RankEntry {
+
+	private final String member;
+
+	private final double score;
+
+	private final long rank;
+
+	public RankEntry(String member, double score, long rank) {
+		this.member = member;
+		this.score = score;
+		this.rank = rank;
+	}
+
+	/**
+	 * @return 成员
+	 */
+	public String getMember() {
+		return member;
+	}
+
+	/**
+	 * @return 分数
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * @return 名次，从1开始，分数从高到低
+	 */
+	public long getRank() {
+		return rank;
+	}
+
+	@Override
+	public String toString() {
+		return "RankEntry [member=" + member + ", score=" + score + ", rank=" + rank + "]";
+	}
+}
@@ -0,0 +1,387 @@
+package com.api.social;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+import com.api.cache.RedisKeys;
+import com.api.cache.RedisRouter;
+import com.api.cache.RedisScript;
+import com.api.cache.RedisScripts;
+
+import redis.clients.jedis.ZParams;
+
+/**
+ * 关注关系
+ * 每个用户的关注和粉丝是两个集合，键带用户的hash tag，同一用户的数据在同一槽位。
+ * 两个用户的共同关注/共同粉丝计算一次后以有序集合缓存（成员分值相同，按字典序稳定分页），数量直接取ZCARD，不传输成员；
+ * 缓存有效期内关注和取关会增量修改已缓存的结果，不需要重新计算。
+ * 单机模式用ZINTERSTORE在redis端求交集；集群模式下两个用户不在同一槽位，
+ * 遍历较小的集合、批量SISMEMBER较大的集合，结果分块写入临时键后改名，内存占用与集合大小无关。
+ * 结果为空时写入有效期较短的空结果标记，有效期内不重复计算；期间关注产生的共同成员会把标记换成结果集
+ *
+ * <pre>
+ * socialGraph.follow("A", "C");
+ * long count = socialGraph.commonFollowCount("A", "B");
+ * List&lt;String&gt; page = socialGraph.commonFollows("A", "B", 0, 20);
+ * </pre>
+ *
+ * @author zhaoxingwu
+ *
+ */
+@Component
+public class SocialGraph {
+
+	public static final String SOCIAL_PREFIX = "social:";
+
+	/**
+	 * 缓存结果的有效期(秒)
+	 */
+	private static final int RESULT_TTL_SECONDS = 600;
+
+	/**
+	 * 空结果标记的有效期(秒)
+	 */
+	private static final int EMPTY_TTL_SECONDS = 60;
+
+	/**
+	 * 集群模式下本地计算交集时每批SISMEMBER/ZADD的数量
+	 */
+	private static final int CHUNK = 500;
+
+	/**
+	 * 缓存结果中所有成员的分值
+	 */
+	private static final double SCORE = 1;
+
+	@Autowired
+	private RedisClient redisClient;
+
+	@Autowired
+	private RedisRouter redisRouter;
+
+	@Autowired
+	private RedisScripts redisScripts;
+
+	private RedisScript<Long> addScript;
+
+	@PostConstruct
+	public void init() {
+		addScript = redisScripts.get("social_add", Long.class);
+	}
+
+	/**
+	 * 关注，同时修改已缓存的共同关注和共同粉丝
+	 *
+	 * @param user   用户
+	 * @param target 被关注的用户
+	 */
+	public void follow(String user, String target) {
+		RedisBatch batch = redisClient.batch();
+		batch.sadd(key(Relation.FOLLOW, user), target);
+		batch.sadd(key(Relation.FANS, target), user);
+		RedisBatch.Result<Set<String>> followPartners = batch.smembers(index(Relation.FOLLOW, user));
+		RedisBatch.Result<Set<String>> fansPartners = batch.smembers(index(Relation.FANS, target));
+		batch.execute();
+
+		// 对方也有这个成员的，加入已缓存的交集
+		List<String[]> candidates = new ArrayList<String[]>();
+		RedisBatch check = redisClient.batch();
+		List<RedisBatch.Result<Boolean>> contains = new ArrayList<RedisBatch.Result<Boolean>>();
+		for (String partner : followPartners.get()) {
+			candidates.add(new String[] { result(Relation.FOLLOW, user, partner), target });
+			contains.add(check.sismember(key(Relation.FOLLOW, partner), target));
+		}
+		for (String partner : fansPartners.get()) {
+			candidates.add(new String[] { result(Relation.FANS, target, partner), user });
+			contains.add(check.sismember(key(Relation.FANS, partner), user));
+		}
+		if (candidates.isEmpty()) {
+			return;
+		}
+		check.execute();
+
+		List<List<String>> keysList = new ArrayList<List<String>>();
+		List<List<String>> argsList = new ArrayList<List<String>>();
+		for (int i = 0; i < candidates.size(); i++) {
+			if (Boolean.TRUE.equals(contains.get(i).get())) {
+				keysList.add(Arrays.asList(candidates.get(i)[0], empty(candidates.get(i)[0])));
+				argsList.add(Collections.singletonList(candidates.get(i)[1]));
+			}
+		}
+		if (!keysList.isEmpty()) {
+			addScript.executeBatch(keysList, argsList);
+		}
+	}
+
+	/**
+	 * 取消关注，同时从已缓存的共同关注和共同粉丝中移除
+	 *
+	 * @param user   用户
+	 * @param target 被取消关注的用户
+	 */
+	public void unfollow(String user, String target) {
+		RedisBatch batch = redisClient.batch();
+		batch.srem(key(Relation.FOLLOW, user), target);
+		batch.srem(key(Relation.FANS, target), user);
+		RedisBatch.Result<Set<String>> followPartners = batch.smembers(index(Relation.FOLLOW, user));
+		RedisBatch.Result<Set<String>> fansPartners = batch.smembers(index(Relation.FANS, target));
+		batch.execute();
+
+		if (followPartners.get().isEmpty() && fansPartners.get().isEmpty()) {
+			return;
+		}
+		RedisBatch remove = redisClient.batch();
+		for (String partner : followPartners.get()) {
+			remove.zrem(result(Relation.FOLLOW, user, partner), target);
+		}
+		for (String partner : fansPartners.get()) {
+			remove.zrem(result(Relation.FANS, target, partner), user);
+		}
+		remove.execute();
+	}
+
+	/**
+	 * @return user是否关注了target
+	 */
+	public boolean isFollowing(String user, String target) {
+		return redisClient.sismember(key(Relation.FOLLOW, user), target);
+	}
+
+	/**
+	 * @return 关注数
+	 */
+	public long followCount(String user) {
+		return redisClient.scard(key(Relation.FOLLOW, user));
+	}
+
+	/**
+	 * @return 粉丝数
+	 */
+	public long fansCount(String user) {
+		return redisClient.scard(key(Relation.FANS, user));
+	}
+
+	/**
+	 * 惰性迭代关注的用户，没有遍历完时需要关闭流
+	 */
+	public Stream<String> follows(String user) {
+		return redisClient.sscanStream(key(Relation.FOLLOW, user));
+	}
+
+	/**
+	 * 惰性迭代粉丝，没有遍历完时需要关闭流
+	 */
+	public Stream<String> fans(String user) {
+		return redisClient.sscanStream(key(Relation.FANS, user));
+	}
+
+	/**
+	 * 共同关注数
+	 */
+	public long commonFollowCount(String a, String b) {
+		return count(Relation.FOLLOW, a, b);
+	}
+
+	/**
+	 * 共同关注，按字典序分页
+	 *
+	 * @param offset 从0开始
+	 * @param count  条数
+	 */
+	public List<String> commonFollows(String a, String b, long offset, int count) {
+		return page(Relation.FOLLOW, a, b, offset, count);
+	}
+
+	/**
+	 * 共同粉丝数
+	 */
+	public long commonFansCount(String a, String b) {
+		return count(Relation.FANS, a, b);
+	}
+
+	/**
+	 * 共同粉丝，按字典序分页
+	 *
+	 * @param offset 从0开始
+	 * @param count  条数
+	 */
+	public List<String> commonFans(String a, String b, long offset, int count) {
+		return page(Relation.FANS, a, b, offset, count);
+	}
+
+	private long count(Relation relation, String a, String b) {
+		String result = result(relation, a, b);
+		RedisBatch batch = redisClient.batch();
+		RedisBatch.Result<Long> size = batch.zcard(result);
+		RedisBatch.Result<Boolean> empty = batch.exists(empty(result));
+		batch.execute();
+		if (size.get() > 0) {
+			return size.get();
+		}
+		return empty.get() ? 0 : intersect(relation, a, b);
+	}
+
+	private List<String> page(Relation relation, String a, String b, long offset, int count) {
+		if (offset < 0 || count <= 0) {
+			throw new IllegalArgumentException("offset must not be negative and count must be positive");
+		}
+		String result = result(relation, a, b);
+		// 命中缓存时一次往返
+		RedisBatch batch = redisClient.batch();
+		RedisBatch.Result<Long> size = batch.zcard(result);
+		RedisBatch.Result<Set<String>> members = batch.zrange(result, offset, offset + count - 1);
+		RedisBatch.Result<Boolean> empty = batch.exists(empty(result));
+		batch.execute();
+		if (size.get() > 0) {
+			return new ArrayList<String>(members.get());
+		}
+		if (empty.get() || intersect(relation, a, b) == 0) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<String>(redisClient.zrange(result, offset, offset + count - 1));
+	}
+
+	/**
+	 * 计算交集并缓存
+	 * 先登记索引再计算，计算期间的关注和取关要么已体现在结果中，要么能从索引找到结果并增量修改
+	 * 交集为空时写入空结果标记
+	 *
+	 * @return 交集大小
+	 */
+	private long intersect(Relation relation, String a, String b) {
+		String result = result(relation, a, b);
+		RedisBatch register = redisClient.batch();
+		register.sadd(index(relation, a), b);
+		register.sadd(index(relation, b), a);
+		register.expire(index(relation, a), RESULT_TTL_SECONDS);
+		register.expire(index(relation, b), RESULT_TTL_SECONDS);
+		register.execute();
+
+		String left = key(relation, a);
+		String right = key(relation, b);
+		if (!redisRouter.isCluster() || RedisKeys.sameSlot(left, right, result)) {
+			RedisBatch batch = redisClient.batch();
+			RedisBatch.Result<Long> size = batch.zinterstore(result,
+					new ZParams().aggregate(ZParams.Aggregate.MIN), left, right);
+			batch.expire(result, RESULT_TTL_SECONDS);
+			batch.execute();
+			if (size.get() == 0) {
+				redisClient.setex(empty(result), EMPTY_TTL_SECONDS, "1");
+			}
+			return size.get();
+		}
+		return intersectLocally(left, right, result);
+	}
+
+	/**
+	 * 遍历较小的集合，逐批检查是否在较大的集合中，结果写入同槽位的临时键，完成后改名
+	 */
+	private long intersectLocally(String left, String right, String result) {
+		RedisBatch sizes = redisClient.batch();
+		RedisBatch.Result<Long> leftSize = sizes.scard(left);
+		RedisBatch.Result<Long> rightSize = sizes.scard(right);
+		sizes.execute();
+		String smaller = leftSize.get() <= rightSize.get() ? left : right;
+		String larger = smaller == left ? right : left;
+
+		String temp = result + ":tmp:" + UUID.randomUUID();
+		long count = 0;
+		try (Stream<String> members = redisClient.sscanStream(smaller)) {
+			Iterator<String> iterator = members.iterator();
+			List<String> chunk = new ArrayList<String>(CHUNK);
+			while (iterator.hasNext()) {
+				chunk.add(iterator.next());
+				if (chunk.size() == CHUNK || !iterator.hasNext()) {
+					count += retain(chunk, larger, temp);
+					chunk.clear();
+				}
+			}
+		}
+		if (count == 0) {
+			redisClient.setex(empty(result), EMPTY_TTL_SECONDS, "1");
+			return 0;
+		}
+		redisClient.rename(temp, result);
+		return count;
+	}
+
+	/**
+	 * @return 写入临时键的成员数
+	 */
+	private long retain(List<String> chunk, String larger, String temp) {
+		RedisBatch check = redisClient.batch();
+		List<RedisBatch.Result<Boolean>> contains = new ArrayList<RedisBatch.Result<Boolean>>(chunk.size());
+		for (String member : chunk) {
+			contains.add(check.sismember(larger, member));
+		}
+		check.execute();
+		Map<String, Double> matched = new HashMap<String, Double>();
+		for (int i = 0; i < chunk.size(); i++) {
+			if (contains.get(i).get()) {
+				matched.put(chunk.get(i), SCORE);
+			}
+		}
+		if (matched.isEmpty()) {
+			return 0;
+		}
+		RedisBatch write = redisClient.batch();
+		// SSCAN可能返回重复成员，以ZADD的新增数为准
+		RedisBatch.Result<Long> added = write.zadd(temp, matched);
+		write.expire(temp, RESULT_TTL_SECONDS);
+		write.execute();
+		return added.get();
+	}
+
+	private static String key(Relation relation, String user) {
+		return RedisKeys.related(SOCIAL_PREFIX, user) + ":" + relation.name;
+	}
+
+	/**
+	 * 与user有缓存结果的其他用户
+	 */
+	private static String index(Relation relation, String user) {
+		return RedisKeys.related(SOCIAL_PREFIX, user) + ":cached:" + relation.name;
+	}
+
+	/**
+	 * 两个用户的交集结果，两人顺序无关，放在较小用户的槽位
+	 */
+	private static String result(Relation relation, String a, String b) {
+		List<String> pair = Arrays.asList(a, b);
+		Collections.sort(pair);
+		return RedisKeys.related(SOCIAL_PREFIX, pair.get(0)) + ":common:" + relation.name + ":" + pair.get(1);
+	}
+
+	/**
+	 * 交集为空的标记，与结果同槽位
+	 */
+	private static String empty(String result) {
+		return result + ":empty";
+	}
+
+	private enum Relation {
+
+		FOLLOW("follow"), FANS("fans");
+
+		private final String name;
+
+		Relation(String name) {
+			this.name = name;
+		}
+	}
+}
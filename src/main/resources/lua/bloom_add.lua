@@ -0,0 +1,12 @@
+-- 布隆过滤器加入元素：设置元素的k个位
+-- KEYS[1] 位图
+-- ARGV 位偏移
+-- 返回 1 有位原来为0，元素原来不存在；0 所有位都已是1，元素可能已存在
+local key = KEYS[1]
+local added = 0
+for i = 1, #ARGV do
+    if redis.call("SETBIT", key, ARGV[i], 1) == 0 then
+        added = 1
+    end
+end
+return added
@@ -0,0 +1,11 @@
+-- 布隆过滤器判断元素是否可能存在，遇到为0的位立即返回
+-- KEYS[1] 位图
+-- ARGV 位偏移
+-- 返回 1 可能存在；0 一定不存在
+local key = KEYS[1]
+for i = 1, #ARGV do
+    if redis.call("GETBIT", key, ARGV[i]) == 0 then
+        return 0
+    end
+end
+return 1
@@ -0,0 +1,22 @@
+-- 许可租约：在limit.lua的固定窗口计数上，一次为本地实例预取一批许可
+-- KEYS[1] 当前窗口的计数KEY
+-- ARGV[1] 窗口内许可上限  ARGV[2] 本次至少需要的许可数  ARGV[3] 单次租约上限
+-- ARGV[4] 剩余许可按几份分摊（窗口越满租约越小）  ARGV[5] 计数KEY过期时间(毫秒)
+-- 返回 {本次租到的许可数, 租后窗口剩余许可数}
+local key = KEYS[1]
+local limit = tonumber(ARGV[1])
+local need = tonumber(ARGV[2])
+local maxLease = tonumber(ARGV[3])
+local shares = tonumber(ARGV[4])
+local current = tonumber(redis.call('get', key) or "0")
+local left = limit - current
+if left <= 0 then
+    return {0, 0}
+end
+local size = math.max(need, math.min(maxLease, math.floor(left / shares)))
+size = math.min(size, left)
+redis.call("INCRBY", key, size)
+if current == 0 then
+    redis.call("PEXPIRE", key, ARGV[5])
+end
+return {size, left - size}
@@ -0,0 +1,13 @@
+-- 归还未用完的租约许可
+-- KEYS[1] 当前窗口的计数KEY
+-- ARGV[1] 归还的许可数
+-- 返回 实际归还的许可数
+local key = KEYS[1]
+local permits = tonumber(ARGV[1])
+local current = tonumber(redis.call('get', key) or "0")
+if current <= 0 then --窗口已过期
+    return 0
+end
+permits = math.min(permits, current)
+redis.call("DECRBY", key, permits)
+return permits
@@ -0,0 +1,10 @@
+-- 加锁
+-- KEYS[1] 锁KEY
+-- ARGV[1] 持有者令牌
+-- ARGV[2] 租约(毫秒)
+-- 返回 {1, 0} 加锁成功；{0, 锁剩余毫秒} 被他人持有
+local key = KEYS[1]
+if redis.call("SET", key, ARGV[1], "NX", "PX", ARGV[2]) then
+    return {1, 0}
+end
+return {0, redis.call("PTTL", key)}
@@ -0,0 +1,10 @@
+-- 续期，只续自己持有的锁
+-- KEYS[1] 锁KEY
+-- ARGV[1] 持有者令牌
+-- ARGV[2] 租约(毫秒)
+-- 返回 1 续期成功；0 锁已丢失
+local key = KEYS[1]
+if redis.call("GET", key) ~= ARGV[1] then
+    return 0
+end
+return redis.call("PEXPIRE", key, ARGV[2])
@@ -0,0 +1,5 @@
+-- 确认消息处理完成，从处理中的消息中删除
+-- KEYS[1] 处理中的消息 -> 超时时间点(有序集合)
+-- ARGV    消息
+-- 返回 确认的条数，已超时被放回队列的消息不计入
+return redis.call("ZREM", KEYS[1], unpack(ARGV))
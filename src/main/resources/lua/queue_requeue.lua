@@ -0,0 +1,29 @@
+-- 把超时未确认的消息放回队列尾部，优先被再次消费
+-- KEYS[1] 队列
+-- KEYS[2] 处理中列表
+-- KEYS[3] 处理中的消息 -> 超时时间点(有序集合)
+-- ARGV[1] 可见性超时(毫秒)，没有登记超时的消息从现在起算
+-- ARGV[2] 每次最多处理几条
+-- 当前时间取redis的TIME，与queue_take.lua登记的超时时间点用同一个时钟
+-- 返回 放回的条数
+redis.replicate_commands()
+local limit = tonumber(ARGV[2])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local expired = redis.call("ZRANGEBYSCORE", KEYS[3], "-inf", now, "LIMIT", 0, limit)
+for _, message in ipairs(expired) do
+    redis.call("ZREM", KEYS[3], message)
+    redis.call("RPUSH", KEYS[1], message)
+end
+-- 消费者在BRPOPLPUSH之后、登记超时之前退出时，消息留在处理中列表里；
+-- 从最早放入的尾部每次最多取limit条补登记超时，已登记的不改变超时时间点
+for _ = 1, limit do
+    local message = redis.call("RPOP", KEYS[2])
+    if not message then
+        break
+    end
+    if not redis.call("ZSCORE", KEYS[3], message) then
+        redis.call("ZADD", KEYS[3], now + tonumber(ARGV[1]), message)
+    end
+end
+return #expired
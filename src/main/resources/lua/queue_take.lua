@@ -0,0 +1,29 @@
+-- 从队列尾部取最多ARGV[1]条消息，登记可见性超时
+-- 处理中的消息只记在有序集合里，确认和超时放回都是O(log N)
+-- KEYS[1] 队列
+-- KEYS[2] 处理中列表，只暂存BRPOPLPUSH取出、还没登记超时的消息
+-- KEYS[3] 处理中的消息 -> 超时时间点(有序集合)
+-- ARGV[1] 最多取几条
+-- ARGV[2] 可见性超时(毫秒)，超时时间点按redis的TIME计算，不受各实例时钟偏差影响
+-- ARGV[3] 可选，已由BRPOPLPUSH移入处理中列表的消息
+-- 返回 取到的消息
+redis.replicate_commands()
+local taken = {}
+local max = tonumber(ARGV[1])
+local time = redis.call('TIME')
+local deadline = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) + tonumber(ARGV[2])
+if ARGV[3] then
+    -- BRPOPLPUSH放在列表头部，从头部找只需要扫描刚放入的几条
+    redis.call("LREM", KEYS[2], 1, ARGV[3])
+    redis.call("ZADD", KEYS[3], deadline, ARGV[3])
+    taken[1] = ARGV[3]
+end
+while #taken < max do
+    local message = redis.call("RPOP", KEYS[1])
+    if not message then
+        break
+    end
+    redis.call("ZADD", KEYS[3], deadline, message)
+    taken[#taken + 1] = message
+end
+return taken
@@ -0,0 +1,39 @@
+-- 滑动窗口计数限流：只保存当前和上一个固定窗口的计数，按上一个窗口剩余的重叠比例加权估算
+-- KEYS[1] 限流KEY（哈希，字段为窗口序号）
+-- ARGV[1] 窗口内许可上限  ARGV[2] 窗口长度(毫秒)  ARGV[3] 本次请求许可数
+-- 返回 {是否通过, 剩余许可, 建议重试等待(毫秒)}
+redis.replicate_commands()
+local key = KEYS[1]
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local index = math.floor(now / window)
+local current = tonumber(redis.call('HGET', key, index) or '0')
+local previous = tonumber(redis.call('HGET', key, index - 1) or '0')
+local elapsed = now - index * window
+local estimated = previous * (window - elapsed) / window + current
+
+if estimated + permits > limit then
+    local retry
+    if current + permits > limit or previous == 0 then --本窗口内不可能通过，等到下一个窗口
+        retry = window - elapsed
+    else --等上一个窗口的权重衰减到足够小
+        local decayed = window * (1 - (limit - current - permits) / previous)
+        retry = math.max(1, math.ceil(decayed - elapsed))
+    end
+    return {0, math.max(0, math.floor(limit - estimated)), retry}
+end
+
+redis.call('HINCRBY', key, index, permits)
+if redis.call('HLEN', key) > 2 then --清理更早的窗口
+    for _, field in ipairs(redis.call('HKEYS', key)) do
+        if tonumber(field) < index - 1 then
+            redis.call('HDEL', key, field)
+        end
+    end
+end
+redis.call('PEXPIRE', key, window * 2)
+return {1, math.max(0, math.floor(limit - estimated - permits)), 0}
@@ -0,0 +1,29 @@
+-- 滑动窗口日志限流：每个许可在有序集合中记一条，分数为获取时间
+-- KEYS[1] 限流KEY
+-- ARGV[1] 窗口内许可上限  ARGV[2] 窗口长度(毫秒)  ARGV[3] 本次请求许可数  ARGV[4] 请求唯一标识
+-- 返回 {是否通过, 剩余许可, 建议重试等待(毫秒)}
+redis.replicate_commands()
+local key = KEYS[1]
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+redis.call('ZREMRANGEBYSCORE', key, '-inf', now - window)
+local count = redis.call('ZCARD', key)
+if count + permits > limit then --需要等最早的若干条滑出窗口
+    local index = count + permits - limit - 1
+    local oldest = redis.call('ZRANGE', key, index, index, 'WITHSCORES')
+    local retry = window
+    if oldest[2] then
+        retry = tonumber(oldest[2]) + window - now
+    end
+    return {0, limit - count, retry}
+end
+
+for i = 1, permits do
+    redis.call('ZADD', key, now, now .. ':' .. ARGV[4] .. ':' .. i)
+end
+redis.call('PEXPIRE', key, window)
+return {1, limit - count - permits, 0}
@@ -0,0 +1,18 @@
+-- 缓存的结果集存在时才加入成员，避免已过期的结果被单个成员重新创建
+-- 缓存的是空结果时，以空结果剩余的有效期创建只有这个成员的结果集
+-- KEYS[1] 结果有序集合
+-- KEYS[2] 空结果标记
+-- ARGV[1] 成员
+-- 返回 1 加入；0 已存在；-1 结果不存在
+local key = KEYS[1]
+if redis.call("EXISTS", key) == 0 then
+    local ttl = redis.call("PTTL", KEYS[2])
+    if ttl <= 0 then
+        return -1
+    end
+    redis.call("DEL", KEYS[2])
+    redis.call("ZADD", key, 1, ARGV[1])
+    redis.call("PEXPIRE", key, ttl)
+    return 1
+end
+return redis.call("ZADD", key, 1, ARGV[1])
@@ -0,0 +1,25 @@
+-- 批量追加消息，按 MAXLEN ~ 近似裁剪
+-- KEYS[1] 流
+-- ARGV[1] 最大长度，0表示不裁剪
+-- ARGV[2..] 依次为每条消息：字段数*2, 字段1, 值1, 字段2, 值2 ...
+-- 返回 每条消息的id
+local key = KEYS[1]
+local maxLen = tonumber(ARGV[1])
+local ids = {}
+local i = 2
+while i <= #ARGV do
+    local n = tonumber(ARGV[i])
+    local command = { "XADD", key }
+    if maxLen > 0 then
+        command[#command + 1] = "MAXLEN"
+        command[#command + 1] = "~"
+        command[#command + 1] = maxLen
+    end
+    command[#command + 1] = "*"
+    for j = i + 1, i + n do
+        command[#command + 1] = ARGV[j]
+    end
+    ids[#ids + 1] = redis.call(unpack(command))
+    i = i + n + 1
+end
+return ids
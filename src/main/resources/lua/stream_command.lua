@@ -0,0 +1,14 @@
+-- 执行单个流命令，jedis没有流命令时使用；流的键放在命令名之后，XGROUP/XINFO放在子命令之后
+-- KEYS[1] 流
+-- ARGV[1] 命令，如 XACK、XREADGROUP
+-- ARGV[2..] 命令参数
+-- 返回 命令的返回值
+local command = ARGV[1]
+if command == "XREADGROUP" then
+    -- XREADGROUP GROUP 组 消费者 COUNT 条数 STREAMS 流 起始id
+    return redis.call(command, "GROUP", ARGV[2], ARGV[3], "COUNT", ARGV[4], "STREAMS", KEYS[1], ARGV[5])
+end
+if command == "XGROUP" or command == "XINFO" then
+    return redis.call(command, ARGV[2], KEYS[1], unpack(ARGV, 3))
+end
+return redis.call(command, KEYS[1], unpack(ARGV, 2))
@@ -0,0 +1,33 @@
+-- 令牌桶限流：按时间匀速补充令牌，桶满为止，允许不超过桶容量的突发
+-- KEYS[1] 限流KEY（哈希，tokens为剩余令牌，ts为上次补充时间）
+-- ARGV[1] 桶容量  ARGV[2] 每周期补充令牌数  ARGV[3] 补充周期(毫秒)  ARGV[4] 本次请求许可数
+-- 返回 {是否通过, 剩余许可, 建议重试等待(毫秒)}
+redis.replicate_commands()
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2]) / tonumber(ARGV[3])
+local permits = tonumber(ARGV[4])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+
+local allowed = 0
+local retry = 0
+if tokens >= permits then
+    tokens = tokens - permits
+    allowed = 1
+else
+    retry = math.ceil((permits - tokens) / rate)
+end
+
+redis.call('HMSET', key, 'tokens', tokens, 'ts', now)
+redis.call('PEXPIRE', key, math.ceil(capacity / rate))
+return {allowed, math.floor(tokens), retry}
@@ -0,0 +1,12 @@
+-- 解锁，只删除自己持有的锁，并通知等待者
+-- KEYS[1] 锁KEY
+-- ARGV[1] 持有者令牌
+-- ARGV[2] 解锁通知频道
+-- 返回 1 解锁成功；0 锁已过期或被他人持有
+local key = KEYS[1]
+if redis.call("GET", key) ~= ARGV[1] then
+    return 0
+end
+redis.call("DEL", key)
+redis.call("PUBLISH", ARGV[2], key)
+return 1
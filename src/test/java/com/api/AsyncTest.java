@@ -0,0 +1,93 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.AsyncRedisClient;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 异步客户端
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class AsyncTest {
+
+	@Autowired
+	AsyncRedisClient asyncRedisClient;
+
+	@Test
+	public void concurrent() {
+		asyncRedisClient.del("async:counter");
+		long start = System.currentTimeMillis();
+		List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>();
+		for (int i = 0; i < 10000; i++) {
+			futures.add(asyncRedisClient.incr("async:counter"));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+		System.out.println("10000 incr millis: " + (System.currentTimeMillis() - start));
+		// 同一个键上的命令按调用顺序执行
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals(Long.valueOf(i + 1), futures.get(i).join());
+		}
+		assertEquals("10000", asyncRedisClient.get("async:counter").join());
+	}
+
+	@Test
+	public void error() throws InterruptedException {
+		asyncRedisClient.set("async:text", "abc").join();
+		CompletableFuture<Long> failed = asyncRedisClient.incr("async:text");
+		CompletableFuture<String> next = asyncRedisClient.get("async:text");
+		try {
+			failed.get();
+			fail("expected JedisDataException");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof JedisDataException);
+		}
+		// 错误应答不影响同一连接上的后续命令
+		assertEquals("abc", next.join());
+	}
+
+	/**
+	 * redis不应答时排队的命令有上限，超过的立即失败
+	 */
+	@Test
+	public void bounded() throws Exception {
+		// 只接受连接、从不读写的服务端
+		try (ServerSocket silent = new ServerSocket(0)) {
+			AsyncRedisClient client = new AsyncRedisClient("127.0.0.1", silent.getLocalPort(), 60000, null, 1);
+			try {
+				List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>();
+				for (int i = 0; i < AsyncRedisClient.MAX_PENDING + 100; i++) {
+					futures.add(client.incr("async:bounded"));
+				}
+				assertTrue(client.pending() <= AsyncRedisClient.MAX_PENDING);
+				try {
+					futures.get(futures.size() - 1).get();
+					fail("expected JedisException");
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof JedisException);
+				}
+			} finally {
+				client.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+
+/**
+ * redis批量操作
+ * 使用pipeline
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class BatchTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Test
+	public void batch() {
+		RedisBatch batch = redisClient.batch();
+		batch.del("batch:ranking");
+		batch.set("batch:name", "jack");
+		batch.hset("batch:user", "age", "18");
+		batch.zadd("batch:ranking", 10, "jack");
+		RedisBatch.Result<String> name = batch.get("batch:name");
+		RedisBatch.Result<Double> score = batch.zincrby("batch:ranking", 5, "jack");
+		batch.execute();
+
+		System.out.println(name.get());
+		System.out.println(score.get());
+		assertEquals("jack", name.get());
+		assertEquals(Double.valueOf(15), score.get());
+	}
+
+	@Test
+	public void multiKey() {
+		Map<String, String> tuple = new HashMap<String, String>();
+		tuple.put("batch:k1", "v1");
+		tuple.put("batch:k2", "v2");
+		redisClient.mset(tuple);
+		redisClient.del("batch:k3");
+
+		List<String> values = redisClient.mget("batch:k1", "batch:k2", "batch:k3");
+		System.out.println(values);
+		assertEquals("v1", values.get(0));
+		assertNull(values.get(2));
+
+		redisClient.hset("batch:h1", "f", "1");
+		redisClient.hset("batch:h2", "f", "2");
+		Map<String, Map<String, String>> hashes = redisClient.mhgetAll(Arrays.asList("batch:h1", "batch:h2"));
+		System.out.println(hashes);
+		assertEquals("2", hashes.get("batch:h2").get("f"));
+
+		redisClient.zincrby("batch:z", 3, "tom");
+		Map<String, Double> scores = redisClient.mzscore("batch:z", Arrays.asList("tom", "nobody"));
+		System.out.println(scores);
+		assertNull(scores.get("nobody"));
+	}
+}
@@ -0,0 +1,129 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.BigKeys;
+import com.api.cache.RedisClient;
+
+import redis.clients.jedis.Tuple;
+
+/**
+ * 大key分块读写和删除
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class BigKeysTest {
+
+	private static final int SIZE = 12345;
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	BigKeys bigKeys;
+
+	@Test
+	public void hash() {
+		String key = "bigkey:hash";
+		redisClient.del(key);
+		Map<String, String> hash = new LinkedHashMap<String, String>();
+		for (int i = 0; i < SIZE; i++) {
+			hash.put("field" + i, "value" + i);
+		}
+		bigKeys.hmset(key, hash);
+		assertEquals(hash, redisClient.hgetAll(key));
+		assertEquals(hash, bigKeys.hgetAll(key));
+
+		assertTrue(bigKeys.deleteIncrementally(key));
+		assertFalse(redisClient.exist(key));
+		assertFalse(bigKeys.deleteIncrementally(key));
+	}
+
+	@Test
+	public void list() {
+		String key = "bigkey:list";
+		redisClient.del(key);
+		List<String> items = items("item");
+		assertEquals(SIZE, bigKeys.rpush(key, items).longValue());
+		assertEquals(items, bigKeys.lrange(key));
+		assertEquals(SIZE * 2, bigKeys.lpush(key, items).longValue());
+		// 与一次LPUSH的顺序相同：最后一个元素在最前面
+		assertEquals("item" + (SIZE - 1), redisClient.lrange(key, 0, 0).get(0));
+
+		List<Integer> pages = new ArrayList<Integer>();
+		bigKeys.lrange(key, page -> pages.add(page.size()));
+		assertEquals((SIZE * 2 + bigKeys.getChunkElements() - 1) / bigKeys.getChunkElements(), pages.size());
+
+		assertTrue(bigKeys.deleteIncrementally(key));
+		assertFalse(redisClient.exist(key));
+	}
+
+	@Test
+	public void set() {
+		String key = "bigkey:set";
+		redisClient.del(key);
+		List<String> members = items("member");
+		assertEquals(SIZE, bigKeys.sadd(key, members));
+		assertEquals(0, bigKeys.sadd(key, members));
+		assertEquals(new HashSet<String>(members), bigKeys.smembers(key));
+
+		assertTrue(bigKeys.deleteIncrementally(key));
+		assertFalse(redisClient.exist(key));
+	}
+
+	@Test
+	public void sortedSet() {
+		String key = "bigkey:zset";
+		redisClient.del(key);
+		Map<String, Double> scoreMembers = new LinkedHashMap<String, Double>();
+		for (int i = 0; i < SIZE; i++) {
+			scoreMembers.put("member" + i, (double) i);
+		}
+		assertEquals(SIZE, bigKeys.zadd(key, scoreMembers));
+		Set<Tuple> tuples = bigKeys.zrangeWithScores(key);
+		assertEquals(SIZE, tuples.size());
+		int i = 0;
+		for (Tuple tuple : tuples) {
+			assertEquals("member" + i, tuple.getElement());
+			assertEquals(i, tuple.getScore(), 0);
+			i++;
+		}
+
+		assertTrue(bigKeys.deleteIncrementally(key));
+		assertFalse(redisClient.exist(key));
+	}
+
+	@Test
+	public void delete() {
+		String key = "bigkey:unlink";
+		bigKeys.sadd(key, items("member"));
+		assertTrue(bigKeys.delete(key));
+		assertFalse(redisClient.exist(key));
+		assertFalse(bigKeys.delete(key));
+	}
+
+	private static List<String> items(String prefix) {
+		List<String> items = new ArrayList<String>();
+		for (int i = 0; i < SIZE; i++) {
+			items.add(prefix + i);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,107 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.filter.BloomFilter;
+import com.api.filter.BloomFilters;
+
+/**
+ * 布隆过滤器
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class BloomFilterTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	BloomFilters bloomFilters;
+
+	@Test
+	public void addAndContain() {
+		BloomFilter filter = filter("bloom:test:single", 1);
+		assertEquals(1, filter.getShards());
+		assertEquals(7, filter.getHashes());
+
+		assertFalse(filter.mightContain("article:1"));
+		assertTrue(filter.add("article:1"));
+		assertFalse(filter.add("article:1"));
+		assertTrue(filter.mightContain("article:1"));
+
+		check(filter);
+	}
+
+	@Test
+	public void sharded() {
+		BloomFilter filter = filter("bloom:test:sharded", 4);
+		assertEquals(4, filter.getShards());
+		check(filter);
+		int used = 0;
+		for (int i = 0; i < 4; i++) {
+			if (redisClient.exist("bloom:test:sharded:" + i)) {
+				used++;
+			}
+		}
+		assertEquals(4, used);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void parametersChanged() {
+		// 另一个实例以不同参数创建过
+		redisClient.set("bloom:test:changed:config", "1:100:3");
+		bloomFilters.filter("bloom:test:changed", 10000, 0.01);
+	}
+
+	private BloomFilter filter(String name, int shards) {
+		redisClient.del(name + ":config");
+		BloomFilter filter = bloomFilters.filter(name, 10000, 0.01, shards);
+		filter.clear();
+		return filter;
+	}
+
+	/**
+	 * 加入的一定判断为存在，没加入的误判率接近设定值
+	 */
+	private void check(BloomFilter filter) {
+		List<String> added = new ArrayList<String>();
+		List<String> absent = new ArrayList<String>();
+		for (int i = 0; i < 10000; i++) {
+			added.add("user:" + i);
+			absent.add("other:" + i);
+		}
+		List<Boolean> results = filter.addAll(added);
+		int fresh = 0;
+		for (Boolean result : results) {
+			if (result) {
+				fresh++;
+			}
+		}
+		assertTrue("fresh: " + fresh, fresh > 9800);
+		for (Boolean result : filter.mightContainAll(added)) {
+			assertTrue(result);
+		}
+		int falsePositives = 0;
+		for (Boolean result : filter.mightContainAll(absent)) {
+			if (result) {
+				falsePositives++;
+			}
+		}
+		assertTrue("false positives: " + falsePositives, falsePositives < 200);
+		assertEquals(10000, filter.approximateCount(), 500);
+	}
+}
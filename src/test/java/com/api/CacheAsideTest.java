@@ -0,0 +1,96 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+
+/**
+ * 旁路缓存：合并并发加载、过期前刷新
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CacheAsideTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Test
+	public void coalesce() throws Exception {
+		redisClient.del("aside:coalesce");
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i = 0; i < 16; i++) {
+			results.add(executor.submit(() -> {
+				start.await();
+				return redisClient.getOrLoad("aside:coalesce", 60, () -> {
+					loads.incrementAndGet();
+					sleep(200);
+					return "v";
+				}, true);
+			}));
+		}
+		start.countDown();
+		for (Future<String> result : results) {
+			assertEquals("v", result.get());
+		}
+		executor.shutdown();
+		assertEquals(1, loads.get());
+
+		// 过期时间加了随机量，在60到66秒之间
+		long ttl = redisClient.ttl("aside:coalesce");
+		assertTrue("ttl: " + ttl, ttl >= 59 && ttl <= 66);
+	}
+
+	@Test
+	public void nullNotCached() {
+		redisClient.del("aside:null");
+		assertNull(redisClient.getOrLoad("aside:null", 60, () -> null));
+		assertEquals(false, redisClient.exist("aside:null"));
+	}
+
+	@Test
+	public void refreshAhead() throws InterruptedException {
+		redisClient.del("aside:refresh");
+		AtomicInteger loads = new AtomicInteger();
+		assertEquals("v1", redisClient.getOrLoad("aside:refresh", 1, () -> "v" + loads.incrementAndGet()));
+
+		// 快过期时的读取触发后台刷新，读到的一直是有值的
+		for (int i = 0; i < 30; i++) {
+			String value = redisClient.getOrLoad("aside:refresh", 1, () -> {
+				sleep(100);
+				return "v" + loads.incrementAndGet();
+			});
+			assertTrue(value.startsWith("v"));
+			Thread.sleep(100);
+		}
+		assertTrue("loads: " + loads.get(), loads.get() >= 2);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
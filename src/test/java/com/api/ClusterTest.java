@@ -0,0 +1,227 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+import com.api.cache.RedisKeys;
+import com.api.cache.RedisRouter;
+import com.api.social.SocialGraph;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+/**
+ * 集群模式，需要本地 7000/7001/7002 三个主节点组成的集群，没有时跳过
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "jedis.cluster.nodes=127.0.0.1:7000,127.0.0.1:7001,127.0.0.1:7002")
+public class ClusterTest {
+
+	private static final int[] PORTS = { 7000, 7001, 7002 };
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	RedisRouter redisRouter;
+
+	@Autowired
+	SocialGraph socialGraph;
+
+	@BeforeClass
+	public static void clusterAvailable() {
+		try (Jedis jedis = new Jedis("127.0.0.1", PORTS[0])) {
+			Assume.assumeTrue(jedis.clusterInfo().contains("cluster_state:ok"));
+		} catch (JedisConnectionException e) {
+			Assume.assumeNoException(e);
+		}
+	}
+
+	@Test
+	public void multiKey() {
+		assertTrue(redisRouter.isCluster());
+		assertEquals(PORTS.length, redisRouter.masters().size());
+
+		// 不同槽位的键按节点拆分后并行执行
+		String[] keys = new String[100];
+		Map<String, String> tuple = new LinkedHashMap<String, String>();
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "cluster:key:" + i;
+			tuple.put(keys[i], "v" + i);
+		}
+		redisClient.mset(tuple);
+		List<String> values = redisClient.mget(keys);
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals("v" + i, values.get(i));
+		}
+
+		// SCAN依次迭代每个主节点
+		try (Stream<String> scanned = redisClient.scanKeys("cluster:key:*", 10)) {
+			assertEquals(new HashSet<String>(Arrays.asList(keys)), scanned.collect(Collectors.toSet()));
+		}
+
+		RedisBatch batch = redisClient.batch();
+		List<RedisBatch.Result<Long>> counters = new ArrayList<RedisBatch.Result<Long>>();
+		for (String key : keys) {
+			batch.del(key);
+			counters.add(batch.incr(key));
+		}
+		batch.execute();
+		for (RedisBatch.Result<Long> counter : counters) {
+			assertEquals(Long.valueOf(1), counter.get());
+		}
+
+		// 同一用户的关注和粉丝用hash tag放在同一槽位，直接在redis端求交集
+		String follow = RedisKeys.tagged("A", "follow");
+		String fans = RedisKeys.tagged("A", "fans");
+		assertTrue(RedisKeys.sameSlot(follow, fans));
+		redisClient.del(follow);
+		redisClient.del(fans);
+		redisClient.sadd(follow, "B", "C");
+		redisClient.sadd(fans, "C", "D");
+		assertEquals(new HashSet<String>(Arrays.asList("C")), redisClient.sinter(follow, fans));
+
+		// 不同用户的集合不在同一槽位，取出后在本地计算
+		redisClient.del("A:follow");
+		redisClient.del("B:follow");
+		redisClient.sadd("A:follow", "C", "D");
+		redisClient.sadd("B:follow", "A", "D");
+		assertEquals(new HashSet<String>(Arrays.asList("D")), redisClient.sinter("A:follow", "B:follow"));
+		assertEquals(new HashSet<String>(Arrays.asList("A", "C", "D")), redisClient.sunion("A:follow", "B:follow"));
+		assertEquals(new HashSet<String>(Arrays.asList("C")), redisClient.sdiff("A:follow", "B:follow"));
+	}
+
+	@Test
+	public void socialGraph() {
+		// 两个用户不在同一槽位，在本地分批求交集后写入结果
+		assertTrue(RedisKeys.slot("{cgA}") != RedisKeys.slot("{cgB}"));
+		for (String key : new String[] { "social:{cgA}:follow", "social:{cgB}:follow", "social:{cgA}:cached:follow",
+				"social:{cgB}:cached:follow", "social:{cgA}:common:follow:cgB" }) {
+			redisClient.del(key);
+		}
+		String[] follows = new String[1200];
+		for (int i = 0; i < follows.length; i++) {
+			follows[i] = "u" + i;
+		}
+		redisClient.sadd("social:{cgA}:follow", follows);
+		redisClient.sadd("social:{cgB}:follow", Arrays.copyOfRange(follows, 600, 1200));
+		assertEquals(600, socialGraph.commonFollowCount("cgA", "cgB"));
+		assertEquals(Arrays.asList("u1000", "u1001"), socialGraph.commonFollows("cgB", "cgA", 0, 2));
+
+		socialGraph.follow("cgB", "u0");
+		socialGraph.unfollow("cgA", "u1000");
+		assertEquals(Arrays.asList("u0", "u1001"), socialGraph.commonFollows("cgA", "cgB", 0, 2));
+	}
+
+	@Test
+	public void redirect() {
+		String key = "cluster:moved";
+		redisClient.del(key);
+		int source;
+		try (Jedis jedis = redisRouter.poolOf(key).getResource()) {
+			source = jedis.getClient().getPort();
+		}
+		int target = source == PORTS[0] ? PORTS[1] : PORTS[0];
+
+		// 迁移中：源节点没有该键，回复ASK，带ASKING发往目标节点
+		importing(key, source, target);
+		assertEquals("OK", redisClient.set(key, "ask"));
+		assertEquals("ask", redisClient.get(key));
+
+		// 迁移完成：本地槽位缓存过期，源节点回复MOVED，刷新缓存后重试
+		assign(key, source, target);
+		assertEquals("ask", redisClient.get(key));
+		try (Jedis jedis = redisRouter.poolOf(key).getResource()) {
+			assertEquals(target, jedis.getClient().getPort());
+		}
+
+		// 迁回：批次中收到MOVED的命令单独重定向，其他命令不重复执行
+		redisClient.del(key);
+		importing(key, target, source);
+		assign(key, target, source);
+		RedisBatch batch = redisClient.batch();
+		RedisBatch.Result<Long> other = batch.incr("cluster:other");
+		RedisBatch.Result<String> set = batch.set(key, "moved");
+		RedisBatch.Result<String> get = batch.get(key);
+		batch.execute();
+		assertEquals("OK", set.get());
+		assertEquals("moved", get.get());
+		assertEquals(other.get().toString(), redisClient.get("cluster:other"));
+		redisClient.del(key);
+		assertNull(redisClient.get(key));
+	}
+
+	private static void importing(String key, int from, int to) {
+		int slot = RedisKeys.slot(key);
+		try (Jedis source = new Jedis("127.0.0.1", from); Jedis target = new Jedis("127.0.0.1", to)) {
+			target.clusterSetSlotImporting(slot, nodeId(source));
+			source.clusterSetSlotMigrating(slot, nodeId(target));
+		}
+	}
+
+	private static void assign(String key, int from, int to) {
+		int slot = RedisKeys.slot(key);
+		try (Jedis source = new Jedis("127.0.0.1", from); Jedis target = new Jedis("127.0.0.1", to)) {
+			String targetId = nodeId(target);
+			target.clusterSetSlotNode(slot, targetId);
+			source.clusterSetSlotNode(slot, targetId);
+		}
+		// 等其他节点通过gossip得知新的归属
+		for (int port : PORTS) {
+			try (Jedis jedis = new Jedis("127.0.0.1", port)) {
+				for (int i = 0; i < 100 && owner(jedis, key) != to; i++) {
+					sleep(50);
+				}
+			}
+		}
+	}
+
+	private static int owner(Jedis jedis, String key) {
+		try {
+			jedis.get(key);
+			return jedis.getClient().getPort();
+		} catch (JedisMovedDataException e) {
+			return e.getTargetNode().getPort();
+		}
+	}
+
+	private static String nodeId(Jedis jedis) {
+		for (String line : jedis.clusterNodes().split("\n")) {
+			if (line.contains("myself")) {
+				return line.split(" ")[0];
+			}
+		}
+		throw new IllegalStateException("node id not found");
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.alibaba.fastjson.JSON;
+import com.api.cache.RedisClient;
+import com.api.cache.TypedRedisClient;
+import com.api.codec.BinaryCodec;
+import com.api.codec.Codec;
+import com.api.codec.Codecs;
+import com.api.codec.JsonCodec;
+import com.api.metrics.RedisMetrics;
+
+/**
+ * 对象编解码
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CodecTest {
+
+	@Autowired
+	TypedRedisClient typedRedisClient;
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	RedisMetrics redisMetrics;
+
+	@Test
+	public void binary() {
+		Profile profile = profile();
+		Codec<Profile> codec = Codecs.of(Profile.class);
+		assertTrue(codec instanceof BinaryCodec);
+		byte[] bytes = codec.encode(profile);
+		System.out.println("binary: " + bytes.length + " bytes, json: " + JSON.toJSONBytes(profile).length + " bytes");
+		assertTrue(bytes.length < JSON.toJSONBytes(profile).length);
+
+		typedRedisClient.setex("codec:profile", 60, profile, Profile.class);
+		Profile read = typedRedisClient.get("codec:profile", Profile.class);
+		assertEquals(JSON.toJSONString(profile), JSON.toJSONString(read));
+
+		typedRedisClient.hset("codec:profiles", "jack", profile, Profile.class);
+		assertEquals("杰克jack", typedRedisClient.hget("codec:profiles", "jack", Profile.class).getName());
+		System.out.println(redisMetrics.snapshot().getEncoded());
+	}
+
+	@Test
+	public void json() {
+		// 字段为Object，二进制编码不支持，自动使用fastjson
+		assertTrue(Codecs.of(Loose.class) instanceof JsonCodec);
+		Loose loose = new Loose();
+		loose.setValue("text");
+		typedRedisClient.set("codec:loose", loose, Loose.class);
+		assertEquals("text", typedRedisClient.get("codec:loose", Loose.class).getValue());
+
+		// 兼容以前直接写入的json字符串
+		redisClient.set("codec:legacy", JSON.toJSONString(profile()));
+		assertEquals("杰克jack", typedRedisClient.get("codec:legacy", new JsonCodec<Profile>(Profile.class)).getName());
+		// 不是二进制格式的数据按未命中处理
+		assertNull(typedRedisClient.get("codec:legacy", Profile.class));
+	}
+
+	/**
+	 * 子类的值不能按父类二进制编码，抛出异常而不是丢弃子类的字段
+	 */
+	@Test
+	public void polymorphic() {
+		Profile profile = profile();
+		profile.setFriend(new VipProfile());
+		try {
+			typedRedisClient.set("codec:polymorphic", profile, Profile.class);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains(VipProfile.class.getName()));
+		}
+		try {
+			Codecs.of(Profile.class).encode(new VipProfile());
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("JsonCodec"));
+		}
+	}
+
+	private static Profile profile() {
+		Profile profile = new Profile();
+		profile.setId(10001);
+		profile.setName("杰克jack");
+		profile.setScore(98.5);
+		profile.setVip(true);
+		profile.setBirthday(new Date(0));
+		profile.setLevel(Level.GOLD);
+		List<String> tags = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			tags.add("tag" + i);
+		}
+		profile.setTags(tags);
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		counts.put("login", 12);
+		counts.put("pay", null);
+		profile.setCounts(counts);
+		return profile;
+	}
+
+	public enum Level {
+		NORMAL, GOLD
+	}
+
+	public static class Profile {
+
+		private long id;
+
+		private String name;
+
+		private Double score;
+
+		private boolean vip;
+
+		private Date birthday;
+
+		private Level level;
+
+		private List<String> tags;
+
+		private Map<String, Integer> counts;
+
+		private Profile friend;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Double getScore() {
+			return score;
+		}
+
+		public void setScore(Double score) {
+			this.score = score;
+		}
+
+		public boolean isVip() {
+			return vip;
+		}
+
+		public void setVip(boolean vip) {
+			this.vip = vip;
+		}
+
+		public Date getBirthday() {
+			return birthday;
+		}
+
+		public void setBirthday(Date birthday) {
+			this.birthday = birthday;
+		}
+
+		public Level getLevel() {
+			return level;
+		}
+
+		public void setLevel(Level level) {
+			this.level = level;
+		}
+
+		public List<String> getTags() {
+			return tags;
+		}
+
+		public void setTags(List<String> tags) {
+			this.tags = tags;
+		}
+
+		public Map<String, Integer> getCounts() {
+			return counts;
+		}
+
+		public void setCounts(Map<String, Integer> counts) {
+			this.counts = counts;
+		}
+
+		public Profile getFriend() {
+			return friend;
+		}
+
+		public void setFriend(Profile friend) {
+			this.friend = friend;
+		}
+	}
+
+	public static class VipProfile extends Profile {
+
+		private int points;
+
+		public int getPoints() {
+			return points;
+		}
+
+		public void setPoints(int points) {
+			this.points = points;
+		}
+	}
+
+	public static class Loose {
+
+		private Object value;
+
+		public Object getValue() {
+			return value;
+		}
+
+		public void setValue(Object value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package com.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.AsyncRedisClient;
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+import com.api.compress.Compression;
+import com.api.compress.Compressor;
+import com.api.compress.DeflateCompressor;
+import com.api.metrics.MetricsSnapshot;
+import com.api.metrics.RedisMetrics;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 二进制值透明压缩
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "jedis.compression.enabled=true")
+public class CompressionTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	AsyncRedisClient asyncRedisClient;
+
+	@Autowired
+	RedisMetrics redisMetrics;
+
+	@Test
+	public void transparent() {
+		byte[] value = json(400);
+		assertTrue(value.length > 20000);
+		redisClient.setex("compress:blob", 60, value);
+		assertArrayEquals(value, redisClient.get(SafeEncoder.encode("compress:blob")));
+		long stored = strlen("compress:blob");
+		System.out.println("original: " + value.length + " bytes, stored: " + stored + " bytes");
+		assertTrue(stored * 5 < value.length);
+
+		redisClient.hset("compress:hash", "blob", value);
+		assertArrayEquals(value,
+				redisClient.hget(SafeEncoder.encode("compress:hash"), SafeEncoder.encode("blob")));
+
+		// 小于阈值的原样写入
+		byte[] small = json(2);
+		redisClient.set("compress:small", small);
+		assertEquals(small.length, strlen("compress:small"));
+		assertArrayEquals(small, redisClient.get(SafeEncoder.encode("compress:small")));
+
+		MetricsSnapshot.CompressionSnapshot deflate = redisMetrics.snapshot().getCompression().get("deflate");
+		System.out.println("deflate: " + deflate);
+		assertTrue(deflate.getCompressions() >= 2);
+		assertTrue(deflate.getDecompressions() >= 2);
+		assertTrue(deflate.getRatio() < 0.5);
+	}
+
+	/**
+	 * 批量、mget和异步客户端的byte[]读写同样压缩和解压
+	 */
+	@Test
+	public void batchMgetAsync() throws InterruptedException, ExecutionException {
+		byte[] value = json(100);
+		byte[] key = SafeEncoder.encode("compress:batch");
+		RedisBatch batch = redisClient.batch();
+		batch.setex("compress:batch", 60, value);
+		batch.hset("compress:batch:hash", "blob", value);
+		batch.execute();
+		assertTrue(strlen("compress:batch") * 2 < value.length);
+
+		RedisBatch.Result<byte[]> got = batch.get(key);
+		RedisBatch.Result<byte[]> field = batch.hget(SafeEncoder.encode("compress:batch:hash"),
+				SafeEncoder.encode("blob"));
+		batch.execute();
+		assertArrayEquals(value, got.get());
+		assertArrayEquals(value, field.get());
+
+		List<byte[]> values = redisClient.mget(key, SafeEncoder.encode("compress:missing"));
+		assertArrayEquals(value, values.get(0));
+		assertNull(values.get(1));
+
+		asyncRedisClient.setex("compress:async", 60, value).get();
+		assertTrue(strlen("compress:async") * 2 < value.length);
+		assertArrayEquals(value, asyncRedisClient.get(SafeEncoder.encode("compress:async")).get());
+	}
+
+	/**
+	 * 启用前写入的值、恰好以头部字节开头的值原样读取
+	 */
+	@Test
+	public void uncompressedValues() {
+		byte[] raw = new byte[2000];
+		Arrays.fill(raw, (byte) 7);
+		raw[0] = DeflateCompressor.HEADER;
+		byte[] key = SafeEncoder.encode("compress:raw");
+		RedisBatch batch = redisClient.batch();
+		batch.write("compress:raw", p -> p.set(key, raw));
+		batch.execute();
+		assertArrayEquals(raw, redisClient.get(key));
+
+		// 声明的原长度(256MB)远超可能的膨胀倍数，不分配直接原样返回
+		byte[] huge = { DeflateCompressor.HEADER, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01, 1, 2, 3 };
+		assertSame(huge, compression("deflate", Collections.<byte[]>emptyList()).decompress(huge));
+	}
+
+	/**
+	 * 字典压缩小的相似json，换字典后旧值仍能读取
+	 */
+	@Test
+	public void dictionary() {
+		byte[] dictionary = json(20);
+		Compression plain = compression("deflate", Collections.<byte[]>emptyList());
+		Compression compression = compression("deflate", Collections.singletonList(dictionary));
+		byte[] value = item(12345).getBytes(StandardCharsets.UTF_8);
+		assertTrue(value.length < 1024);
+
+		assertSame(value, plain.compress(value));
+		byte[] compressed = compression.compress(value);
+		System.out.println("small json: " + value.length + " bytes, with dictionary: " + compressed.length + " bytes");
+		assertTrue(compressed.length * 2 < value.length);
+		assertArrayEquals(value, compression.decompress(compressed));
+
+		Compression rotated = compression("deflate",
+				Arrays.asList("{\"other\":\"dictionary\"}".getBytes(StandardCharsets.UTF_8), dictionary));
+		assertArrayEquals(value, rotated.decompress(compressed));
+		// 没有字典时原样返回
+		assertSame(compressed, plain.decompress(compressed));
+	}
+
+	/**
+	 * 自定义压缩方式按名称用于写入
+	 */
+	@Test
+	public void custom() {
+		DeflateCompressor best = new DeflateCompressor(9);
+		Compressor custom = new Compressor() {
+
+			@Override
+			public byte header() {
+				return (byte) 0xF7;
+			}
+
+			@Override
+			public String name() {
+				return "deflate9";
+			}
+
+			@Override
+			public byte[] compress(byte[] data) {
+				return best.compress(data);
+			}
+
+			@Override
+			public byte[] decompress(byte[] data, int offset, int length, int originalLength) {
+				return best.decompress(data, offset, length, originalLength);
+			}
+		};
+		Compression compression = new Compression("deflate9", 1024, 1, Collections.<byte[]>emptyList(), 64, null);
+		compression.register(custom);
+		compression.init();
+		byte[] value = json(100);
+		byte[] compressed = compression.compress(value);
+		assertEquals((byte) 0xF7, compressed[0]);
+		assertArrayEquals(value, compression.decompress(compressed));
+		// 用默认配置读取时不认识这个头部字节
+		assertSame(compressed, compression("deflate", Collections.<byte[]>emptyList()).decompress(compressed));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void reservedHeader() {
+		Compression compression = compression("deflate", Collections.<byte[]>emptyList());
+		compression.register(new DeflateCompressor(1) {
+
+			@Override
+			public byte header() {
+				return 2;
+			}
+		});
+	}
+
+	private static Compression compression(String codec, List<byte[]> dictionaries) {
+		Compression compression = new Compression(codec, 1024, 1, dictionaries, 64, null);
+		compression.init();
+		return compression;
+	}
+
+	private long strlen(String key) {
+		return (Long) redisClient.eval("return redis.call('STRLEN', KEYS[1])", Collections.singletonList(key),
+				Collections.<String>emptyList());
+	}
+
+	private static byte[] json(int items) {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < items; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append(item(i));
+		}
+		return builder.append(']').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String item(int i) {
+		return "{\"id\":" + i + ",\"name\":\"user" + i + "\",\"nickname\":\"nick" + (i * 7) + "\","
+				+ "\"avatar\":\"https://cdn.example.com/avatar/" + i + ".png\",\"vip\":" + (i % 2 == 0)
+				+ ",\"level\":" + (i % 10) + ",\"tags\":[\"music\",\"sports\",\"travel\"],"
+				+ "\"address\":{\"country\":\"China\",\"city\":\"Beijing\",\"street\":\"Chang'an Avenue\"}}";
+	}
+}
@@ -0,0 +1,143 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.counter.CounterAggregator;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * 计数合并写入
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CounterAggregatorTest {
+
+	/**
+	 * 忙等ARGV[1]毫秒
+	 */
+	private static final String BUSY_SCRIPT = "local t = redis.call('TIME') "
+			+ "local start = t[1] * 1000 + math.floor(t[2] / 1000) local now = start "
+			+ "while now - start < tonumber(ARGV[1]) do t = redis.call('TIME') now = t[1] * 1000 + math.floor(t[2] / 1000) end "
+			+ "return 0";
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	CounterAggregator counterAggregator;
+
+	@Test
+	public void aggregate() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			redisClient.del("counter:views:" + i);
+		}
+		redisClient.del("counter:stats");
+		redisClient.del("counter:hot");
+		counterAggregator.flush();
+		long incrementsBefore = counterAggregator.getIncrements();
+		long commandsBefore = counterAggregator.getFlushedCommands();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 0; t < 8; t++) {
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 10000; i++) {
+					counterAggregator.incr("counter:views:" + (i % 10));
+					counterAggregator.hincrBy("counter:stats", "likes", 2);
+					counterAggregator.zincrby("counter:hot", 0.5, "a" + (i % 3));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		counterAggregator.flush();
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals("8000", redisClient.get("counter:views:" + i));
+		}
+		assertEquals("160000", redisClient.hget("counter:stats", "likes"));
+		// 每个线程 a1 出现3333次
+		assertEquals(8 * 3333 * 0.5, redisClient.zscore("counter:hot", "a1"), 0.001);
+		assertEquals(0, counterAggregator.getPendingCount());
+
+		long increments = counterAggregator.getIncrements() - incrementsBefore;
+		long commands = counterAggregator.getFlushedCommands() - commandsBefore;
+		System.out.println("increments: " + increments + ", commands: " + commands + ", max staleness: "
+				+ counterAggregator.getMaxStalenessMillis() + "ms");
+		assertEquals(240000, increments);
+		assertTrue("commands: " + commands, commands * 100 < increments);
+		assertTrue(counterAggregator.getMaxStalenessMillis() <= CounterAggregator.FLUSH_MILLIS * 5);
+	}
+
+	/**
+	 * redis拒绝的命令只丢弃它自己的增量，同一批的其他增量照常写入且不重复
+	 */
+	@Test
+	public void rejected() {
+		redisClient.del("counter:wrongtype");
+		redisClient.del("counter:fine");
+		redisClient.hset("counter:wrongtype", "f", "1");
+		long rejectedBefore = counterAggregator.getRejectedCommands();
+
+		counterAggregator.incr("counter:wrongtype");
+		counterAggregator.incrBy("counter:fine", 5);
+		counterAggregator.flush();
+		counterAggregator.flush();
+
+		assertEquals("5", redisClient.get("counter:fine"));
+		assertEquals(1, counterAggregator.getRejectedCommands() - rejectedBefore);
+		assertEquals(0, counterAggregator.getPendingCount());
+	}
+
+	/**
+	 * 读超时时redis可能已经执行了INCRBY，增量不能放回缓冲再写一次
+	 */
+	@Test
+	public void timeout() throws InterruptedException {
+		redisClient.del("counter:timeout");
+		long unconfirmedBefore = counterAggregator.getUnconfirmedCommands();
+		// 脚本占住redis超过读超时(1秒)，脚本结束后redis照常执行排队的INCRBY
+		Thread busy = new Thread(() -> {
+			// 单独的连接，读超时比脚本长
+			try (Jedis jedis = new Jedis("127.0.0.1", 6379, 5000)) {
+				jedis.eval(BUSY_SCRIPT, 0, "1500");
+			}
+		});
+		busy.start();
+		Thread.sleep(100);
+		counterAggregator.incrBy("counter:timeout", 5);
+		try {
+			counterAggregator.flush();
+			fail("expected JedisConnectionException");
+		} catch (JedisConnectionException e) {
+			// 读超时
+		}
+		busy.join();
+		counterAggregator.flush();
+
+		assertEquals("5", redisClient.get("counter:timeout"));
+		assertEquals(1, counterAggregator.getUnconfirmedCommands() - unconfirmedBefore);
+		assertEquals(0, counterAggregator.getPendingCount());
+	}
+}
@@ -0,0 +1,89 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.metrics.HotKey;
+import com.api.metrics.HotKeyReport;
+import com.api.metrics.HotKeys;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * 热点key检测
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "jedis.hotKeys.enabled=true")
+public class HotKeyTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	HotKeys hotKeys;
+
+	@Test
+	public void report() {
+		redisClient.set("hotkey:viral", "1");
+		for (int i = 0; i < 2000; i++) {
+			redisClient.get("hotkey:viral");
+			redisClient.set("hotkey:tail:" + i, "1");
+		}
+		HotKeyReport report = hotKeys.report();
+		System.out.println(report.getCurrent());
+		// 窗口可能在循环中切换，取次数多的那个窗口
+		HotKey first = report.getCurrent().get(0);
+		if (!report.getPrevious().isEmpty() && report.getPrevious().get(0).getCount() > first.getCount()) {
+			first = report.getPrevious().get(0);
+		}
+		assertEquals("hotkey:viral", first.getKey());
+		assertTrue(first.getCount() >= 1000);
+		assertTrue(first.getReads() > 0);
+		assertTrue(first.getCommands().containsKey("GET"));
+	}
+
+	@Test
+	public void threshold() throws InterruptedException {
+		HotKeys detector = new HotKeys(10, 1000, 60);
+		try {
+			CountDownLatch latch = new CountDownLatch(1);
+			AtomicReference<HotKey> alerted = new AtomicReference<HotKey>();
+			detector.addListener(hotKey -> {
+				alerted.set(hotKey);
+				latch.countDown();
+			});
+			byte[] hot = SafeEncoder.encode("hot");
+			for (int i = 0; i < 5000; i++) {
+				detector.record(Protocol.Command.HINCRBY, hot);
+				detector.record(Protocol.Command.GET, SafeEncoder.encode("cold:" + i));
+			}
+			assertTrue(latch.await(1, TimeUnit.SECONDS));
+			assertEquals("hot", alerted.get().getKey());
+			assertTrue(alerted.get().getWrites() > 0);
+
+			List<HotKey> top = detector.report().getCurrent();
+			assertEquals("hot", top.get(0).getKey());
+			assertEquals(5000, top.get(0).getCount());
+			// 长尾key的估计次数都很小
+			assertTrue(top.size() <= 10);
+			assertTrue(top.get(1).getCount() < 100);
+		} finally {
+			detector.close();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.ranking.Leaderboard;
+import com.api.ranking.Leaderboards;
+import com.api.ranking.RankEntry;
+
+/**
+ * 排行榜：本地合并加分、前N名快照
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class LeaderboardTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	Leaderboards leaderboards;
+
+	@Test
+	public void bufferedIncr() throws InterruptedException {
+		redisClient.del("leaderboard:buffered");
+		Leaderboard board = leaderboards.leaderboard("leaderboard:buffered", 10, 1, TimeUnit.MINUTES, 60000);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			executor.execute(() -> {
+				for (int i = 0; i < 10000; i++) {
+					board.incr("p" + (i % 5), 1);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		// 8万次加分合并成5个成员的一次pipeline
+		assertNull(redisClient.zscore("leaderboard:buffered", "p0"));
+		assertEquals(5, board.flush());
+		assertEquals(0, board.flush());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(Double.valueOf(16000), redisClient.zscore("leaderboard:buffered", "p" + i));
+		}
+	}
+
+	@Test
+	public void scheduledFlush() throws InterruptedException {
+		redisClient.del("leaderboard:scheduled");
+		Leaderboard board = leaderboards.leaderboard("leaderboard:scheduled", 10, 1, TimeUnit.MINUTES, 50);
+		board.incr("jack", 3);
+		board.incr("jack", 4);
+		Thread.sleep(300);
+		assertEquals(Double.valueOf(7), redisClient.zscore("leaderboard:scheduled", "jack"));
+	}
+
+	@Test
+	public void reads() throws InterruptedException {
+		redisClient.del("leaderboard:reads");
+		Leaderboard board = leaderboards.leaderboard("leaderboard:reads", 3, 200, TimeUnit.MILLISECONDS, 60000);
+		for (int i = 1; i <= 20; i++) {
+			board.set("p" + i, i * 10);
+		}
+
+		List<RankEntry> top = board.top(3);
+		assertEquals(3, top.size());
+		assertEquals("p20", top.get(0).getMember());
+		assertEquals(1, top.get(0).getRank());
+		assertEquals("p18", top.get(2).getMember());
+
+		// 快照有效期内读本地
+		board.set("p1", 1000);
+		assertEquals("p20", board.top(1).get(0).getMember());
+		// 超过快照大小直接读redis
+		assertEquals("p1", board.top(5).get(0).getMember());
+		Thread.sleep(250);
+		assertEquals("p1", board.top(1).get(0).getMember());
+
+		List<RankEntry> around = board.around("p10", 2);
+		assertEquals(5, around.size());
+		assertEquals("p12", around.get(0).getMember());
+		assertEquals("p10", around.get(2).getMember());
+		assertEquals(around.get(2).getRank(), board.rank("p10").getRank());
+		assertEquals(100, board.rank("p10").getScore(), 0);
+		assertTrue(board.around("nobody", 2).isEmpty());
+		assertNull(board.rank("nobody"));
+
+		// 第1名附近只有后面的
+		assertEquals(3, board.around("p1", 2).size());
+
+		List<RankEntry> page = board.page(4, 5);
+		assertEquals(5, page.size());
+		assertEquals(16, page.get(0).getRank());
+		assertEquals(20, board.size());
+		assertTrue(board.page(5, 5).isEmpty());
+	}
+}
@@ -1,5 +1,11 @@
 package com.api;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
@@ -9,6 +15,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import com.api.cache.RedisClient;
+import com.api.cache.RedisRouter;
+import com.api.cache.RedisScript;
+import com.api.cache.RedisScripts;
 import com.api.utils.AccquireUtils;
 import com.google.common.base.Stopwatch;
 
@@ -22,6 +31,12 @@ import com.google.common.base.Stopwatch;
 @SpringBootTest
 public class LimitLuaTest {
 
+	@Autowired
+	RedisScripts redisScripts;
+
+	@Autowired
+	RedisRouter redisRouter;
+
 	@Autowired
 	RedisClient redisClient;
 	
@@ -32,9 +47,29 @@ public class LimitLuaTest {
 			if (i == 30) {
 				Thread.sleep(1500);
 			}
-			System.out.println(AccquireUtils.accquire(redisClient));
+			System.out.println(AccquireUtils.accquire(redisScripts));
 		}
 		long time = watch.elapsed(TimeUnit.SECONDS);
 		System.out.println(time);
 	}
+
+	/**
+	 * 脚本缓存被清空后，execute和executeBatch重新加载脚本后执行
+	 */
+	@Test
+	public void scriptFlushed() {
+		RedisScript<Long> limit = redisScripts.get("limit", Long.class);
+		String key = "limit:flush:" + UUID.randomUUID();
+		List<String> keys = Collections.singletonList(key);
+		List<String> args = Collections.singletonList("3");
+
+		redisRouter.executeOnMasters(jedis -> jedis.scriptFlush());
+		assertEquals(Long.valueOf(1), limit.execute(keys, args));
+
+		redisRouter.executeOnMasters(jedis -> jedis.scriptFlush());
+		List<Long> results = limit.executeBatch(Arrays.asList(keys, keys, keys), Arrays.asList(args, args, args));
+		assertEquals(Arrays.asList(1L, 1L, 0L), results);
+		assertEquals("3", redisClient.get(key));
+		redisClient.del(key);
+	}
 }
@@ -0,0 +1,179 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.cache.RedisKeys;
+import com.api.queue.ListQueue;
+import com.api.queue.ListQueues;
+import com.api.queue.QueueConsumer;
+import com.api.queue.QueueMessage;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * list可靠队列：批量生产、批量消费、超时重新投递
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ListQueueTest {
+
+	@Autowired
+	ListQueues listQueues;
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	JedisPool jedisPool;
+
+	@Test
+	public void batchedConsume() throws InterruptedException {
+		ListQueue queue = listQueues.queue("test:batched", 30, TimeUnit.SECONDS);
+		queue.clear();
+
+		Set<String> received = ConcurrentHashMap.newKeySet();
+		AtomicInteger batches = new AtomicInteger();
+		QueueConsumer consumer = queue.consume(4, 200, messages -> {
+			batches.incrementAndGet();
+			for (QueueMessage message : messages) {
+				received.add(message.getBody());
+			}
+		});
+
+		List<String> bodies = new ArrayList<String>();
+		for (int i = 0; i < 10000; i++) {
+			bodies.add("m" + i);
+		}
+		List<QueueMessage> sent = queue.send(bodies);
+		assertEquals(10000, sent.stream().map(QueueMessage::getId).collect(Collectors.toSet()).size());
+
+		for (int i = 0; i < 100 && received.size() < bodies.size(); i++) {
+			Thread.sleep(50);
+		}
+		consumer.stop();
+		assertEquals(10000, received.size());
+		assertTrue("batches: " + batches.get(), batches.get() < 10000);
+		assertEquals(0, queue.size());
+		assertEquals(0, queue.inflight());
+	}
+
+	@Test
+	public void redeliver() throws InterruptedException {
+		ListQueue queue = listQueues.queue("test:redeliver", 200, TimeUnit.MILLISECONDS);
+		queue.clear();
+		queue.send("a");
+		queue.send("a");
+
+		// 相同内容的消息分别确认
+		List<QueueMessage> taken = queue.poll(10);
+		assertEquals(2, taken.size());
+		assertEquals(1, queue.ack(taken.get(0)));
+		assertEquals(1, queue.inflight());
+
+		// 未确认的超时后放回队列
+		Thread.sleep(500);
+		assertEquals(0, queue.inflight());
+		List<QueueMessage> again = queue.poll(10, 1);
+		assertEquals(1, again.size());
+		assertEquals(taken.get(1).getId(), again.get(0).getId());
+		assertEquals(1, queue.ack(again));
+
+		assertTrue(queue.poll(10, 1).isEmpty());
+	}
+
+	@Test
+	public void handlerFailure() throws InterruptedException {
+		ListQueue queue = listQueues.queue("test:failure", 200, TimeUnit.MILLISECONDS);
+		queue.clear();
+
+		AtomicInteger attempts = new AtomicInteger();
+		QueueConsumer consumer = queue.consume(1, 10, messages -> {
+			if (attempts.incrementAndGet() == 1) {
+				throw new IllegalStateException("first attempt fails");
+			}
+		});
+		queue.send("b");
+		for (int i = 0; i < 40 && attempts.get() < 2; i++) {
+			Thread.sleep(50);
+		}
+		consumer.stop();
+		assertEquals(2, attempts.get());
+		assertEquals(0, queue.inflight());
+	}
+
+	/**
+	 * BRPOPLPUSH之后、登记超时之前退出的消费者留在处理中列表的消息，补登记超时后重新投递
+	 */
+	@Test
+	public void stranded() throws InterruptedException {
+		ListQueue queue = listQueues.queue("test:stranded", 200, TimeUnit.MILLISECONDS);
+		queue.clear();
+		redisClient.lpush(RedisKeys.related(ListQueue.QUEUE_PREFIX, "test:stranded") + ":processing",
+				new String[] { "stranded-1|c" });
+
+		queue.requeueExpired();
+		assertEquals(1, queue.inflight());
+		Thread.sleep(500);
+		List<QueueMessage> again = queue.poll(10, 1);
+		assertEquals(1, again.size());
+		assertEquals("stranded-1", again.get(0).getId());
+		assertEquals(1, queue.ack(again));
+		assertEquals(0, queue.inflight());
+	}
+
+	/**
+	 * 消费者阻塞用的连接来自自己的连接池，不占用jedis.pool
+	 */
+	@Test
+	public void dedicatedConnections() throws InterruptedException {
+		ListQueue queue = listQueues.queue("test:dedicated", 30, TimeUnit.SECONDS);
+		queue.clear();
+		int before = jedisPool.getNumActive();
+		QueueConsumer consumer = queue.consume(8, 10, messages -> {
+		});
+		Thread.sleep(300);
+		int active = jedisPool.getNumActive() - before;
+		consumer.stop();
+		assertTrue("active: " + active, active < 8);
+	}
+
+	/**
+	 * 超时时间点按redis的时钟计算
+	 */
+	@Test
+	public void redisClock() {
+		ListQueue queue = listQueues.queue("test:clock", 30, TimeUnit.SECONDS);
+		queue.clear();
+		queue.send("d");
+		QueueMessage message = queue.poll(1).get(0);
+		long now;
+		try (Jedis jedis = jedisPool.getResource()) {
+			List<String> time = jedis.time();
+			now = Long.parseLong(time.get(0)) * 1000 + Long.parseLong(time.get(1)) / 1000;
+		}
+		double deadline = redisClient
+				.zrangeWithScores(RedisKeys.related(ListQueue.QUEUE_PREFIX, "test:clock") + ":deadline", 0, 0)
+				.iterator().next().getScore();
+		assertEquals(now + TimeUnit.SECONDS.toMillis(30), deadline, 1000);
+		queue.ack(message);
+	}
+}
@@ -0,0 +1,105 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.cache.RedisLock;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 分布式锁
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class LockTest {
+
+	@Autowired
+	RedisLock redisLock;
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	JedisPool jedisPool;
+
+	@Test
+	public void token() {
+		String token = redisLock.tryLock("test:token", 5000, 0);
+		assertNotNull(token);
+		assertNull(redisLock.tryLock("test:token", 5000, 100));
+		// 别人的令牌解不了锁
+		assertFalse(redisLock.unlock("test:token", "other"));
+		assertTrue(redisLock.unlock("test:token", token));
+		assertTrue(redisLock.lock("test:token", 5000, 0));
+		redisLock.releaseLock("test:token");
+		assertNull(redisClient.get("lock_{test:token}"));
+	}
+
+	@Test
+	public void leaseExpired() throws InterruptedException {
+		assertNotNull(redisLock.tryLock("test:expired", 200, 0));
+		assertTrue(redisLock.isHeld("test:expired"));
+		// 不解锁，租约到期后本地令牌也移除
+		Thread.sleep(400);
+		assertFalse(redisLock.isHeld("test:expired"));
+		assertNull(redisClient.get("lock_{test:expired}"));
+	}
+
+	@Test
+	public void handoff() throws InterruptedException {
+		String token = redisLock.tryLock("test:handoff", 0);
+		assertNotNull(token);
+		CountDownLatch waiting = new CountDownLatch(1);
+		AtomicLong acquiredAt = new AtomicLong();
+		Thread waiter = new Thread(() -> {
+			waiting.countDown();
+			if (redisLock.lock("test:handoff", 10000)) {
+				acquiredAt.set(System.nanoTime());
+				redisLock.releaseLock("test:handoff");
+			}
+		});
+		waiter.start();
+		waiting.await();
+		Thread.sleep(200);
+		long releasedAt = System.nanoTime();
+		assertTrue(redisLock.unlock("test:handoff", token));
+		waiter.join();
+		long millis = TimeUnit.NANOSECONDS.toMillis(acquiredAt.get() - releasedAt);
+		System.out.println("handoff millis: " + millis);
+		assertTrue(acquiredAt.get() > 0);
+		assertTrue(millis < 1000);
+	}
+
+	@Test
+	public void watchdog() throws InterruptedException {
+		String token = redisLock.tryLock("test:watchdog", 0);
+		assertNotNull(token);
+		Thread.sleep(RedisLock.WATCHDOG_LEASE_MILLIS / 3 + 1000);
+		long ttl;
+		try (Jedis jedis = jedisPool.getResource()) {
+			ttl = jedis.ttl("lock_{test:watchdog}");
+		}
+		System.out.println("ttl after renew: " + ttl);
+		assertTrue(ttl > RedisLock.WATCHDOG_LEASE_MILLIS / 1000 - 3);
+		assertTrue(redisLock.unlock("test:watchdog", token));
+		assertEquals(null, redisClient.get("lock_{test:watchdog}"));
+	}
+}
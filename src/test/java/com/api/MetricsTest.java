@@ -0,0 +1,69 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+import com.api.metrics.Histogram;
+import com.api.metrics.MetricsSnapshot;
+import com.api.metrics.RedisMetrics;
+
+/**
+ * redis命令指标
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class MetricsTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	RedisMetrics redisMetrics;
+
+	@Test
+	public void commands() {
+		long before = calls("SET");
+		redisClient.set("metrics:name", "jack");
+		redisClient.get("metrics:name");
+		RedisBatch batch = redisClient.batch();
+		for (int i = 0; i < 10; i++) {
+			batch.set("metrics:name", "jack" + i);
+		}
+		batch.execute();
+
+		MetricsSnapshot snapshot = redisMetrics.snapshot();
+		System.out.println(snapshot.getCommands());
+		System.out.println("borrow p99: " + snapshot.getBorrowP99() + "us, idle: " + snapshot.getPoolIdle());
+		assertEquals(before + 11, calls("SET"));
+		assertTrue(snapshot.getBorrowCount() > 0);
+		assertTrue(snapshot.getPoolIdle() > 0);
+	}
+
+	@Test
+	public void histogram() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		System.out.println(histogram.percentile(0.5) + " " + histogram.percentile(0.99));
+		// 分桶相对误差不超过12.5%
+		assertTrue(Math.abs(histogram.percentile(0.5) - 500) <= 500 / 8);
+		assertTrue(Math.abs(histogram.percentile(0.99) - 990) <= 990 / 8);
+		assertEquals(1000, histogram.getMax());
+	}
+
+	private long calls(String command) {
+		MetricsSnapshot.CommandSnapshot snapshot = redisMetrics.snapshot().getCommands().get(command);
+		return snapshot == null ? 0 : snapshot.getCalls();
+	}
+}
@@ -0,0 +1,123 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.AsyncRedisClient;
+import com.api.cache.NearCache;
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 本地一级缓存
+ * 通过pub/sub失效
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "jedis.nearCache.enabled=true")
+public class NearCacheTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	NearCache nearCache;
+
+	@Autowired
+	AsyncRedisClient asyncRedisClient;
+
+	@Autowired
+	@Qualifier("jedis.pool")
+	JedisPool jedisPool;
+
+	@Test
+	public void nearCache() throws InterruptedException {
+		while (!nearCache.isSubscribed()) {
+			Thread.sleep(10);
+		}
+		redisClient.set("config:site", "v1");
+		assertEquals("v1", redisClient.get("config:site"));
+
+		// 绕过RedisClient修改，本地副本仍然是旧值
+		try (Jedis jedis = jedisPool.getResource()) {
+			jedis.set("config:site", "v2");
+		}
+		System.out.println(redisClient.get("config:site"));
+		assertEquals("v1", redisClient.get("config:site"));
+
+		// 通过RedisClient修改会立即失效
+		redisClient.set("config:site", "v3");
+		assertEquals("v3", redisClient.get("config:site"));
+
+		redisClient.hset("profile:jack", "age", "18");
+		assertEquals("18", redisClient.hget("profile:jack", "age"));
+		assertEquals("18", redisClient.hgetAll("profile:jack").get("age"));
+		redisClient.hset("profile:jack", "age", "19");
+		assertEquals("19", redisClient.hget("profile:jack", "age"));
+		assertEquals("19", redisClient.hgetAll("profile:jack").get("age"));
+		System.out.println(nearCache.size());
+
+		// 设置过期时间也要失效本地副本，否则redis过期后仍读到旧值
+		redisClient.set("config:expire", "v1");
+		assertEquals("v1", redisClient.get("config:expire"));
+		redisClient.expire("config:expire", 1);
+		redisClient.set("config:expireAt", "v1");
+		assertEquals("v1", redisClient.get("config:expireAt"));
+		redisClient.expireAt("config:expireAt", System.currentTimeMillis() / 1000 + 1);
+		Thread.sleep(2100);
+		assertNull(redisClient.get("config:expire"));
+		assertNull(redisClient.get("config:expireAt"));
+	}
+
+	@Test
+	public void expire() throws Exception {
+		while (!nearCache.isSubscribed()) {
+			Thread.sleep(10);
+		}
+		// 批量和异步的expire同样要失效本地副本
+		redisClient.set("config:batchExpire", "v1");
+		redisClient.set("config:asyncExpire", "v1");
+		assertEquals("v1", redisClient.get("config:batchExpire"));
+		assertEquals("v1", redisClient.get("config:asyncExpire"));
+		RedisBatch batch = redisClient.batch();
+		batch.expire("config:batchExpire", 1);
+		batch.execute();
+		asyncRedisClient.expire("config:asyncExpire", 1).get();
+		Thread.sleep(2100);
+		assertNull(redisClient.get("config:batchExpire"));
+		assertNull(redisClient.get("config:asyncExpire"));
+	}
+
+	@Test
+	public void message() throws InterruptedException {
+		while (!nearCache.isSubscribed()) {
+			Thread.sleep(10);
+		}
+		redisClient.set("config:message", "v1");
+		assertEquals("v1", redisClient.get("config:message"));
+		// 自己发布的失效消息回来时不能删掉刚回填的值
+		Thread.sleep(100);
+		try (Jedis jedis = jedisPool.getResource()) {
+			jedis.set("config:message", "v2");
+		}
+		assertEquals("v1", redisClient.get("config:message"));
+
+		// 其他实例的失效消息删除本地副本
+		try (Jedis jedis = jedisPool.getResource()) {
+			jedis.publish("near-cache:invalidate", "other|config:message");
+		}
+		Thread.sleep(100);
+		assertEquals("v2", redisClient.get("config:message"));
+	}
+}
@@ -0,0 +1,84 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.JedisPoolManager;
+import com.api.cache.ResizableJedisPool;
+import com.api.metrics.RedisMetrics;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 连接池预热、按负载扩大、快速失败
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class PoolManagerTest {
+
+	@Autowired
+	@Qualifier("jedis.pool")
+	JedisPool jedisPool;
+
+	@Autowired
+	RedisMetrics redisMetrics;
+
+	@Test
+	public void prewarmed() {
+		// 启动时已建好 jedis.pool.minIdle 个连接
+		assertTrue(jedisPool.getNumIdle() + jedisPool.getNumActive() >= 10);
+		assertEquals(100, redisMetrics.snapshot().getPoolMaxWaitMillis());
+	}
+
+	@Test
+	public void growAndFailFast() throws InterruptedException {
+		JedisPoolManager manager = new JedisPoolManager(2, 2, 2, 4, 100000, 100, 1, null);
+		ResizableJedisPool pool = new ResizableJedisPool(new JedisPoolConfig(), "127.0.0.1", 6379, 1000, null);
+		try {
+			manager.manage("test", pool);
+			assertEquals(2, pool.getNumIdle());
+			assertEquals(50, pool.getMaxWaitMillis());
+
+			List<Jedis> held = new ArrayList<Jedis>();
+			held.add(pool.getResource());
+			held.add(pool.getResource());
+			long start = System.currentTimeMillis();
+			try {
+				pool.getResource();
+				fail("pool is exhausted");
+			} catch (JedisException e) {
+				// 等待不超过延迟预算的一半
+				assertTrue(System.currentTimeMillis() - start < 1000);
+			}
+
+			// 连接用满一个周期后扩大
+			for (int i = 0; i < 30 && pool.getMaxTotal() == 2; i++) {
+				Thread.sleep(100);
+			}
+			assertEquals(3, pool.getMaxTotal());
+			held.add(pool.getResource());
+			for (Jedis jedis : held) {
+				jedis.close();
+			}
+		} finally {
+			manager.close();
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.limiter.LeasedRateLimiter;
+import com.api.limiter.LimitResult;
+import com.api.limiter.LimitRule;
+import com.api.limiter.RateLimiter;
+
+/**
+ * redis实现限流
+ * 滑动窗口、令牌桶
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class RateLimiterTest {
+
+	@Autowired
+	RateLimiter rateLimiter;
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Test
+	public void algorithms() {
+		String key = "test:" + System.nanoTime();
+		for (LimitRule rule : Arrays.asList(LimitRule.slidingWindowLog(10, 10, TimeUnit.SECONDS),
+				LimitRule.slidingWindowCounter(10, 10, TimeUnit.SECONDS),
+				LimitRule.tokenBucket(10, 1, 10, TimeUnit.SECONDS))) {
+			LimitResult result = rateLimiter.acquire(key, rule, 4);
+			System.out.println(rule.getAlgorithm() + " " + result);
+			assertTrue(result.isAllowed());
+			assertEquals(6, result.getRemaining());
+
+			result = rateLimiter.acquire(key, rule, 6);
+			assertTrue(result.isAllowed());
+
+			result = rateLimiter.acquire(key, rule);
+			System.out.println(rule.getAlgorithm() + " " + result);
+			assertFalse(result.isAllowed());
+			assertTrue(result.getRetryAfterMillis() > 0);
+		}
+	}
+
+	@Test
+	public void batch() {
+		String prefix = "test:" + System.nanoTime();
+		LimitRule rule = LimitRule.slidingWindowCounter(2, 1, TimeUnit.SECONDS);
+		rateLimiter.acquire(prefix + ":a", rule, 2);
+		Map<String, LimitResult> results = rateLimiter.acquire(Arrays.asList(prefix + ":a", prefix + ":b"), rule, 1);
+		System.out.println(results);
+		assertFalse(results.get(prefix + ":a").isAllowed());
+		assertTrue(results.get(prefix + ":b").isAllowed());
+	}
+
+	@Test
+	public void leased() throws InterruptedException {
+		// 跨过窗口边界时会多出一个窗口的许可，先等到窗口开头
+		awaitWindow(TimeUnit.MINUTES.toMillis(1), 5000);
+		LeasedRateLimiter limiter = rateLimiter.leased("test" + System.nanoTime(), 100, 1, TimeUnit.MINUTES, 20, 2);
+		int allowed = 0;
+		for (int i = 0; i < 150; i++) {
+			if (limiter.acquire("api").isAllowed()) {
+				allowed++;
+			}
+		}
+		assertEquals(100, allowed);
+		LimitResult result = limiter.acquire("api");
+		assertTrue(result.getRetryAfterMillis() > 0);
+	}
+
+	@Test
+	public void leaseReturn() throws InterruptedException {
+		long windowMillis = TimeUnit.SECONDS.toMillis(10);
+		awaitWindow(windowMillis, 5000);
+		String name = "test" + System.nanoTime();
+		LeasedRateLimiter limiter = rateLimiter.leased(name, 100, 10, TimeUnit.SECONDS, 20, 1);
+		// 同一个名称只创建一次
+		assertSame(limiter, rateLimiter.leased(name, 100, 10, TimeUnit.SECONDS, 20, 1));
+		long window = System.currentTimeMillis() / windowMillis;
+		String idleKey = RateLimiter.LIMIT_PREFIX + ":lease:" + name + ":idle:" + window;
+		String busyKey = RateLimiter.LIMIT_PREFIX + ":lease:" + name + ":busy:" + window;
+
+		// 租到20个只用1个，闲置超过窗口的1/10后归还剩余的19个
+		assertTrue(limiter.acquire("idle").isAllowed());
+		assertEquals("20", redisClient.get(idleKey));
+
+		// 其他实例先用掉80个，本实例租到剩下的20个后耗尽
+		redisClient.incrBy(busyKey, 80);
+		assertEquals(20, acquireAll(limiter, "busy"));
+		// 其他实例归还10个，本实例隔一个归还间隔后重新申请拿到
+		redisClient.incrBy(busyKey, -10);
+
+		Thread.sleep(limiter.getReturnMillis() * 2 + 200);
+		assertEquals("1", redisClient.get(idleKey));
+		assertEquals(10, acquireAll(limiter, "busy"));
+	}
+
+	private static int acquireAll(LeasedRateLimiter limiter, String key) {
+		int allowed = 0;
+		while (limiter.acquire(key).isAllowed()) {
+			allowed++;
+		}
+		return allowed;
+	}
+
+	private static void awaitWindow(long windowMillis, long need) throws InterruptedException {
+		long left = windowMillis - System.currentTimeMillis() % windowMillis;
+		if (left < need) {
+			Thread.sleep(left + 10);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.ReadPreference;
+import com.api.cache.RedisClient;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * 从节点读，需要本地 6380 作为 6379 的从节点，没有时跳过
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = { "jedis.replica.nodes=127.0.0.1:6380", "jedis.replica.checkMillis=100" })
+public class ReplicaTest {
+
+	private static final int REPLICA_PORT = 6380;
+
+	@Autowired
+	RedisClient redisClient;
+
+	@BeforeClass
+	public static void replicaAvailable() {
+		try (Jedis jedis = new Jedis("127.0.0.1", REPLICA_PORT)) {
+			Assume.assumeTrue(jedis.info("replication").contains("master_link_status:up"));
+		} catch (JedisConnectionException e) {
+			Assume.assumeNoException(e);
+		}
+	}
+
+	@Test
+	public void replicaReads() throws InterruptedException {
+		redisClient.set("replica:key", "v1");
+		// 等复制完成和第一次状态检查
+		Thread.sleep(300);
+
+		long before = replicaGets();
+		for (int i = 0; i < 10; i++) {
+			assertEquals("v1", redisClient.get("replica:key"));
+		}
+		assertEquals(10, replicaGets() - before);
+
+		// 读主节点，不经过从节点
+		before = replicaGets();
+		redisClient.set("replica:key", "v2");
+		assertEquals("v2", ReadPreference.primary(() -> redisClient.get("replica:key")));
+		try (ReadPreference.Scope scope = ReadPreference.primary()) {
+			assertEquals("v2", redisClient.get("replica:key"));
+			assertEquals("v2", ReadPreference.primary(() -> redisClient.get("replica:key")));
+			assertEquals("v2", redisClient.get("replica:key"));
+		}
+		assertEquals(0, replicaGets() - before);
+	}
+
+	@Test
+	public void replicaDown() throws InterruptedException {
+		redisClient.set("replica:down", "v");
+		try (Jedis replica = new Jedis("127.0.0.1", REPLICA_PORT)) {
+			// 断开复制后从节点不再可用，读主节点
+			replica.slaveofNoOne();
+			Thread.sleep(300);
+			long before = replicaGets();
+			assertEquals("v", redisClient.get("replica:down"));
+			assertEquals(0, replicaGets() - before);
+		} finally {
+			try (Jedis replica = new Jedis("127.0.0.1", REPLICA_PORT)) {
+				replica.slaveof("127.0.0.1", 6379);
+				for (int i = 0; i < 100 && !replica.info("replication").contains("master_link_status:up"); i++) {
+					Thread.sleep(50);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void scanPinned() throws InterruptedException {
+		String key = "replica:scan";
+		redisClient.del(key);
+		for (int i = 0; i < 1000; i++) {
+			redisClient.sadd(key, "member" + i);
+		}
+		Thread.sleep(300);
+
+		// 每一页都在创建时选定的从节点上取
+		long before = replicaCalls("sscan");
+		try (Stream<String> members = redisClient.sscanStream(key, null, 100)) {
+			assertEquals(1000, members.distinct().count());
+		}
+		assertTrue(replicaCalls("sscan") - before >= 10);
+
+		// 读主节点时预取线程上的翻页也不经过从节点
+		before = replicaCalls("sscan");
+		try (ReadPreference.Scope scope = ReadPreference.primary();
+				Stream<String> members = redisClient.sscanStream(key, null, 100)) {
+			assertEquals(1000, members.distinct().count());
+		}
+		assertEquals(0, replicaCalls("sscan") - before);
+	}
+
+	private static long replicaGets() {
+		return replicaCalls("get");
+	}
+
+	private static long replicaCalls(String command) {
+		try (Jedis jedis = new Jedis("127.0.0.1", REPLICA_PORT)) {
+			String stats = jedis.info("commandstats");
+			String field = "cmdstat_" + command + ":calls=";
+			int start = stats.indexOf(field);
+			if (start < 0) {
+				return 0;
+			}
+			start += field.length();
+			return Long.parseLong(stats.substring(start, stats.indexOf(',', start)));
+		}
+	}
+}
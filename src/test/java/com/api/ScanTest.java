@@ -0,0 +1,108 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisBatch;
+import com.api.cache.RedisClient;
+
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Tuple;
+
+/**
+ * SCAN流式迭代
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ScanTest {
+
+	private static final int SIZE = 2000;
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Test
+	public void collections() {
+		Map<String, String> fields = new HashMap<String, String>();
+		Map<String, Double> scores = new HashMap<String, Double>();
+		String[] members = new String[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			fields.put("f" + i, "v" + i);
+			scores.put("m" + i, (double) i);
+			members[i] = "m" + i;
+		}
+		RedisBatch batch = redisClient.batch();
+		batch.del("scan:hash");
+		batch.del("scan:set");
+		batch.del("scan:zset");
+		batch.hmset("scan:hash", fields);
+		batch.sadd("scan:set", members);
+		batch.zadd("scan:zset", scores);
+		batch.execute();
+
+		try (Stream<Map.Entry<String, String>> stream = redisClient.hscanStream("scan:hash", null, 50)) {
+			Map<String, String> scanned = new HashMap<String, String>();
+			stream.forEach(entry -> scanned.put(entry.getKey(), entry.getValue()));
+			assertEquals(fields, scanned);
+		}
+		try (Stream<String> stream = redisClient.sscanStream("scan:set")) {
+			assertEquals(scores.keySet(), stream.collect(Collectors.toSet()));
+		}
+		try (Stream<Tuple> stream = redisClient.zscanStream("scan:zset", "m1*", 50)) {
+			Set<String> scanned = new HashSet<String>();
+			stream.forEach(tuple -> {
+				assertEquals(Double.valueOf(tuple.getElement().substring(1)), tuple.getScore(), 0);
+				scanned.add(tuple.getElement());
+			});
+			assertEquals(scores.keySet().stream().filter(m -> m.startsWith("m1")).collect(Collectors.toSet()), scanned);
+		}
+
+		// 小集合一页返回全部
+		redisClient.del("scan:small");
+		redisClient.hset("scan:small", "a1", "1");
+		redisClient.hset("scan:small", "a2", "2");
+		redisClient.hset("scan:small", "b1", "3");
+		ScanResult<Map.Entry<String, String>> page = redisClient.hscan("scan:small", "a*");
+		assertEquals("0", page.getStringCursor());
+		assertEquals(2, page.getResult().size());
+	}
+
+	@Test
+	public void keys() {
+		Set<String> keys = new HashSet<String>();
+		RedisBatch batch = redisClient.batch();
+		for (int i = 0; i < SIZE; i++) {
+			keys.add("scan:key:" + i);
+			batch.set("scan:key:" + i, "v");
+		}
+		batch.execute();
+
+		try (Stream<String> stream = redisClient.scanKeys("scan:key:*", 100)) {
+			assertEquals(keys, stream.collect(Collectors.toSet()));
+		}
+
+		// 只读了一部分时关闭流
+		try (Stream<String> stream = redisClient.scanKeys("scan:key:*")) {
+			Iterator<String> iterator = stream.iterator();
+			for (int i = 0; i < 10; i++) {
+				assertTrue(keys.contains(iterator.next()));
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.social.SocialGraph;
+
+/**
+ * 关注关系：缓存共同关注，关注和取关增量修改
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class SocialGraphTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	SocialGraph socialGraph;
+
+	@Test
+	public void commonFollows() {
+		reset("sgA", "sgB");
+		for (int i = 0; i < 100; i++) {
+			socialGraph.follow("sgA", "u" + (100 + i));
+			if (i % 2 == 0) {
+				socialGraph.follow("sgB", "u" + (100 + i));
+			}
+		}
+		socialGraph.follow("sgB", "sgA");
+		assertTrue(socialGraph.isFollowing("sgB", "sgA"));
+		assertFalse(socialGraph.isFollowing("sgA", "sgB"));
+		assertEquals(100, socialGraph.followCount("sgA"));
+		assertEquals(1, socialGraph.fansCount("sgA"));
+
+		assertEquals(50, socialGraph.commonFollowCount("sgA", "sgB"));
+		assertEquals(50, socialGraph.commonFollowCount("sgB", "sgA"));
+		List<String> all = new ArrayList<String>();
+		for (int page = 0; page < 6; page++) {
+			all.addAll(socialGraph.commonFollows("sgA", "sgB", page * 10, 10));
+		}
+		assertEquals(50, all.size());
+		assertEquals("u100", all.get(0));
+		assertEquals("u102", all.get(1));
+
+		// 已缓存的结果增量修改
+		socialGraph.follow("sgB", "u101");
+		socialGraph.unfollow("sgA", "u100");
+		socialGraph.follow("sgA", "u999");
+		assertEquals(50, socialGraph.commonFollowCount("sgA", "sgB"));
+		assertEquals(Arrays.asList("u101", "u102"), socialGraph.commonFollows("sgA", "sgB", 0, 2));
+		socialGraph.follow("sgB", "u999");
+		assertEquals(51, socialGraph.commonFollowCount("sgA", "sgB"));
+
+		try (Stream<String> follows = socialGraph.follows("sgA")) {
+			assertEquals(100, follows.collect(Collectors.toSet()).size());
+		}
+	}
+
+	@Test
+	public void commonFans() {
+		reset("sgC", "sgD", "sgF1", "sgF2", "sgF3");
+		socialGraph.follow("sgF1", "sgC");
+		socialGraph.follow("sgF1", "sgD");
+		socialGraph.follow("sgF2", "sgC");
+		assertEquals(Arrays.asList("sgF1"), socialGraph.commonFans("sgC", "sgD", 0, 10));
+
+		socialGraph.follow("sgF2", "sgD");
+		socialGraph.follow("sgF3", "sgD");
+		assertEquals(Arrays.asList("sgF1", "sgF2"), socialGraph.commonFans("sgD", "sgC", 0, 10));
+		socialGraph.unfollow("sgF1", "sgC");
+		assertEquals(1, socialGraph.commonFansCount("sgC", "sgD"));
+
+		// 交集为空
+		assertEquals(0, socialGraph.commonFansCount("sgF1", "sgF2"));
+		assertTrue(socialGraph.commonFans("sgF1", "sgF2", 0, 10).isEmpty());
+	}
+
+	@Test
+	public void emptyCached() {
+		reset("sgE1", "sgE2", "sgE3", "sgE4");
+		socialGraph.follow("sgE3", "sgE1");
+		assertEquals(0, socialGraph.commonFansCount("sgE1", "sgE2"));
+		String empty = SocialGraph.SOCIAL_PREFIX + "{sgE1}:common:fans:sgE2:empty";
+		assertTrue(redisClient.exist(empty));
+
+		// 绕过follow直接改集合，空结果有效期内不重新计算
+		redisClient.sadd(SocialGraph.SOCIAL_PREFIX + "{sgE2}:fans", "sgE3");
+		assertEquals(0, socialGraph.commonFansCount("sgE2", "sgE1"));
+		assertTrue(socialGraph.commonFans("sgE1", "sgE2", 0, 10).isEmpty());
+
+		// 关注产生共同成员时，空结果换成结果集
+		socialGraph.follow("sgE4", "sgE1");
+		socialGraph.follow("sgE4", "sgE2");
+		assertFalse(redisClient.exist(empty));
+		assertEquals(Arrays.asList("sgE4"), socialGraph.commonFans("sgE1", "sgE2", 0, 10));
+		assertTrue(redisClient.ttl(SocialGraph.SOCIAL_PREFIX + "{sgE1}:common:fans:sgE2") <= 60);
+	}
+
+	private void reset(String... users) {
+		for (String user : users) {
+			for (String name : new String[] { "follow", "fans", "cached:follow", "cached:fans" }) {
+				redisClient.del(SocialGraph.SOCIAL_PREFIX + "{" + user + "}:" + name);
+			}
+			for (String other : users) {
+				redisClient.del(SocialGraph.SOCIAL_PREFIX + "{" + user + "}:common:follow:" + other);
+				redisClient.del(SocialGraph.SOCIAL_PREFIX + "{" + user + "}:common:fans:" + other);
+				redisClient.del(SocialGraph.SOCIAL_PREFIX + "{" + user + "}:common:follow:" + other + ":empty");
+				redisClient.del(SocialGraph.SOCIAL_PREFIX + "{" + user + "}:common:fans:" + other + ":empty");
+			}
+		}
+	}
+}
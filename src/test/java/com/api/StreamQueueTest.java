@@ -0,0 +1,186 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.StreamEntry;
+import com.api.queue.StreamConsumer;
+import com.api.queue.StreamQueue;
+import com.api.queue.StreamQueues;
+
+/**
+ * 流队列：批量追加、按字段保序消费、裁剪、接管
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class StreamQueueTest {
+
+	@Autowired
+	StreamQueues streamQueues;
+
+	@Test
+	public void orderedConsume() throws InterruptedException {
+		StreamQueue queue = streamQueues.stream("test:ordered", "g", 0, 30, TimeUnit.SECONDS);
+		queue.clear();
+
+		List<Map<String, String>> entries = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < 5000; i++) {
+			entries.add(entry("k" + (i % 20), String.valueOf(i)));
+		}
+		List<String> ids = queue.publish(entries);
+		assertEquals(5000, ids.size());
+		assertEquals(5000, queue.size());
+
+		Map<String, List<Integer>> received = new ConcurrentHashMap<String, List<Integer>>();
+		AtomicInteger count = new AtomicInteger();
+		StreamConsumer consumer = queue.consume("c1", 4, 100, "k", entry -> {
+			received.computeIfAbsent(entry.get("k"), k -> Collections.synchronizedList(new ArrayList<Integer>()))
+					.add(Integer.valueOf(entry.get("v")));
+			count.incrementAndGet();
+		});
+		for (int i = 0; i < 200 && count.get() < 5000; i++) {
+			Thread.sleep(50);
+		}
+		consumer.stop();
+
+		assertEquals(5000, count.get());
+		assertEquals(20, received.size());
+		for (List<Integer> values : received.values()) {
+			for (int i = 1; i < values.size(); i++) {
+				assertTrue(values.get(i - 1) < values.get(i));
+			}
+		}
+		assertEquals(0, queue.pendingCount());
+	}
+
+	@Test
+	public void trim() {
+		StreamQueue queue = streamQueues.stream("test:trim", "g", 100, 30, TimeUnit.SECONDS);
+		queue.clear();
+		List<Map<String, String>> entries = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < 1000; i++) {
+			entries.add(entry("k", String.valueOf(i)));
+		}
+		queue.publish(entries);
+		// 近似裁剪，按整个宏节点删除，保留的条数不少于100
+		assertTrue("size: " + queue.size(), queue.size() >= 100 && queue.size() < 1000);
+	}
+
+	@Test
+	public void claim() throws InterruptedException {
+		StreamQueue queue = streamQueues.stream("test:claim", "g", 0, 200, TimeUnit.MILLISECONDS);
+		queue.clear();
+		queue.publish(entry("k", "a"));
+		queue.publish(entry("k", "b"));
+
+		// 消费者读取后退出，没有确认
+		List<StreamEntry> read = queue.read("dead", 10);
+		assertEquals(2, read.size());
+		assertEquals(2, queue.pendingCount());
+		assertTrue(queue.claim("alive", 10).isEmpty());
+
+		Thread.sleep(300);
+		List<StreamEntry> claimed = queue.claim("alive", 10);
+		assertEquals(2, claimed.size());
+		assertEquals("a", claimed.get(0).get("v"));
+		List<String> ids = new ArrayList<String>();
+		for (StreamEntry entry : claimed) {
+			ids.add(entry.getId());
+		}
+		assertEquals(2, queue.ack(ids));
+		assertEquals(0, queue.pendingCount());
+	}
+
+	@Test
+	public void recover() throws InterruptedException {
+		StreamQueue queue = streamQueues.stream("test:recover", "g", 0, 30, TimeUnit.SECONDS);
+		queue.clear();
+		queue.publish(entry("k", "a"));
+		assertEquals(1, queue.read("c1", 10).size());
+
+		// 同名消费者重启后先处理上次未确认的消息
+		AtomicInteger handled = new AtomicInteger();
+		StreamConsumer consumer = queue.consume("c1", 1, 10, null, entry -> handled.incrementAndGet());
+		for (int i = 0; i < 40 && handled.get() < 1; i++) {
+			Thread.sleep(50);
+		}
+		consumer.stop();
+		assertEquals(1, handled.get());
+		assertEquals(0, queue.pendingCount());
+	}
+
+	/**
+	 * 一次确认超过lua unpack上限的条数
+	 */
+	@Test
+	public void ackMany() {
+		StreamQueue queue = streamQueues.stream("test:ackMany", "g", 0, 30, TimeUnit.SECONDS);
+		queue.clear();
+		List<Map<String, String>> entries = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < 10000; i++) {
+			entries.add(entry("k", String.valueOf(i)));
+		}
+		queue.publish(entries);
+		List<String> ids = new ArrayList<String>();
+		for (StreamEntry entry : queue.read("c1", 10000)) {
+			ids.add(entry.getId());
+		}
+		assertEquals(10000, ids.size());
+		assertEquals(10000, queue.ack(ids));
+		assertEquals(0, queue.pendingCount());
+	}
+
+	/**
+	 * 处理慢于接管空闲时间时，自己接管到的还在本地排队的消息不重复处理
+	 */
+	@Test
+	public void slowHandler() throws InterruptedException {
+		StreamQueue queue = streamQueues.stream("test:slow", "g", 0, 100, TimeUnit.MILLISECONDS);
+		queue.clear();
+		for (int i = 0; i < 10; i++) {
+			queue.publish(entry("k", String.valueOf(i)));
+		}
+		Map<String, AtomicInteger> handled = new ConcurrentHashMap<String, AtomicInteger>();
+		StreamConsumer consumer = queue.consume("c1", 1, 10, null, entry -> {
+			handled.computeIfAbsent(entry.getId(), id -> new AtomicInteger()).incrementAndGet();
+			try {
+				Thread.sleep(60);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		for (int i = 0; i < 60 && (handled.size() < 10 || queue.pendingCount() > 0); i++) {
+			Thread.sleep(50);
+		}
+		consumer.stop();
+		assertEquals(10, handled.size());
+		for (AtomicInteger times : handled.values()) {
+			assertEquals(1, times.get());
+		}
+		assertEquals(0, queue.pendingCount());
+	}
+
+	private Map<String, String> entry(String k, String v) {
+		Map<String, String> fields = new HashMap<String, String>();
+		fields.put("k", k);
+		fields.put("v", v);
+		return fields;
+	}
+}
@@ -0,0 +1,142 @@
+package com.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.api.cache.RedisClient;
+import com.api.counter.UniqueCounter;
+
+import redis.clients.jedis.BitOP;
+
+/**
+ * HyperLogLog去重计数和位图
+ * @author zhaoxingwu
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class UniqueCounterTest {
+
+	@Autowired
+	RedisClient redisClient;
+
+	@Autowired
+	UniqueCounter uniqueCounter;
+
+	/**
+	 * 本地寄存器合并的结果与直接PFADD完全相同
+	 */
+	@Test
+	public void sameAsPfadd() {
+		LocalDate day = LocalDate.of(2020, 1, 15);
+		redisClient.del("uv:{test:same}:20200115");
+		redisClient.del("uv:{test:small}:20200115");
+		redisClient.del("uv:test:plain");
+		redisClient.del("uv:test:plainSmall");
+		long mergesBefore = uniqueCounter.getMerges();
+		long pfaddsBefore = uniqueCounter.getPfadds();
+
+		String[] ids = new String[20000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = "user:" + i;
+			uniqueCounter.add("test:same", day, ids[i]);
+			// 重复的访问
+			uniqueCounter.add("test:same", day, ids[i]);
+		}
+		for (int i = 0; i < 10; i++) {
+			uniqueCounter.add("test:small", day, "user:" + i);
+		}
+		uniqueCounter.flush();
+		for (int i = 0; i < ids.length; i += 1000) {
+			String[] chunk = new String[1000];
+			System.arraycopy(ids, i, chunk, 0, chunk.length);
+			redisClient.pfadd("uv:test:plain", chunk);
+		}
+		redisClient.pfadd("uv:test:plainSmall", "user:0", "user:1", "user:2", "user:3", "user:4", "user:5",
+				"user:6", "user:7", "user:8", "user:9");
+
+		assertEquals(redisClient.pfcount("uv:test:plain"), uniqueCounter.count("test:same", day));
+		assertEquals(10, uniqueCounter.count("test:small", day));
+		assertEquals(redisClient.pfcount("uv:test:plainSmall"), uniqueCounter.count("test:small", day));
+		assertEquals(1, uniqueCounter.getMerges() - mergesBefore);
+		assertEquals(1, uniqueCounter.getPfadds() - pfaddsBefore);
+		assertEquals(0, uniqueCounter.getPendingCount());
+
+		// 再写一次同样的寄存器不改变结果
+		for (int i = 0; i < ids.length; i++) {
+			uniqueCounter.add("test:same", day, ids[i]);
+		}
+		uniqueCounter.flush();
+		assertEquals(redisClient.pfcount("uv:test:plain"), uniqueCounter.count("test:same", day));
+	}
+
+	/**
+	 * 跨天去重，已结束的整月用月汇总
+	 */
+	@Test
+	public void multiDay() {
+		LocalDate month = LocalDate.now().withDayOfMonth(1).minusMonths(2);
+		String metric = "test:multi";
+		for (int d = 0; d < month.lengthOfMonth(); d++) {
+			redisClient.del("uv:{test:multi}:" + month.plusDays(d).toString().replace("-", ""));
+		}
+		String monthKey = "uv:{test:multi}:" + month.toString().substring(0, 7).replace("-", "");
+		redisClient.del(monthKey);
+
+		// 每天1000个，相邻两天重叠一半
+		for (int d = 0; d < 10; d++) {
+			for (int i = d * 500; i < d * 500 + 1000; i++) {
+				uniqueCounter.add(metric, month.plusDays(d), "user:" + i);
+			}
+		}
+		uniqueCounter.flush();
+
+		assertEquals(1000, uniqueCounter.count(metric, month), 20);
+		assertEquals(1500, uniqueCounter.count(metric, month, month.plusDays(1)), 30);
+		assertFalse(redisClient.exist(monthKey));
+
+		long total = uniqueCounter.count(metric, month, month.plusMonths(1).minusDays(1));
+		assertEquals(5500, total, 110);
+		assertTrue(redisClient.exist(monthKey));
+		assertEquals(total, redisClient.pfcount(monthKey));
+		// 跨到下个月的范围复用月汇总
+		assertEquals(total, uniqueCounter.count(metric, month, month.plusMonths(1).plusDays(3)));
+
+		// 补录已结束的月份后汇总重建
+		for (int i = 0; i < 1000; i++) {
+			uniqueCounter.add(metric, month.plusDays(20), "late:" + i);
+		}
+		uniqueCounter.flush();
+		assertFalse(redisClient.exist(monthKey));
+		assertEquals(6500, uniqueCounter.count(metric, month, month.plusMonths(1).minusDays(1)), 130);
+	}
+
+	@Test
+	public void bitmap() {
+		redisClient.del("bitmap:active:1");
+		redisClient.del("bitmap:active:2");
+		redisClient.del("bitmap:active:both");
+		for (long id = 0; id < 100; id++) {
+			redisClient.setbit("bitmap:active:1", id, true);
+			if (id % 2 == 0) {
+				redisClient.setbit("bitmap:active:2", id, true);
+			}
+		}
+		assertTrue(redisClient.getbit("bitmap:active:1", 99));
+		assertFalse(redisClient.getbit("bitmap:active:2", 99));
+		assertEquals(Long.valueOf(100), redisClient.bitcount("bitmap:active:1"));
+		// 前8个字节是id 0-63
+		assertEquals(Long.valueOf(64), redisClient.bitcount("bitmap:active:1", 0, 7));
+		redisClient.bitop(BitOP.AND, "bitmap:active:both", "bitmap:active:1", "bitmap:active:2");
+		assertEquals(Long.valueOf(50), redisClient.bitcount("bitmap:active:both"));
+	}
+}